@@ -0,0 +1,63 @@
+package jenkins.plugins.openstack;
+
+import jenkins.plugins.openstack.fake.FakeOpenstack;
+import org.junit.runner.Description;
+import org.openstack4j.api.OSClient;
+import org.openstack4j.model.compute.Server;
+import org.openstack4j.openstack.OSFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Jenkins for benchmark state setup, outside of JUnit.
+ *
+ * @author ogondza.
+ */
+public final class BenchmarkJenkins extends PluginTestRule {
+
+    public void start() throws Throwable {
+        testDescription = Description.createSuiteDescription(BenchmarkJenkins.class);
+        before();
+    }
+
+    public void stop() throws Exception {
+        after();
+    }
+
+    /**
+     * Get servers as parsed by openstack4j from the fake.
+     *
+     * @param ours Number of servers started by this Jenkins, assigned to templates round robin.
+     * @param foreign Number of servers started by someone else.
+     * @param templates Names of templates.
+     */
+    public List<Server> servers(int ours, int foreign, List<String> templates) throws Exception {
+        FakeOpenstack fake = new FakeOpenstack();
+        fake.start();
+        try {
+            String rootUrl = jenkins.getRootUrl();
+            for (int i = 0; i < ours; i++) {
+                Map<String, String> metadata = new HashMap<>();
+                metadata.put("jenkins-instance", rootUrl);
+                metadata.put("jenkins-template-name", templates.get(i % templates.size()));
+                fake.createServer("ours-" + i, metadata);
+            }
+            for (int i = 0; i < foreign; i++) {
+                fake.createForeignServer("foreign-" + i);
+            }
+
+            String[] id = fake.getIdentity().split(":");
+            OSClient client = OSFactory.builder().endpoint(fake.getEndpoint())
+                    .credentials(id[1], fake.getCredential())
+                    .tenantName(id[0])
+                    .authenticate()
+            ;
+            return new ArrayList<Server>(client.compute().servers().list(true));
+        } finally {
+            fake.stop();
+        }
+    }
+}
@@ -0,0 +1,345 @@
+package jenkins.plugins.openstack;
+
+import hudson.model.Cause;
+import hudson.model.Computer;
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.model.Label;
+import hudson.model.ParametersAction;
+import hudson.model.ParametersDefinitionProperty;
+import hudson.model.StringParameterDefinition;
+import hudson.model.StringParameterValue;
+import hudson.model.TaskListener;
+import hudson.model.queue.QueueTaskFuture;
+import hudson.remoting.Engine;
+import hudson.remoting.EngineListener;
+import hudson.slaves.ComputerListener;
+import hudson.slaves.SlaveComputer;
+import jenkins.plugins.openstack.compute.JCloudsCloud;
+import jenkins.plugins.openstack.compute.JCloudsComputer;
+import jenkins.plugins.openstack.compute.JCloudsSlaveTemplate;
+import jenkins.plugins.openstack.compute.SlaveOptions;
+import jenkins.plugins.openstack.compute.internal.ProvisioningMode;
+import jenkins.plugins.openstack.fake.Distribution;
+import jenkins.plugins.openstack.fake.FakeOpenstack;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadMXBean;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Time from a build entering the queue to it getting an executor on a freshly provisioned agent.
+ *
+ * Every trial starts fresh Jenkins and fake OpenStack, schedules a burst of builds spread across labels and waits for
+ * them to start. Agents connect over JNLP from in-process engines so no JVM is forked per agent. Reported thread and
+ * heap peaks therefore include the fake and the agents, compare them between modes rather than read them as absolute.
+ *
+ * Arguments are <tt>key=value</tt> pairs:
+ * <dl>
+ *     <dt>bursts</dt><dd>Comma separated numbers of builds to schedule at once, default 1,10,100,500.</dd>
+ *     <dt>labels</dt><dd>Number of labels (and templates) the builds are spread across, default 4.</dd>
+ *     <dt>modes</dt><dd>Comma separated {@link ProvisioningMode}s, all by default.</dd>
+ *     <dt>boot</dt><dd>Mean server boot time in milliseconds, default 10000.</dd>
+ *     <dt>latency</dt><dd>Mean OpenStack API latency in milliseconds, default 20.</dd>
+ *     <dt>iterations</dt><dd>Trials per mode and burst, default 1.</dd>
+ *     <dt>timeout</dt><dd>Trial timeout in seconds, default 1800.</dd>
+ * </dl>
+ *
+ * @author ogondza.
+ */
+public final class QueueToOnlineBenchmark {
+
+    private final List<Integer> bursts = new ArrayList<>(Arrays.asList(1, 10, 100, 500));
+    private final List<ProvisioningMode> modes = new ArrayList<>(Arrays.asList(ProvisioningMode.values()));
+    private int labels = 4;
+    private long boot = 10000;
+    private long latency = 20;
+    private int iterations = 1;
+    private long timeout = 1800;
+
+    public static void main(String[] args) throws Throwable {
+        QueueToOnlineBenchmark benchmark = new QueueToOnlineBenchmark();
+        try {
+            benchmark.parse(args);
+        } catch (IllegalArgumentException ex) {
+            System.err.println(ex.getMessage());
+            System.err.println("Usage: [bursts=1,10,100,500] [labels=4] [modes=DEFAULT,...] [boot=10000] [latency=20] [iterations=1] [timeout=1800]");
+            System.exit(2);
+        }
+
+        List<Result> results = benchmark.run();
+        System.out.println();
+        System.out.println(Result.HEADER);
+        for (Result result : results) {
+            System.out.println(result);
+        }
+        // Jenkins leaves non-daemon threads behind
+        System.exit(0);
+    }
+
+    private void parse(String[] args) {
+        for (String arg : args) {
+            String[] kv = arg.split("=", 2);
+            if (kv.length != 2) throw new IllegalArgumentException("Invalid argument " + arg);
+            String value = kv[1];
+            try {
+                switch (kv[0]) {
+                    case "bursts":
+                        bursts.clear();
+                        for (String b : value.split(",")) {
+                            bursts.add(Integer.parseInt(b.trim()));
+                        }
+                    break;
+                    case "modes":
+                        modes.clear();
+                        for (String m : value.split(",")) {
+                            modes.add(ProvisioningMode.valueOf(m.trim()));
+                        }
+                    break;
+                    case "labels": labels = Integer.parseInt(value); break;
+                    case "boot": boot = Long.parseLong(value); break;
+                    case "latency": latency = Long.parseLong(value); break;
+                    case "iterations": iterations = Integer.parseInt(value); break;
+                    case "timeout": timeout = Long.parseLong(value); break;
+                    default: throw new IllegalArgumentException("Unknown argument " + arg);
+                }
+            } catch (NumberFormatException ex) {
+                throw new IllegalArgumentException("Invalid argument " + arg, ex);
+            }
+        }
+    }
+
+    private List<Result> run() throws Throwable {
+        List<Result> results = new ArrayList<>();
+        for (ProvisioningMode mode : modes) {
+            if (!mode.isSupported()) {
+                System.out.println("Skipping " + mode + " as it is not supported by this JVM");
+                continue;
+            }
+            for (int burst : bursts) {
+                Result result = new Result(mode, burst);
+                for (int i = 0; i < iterations; i++) {
+                    trial(mode, burst, result);
+                }
+                System.out.println(Result.HEADER);
+                System.out.println(result);
+                results.add(result);
+            }
+        }
+        return results;
+    }
+
+    private void trial(ProvisioningMode mode, int burst, Result result) throws Throwable {
+        FakeOpenstack fake = new FakeOpenstack();
+        fake.bootTime(Distribution.normal(boot, boot / 5)).latency(Distribution.uniform(0, 2 * latency));
+        BenchmarkJenkins j = new BenchmarkJenkins();
+        mode.before();
+        fake.start();
+        j.start();
+        InProcessAgents agents = new InProcessAgents(new URL(j.jenkins.getRootUrl()));
+        try {
+            j.jenkins.getExtensionList(ComputerListener.class).add(agents);
+
+            // Rounded up so the pools cover the whole burst
+            int perTemplate = (burst + labels - 1) / labels;
+            SlaveOptions.Builder options = SlaveOptions.builder()
+                    .imageId("fake-image")
+                    .hardwareId("fake-flavor")
+                    .networkId("fake-network-id")
+                    .floatingIpPool("public")
+                    .slaveType(JCloudsCloud.SlaveType.JNLP)
+                    .fsRoot(new File(j.jenkins.getRootDir(), "agents").getAbsolutePath())
+                    .numExecutors(1)
+                    .instanceCap(burst)
+            ;
+            mode.configure(options, perTemplate);
+            SlaveOptions opts = options.build();
+            List<JCloudsSlaveTemplate> templates = new ArrayList<>(labels);
+            List<FreeStyleProject> projects = new ArrayList<>(labels);
+            for (int l = 0; l < labels; l++) {
+                String label = "label" + l;
+                templates.add(new JCloudsSlaveTemplate("template" + l, label, SlaveOptions.empty()));
+
+                FreeStyleProject p = j.createFreeStyleProject("job" + l);
+                p.setAssignedLabel(Label.get(label));
+                p.setConcurrentBuild(true);
+                p.addProperty(new ParametersDefinitionProperty(new StringParameterDefinition("ID", "")));
+                projects.add(p);
+            }
+            JCloudsCloud cloud = new JCloudsCloud(
+                    "fake", fake.getIdentity(), fake.getCredential(), fake.getEndpoint(), null, opts, templates
+            );
+            mode.configure(cloud);
+            j.jenkins.clouds.add(cloud);
+            mode.warmUp(cloud, fake, perTemplate);
+
+            ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            int baselineThreads = threads.getThreadCount();
+            threads.resetPeakThreadCount();
+            List<MemoryPoolMXBean> heap = new ArrayList<>();
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                if (pool.getType() == MemoryType.HEAP) {
+                    pool.resetPeakUsage();
+                    heap.add(pool);
+                }
+            }
+            fake.resetCallCounts();
+
+            long[] scheduled = new long[burst];
+            List<QueueTaskFuture<FreeStyleBuild>> futures = new ArrayList<>(burst);
+            for (int i = 0; i < burst; i++) {
+                FreeStyleProject p = projects.get(i % labels);
+                scheduled[i] = System.currentTimeMillis();
+                futures.add(p.scheduleBuild2(
+                        0, new Cause.UserIdCause(), new ParametersAction(new StringParameterValue("ID", String.valueOf(i)))
+                ));
+            }
+
+            long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(timeout);
+            for (int i = 0; i < burst; i++) {
+                try {
+                    long remaining = Math.max(0, deadline - System.currentTimeMillis());
+                    FreeStyleBuild build = futures.get(i).getStartCondition().get(remaining, TimeUnit.MILLISECONDS);
+                    result.latencies.add(build.getTimeInMillis() - scheduled[i]);
+                } catch (TimeoutException|ExecutionException ex) {
+                    result.missed++;
+                }
+            }
+            long wall = System.currentTimeMillis() - scheduled[0];
+
+            long peakHeap = 0;
+            for (MemoryPoolMXBean pool : heap) {
+                peakHeap += pool.getPeakUsage().getUsed();
+            }
+            result.peakHeap = Math.max(result.peakHeap, peakHeap);
+            result.peakThreads = Math.max(result.peakThreads, threads.getPeakThreadCount() - baselineThreads);
+            result.wall += wall;
+            result.iterations++;
+            result.servers += fake.getCallCount("POST servers");
+            result.calls += fake.getTotalCallCount();
+
+            // Let the builds finish not to interfere with the shutdown
+            for (QueueTaskFuture<FreeStyleBuild> future : futures) {
+                try {
+                    future.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                } catch (TimeoutException|ExecutionException ex) {
+                    // Counted as missed already
+                }
+            }
+        } finally {
+            try {
+                j.stop();
+            } finally {
+                agents.stop();
+                fake.stop();
+                mode.after();
+            }
+        }
+    }
+
+    /**
+     * Aggregated over iterations.
+     */
+    private static final class Result {
+        private static final String HEADER = String.format(
+                "%-16s %6s %7s %6s %9s %9s %9s %9s %10s %8s %9s %8s",
+                "mode", "burst", "started", "missed", "p50[ms]", "p95[ms]", "p99[ms]", "max[ms]", "calls/node", "+threads", "heap[MB]", "wall[s]"
+        );
+
+        private final ProvisioningMode mode;
+        private final int burst;
+        private int iterations;
+        private final List<Long> latencies = new ArrayList<>();
+        private int missed;
+        private long servers;
+        private long calls;
+        private long wall;
+        private int peakThreads;
+        private long peakHeap;
+
+        private Result(ProvisioningMode mode, int burst) {
+            this.mode = mode;
+            this.burst = burst;
+        }
+
+        private long percentile(int percent) {
+            if (latencies.isEmpty()) return -1;
+            List<Long> sorted = new ArrayList<>(latencies);
+            Collections.sort(sorted);
+            int rank = (int) Math.ceil(percent / 100D * sorted.size());
+            return sorted.get(Math.max(0, rank - 1));
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                    "%-16s %6d %7d %6d %9d %9d %9d %9d %10.1f %8d %9d %8d",
+                    mode, burst, latencies.size(), missed, percentile(50), percentile(95), percentile(99), percentile(100),
+                    servers == 0 ? 0D : (double) calls / servers, peakThreads, peakHeap / 1024 / 1024,
+                    TimeUnit.MILLISECONDS.toSeconds(wall / iterations)
+            );
+        }
+    }
+
+    /**
+     * Connect JNLP agents of the plugin's computers from this JVM.
+     */
+    private static final class InProcessAgents extends ComputerListener {
+        private final URL url;
+        private final List<Engine> engines = new CopyOnWriteArrayList<>();
+
+        private InProcessAgents(URL url) {
+            this.url = url;
+        }
+
+        @Override
+        public void preLaunch(Computer c, TaskListener taskListener) {
+            if (!(c instanceof JCloudsComputer)) return;
+
+            Engine engine = new Engine(
+                    new QuietListener(c.getName()), Collections.singletonList(url), ((SlaveComputer) c).getJnlpMac(), c.getName()
+            );
+            engine.setDaemon(true);
+            engine.start();
+            engines.add(engine);
+        }
+
+        private void stop() {
+            for (Engine engine : engines) {
+                engine.interrupt();
+            }
+        }
+    }
+
+    private static final class QuietListener implements EngineListener {
+        private final String name;
+
+        private QuietListener(String name) {
+            this.name = name;
+        }
+
+        public void status(String msg) {}
+
+        public void status(String msg, Throwable t) {}
+
+        public void error(Throwable t) {
+            System.err.println("Agent " + name + " failed");
+            t.printStackTrace();
+        }
+
+        public void onDisconnect() {}
+
+        public void onReconnect() {}
+    }
+}
@@ -0,0 +1,55 @@
+package jenkins.plugins.openstack.compute;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Options are resolved through the cloud and template hierarchy every time they are read.
+ *
+ * @author ogondza.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SlaveOptionsBenchmark {
+
+    private SlaveOptions defaults;
+    private SlaveOptions cloud;
+    private SlaveOptions template;
+
+    @Setup
+    public void setup() {
+        defaults = SlaveOptions.builder()
+                .imageId("image").hardwareId("flavor").networkId("network").userDataId("user-data")
+                .instanceCap(10).floatingIpPool("public").securityGroups("default").availabilityZone("nova")
+                .startTimeout(600000).keyPairName("key").numExecutors(1).jvmOptions("-Xmx1g").fsRoot("/jenkins")
+                .credentialsId("credentials").slaveType(JCloudsCloud.SlaveType.SSH).retentionTime(30)
+                .build()
+        ;
+        cloud = SlaveOptions.builder().instanceCap(20).floatingIpPool("external").keyPairName("other").build();
+        template = SlaveOptions.builder().imageId("other").hardwareId("flavor").numExecutors(2).build();
+    }
+
+    @Benchmark
+    public SlaveOptions override() {
+        return defaults.override(cloud).override(template);
+    }
+
+    @Benchmark
+    public SlaveOptions eraseDefaults() {
+        return defaults.override(template).eraseDefaults(defaults);
+    }
+}
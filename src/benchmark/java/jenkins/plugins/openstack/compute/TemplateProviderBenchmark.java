@@ -0,0 +1,108 @@
+package jenkins.plugins.openstack.compute;
+
+import static org.mockito.Mockito.when;
+
+import hudson.model.Label;
+import jenkins.plugins.openstack.BenchmarkJenkins;
+import jenkins.plugins.openstack.compute.internal.Openstack;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openstack4j.model.compute.Server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Planning cost given the number of templates and servers running.
+ *
+ * @author ogondza.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TemplateProviderBenchmark {
+
+    @Param({"1", "10", "100"})
+    public int templates;
+
+    @Param({"10", "1000"})
+    public int servers;
+
+    private final BenchmarkJenkins j = new BenchmarkJenkins();
+    private JCloudsCloud cloud;
+    private Label label;
+    private Label expression;
+
+    @Setup(Level.Trial)
+    public void setup() throws Throwable {
+        j.start();
+
+        List<JCloudsSlaveTemplate> ts = new ArrayList<>(templates);
+        List<String> names = new ArrayList<>(templates);
+        for (int i = 0; i < templates; i++) {
+            JCloudsSlaveTemplate t = j.dummySlaveTemplate(
+                    SlaveOptions.builder().instanceCap(servers).build(), "common label" + i + (i % 2 == 0 ? " even" : " odd")
+            );
+            ts.add(t);
+            names.add(t.name);
+        }
+        cloud = j.dummyCloud(
+                SlaveOptions.builder().instanceCap(Integer.MAX_VALUE).build(),
+                ts.toArray(new JCloudsSlaveTemplate[templates])
+        );
+
+        List<Server> running = j.servers(servers, servers / 10, names);
+        Openstack os = cloud.getOpenstack();
+        when(os.getOurNodes()).thenReturn(filterOurs(running));
+
+        // The last template
+        label = Label.get("label" + (templates - 1));
+        expression = Label.parseExpression("common && odd && !label1");
+    }
+
+    private static List<Server> filterOurs(List<Server> servers) {
+        List<Server> ours = new ArrayList<>();
+        for (Server s : servers) {
+            if (s.getName().startsWith("ours-")) {
+                ours.add(s);
+            }
+        }
+        return ours;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        j.stop();
+    }
+
+    @Benchmark
+    public Queue<JCloudsSlaveTemplate> templateProvider() {
+        return cloud.getAvailableTemplateProvider(label);
+    }
+
+    @Benchmark
+    public boolean canProvisionAtom() {
+        return cloud.canProvision(label);
+    }
+
+    @Benchmark
+    public boolean canProvisionExpression() {
+        return cloud.canProvision(expression);
+    }
+}
@@ -0,0 +1,64 @@
+package jenkins.plugins.openstack.compute;
+
+import jenkins.plugins.openstack.BenchmarkJenkins;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Expansion of user data variables.
+ *
+ * @author ogondza.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UserDataBenchmark {
+
+    /** Size of user data in kilobytes. */
+    @Param({"1", "16"})
+    public int size;
+
+    private final BenchmarkJenkins j = new BenchmarkJenkins();
+    private JCloudsSlaveTemplate template;
+    private String userData;
+
+    @Setup(Level.Trial)
+    public void setup() throws Throwable {
+        j.start();
+        template = j.dummySlaveTemplate("label");
+
+        StringBuilder sb = new StringBuilder("#!/bin/sh\n");
+        while (sb.length() < size * 1024) {
+            sb.append("curl -o slave.jar ${SLAVE_JAR_URL}\n");
+            sb.append("java -jar slave.jar -jnlpUrl ${SLAVE_JNLP_URL} # on ${JENKINS_URL} for ${SLAVE_LABELS}\n");
+            sb.append("echo 'nothing to expand here, just to make the script longer'\n");
+        }
+        userData = sb.toString();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        j.stop();
+    }
+
+    @Benchmark
+    public String expand() {
+        return template.expandUserData(userData, "template-1234");
+    }
+}
@@ -0,0 +1,149 @@
+package jenkins.plugins.openstack.compute.internal;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import hudson.model.PeriodicWork;
+import hudson.model.TaskListener;
+import jenkins.plugins.openstack.compute.JCloudsCleanupThread;
+import jenkins.plugins.openstack.compute.JCloudsCloud;
+import jenkins.plugins.openstack.compute.JCloudsSlaveTemplate;
+import jenkins.plugins.openstack.compute.SlaveOptions;
+import jenkins.plugins.openstack.fake.FakeOpenstack;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ways the plugin can be configured to provision, so the benchmarks can compare them.
+ *
+ * @author ogondza.
+ */
+public enum ProvisioningMode {
+    /**
+     * Configuration as shipped.
+     */
+    DEFAULT,
+
+    /**
+     * No limit on servers booting at the same time.
+     */
+    UNLIMITED_BOOTS {
+        @Override public void configure(@Nonnull JCloudsCloud cloud) {
+            cloud.setMaxConcurrentBoots(10000);
+        }
+    },
+
+    /**
+     * Blocking cloud work on virtual threads.
+     */
+    VIRTUAL_THREADS {
+        @Override public boolean isSupported() {
+            return CloudExecutors.isVirtualThreadsSupported();
+        }
+
+        @Override public void before() {
+            CloudExecutors.virtualThreads = true;
+        }
+
+        @Override public void after() {
+            CloudExecutors.virtualThreads = false;
+        }
+    },
+
+    /**
+     * Provisioning strategy not waiting for the load statistics.
+     */
+    NO_DELAY {
+        @Override public void configure(@Nonnull JCloudsCloud cloud) {
+            cloud.setNoDelayProvisioning(true);
+        }
+    },
+
+    /**
+     * Servers started from the stopped pool filled before the burst.
+     */
+    STOPPED_POOL {
+        @Override public void configure(@Nonnull SlaveOptions.Builder options, int perTemplate) {
+            options.stoppedCap(perTemplate);
+        }
+
+        @Override public void warmUp(@Nonnull final JCloudsCloud cloud, @Nonnull FakeOpenstack fake, int perTemplate) throws Exception {
+            ListeningExecutorService executor = CloudExecutors.get(cloud.name).get(CloudExecutors.Pool.BOOT);
+            List<ListenableFuture<Object>> stopped = new ArrayList<>();
+            for (final JCloudsSlaveTemplate template : cloud.getTemplates()) {
+                for (int i = 0; i < perTemplate; i++) {
+                    stopped.add(executor.submit(new Callable<Object>() {
+                        @Override public Object call() throws Exception {
+                            int timeout = template.getEffectiveSlaveOptions().getStartTimeout();
+                            cloud.getOpenstack().stopServer(template.provision(cloud), timeout);
+                            return null;
+                        }
+                    }));
+                }
+            }
+            Futures.allAsList(stopped).get(WARM_UP_TIMEOUT, TimeUnit.MINUTES);
+        }
+    },
+
+    /**
+     * Servers booted from the volume pool filled before the burst.
+     */
+    VOLUME_POOL {
+        @Override public void configure(@Nonnull SlaveOptions.Builder options, int perTemplate) {
+            options.volumePool(perTemplate).volumeSize(1);
+        }
+
+        @Override public void warmUp(@Nonnull JCloudsCloud cloud, @Nonnull FakeOpenstack fake, int perTemplate) throws Exception {
+            // Replenished by the cleanup thread in background
+            PeriodicWork.all().get(JCloudsCleanupThread.class).execute(TaskListener.NULL);
+
+            int expected = perTemplate * cloud.getTemplates().size();
+            long deadline = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(WARM_UP_TIMEOUT);
+            while (fake.getVolumeCount("available") < expected) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw new IllegalStateException("Volume pool not filled in time: " + fake.getVolumeCount("available"));
+                }
+                Thread.sleep(100);
+            }
+        }
+    };
+
+    private static final long WARM_UP_TIMEOUT = 10;
+
+    public boolean isSupported() {
+        return true;
+    }
+
+    /**
+     * Called before Jenkins is started.
+     */
+    public void before() {}
+
+    /**
+     * Called before the cloud options are built.
+     *
+     * @param perTemplate Number of builds of the burst per template.
+     */
+    public void configure(@Nonnull SlaveOptions.Builder options, int perTemplate) {}
+
+    /**
+     * Called before the cloud is added to Jenkins.
+     */
+    public void configure(@Nonnull JCloudsCloud cloud) {}
+
+    /**
+     * Called once the cloud is added to Jenkins, before the measurement starts.
+     *
+     * @param perTemplate Number of builds of the burst per template.
+     */
+    public void warmUp(@Nonnull JCloudsCloud cloud, @Nonnull FakeOpenstack fake, int perTemplate) throws Exception {}
+
+    /**
+     * Called after Jenkins is stopped.
+     */
+    public void after() {}
+}
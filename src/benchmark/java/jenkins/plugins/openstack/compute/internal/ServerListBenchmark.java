@@ -0,0 +1,80 @@
+package jenkins.plugins.openstack.compute.internal;
+
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+import jenkins.plugins.openstack.BenchmarkJenkins;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openstack4j.api.OSClient;
+import org.openstack4j.api.compute.ServerService;
+import org.openstack4j.model.compute.Server;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Filtering of the tenant servers and address extraction.
+ *
+ * The servers are parsed by openstack4j from the fake OpenStack so they are the same objects the plugin works with.
+ *
+ * @author ogondza.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ServerListBenchmark {
+
+    @Param({"100", "10000"})
+    public int servers;
+
+    private final BenchmarkJenkins j = new BenchmarkJenkins();
+    private List<Server> all;
+    private Openstack openstack;
+
+    @Setup(Level.Trial)
+    public void setup() throws Throwable {
+        j.start();
+        // Half of the tenant is ours
+        all = j.servers(servers / 2, servers / 2, Collections.singletonList("template"));
+
+        OSClient client = mock(OSClient.class, RETURNS_DEEP_STUBS);
+        ServerService service = client.compute().servers();
+        doReturn(all).when(service).list(true);
+        openstack = new Openstack(client);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        j.stop();
+    }
+
+    @Benchmark
+    public List<Server> getRunningNodes() {
+        return openstack.getRunningNodes();
+    }
+
+    @Benchmark
+    public void getPublicAddress(Blackhole bh) {
+        for (Server server : all) {
+            bh.consume(Openstack.getPublicAddress(server));
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package jenkins.plugins.openstack.compute;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import hudson.Extension;
+import hudson.Util;
+import hudson.model.AbstractDescribableImpl;
+import hudson.model.Computer;
+import hudson.model.Descriptor;
+import hudson.model.TaskListener;
+import hudson.slaves.ComputerListener;
+import hudson.util.FormValidation;
+import hudson.util.ListBoxModel;
+import jenkins.model.Jenkins;
+import jenkins.plugins.openstack.compute.internal.Openstack;
+import org.jenkinsci.lib.configprovider.ConfigProvider;
+import org.jenkinsci.lib.configprovider.model.Config;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.DoNotUse;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.QueryParameter;
+import org.openstack4j.model.compute.Server;
+import org.openstack4j.model.image.Image;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Bake the image of the template from a slave that has finished its initialization.
+ *
+ * Once a slave booted from the template image connects, its server is snapshotted. Following slaves boot from the
+ * snapshot with the user data configured here, presumably reduced as the machine is initialized already. Snapshots
+ * are identified by name so they survive restarts and reconfiguration. The ones older than {@link #maxAge} hours are
+ * not used and get replaced by a newly baked one, only {@link #keep} most recent are retained. Slaves boot from the
+ * template image until there is a snapshot to use.
+ *
+ * @author ogondza.
+ */
+@Restricted(NoExternalUse.class)
+public final class ImageBaking extends AbstractDescribableImpl<ImageBaking> {
+    private static final Logger LOGGER = Logger.getLogger(ImageBaking.class.getName());
+
+    /**
+     * Server metadata requesting the server to be baked once its slave connects.
+     */
+    /*package*/ static final String BAKE_KEY = "jenkins-bake";
+
+    private final int maxAge;
+    private final int keep;
+    private final @CheckForNull String userDataId;
+
+    @DataBoundConstructor
+    public ImageBaking(int maxAge, int keep, String userDataId) {
+        this.maxAge = maxAge;
+        this.keep = keep;
+        this.userDataId = Util.fixEmptyAndTrim(userDataId);
+    }
+
+    /**
+     * Hours since baked the snapshot is used for.
+     */
+    public int getMaxAge() {
+        return maxAge;
+    }
+
+    /**
+     * Number of most recent snapshots retained.
+     */
+    public int getKeep() {
+        return keep;
+    }
+
+    /**
+     * User data to boot the baked image with, null for none.
+     */
+    public @CheckForNull String getUserDataId() {
+        return userDataId;
+    }
+
+    /*package*/ @CheckForNull String getUserData() {
+        if (userDataId == null) return null;
+
+        Config userData = ConfigProvider.all().get(UserDataConfig.UserDataConfigProvider.class).getConfigById(userDataId);
+        return (userData == null || userData.content.isEmpty())
+                ? null
+                : userData.content
+        ;
+    }
+
+    /**
+     * Name shared by all the snapshots of the template baked by this Jenkins instance.
+     */
+    /*package*/ static @Nonnull String getSnapshotName(@Nonnull JCloudsSlaveTemplate template) {
+        String rootUrl = Util.fixNull(Jenkins.getActiveInstance().getRootUrl());
+        return "jenkins-" + Util.getDigestOf(rootUrl).substring(0, 8) + "-" + template.name + "-baked";
+    }
+
+    /**
+     * Get the most recent snapshot to boot from.
+     *
+     * @return Image id or null in case there is no active snapshot young enough.
+     */
+    /*package*/ @CheckForNull String getImageId(@Nonnull Openstack openstack, @Nonnull JCloudsSlaveTemplate template) {
+        for (Image image : openstack.getImagesByName(getSnapshotName(template))) {
+            if (image.getStatus() == Image.Status.ACTIVE && !isExpired(image)) return image.getId();
+        }
+        return null;
+    }
+
+    /**
+     * Snapshot the server and remove the snapshots no longer needed.
+     */
+    /*package*/ void bake(
+            @Nonnull Openstack openstack, @Nonnull JCloudsSlaveTemplate template, @Nonnull Server server, int timeout
+    ) throws InterruptedException {
+        String name = getSnapshotName(template);
+        LOGGER.info("Baking image " + name + " from " + server.getName());
+        String imageId = openstack.createSnapshotAndWaitActive(server, name, timeout);
+        LOGGER.info("Baked image " + name + " as " + imageId);
+
+        rotate(openstack, template);
+    }
+
+    /**
+     * Delete snapshots over the number to keep and expired ones, save for the most recent one.
+     *
+     * The most recent snapshot is kept even if expired until replaced so there is always a fallback for slow bakes.
+     */
+    /*package*/ void rotate(@Nonnull Openstack openstack, @Nonnull JCloudsSlaveTemplate template) {
+        List<Image> images = openstack.getImagesByName(getSnapshotName(template));
+        for (int i = 1; i < images.size(); i++) {
+            Image image = images.get(i);
+            if (i < Math.max(keep, 1) && !isExpired(image)) continue;
+
+            try {
+                openstack.deleteImage(image.getId());
+                LOGGER.info("Deleted baked image " + image.getName() + " " + image.getId());
+            } catch (Openstack.ActionFailed ex) {
+                LOGGER.log(Level.WARNING, "Failed to delete baked image " + image.getId(), ex);
+            }
+        }
+    }
+
+    private boolean isExpired(@Nonnull Image image) {
+        Date created = image.getCreatedAt();
+        return created == null || System.currentTimeMillis() - created.getTime() > TimeUnit.HOURS.toMillis(maxAge);
+    }
+
+    @Extension
+    public static final class DescriptorImpl extends Descriptor<ImageBaking> {
+        @Override
+        public String getDisplayName() {
+            return "";
+        }
+
+        @Restricted(DoNotUse.class)
+        public FormValidation doCheckMaxAge(@QueryParameter String value) {
+            return FormValidation.validatePositiveInteger(value);
+        }
+
+        @Restricted(DoNotUse.class)
+        public FormValidation doCheckKeep(@QueryParameter String value) {
+            return FormValidation.validatePositiveInteger(value);
+        }
+
+        @Restricted(DoNotUse.class)
+        public ListBoxModel doFillUserDataIdItems() {
+            ListBoxModel m = new ListBoxModel();
+            m.add("None specified", "");
+
+            ConfigProvider provider = ConfigProvider.all().get(UserDataConfig.UserDataConfigProvider.class);
+            for (Config config : provider.getAllConfigs()) {
+                m.add(config.name, config.id);
+            }
+
+            return m;
+        }
+    }
+
+    /**
+     * Bake servers of slaves that requested it once connected.
+     *
+     * The slave does not take builds until baked not to snapshot the server in the middle of a build.
+     */
+    @Extension @Restricted(NoExternalUse.class)
+    public static final class Listener extends ComputerListener {
+        @Override
+        public void onOnline(Computer c, TaskListener listener) {
+            if (c instanceof JCloudsComputer) {
+                bake((JCloudsComputer) c);
+            }
+        }
+
+        /**
+         * @return Future completed once baked and the slave takes builds again, null if not baking.
+         */
+        public static @CheckForNull ListenableFuture<?> bake(final @Nonnull JCloudsComputer computer) {
+            JCloudsSlave node = computer.getNode();
+            if (node == null || !node.takeBakeRequest()) return null;
+
+            String templateName = node.getId().getTemplateName();
+            if (templateName == null) return null;
+
+            computer.setPendingBake(true);
+            ListenableFuture<?> baked = null;
+            try {
+                JCloudsCloud cloud = JCloudsCloud.getByName(node.getId().getCloudName());
+                JCloudsSlaveTemplate template = cloud.getTemplate(templateName);
+                if (template != null) {
+                    baked = template.bake(cloud, node.getServerId());
+                }
+            } catch (IllegalArgumentException ex) {
+                LOGGER.log(Level.WARNING, "Unable to bake image from " + node.getNodeName(), ex);
+            }
+
+            if (baked == null) {
+                computer.setPendingBake(false);
+                return null;
+            }
+
+            final SettableFuture<Void> online = SettableFuture.create();
+            baked.addListener(new Runnable() {
+                @Override public void run() {
+                    try {
+                        computer.setPendingBake(false);
+                    } finally {
+                        online.set(null);
+                    }
+                }
+            }, MoreExecutors.sameThreadExecutor());
+            return online;
+        }
+    }
+}
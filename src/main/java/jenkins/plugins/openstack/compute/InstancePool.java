@@ -0,0 +1,228 @@
+package jenkins.plugins.openstack.compute;
+
+import hudson.Extension;
+import hudson.model.TaskListener;
+import hudson.model.listeners.ItemListener;
+import jenkins.plugins.openstack.compute.internal.CloudExecutors;
+import jenkins.plugins.openstack.compute.internal.RunningNode;
+import jenkins.plugins.openstack.compute.internal.TerminateNodes;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+import org.openstack4j.model.compute.Server;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Instances of {@link JCloudsBuildWrapper} kept between builds per cloud and template.
+ *
+ * The pool is held in memory. Instances idle for too long are destroyed by {@link JCloudsCleanupThread}, and all of
+ * them are destroyed on shutdown.
+ *
+ * The instances follow the {@link InstanceReuse} settings of the build that pooled them first. The ones that are not
+ * rebuilt still carry the workspace and credentials of the build so they are only handed to the builds of the same job.
+ *
+ * @author ogondza.
+ */
+@Restricted(NoExternalUse.class)
+public final class InstancePool {
+    private static final Logger LOGGER = Logger.getLogger(InstancePool.class.getName());
+
+    /**
+     * Idle instances by cloud and template, most recently returned first.
+     */
+    private static final Map<String, Deque<Pooled>> IDLE = new HashMap<>(); // guarded by IDLE
+
+    /**
+     * Instances taken from the pool, by server id.
+     */
+    private static final ConcurrentMap<String, Pooled> TAKEN = new ConcurrentHashMap<>();
+
+    private InstancePool() {}
+
+    /**
+     * Take up to count instances of the template from the pool for a build of the job.
+     *
+     * @param job Full name of the job the build belongs to.
+     */
+    /*package*/ static @Nonnull List<RunningNode> take(
+            @Nonnull String cloudName, @Nonnull String templateName, int count, @Nonnull String job,
+            @Nonnull TaskListener listener
+    ) {
+        List<RunningNode> taken = new ArrayList<>();
+        List<RunningNode> expired = new ArrayList<>();
+        synchronized (IDLE) {
+            Deque<Pooled> idle = IDLE.get(key(cloudName, templateName));
+            if (idle != null) {
+                for (Iterator<Pooled> it = idle.iterator(); it.hasNext() && taken.size() < count;) {
+                    Pooled pooled = it.next();
+                    if (pooled.isExpired()) {
+                        expired.add(pooled.node);
+                        it.remove();
+                    } else if (pooled.job == null || pooled.job.equals(job)) {
+                        TAKEN.put(pooled.node.getNode().getId(), pooled);
+                        taken.add(pooled.node);
+                        it.remove();
+                    }
+                }
+            }
+        }
+
+        for (RunningNode node : taken) {
+            listener.getLogger().println("Reusing pooled instance: " + node.getNode().getName());
+        }
+        destroy(expired, listener);
+        return taken;
+    }
+
+    /**
+     * Return instances to the pool once the build is done with them, or destroy the ones used up.
+     *
+     * @param reuse Settings of the build, applied to the instances not pooled before.
+     * @param job Full name of the job the build belongs to.
+     */
+    /*package*/ static void offer(
+            @Nonnull Iterable<RunningNode> nodes, @Nonnull InstanceReuse reuse, @Nonnull String job,
+            @Nonnull TaskListener listener
+    ) {
+        List<RunningNode> usedUp = new ArrayList<>();
+        for (final RunningNode node : nodes) {
+            Pooled taken = TAKEN.remove(node.getNode().getId());
+            final InstanceReuse settings = taken == null ? reuse : taken.reuse;
+            final int uses = (taken == null ? 0 : taken.uses) + 1;
+            if (uses >= settings.getMaxUses()) {
+                usedUp.add(node);
+                continue;
+            }
+
+            if (!settings.isRebuild()) {
+                listener.getLogger().println("Returning instance to the pool: " + node.getNode().getName());
+                add(new Pooled(node, uses, settings, job));
+                continue;
+            }
+
+            // Not to delay the build, the instance is pooled once rebuilt
+            listener.getLogger().println("Rebuilding instance to be returned to the pool: " + node.getNode().getName());
+            CloudExecutors.get(node.getCloudName()).get(CloudExecutors.Pool.DELETION).submit(new Runnable() {
+                @Override public void run() {
+                    try {
+                        JCloudsCloud cloud = JCloudsCloud.getByName(node.getCloudName());
+                        JCloudsSlaveTemplate template = cloud.getTemplate(node.getTemplateName());
+                        if (template == null) throw new IllegalArgumentException("No such template " + node.getTemplateName());
+
+                        Server rebuilt = template.rebuild(cloud, node.getNode().getId(), null, TaskListener.NULL);
+                        // Pristine, so good for any job
+                        add(new Pooled(new RunningNode(node.getCloudName(), node.getTemplateName(), rebuilt), uses, settings, null));
+                    } catch (RuntimeException ex) {
+                        LOGGER.log(Level.WARNING, "Unable to rebuild pooled instance " + node.getNode().getName(), ex);
+                        // Not to wait for the deletion pool from within it
+                        new TerminateNodes(TaskListener.NULL).applyAsync(Collections.singletonList(node));
+                    }
+                }
+            });
+        }
+
+        destroy(usedUp, listener);
+    }
+
+    /**
+     * Destroy instances idle for too long.
+     */
+    /*package*/ static void trim() {
+        List<RunningNode> expired = new ArrayList<>();
+        synchronized (IDLE) {
+            for (Deque<Pooled> idle : IDLE.values()) {
+                for (Iterator<Pooled> it = idle.iterator(); it.hasNext();) {
+                    Pooled pooled = it.next();
+                    if (pooled.isExpired()) {
+                        expired.add(pooled.node);
+                        it.remove();
+                    }
+                }
+            }
+        }
+
+        if (!expired.isEmpty()) {
+            LOGGER.info("Destroying " + expired.size() + " pooled instances idle for too long");
+            destroy(expired, TaskListener.NULL);
+        }
+    }
+
+    private static void add(@Nonnull Pooled pooled) {
+        synchronized (IDLE) {
+            String key = key(pooled.node.getCloudName(), pooled.node.getTemplateName());
+            Deque<Pooled> idle = IDLE.get(key);
+            if (idle == null) {
+                idle = new ArrayDeque<>();
+                IDLE.put(key, idle);
+            }
+            idle.addFirst(pooled);
+        }
+    }
+
+    private static void destroy(@Nonnull List<RunningNode> nodes, @Nonnull TaskListener listener) {
+        if (nodes.isEmpty()) return;
+        try {
+            new TerminateNodes(listener).apply(nodes);
+        } catch (RuntimeException ex) {
+            LOGGER.log(Level.WARNING, "Unable to destroy pooled instances", ex);
+        }
+    }
+
+    private static @Nonnull String key(@Nonnull String cloudName, @Nonnull String templateName) {
+        return cloudName + "/" + templateName;
+    }
+
+    private static final class Pooled {
+        private final @Nonnull RunningNode node;
+        private final int uses;
+        private final long returned = System.currentTimeMillis();
+        // Settings of the build that pooled the instance first
+        private final @Nonnull InstanceReuse reuse;
+        // Job the instance is reserved for, null when rebuilt
+        private final @CheckForNull String job;
+
+        private Pooled(@Nonnull RunningNode node, int uses, @Nonnull InstanceReuse reuse, @CheckForNull String job) {
+            this.node = node;
+            this.uses = uses;
+            this.reuse = reuse;
+            this.job = job;
+        }
+
+        private boolean isExpired() {
+            return System.currentTimeMillis() - returned > reuse.getMaxIdleMillis();
+        }
+    }
+
+    /**
+     * Destroy all the pooled instances as the pool does not survive restart.
+     */
+    @Extension @Restricted(NoExternalUse.class)
+    public static final class Shutdown extends ItemListener {
+        @Override
+        public void onBeforeShutdown() {
+            List<RunningNode> all = new ArrayList<>();
+            synchronized (IDLE) {
+                for (Deque<Pooled> idle : IDLE.values()) {
+                    for (Pooled pooled : idle) {
+                        all.add(pooled.node);
+                    }
+                }
+                IDLE.clear();
+            }
+            destroy(all, TaskListener.NULL);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package jenkins.plugins.openstack.compute;
+
+import hudson.Extension;
+import hudson.model.AbstractDescribableImpl;
+import hudson.model.Descriptor;
+import hudson.util.FormValidation;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.DoNotUse;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.QueryParameter;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Return the instances of {@link JCloudsBuildWrapper} to the {@link InstancePool} instead of destroying them.
+ *
+ * Instances are reused by following builds asking for the same template until they served {@link #maxUses} builds.
+ * The ones idle longer than {@link #maxIdle} minutes are destroyed.
+ *
+ * @author ogondza.
+ */
+@Restricted(NoExternalUse.class)
+public final class InstanceReuse extends AbstractDescribableImpl<InstanceReuse> {
+    private final int maxIdle;
+    private final int maxUses;
+    private final boolean rebuild;
+
+    @DataBoundConstructor
+    public InstanceReuse(int maxIdle, int maxUses, boolean rebuild) {
+        this.maxIdle = maxIdle;
+        this.maxUses = maxUses;
+        this.rebuild = rebuild;
+    }
+
+    /**
+     * Minutes the instance is kept in the pool for.
+     */
+    public int getMaxIdle() {
+        return maxIdle;
+    }
+
+    /**
+     * Number of builds to use the instance for.
+     */
+    public int getMaxUses() {
+        return maxUses;
+    }
+
+    /**
+     * Rebuild the instance to its image before reuse.
+     */
+    public boolean isRebuild() {
+        return rebuild;
+    }
+
+    /*package*/ long getMaxIdleMillis() {
+        return TimeUnit.MINUTES.toMillis(maxIdle);
+    }
+
+    @Extension
+    public static final class DescriptorImpl extends Descriptor<InstanceReuse> {
+        @Override
+        public String getDisplayName() {
+            return "";
+        }
+
+        @Restricted(DoNotUse.class)
+        public FormValidation doCheckMaxIdle(@QueryParameter String value) {
+            return FormValidation.validatePositiveInteger(value);
+        }
+
+        @Restricted(DoNotUse.class)
+        public FormValidation doCheckMaxUses(@QueryParameter String value) {
+            return FormValidation.validatePositiveInteger(value);
+        }
+    }
+}
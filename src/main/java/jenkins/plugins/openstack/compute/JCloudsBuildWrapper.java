@@ -7,35 +7,63 @@ import hudson.Util;
 import hudson.model.AbstractBuild;
 import hudson.model.AbstractProject;
 import hudson.model.BuildListener;
-import hudson.model.Computer;
+import hudson.model.BuildableItemWithBuildWrappers;
+import hudson.model.Queue;
+import hudson.model.TaskListener;
+import hudson.model.listeners.RunListener;
+import hudson.model.queue.QueueListener;
 import hudson.tasks.BuildWrapper;
 import hudson.tasks.BuildWrapperDescriptor;
+import hudson.util.StreamTaskListener;
+import hudson.util.VariableResolver;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
+import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
 
 import jenkins.plugins.openstack.compute.internal.NodePlan;
 import jenkins.plugins.openstack.compute.internal.Openstack;
 import jenkins.plugins.openstack.compute.internal.ProvisionPlannedInstancesAndDestroyAllOnError;
+import jenkins.plugins.openstack.compute.internal.ProvisioningLedger;
 import jenkins.plugins.openstack.compute.internal.RunningNode;
 import jenkins.plugins.openstack.compute.internal.TerminateNodes;
 
 import org.kohsuke.accmod.Restricted;
 import org.kohsuke.accmod.restrictions.NoExternalUse;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
 import org.openstack4j.model.compute.Server;
 
+import com.google.common.base.Charsets;
 import com.google.common.base.Function;
-import com.google.common.base.Supplier;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
-import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 
 public class JCloudsBuildWrapper extends BuildWrapper {
+    private static final Logger LOGGER = Logger.getLogger(JCloudsBuildWrapper.class.getName());
+
+    /**
+     * Instances provisioned ahead of the build, by queue item id.
+     */
+    private static final ConcurrentMap<Long, QueuedInstances> QUEUED = new ConcurrentHashMap<>();
+
     private final List<InstancesToRun> instancesToRun;
+    private boolean provisionOnQueue;
+    private InstanceReuse reuse;
 
     @DataBoundConstructor
     public JCloudsBuildWrapper(List<InstancesToRun> instancesToRun) {
@@ -47,36 +75,51 @@ public class JCloudsBuildWrapper extends BuildWrapper {
         return instancesToRun;
     }
 
+    /**
+     * Start provisioning the instances as soon as the build enters the queue.
+     */
+    public boolean isProvisionOnQueue() {
+        return provisionOnQueue;
+    }
+
+    @DataBoundSetter
+    public void setProvisionOnQueue(boolean provisionOnQueue) {
+        this.provisionOnQueue = provisionOnQueue;
+    }
+
+    /**
+     * Reuse the instances by following builds, null to destroy them with the build.
+     */
+    public @CheckForNull InstanceReuse getReuse() {
+        return reuse;
+    }
+
+    @DataBoundSetter
+    public void setReuse(@CheckForNull InstanceReuse reuse) {
+        this.reuse = reuse;
+    }
+
     //
     // convert Jenkins staticy stuff into pojos; performing as little critical stuff here as
     // possible, as this method is very hard to test due to static usage, etc.
     //
     @Override
-    public Environment setUp(final AbstractBuild build, Launcher launcher, final BuildListener listener) {
-
-        // eagerly lookup node supplier so that errors occur before we attempt to provision things
-        Iterable<NodePlan> nodePlans = Iterables.transform(instancesToRun, new Function<InstancesToRun, NodePlan>() {
-
-            @SuppressWarnings("unchecked")
-            public NodePlan apply(InstancesToRun instance) {
-                String cloudName = instance.cloudName;
-                String templateName = Util.replaceMacro(instance.getActualTemplateName(), build.getBuildVariableResolver());
-                JCloudsCloud cloud = JCloudsCloud.getByName(cloudName);
-                JCloudsSlaveTemplate template = cloud.getTemplate(templateName);
-                if (template == null) throw new IllegalArgumentException("No such template " + templateName);
-                Supplier<Server> nodeSupplier = new ServerSupplier(cloud, template);
-                return new NodePlan(cloudName, templateName, instance.count, nodeSupplier);
-            }
-        });
-
+    public Environment setUp(final AbstractBuild build, Launcher launcher, final BuildListener listener) throws InterruptedException {
         final TerminateNodes terminateNodes = new TerminateNodes(listener);
+        final String job = build.getParent().getFullName();
 
-        ProvisionPlannedInstancesAndDestroyAllOnError provisioner = new ProvisionPlannedInstancesAndDestroyAllOnError(
-                MoreExecutors.listeningDecorator(Computer.threadPoolForRemoting), listener, terminateNodes);
-
-        final Iterable<RunningNode> runningNode = provisioner.apply(nodePlans);
+        final Iterable<RunningNode> runningNode;
+        QueuedInstances queued = QUEUED.remove(build.getQueueId());
+        if (queued != null) {
+            runningNode = queued.await(listener);
+        } else if (reuse == null) {
+            Iterable<NodePlan> nodePlans = getNodePlans(instancesToRun, build.getBuildVariableResolver());
+            runningNode = getProvisioner(listener, terminateNodes).apply(nodePlans);
+        } else {
+            runningNode = reuseOrProvision(build.getBuildVariableResolver(), job, listener, terminateNodes);
+        }
 
-        final String ipsString = getIpsString(runningNode);
+        final String ipsString = Util.join(getIps(runningNode), ",");
         return new Environment() {
             @Override
             public void buildEnvVars(Map<String, String> env) {
@@ -85,14 +128,82 @@ public class JCloudsBuildWrapper extends BuildWrapper {
 
             @Override
             public boolean tearDown(AbstractBuild build, final BuildListener listener) throws IOException, InterruptedException {
-                terminateNodes.apply(runningNode);
+                if (reuse != null) {
+                    InstancePool.offer(runningNode, reuse, job, listener);
+                } else {
+                    terminateNodes.apply(runningNode);
+                }
                 return true;
             }
         };
     }
 
-    private @Nonnull String getIpsString(final Iterable<RunningNode> runningNodes) {
-        final List<String> ips = new ArrayList<>(instancesToRun.size());
+    /**
+     * Take what is available from the pool and provision the rest.
+     */
+    private @Nonnull Iterable<RunningNode> reuseOrProvision(
+            @Nonnull VariableResolver<String> resolver, @Nonnull String job, @Nonnull BuildListener listener,
+            @Nonnull TerminateNodes terminateNodes
+    ) {
+        List<RunningNode> reused = new ArrayList<>();
+        List<InstancesToRun> missing = new ArrayList<>();
+        for (InstancesToRun instance : instancesToRun) {
+            String templateName = Util.replaceMacro(instance.getActualTemplateName(), resolver);
+            List<RunningNode> taken = InstancePool.take(instance.cloudName, templateName, instance.count, job, listener);
+            reused.addAll(taken);
+            if (taken.size() < instance.count) {
+                missing.add(new InstancesToRun(instance.cloudName, templateName, null, instance.count - taken.size()));
+            }
+        }
+
+        try {
+            Iterable<RunningNode> provisioned = getProvisioner(listener, terminateNodes).apply(getNodePlans(missing, resolver));
+            return ImmutableList.copyOf(Iterables.concat(reused, provisioned));
+        } catch (RuntimeException ex) {
+            // Still good for other builds
+            InstancePool.offer(reused, reuse, job, listener);
+            throw ex;
+        }
+    }
+
+    /*package*/ static @Nonnull Iterable<NodePlan> getNodePlans(
+            @Nonnull List<InstancesToRun> instancesToRun, final @Nonnull VariableResolver<String> resolver
+    ) {
+        // eagerly lookup node supplier so that errors occur before we attempt to provision things
+        return ImmutableList.copyOf(Iterables.transform(instancesToRun, new Function<InstancesToRun, NodePlan>() {
+            public NodePlan apply(InstancesToRun instance) {
+                String cloudName = instance.cloudName;
+                String templateName = Util.replaceMacro(instance.getActualTemplateName(), resolver);
+                JCloudsCloud cloud = JCloudsCloud.getByName(cloudName);
+                JCloudsSlaveTemplate template = cloud.getTemplate(templateName);
+                if (template == null) throw new IllegalArgumentException("No such template " + templateName);
+                Function<ProvisioningLedger.Reservation, Server> nodeSupplier = new ServerSupplier(cloud, template);
+                return new NodePlan(cloudName, templateName, instance.count, nodeSupplier);
+            }
+        }));
+    }
+
+    /*package*/ static @Nonnull ProvisionPlannedInstancesAndDestroyAllOnError getProvisioner(
+            @Nonnull TaskListener listener, @Nonnull TerminateNodes terminateNodes
+    ) {
+        return new ProvisionPlannedInstancesAndDestroyAllOnError(listener, terminateNodes);
+    }
+
+    /**
+     * Start provisioning the instances for a build still in the queue.
+     *
+     * @return null when the template names need build variables that are not known until the build starts.
+     */
+    private @CheckForNull QueuedInstances provisionQueued() {
+        for (InstancesToRun instance : instancesToRun) {
+            if (instance.getActualTemplateName().contains("$")) return null;
+        }
+
+        return new QueuedInstances(getNodePlans(instancesToRun, VariableResolver.NONE));
+    }
+
+    /*package*/ static @Nonnull List<String> getIps(final Iterable<RunningNode> runningNodes) {
+        final List<String> ips = new ArrayList<>();
         for (RunningNode node : runningNodes) {
             String addr = Openstack.getPublicAddress(node.getNode());
             if (addr != null) {
@@ -104,10 +215,10 @@ public class JCloudsBuildWrapper extends BuildWrapper {
             }
         }
 
-        return Util.join(ips, ",");
+        return ips;
     }
 
-    private static final class ServerSupplier implements Supplier<Server> {
+    private static final class ServerSupplier implements Function<ProvisioningLedger.Reservation, Server> {
 
         private final @Nonnull JCloudsCloud cloud;
         private final @Nonnull JCloudsSlaveTemplate template;
@@ -117,8 +228,123 @@ public class JCloudsBuildWrapper extends BuildWrapper {
             this.template = template;
         }
 
-        @Override public Server get() {
-            return template.provision(cloud);
+        @Override public Server apply(ProvisioningLedger.Reservation reservation) {
+            return template.provision(cloud, reservation, null, TaskListener.NULL);
+        }
+    }
+
+    /**
+     * Instances provisioned while the build waits in the queue, the output is replayed into the build log.
+     */
+    private static final class QueuedInstances {
+        private final ByteArrayOutputStream log = new ByteArrayOutputStream();
+        private final ListenableFuture<Iterable<RunningNode>> nodes;
+        private final int count;
+
+        private QueuedInstances(@Nonnull Iterable<NodePlan> nodePlans) {
+            TaskListener listener = new StreamTaskListener(log, Charsets.UTF_8);
+            nodes = getProvisioner(listener, new TerminateNodes(listener)).start(nodePlans);
+            int count = 0;
+            for (NodePlan plan : nodePlans) {
+                count += plan.getCount();
+            }
+            this.count = count;
+        }
+
+        private @Nonnull Iterable<RunningNode> await(@Nonnull BuildListener listener) throws InterruptedException {
+            // Not to leave the build log silent while provisioning is in progress
+            int replayed = replay(listener, 0);
+            if (!nodes.isDone()) {
+                listener.getLogger().println("Waiting for " + count + " instances provisioned while queued");
+            }
+            try {
+                return nodes.get();
+            } catch (InterruptedException ex) {
+                discard();
+                throw ex;
+            } catch (ExecutionException ex) {
+                Throwables.propagateIfPossible(ex.getCause());
+                throw new IllegalStateException(ex.getCause());
+            } finally {
+                replay(listener, replayed);
+            }
+        }
+
+        /**
+         * Print the output collected since the offset.
+         *
+         * @return Offset of the output replayed so far.
+         */
+        private int replay(@Nonnull BuildListener listener, int from) {
+            byte[] output = log.toByteArray();
+            listener.getLogger().print(new String(output, from, output.length - from, Charsets.UTF_8));
+            return output.length;
+        }
+
+        /**
+         * Destroy the instances once provisioned as there is no build to use them.
+         */
+        private void discard() {
+            Futures.addCallback(nodes, new FutureCallback<Iterable<RunningNode>>() {
+                @Override public void onSuccess(Iterable<RunningNode> result) {
+                    new TerminateNodes(TaskListener.NULL).apply(result);
+                }
+
+                @Override public void onFailure(Throwable t) {
+                    // Destroyed already
+                }
+            });
+        }
+    }
+
+    private static @CheckForNull JCloudsBuildWrapper getWrapper(@Nonnull Queue.Task task) {
+        if (!(task instanceof BuildableItemWithBuildWrappers)) return null;
+        return ((BuildableItemWithBuildWrappers) task).getBuildWrappersList().get(JCloudsBuildWrapper.class);
+    }
+
+    /**
+     * Start provisioning once the build enters the queue and clean up after cancelled ones.
+     */
+    @Extension @Restricted(NoExternalUse.class)
+    public static final class QueueListenerImpl extends QueueListener {
+        @Override
+        public void onEnterWaiting(Queue.WaitingItem wi) {
+            JCloudsBuildWrapper wrapper = getWrapper(wi.task);
+            if (wrapper == null || !wrapper.provisionOnQueue) return;
+
+            try {
+                QueuedInstances queued = wrapper.provisionQueued();
+                if (queued != null) {
+                    QUEUED.put(wi.getId(), queued);
+                }
+            } catch (RuntimeException ex) {
+                // Let the build report the problem
+                LOGGER.log(Level.WARNING, "Unable to provision instances for queued " + wi.task.getFullDisplayName(), ex);
+            }
+        }
+
+        @Override
+        public void onLeft(Queue.LeftItem li) {
+            if (!li.isCancelled()) return;
+
+            QueuedInstances queued = QUEUED.remove(li.getId());
+            if (queued != null) {
+                queued.discard();
+            }
+        }
+    }
+
+    /**
+     * Clean up the instances of builds that have not used them, such as when the wrapper was removed meanwhile.
+     */
+    @Extension @Restricted(NoExternalUse.class)
+    public static final class RunListenerImpl extends RunListener<AbstractBuild<?, ?>> {
+        @Override
+        public void onFinalized(AbstractBuild<?, ?> build) {
+            QueuedInstances queued = QUEUED.remove(build.getQueueId());
+            if (queued != null) {
+                queued.discard();
+            }
         }
     }
 
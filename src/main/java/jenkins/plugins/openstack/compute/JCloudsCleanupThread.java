@@ -1,6 +1,8 @@
 package jenkins.plugins.openstack.compute;
 
 import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -9,16 +11,20 @@ import hudson.slaves.OfflineCause;
 import org.kohsuke.accmod.Restricted;
 import org.kohsuke.accmod.restrictions.NoExternalUse;
 
+import javax.annotation.Nonnull;
+
 import com.google.common.collect.ImmutableList;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
-import com.google.common.util.concurrent.MoreExecutors;
 import hudson.Extension;
 import hudson.model.AsyncPeriodicWork;
 import hudson.model.Computer;
 import hudson.model.TaskListener;
+import hudson.slaves.Cloud;
 import jenkins.model.Jenkins;
+import jenkins.plugins.openstack.compute.internal.CloudExecutors;
+import jenkins.plugins.openstack.compute.internal.CloudState;
 
 @Extension @Restricted(NoExternalUse.class)
 public final class JCloudsCleanupThread extends AsyncPeriodicWork {
@@ -36,8 +42,8 @@ public final class JCloudsCleanupThread extends AsyncPeriodicWork {
     @Override
     public void execute(TaskListener listener) {
         final ImmutableList.Builder<ListenableFuture<?>> deletedNodesBuilder = ImmutableList.builder();
-        ListeningExecutorService executor = MoreExecutors.listeningDecorator(Computer.threadPoolForRemoting);
 
+        Set<String> configured = getCloudNames();
         for (final Computer c : Jenkins.getActiveInstance().getComputers()) {
             if (c instanceof JCloudsComputer) {
                 final JCloudsComputer comp = (JCloudsComputer) c;
@@ -46,6 +52,11 @@ public final class JCloudsCleanupThread extends AsyncPeriodicWork {
 
                 final OfflineCause offlineCause = comp.getOfflineCause();
                 if (comp.isPendingDelete() || offlineCause instanceof DiskSpaceMonitorDescriptor.DiskSpace) {
+                    String cloudName = comp.getId().getCloudName();
+                    ListeningExecutorService executor = configured.contains(cloudName)
+                            ? CloudExecutors.get(cloudName).get(CloudExecutors.Pool.DELETION)
+                            : CloudExecutors.getRemoved()
+                    ;
                     ListenableFuture<?> f = executor.submit(new Runnable() {
                         public void run() {
                             LOGGER.log(Level.INFO, "Deleting pending node " + comp.getName() + ". Reason: " + offlineCause.toString());
@@ -64,6 +75,41 @@ public final class JCloudsCleanupThread extends AsyncPeriodicWork {
             }
         }
 
+        for (final Cloud c : Jenkins.getActiveInstance().clouds) {
+            if (c instanceof JCloudsCloud) {
+                ListenableFuture<?> f = CloudExecutors.get(c.name).get(CloudExecutors.Pool.DELETION).submit(new Runnable() {
+                    public void run() {
+                        try {
+                            ((JCloudsCloud) c).trimStoppedPool();
+                        } catch (Throwable e) {
+                            LOGGER.log(Level.WARNING, "Failed to delete stopped servers of " + c.name, e);
+                        }
+                    }
+                });
+                deletedNodesBuilder.add(f);
+
+                // Replenished in background, not waited for
+                ((JCloudsCloud) c).replenishVolumePools();
+            }
+        }
+
+        InstancePool.trim();
+
         Futures.getUnchecked(Futures.successfulAsList(deletedNodesBuilder.build()));
+
+        // Once the nodes of removed clouds are deleted, keeping those configured meanwhile
+        Set<String> cloudNames = getCloudNames();
+        CloudExecutors.retainAll(cloudNames);
+        CloudState.retainAll(cloudNames);
+    }
+
+    private static @Nonnull Set<String> getCloudNames() {
+        Set<String> cloudNames = new HashSet<>();
+        for (Cloud c : Jenkins.getActiveInstance().clouds) {
+            if (c instanceof JCloudsCloud) {
+                cloudNames.add(c.name);
+            }
+        }
+        return cloudNames;
     }
 }
@@ -1,7 +1,6 @@
 package jenkins.plugins.openstack.compute;
 
 import java.io.IOException;
-import java.io.StringWriter;
 import java.net.ConnectException;
 import java.net.InetSocketAddress;
 import java.net.MalformedURLException;
@@ -11,16 +10,23 @@ import java.net.URL;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Queue;
+import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -39,11 +45,20 @@ import org.kohsuke.accmod.Restricted;
 import org.kohsuke.accmod.restrictions.DoNotUse;
 import org.kohsuke.accmod.restrictions.NoExternalUse;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
 import org.kohsuke.stapler.QueryParameter;
 import org.kohsuke.stapler.StaplerRequest;
 import org.kohsuke.stapler.StaplerResponse;
 
 import com.google.common.base.Objects;
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.Multiset;
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 
 import hudson.Extension;
 import hudson.Util;
@@ -51,14 +66,20 @@ import hudson.model.Computer;
 import hudson.model.Descriptor;
 import hudson.model.Label;
 import hudson.model.Node;
+import hudson.model.TaskListener;
 import hudson.slaves.Cloud;
 import hudson.slaves.NodeProvisioner;
 import hudson.slaves.NodeProvisioner.PlannedNode;
 import hudson.util.FormValidation;
 import hudson.util.Secret;
-import hudson.util.StreamTaskListener;
 import jenkins.model.Jenkins;
+import jenkins.plugins.openstack.compute.internal.BootQueue;
+import jenkins.plugins.openstack.compute.internal.CloudEvents;
+import jenkins.plugins.openstack.compute.internal.CloudExecutors;
+import jenkins.plugins.openstack.compute.internal.CloudState;
 import jenkins.plugins.openstack.compute.internal.Openstack;
+import jenkins.plugins.openstack.compute.internal.ProvisioningLedger;
+import jenkins.plugins.openstack.compute.internal.QuotaSnapshot;
 import org.openstack4j.model.compute.Server;
 
 /**
@@ -70,6 +91,8 @@ public class JCloudsCloud extends Cloud implements SlaveOptions.Holder {
 
     private static final Logger LOGGER = Logger.getLogger(JCloudsCloud.class.getName());
 
+    private static final int MANUALLY_PROVISIONED_RETAINED = 50;
+
     public final @Nonnull String endPointUrl;
     public final @Nonnull String identity;
     public final @Nonnull Secret credential;
@@ -80,6 +103,22 @@ public class JCloudsCloud extends Cloud implements SlaveOptions.Holder {
 
     private /*final*/ @Nonnull SlaveOptions slaveOptions;
 
+    // Number of servers booting simultaneously, null for default
+    private @CheckForNull Integer maxConcurrentBoots;
+    private boolean noDelayProvisioning;
+
+    private transient volatile @CheckForNull QuotaSnapshot quota;
+    // Stopped servers of the most recent inventory, not to list them again deciding about every idle slave
+    private transient volatile @CheckForNull List<Server> lastStopped;
+    private transient /*final*/ AtomicBoolean quotaRefreshing;
+    // Time the quota failed to be fetched, not to retry on every planning, 0 if it did not
+    private transient volatile long quotaFailedAt;
+    // Shared by the instances of the same cloud as the configuration is saved while provisioning, see CloudState
+    private transient /*final*/ BootQueue bootQueue;
+    private transient /*final*/ ProvisioningLedger ledger;
+    private transient /*final*/ Deque<ProvisioningActivity.Id> manuallyProvisioned;
+    private transient /*final*/ Set<String> claimedStoppedServers;
+
     // Backward compatibility
     private transient @Deprecated Integer instanceCap;
     private transient @Deprecated Integer retentionTime;
@@ -195,6 +234,8 @@ public class JCloudsCloud extends Cloud implements SlaveOptions.Holder {
         this.slaveOptions = slaveOptions.eraseDefaults(DescriptorImpl.DEFAULTS);
 
         this.templates = Collections.unmodifiableList(Objects.firstNonNull(templates, Collections.<JCloudsSlaveTemplate> emptyList()));
+        this.quotaRefreshing = new AtomicBoolean();
+        attachState();
         injectReferenceIntoTemplates();
     }
 
@@ -215,11 +256,22 @@ public class JCloudsCloud extends Cloud implements SlaveOptions.Holder {
             instanceCap = null;
         }
 
+        quotaRefreshing = new AtomicBoolean();
+        attachState();
         injectReferenceIntoTemplates();
 
         return this;
     }
 
+    private void attachState() {
+        CloudState state = CloudState.get(name);
+        bootQueue = state.getBootQueue();
+        bootQueue.setLimit(getMaxConcurrentBoots());
+        ledger = state.getLedger();
+        manuallyProvisioned = state.getManuallyProvisioned();
+        claimedStoppedServers = state.getClaimedStoppedServers();
+    }
+
     private void injectReferenceIntoTemplates() {
         for(JCloudsSlaveTemplate t: templates) {
             t.setOwner(this);
@@ -235,119 +287,657 @@ public class JCloudsCloud extends Cloud implements SlaveOptions.Holder {
         return slaveOptions;
     }
 
+    /**
+     * Maximal number of servers booting simultaneously.
+     */
+    public int getMaxConcurrentBoots() {
+        return maxConcurrentBoots == null ? DescriptorImpl.DEFAULT_MAX_CONCURRENT_BOOTS : maxConcurrentBoots;
+    }
+
+    @DataBoundSetter @Restricted(DoNotUse.class)
+    public void setMaxConcurrentBoots(Integer maxConcurrentBoots) {
+        this.maxConcurrentBoots = maxConcurrentBoots == null || maxConcurrentBoots < 1
+                || maxConcurrentBoots == DescriptorImpl.DEFAULT_MAX_CONCURRENT_BOOTS
+                ? null
+                : maxConcurrentBoots
+        ;
+        bootQueue.setLimit(getMaxConcurrentBoots());
+    }
+
+    /**
+     * Provision as soon as there are items in the queue instead of waiting for the load statistics.
+     *
+     * @see NoDelayProvisionerStrategy
+     */
+    public boolean isNoDelayProvisioning() {
+        return noDelayProvisioning;
+    }
+
+    @DataBoundSetter @Restricted(DoNotUse.class)
+    public void setNoDelayProvisioning(boolean noDelayProvisioning) {
+        this.noDelayProvisioning = noDelayProvisioning;
+    }
+
     public @Nonnull List<JCloudsSlaveTemplate> getTemplates() {
         return templates;
     }
 
+    /**
+     * Get a queue of templates to be used to provision slaves of label.
+     *
+     * @see #getAvailableTemplateProvider(Label, Collection, Inventory)
+     */
+    /*package for benchmarking*/ @CheckForNull Queue<JCloudsSlaveTemplate> getAvailableTemplateProvider(@CheckForNull final Label label) {
+        return planCapacity(new CapacityPlanning<Queue<JCloudsSlaveTemplate>>() {
+            @Override public Queue<JCloudsSlaveTemplate> plan(@Nonnull Inventory inventory) {
+                return getAvailableTemplateProvider(label, getTemplates(label), inventory);
+            }
+        });
+    }
+
+    private @Nonnull List<JCloudsSlaveTemplate> getTemplates(@CheckForNull Label label) {
+        List<JCloudsSlaveTemplate> candidates = new ArrayList<>();
+        for (JCloudsSlaveTemplate t : templates) {
+            if (t.canProvision(label)) {
+                candidates.add(t);
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * Servers consuming the capacity of the cloud.
+     *
+     * Fetched before the ledger is locked not to block the provisioning on OpenStack round-trips.
+     */
+    private static final class Inventory {
+        private final @Nonnull List<Server> running;
+        private final @Nonnull List<Server> stopped;
+        private final @CheckForNull QuotaSnapshot quota;
+        // Version of the ledger the inventory was fetched at
+        private final long version;
+
+        private Inventory(
+                @Nonnull List<Server> running, @Nonnull List<Server> stopped, @CheckForNull QuotaSnapshot quota, long version
+        ) {
+            this.running = running;
+            this.stopped = stopped;
+            this.quota = quota;
+            this.version = version;
+        }
+
+        private @Nonnull List<Server> getOurs() {
+            List<Server> ours = new ArrayList<>(running);
+            ours.addAll(stopped);
+            return ours;
+        }
+    }
+
+    private interface CapacityPlanning<T> {
+        /**
+         * Plan the capacity given the inventory, called with the ledger locked.
+         */
+        T plan(@Nonnull Inventory inventory);
+    }
+
+    /**
+     * Plan the capacity atomically with respect to the ledger, not to let concurrent planning see the capacity unreserved.
+     */
+    private <T> T planCapacity(@Nonnull CapacityPlanning<T> planning) {
+        for (;;) {
+            Inventory inventory = getInventory();
+            synchronized (ledger) {
+                if (ledger.getVersion() == inventory.version) return planning.plan(inventory);
+            }
+            // Reservations released or reconciled meanwhile might count servers missing from the inventory
+        }
+    }
+
+    private @Nonnull Inventory getInventory() {
+        final long version = ledger.getVersion();
+        final Openstack openstack = getOpenstack();
+
+        // Single listing split by status
+        final List<Server> running = new ArrayList<>();
+        final List<Server> allStopped = new ArrayList<>();
+        for (Server server : openstack.getOurNodes()) {
+            if (server.getStatus() == Server.Status.SHUTOFF) {
+                allStopped.add(server);
+            } else {
+                running.add(server);
+            }
+        }
+        lastStopped = allStopped;
+        final List<Server> stopped = hasStoppedPool() ? getStoppedPool(allStopped) : Collections.<Server>emptyList();
+
+        final List<Server> ours = new ArrayList<>(running);
+        ours.addAll(stopped);
+        return new Inventory(running, stopped, getQuotaSnapshot(openstack, ours), version);
+    }
+
     /**
      * Get a queue of templates to be used to provision slaves of label.
      *
      * The queue contains the same template in as many instances as is the number of machines that can be safely
-     * provisioned without violating instanceCap constrain.
+     * provisioned without violating instanceCap constrain nor the tenant quota. Machines being provisioned are counted
+     * even before they are reported by OpenStack. Stopped machines do not count towards the instanceCap, starting them
+     * again needs no more quota as they consume it already.
+     *
+     * @param candidates Templates to consider.
      */
-    private @CheckForNull Queue<JCloudsSlaveTemplate> getAvailableTemplateProvider(@CheckForNull Label label) {
+    private @Nonnull Queue<JCloudsSlaveTemplate> getAvailableTemplateProvider(
+            @CheckForNull Label label, @Nonnull Collection<JCloudsSlaveTemplate> candidates, @Nonnull Inventory inventory
+    ) {
+        return getAvailableTemplateProvider(label, candidates, inventory, new ArrayList<String>());
+    }
+
+    /**
+     * @param exhausted Populated with the reasons the capacity was exhausted.
+     */
+    private @Nonnull Queue<JCloudsSlaveTemplate> getAvailableTemplateProvider(
+            @CheckForNull Label label, @Nonnull Collection<JCloudsSlaveTemplate> candidates, @Nonnull Inventory inventory,
+            @Nonnull List<String> exhausted
+    ) {
+        assert Thread.holdsLock(ledger);
+
         final String labelString = (label != null) ? label.toString() : "none";
-        final List<Server> runningNodes = getOpenstack().getRunningNodes();
+        final List<Server> runningNodes = inventory.running;
+        final Multiset<String> reserved = ledger.outstanding(runningNodes);
         final int globalMax = getEffectiveSlaveOptions().getInstanceCap();
 
         final Queue<JCloudsSlaveTemplate> queue = new ConcurrentLinkedDeque<>();
-        int globalCapacity = globalMax - runningNodes.size();
+        int globalCapacity = globalMax - runningNodes.size() - reserved.size();
         if (globalCapacity <= 0) {
-            LOGGER.log(Level.INFO,
-                    "Global instance cap ({0}) reached while adding capacity for label: {1}",
-                    new Object[] { globalMax, labelString}
-            );
+            exhausted(exhausted, String.format("Instance cap of %s is now reached: %d", name, globalMax), labelString);
             return queue; // No need to proceed any further;
         }
 
         final Map<JCloudsSlaveTemplate, Integer> template2capacity = new LinkedHashMap<>();
-        for (JCloudsSlaveTemplate t : templates) {
-            if (t.canProvision(label)) {
-                final int templateMax = t.getEffectiveSlaveOptions().getInstanceCap();
+        for (JCloudsSlaveTemplate t : candidates) {
+            final int templateMax = t.getEffectiveSlaveOptions().getInstanceCap();
 
-                int templateCapacity = templateMax;
-                for (Server server : runningNodes) {
-                    if (t.hasProvisioned(server)) {
-                        templateCapacity--;
-                    }
+            int templateCapacity = templateMax - reserved.count(t.name);
+            for (Server server : runningNodes) {
+                if (t.hasProvisioned(server)) {
+                    templateCapacity--;
                 }
+            }
 
-                if (templateCapacity > 0) {
-                    template2capacity.put(t, templateCapacity);
-                } else {
-                    LOGGER.log(Level.INFO,
-                            "Template instance cap for {0} ({1}) reached while adding capacity for label: {2}",
-                            new Object[] { t.name, templateMax, labelString }
-                    );
+            if (templateCapacity > 0) {
+                template2capacity.put(t, templateCapacity);
+            } else {
+                exhausted(exhausted, String.format(
+                        "Instance cap for this template (%s/%s) is now reached: %d", name, t.name, templateMax
+                ), labelString);
+            }
+        }
+
+        final Multiset<String> stopped = HashMultiset.create();
+        for (Server server : inventory.stopped) {
+            for (JCloudsSlaveTemplate t : template2capacity.keySet()) {
+                if (t.hasProvisioned(server) && t.getEffectiveSlaveOptions().getStoppedCap() > 0) {
+                    stopped.add(t.name);
                 }
             }
         }
 
+        final QuotaSnapshot.Budget budget = getQuotaBudget(inventory.quota, inventory.getOurs(), reserved);
+
         done: for (Map.Entry<JCloudsSlaveTemplate, Integer> e : template2capacity.entrySet()) {
+            final JCloudsSlaveTemplate t = e.getKey();
+            final SlaveOptions opts = t.getEffectiveSlaveOptions();
             for (int i = e.getValue(); i > 0; i--) {
-                if (globalCapacity > 0) {
-                    queue.add(e.getKey());
-                    globalCapacity--;
-                } else {
-                    LOGGER.log(Level.INFO,
-                            "Global instance cap ({0}) reached while adding capacity for label: {1}",
-                            new Object[] { globalMax, labelString}
-                    );
+                if (globalCapacity <= 0) {
+                    exhausted(exhausted, String.format("Instance cap of %s is now reached: %d", name, globalMax), labelString);
                     break done;
                 }
+
+                // The template will most likely start one of its stopped servers
+                boolean restart = stopped.remove(t.name);
+                if (!restart && budget != null && !budget.claim(opts.getHardwareId(), opts.getFloatingIpPool() != null)) {
+                    exhausted(exhausted, String.format(
+                            "Tenant quota of %s (%s) is now reached by template %s", name, budget.getUsed(), t.name
+                    ), labelString);
+                    continue done; // Other templates might use smaller flavors
+                }
+
+                queue.add(t);
+                globalCapacity--;
             }
         }
 
         return queue;
     }
 
-    @Override
-    public Collection<NodeProvisioner.PlannedNode> provision(Label label, int excessWorkload) {
-        Queue<JCloudsSlaveTemplate> templateProvider = getAvailableTemplateProvider(label);
+    private static void exhausted(@Nonnull List<String> exhausted, @Nonnull String reason, @Nonnull String labelString) {
+        LOGGER.info(reason + " while adding capacity for label: " + labelString);
+        exhausted.add(reason);
+    }
 
-        List<PlannedNode> plannedNodeList = new ArrayList<>();
-        while (excessWorkload > 0 && !Jenkins.getActiveInstance().isQuietingDown() && !Jenkins.getActiveInstance().isTerminating()) {
+    /**
+     * Get tenant quota, fetching it in case it is not known yet.
+     *
+     * @param ours Servers of the plugin consuming the quota, both running and stopped.
+     * @return null if quota is not known.
+     */
+    private @CheckForNull QuotaSnapshot getQuotaSnapshot(@Nonnull Openstack openstack, @Nonnull List<Server> ours) {
+        QuotaSnapshot snapshot = quota;
+        if (snapshot == null) {
+            if (isQuotaFailureRecent()) return null; // Planning without the quota until retried
+
+            try {
+                snapshot = quota = openstack.getQuotaSnapshot(ours);
+                quotaFailedAt = 0;
+            } catch (RuntimeException ex) {
+                quotaFailedAt = System.currentTimeMillis();
+                LOGGER.log(Level.WARNING, "Unable to get quota of " + name + ", planning without it until retried in " + quotaRefreshPeriod + "ms", ex);
+            }
+        } else if (snapshot.isOlderThan(quotaRefreshPeriod)) {
+            refreshQuota(openstack, ours);
+        }
+        return snapshot;
+    }
+
+    private boolean isQuotaFailureRecent() {
+        long failedAt = quotaFailedAt;
+        return failedAt != 0 && System.currentTimeMillis() - failedAt < quotaRefreshPeriod;
+    }
+
+    /**
+     * Get remaining tenant resources counting the nodes being provisioned.
+     *
+     * @param ours Servers of the plugin consuming the quota, both running and stopped.
+     * @return null if quota is not known.
+     */
+    private @CheckForNull QuotaSnapshot.Budget getQuotaBudget(
+            @CheckForNull QuotaSnapshot snapshot, @Nonnull List<Server> ours, @Nonnull Multiset<String> reserved
+    ) {
+        if (snapshot == null) return null;
+
+        QuotaSnapshot.Budget budget = snapshot.budget(ours);
+        for (Multiset.Entry<String> e : reserved.entrySet()) {
+            JCloudsSlaveTemplate t = getTemplate(e.getElement());
+            SlaveOptions opts = t == null ? SlaveOptions.empty() : t.getEffectiveSlaveOptions();
+            for (int i = 0; i < e.getCount(); i++) {
+                budget.claimInFlight(opts.getHardwareId(), opts.getFloatingIpPool() != null);
+            }
+        }
+        return budget;
+    }
+
+    // Refresh outdated quota in background not to delay the planning, the outdated one is good enough meanwhile
+    private void refreshQuota(final @Nonnull Openstack openstack, final @Nonnull List<Server> ours) {
+        if (isQuotaFailureRecent() || quotaRefreshing.getAndSet(true)) return;
+
+        try {
+            CloudExecutors.get(name).get(CloudExecutors.Pool.INVENTORY).submit(new Runnable() {
+                @Override public void run() {
+                    try {
+                        quota = openstack.getQuotaSnapshot(ours);
+                        quotaFailedAt = 0;
+                    } catch (RuntimeException ex) {
+                        quotaFailedAt = System.currentTimeMillis();
+                        LOGGER.log(Level.WARNING, "Unable to get quota of " + name + ", using outdated one: " + quota, ex);
+                    } finally {
+                        quotaRefreshing.set(false);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            quotaRefreshing.set(false);
+        }
+    }
 
-            final JCloudsSlaveTemplate template = templateProvider.poll();
-            if (template == null) {
-                LOGGER.info("Instance cap exceeded on all available templates");
-                break;
+    private boolean hasStoppedPool() {
+        for (JCloudsSlaveTemplate t : templates) {
+            if (t.getEffectiveSlaveOptions().getStoppedCap() > 0) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Get stopped servers available to be started again.
+     *
+     * Servers claimed already and those of slaves being stopped at the moment are not available.
+     *
+     * @param stopped All the stopped servers of the cloud.
+     */
+    private @Nonnull List<Server> getStoppedPool(@Nonnull List<Server> stopped) {
+        Set<String> attached = new HashSet<>();
+        for (Node node : Jenkins.getActiveInstance().getNodes()) {
+            if (node instanceof JCloudsSlave) {
+                attached.add(((JCloudsSlave) node).getServerId());
             }
+        }
 
-            LOGGER.fine("Provisioning slave for " + label + " from template " + template.name);
+        List<Server> pool = new ArrayList<>();
+        for (Server server : stopped) {
+            if (!attached.contains(server.getId()) && !claimedStoppedServers.contains(server.getId())) {
+                pool.add(server);
+            }
+        }
+        return pool;
+    }
 
-            int numExecutors = template.getEffectiveSlaveOptions().getNumExecutors();
+    /**
+     * Claim stopped server of the template to be started instead of booting a new one.
+     *
+     * @return null if there is none. The claim is to be released by {@link #releaseStoppedServer(Server)}.
+     */
+    /*package*/ @CheckForNull Server claimStoppedServer(@Nonnull JCloudsSlaveTemplate template) {
+        if (template.getEffectiveSlaveOptions().getStoppedCap() <= 0) return null;
 
-            ProvisioningActivity.Id id = new ProvisioningActivity.Id(this.name, template.name);
-            Future<Node> task = Computer.threadPoolForRemoting.submit(new NodeCallable(this, template, id));
-            plannedNodeList.add(new TrackedPlannedNode(id, numExecutors, task));
+        try {
+            for (Server server : getStoppedPool(getOpenstack().getStoppedNodes())) {
+                if (template.hasProvisioned(server) && claimedStoppedServers.add(server.getId())) return server;
+            }
+        } catch (RuntimeException ex) {
+            LOGGER.log(Level.WARNING, "Unable to get stopped servers of " + name + ", booting new one", ex);
+        }
+        return null;
+    }
+
+    /*package*/ void releaseStoppedServer(@Nonnull Server server) {
+        claimedStoppedServers.remove(server.getId());
+    }
 
-            excessWorkload -= numExecutors;
+    /**
+     * Determine whether the idle slave is to be stopped rather than deleted.
+     *
+     * This is the case when the stopped pool of the template it was provisioned from is not full. Called for every idle
+     * slave holding the queue lock, so the stopped servers are those of the most recent inventory rather than listed again.
+     */
+    /*package*/ boolean shouldStop(@Nonnull JCloudsSlave slave) {
+        String templateName = slave.getId().getTemplateName();
+        JCloudsSlaveTemplate template = templateName == null ? null : getTemplate(templateName);
+        if (template == null) return false;
+
+        int cap = template.getEffectiveSlaveOptions().getStoppedCap();
+        if (cap <= 0) return false;
+
+        int stopped = 0;
+        List<Server> known = lastStopped;
+        for (Server server : known == null ? Collections.<Server>emptyList() : known) {
+            if (template.hasProvisioned(server)) {
+                stopped++;
+            }
+        }
+        for (Computer c : Jenkins.getActiveInstance().getComputers()) {
+            if (c instanceof JCloudsComputer && ((JCloudsComputer) c).isPendingStop()) {
+                ProvisioningActivity.Id id = ((JCloudsComputer) c).getId();
+                if (name.equals(id.getCloudName()) && templateName.equals(id.getTemplateName())) {
+                    stopped++;
+                }
+            }
+        }
+        return stopped < cap;
+    }
+
+    /**
+     * Delete stopped servers exceeding the stopped instance cap of their templates.
+     *
+     * Servers of templates not present in this cloud are left alone as they might belong to other cloud of the tenant.
+     */
+    /*package*/ void trimStoppedPool() {
+        // Inspected even when the pool is not enabled so servers stopped before it was turned off are deleted
+        Openstack openstack = getOpenstack();
+        Map<String, Integer> kept = new HashMap<>();
+        for (Server server : getStoppedPool(openstack.getStoppedNodes())) {
+            JCloudsSlaveTemplate template = null;
+            for (JCloudsSlaveTemplate t : templates) {
+                if (t.hasProvisioned(server)) {
+                    template = t;
+                }
+            }
+            if (template == null) continue;
+
+            Integer count = kept.get(template.name);
+            count = count == null ? 1 : count + 1;
+            kept.put(template.name, count);
+            if (count <= template.getEffectiveSlaveOptions().getStoppedCap()) continue;
+
+            if (!claimedStoppedServers.add(server.getId())) continue; // Being started meanwhile
+            try {
+                LOGGER.info("Deleting stopped server " + server.getName() + " exceeding stopped instance cap of " + template.name);
+                openstack.destroyServer(server);
+            } catch (RuntimeException ex) {
+                LOGGER.log(Level.WARNING, "Unable to delete stopped server " + server.getName(), ex);
+            } finally {
+                claimedStoppedServers.remove(server.getId());
+            }
+        }
+    }
+
+    /**
+     * Fill the volume pools of templates booting from pooled volumes.
+     */
+    /*package*/ void replenishVolumePools() {
+        for (JCloudsSlaveTemplate t : templates) {
+            if (t.getEffectiveSlaveOptions().getVolumePool() > 0) {
+                t.replenishVolumePool(this);
+            }
+        }
+    }
+
+    @Override
+    public Collection<NodeProvisioner.PlannedNode> provision(final Label label, final int excessWorkload) {
+        List<PlannedNode> plannedNodeList = new ArrayList<>();
+        final String labelString = String.valueOf(label);
+
+        CloudEvents.Event event = CloudEvents.begin(CloudEvents.Type.CAPACITY_PLANNING, name, null, null, labelString);
+        String outcome = "error";
+        try {
+            // Plan and reserve atomically not to let concurrent planning to see the capacity unreserved
+            final List<JCloudsSlaveTemplate> candidates = getTemplates(label);
+            final Map<ProvisioningLedger.Reservation, JCloudsSlaveTemplate> reservations = planCapacity(new CapacityPlanning<Map<ProvisioningLedger.Reservation, JCloudsSlaveTemplate>>() {
+                @Override public Map<ProvisioningLedger.Reservation, JCloudsSlaveTemplate> plan(@Nonnull Inventory inventory) {
+                    Queue<JCloudsSlaveTemplate> templateProvider = getAvailableTemplateProvider(label, candidates, inventory);
+
+                    Map<ProvisioningLedger.Reservation, JCloudsSlaveTemplate> reservations = new LinkedHashMap<>();
+                    int workload = excessWorkload;
+                    while (workload > 0 && !Jenkins.getActiveInstance().isQuietingDown() && !Jenkins.getActiveInstance().isTerminating()) {
+                        final JCloudsSlaveTemplate template = templateProvider.poll();
+                        if (template == null) {
+                            LOGGER.info("Instance cap exceeded on all available templates");
+                            break;
+                        }
+
+                        reservations.put(ledger.reserve(template.name), template);
+                        workload -= template.getEffectiveSlaveOptions().getNumExecutors();
+                    }
+                    return reservations;
+                }
+            });
+
+            for (Map.Entry<ProvisioningLedger.Reservation, JCloudsSlaveTemplate> e : reservations.entrySet()) {
+                final ProvisioningLedger.Reservation reservation = e.getKey();
+                final JCloudsSlaveTemplate template = e.getValue();
+                LOGGER.fine("Provisioning slave for " + label + " from template " + template.name);
+
+                int numExecutors = template.getEffectiveSlaveOptions().getNumExecutors();
+
+                ProvisioningActivity.Id id = new ProvisioningActivity.Id(this.name, template.name);
+                ProvisioningTimeline timeline = new ProvisioningTimeline(id);
+                TaskListener listener = new ProvisioningLog(id).getListener();
+                // Boots of different templates and labels take turns, planned nodes for the label are done in order
+                ListenableFuture<Server> booted = submitBoot(
+                        labelString + "/" + template.name, new BootCallable(this, template, reservation, timeline, listener)
+                );
+                // Do not occupy the boot slot while waiting for the machine to be ready
+                ListenableFuture<Node> ready = Futures.transform(
+                        booted, new ReadinessFunction(this, template, id, timeline, listener)
+                );
+                Future<Node> task = bootQueue.ordered(labelString, ready);
+                plannedNodeList.add(new TrackedPlannedNode(id, numExecutors, task));
+            }
+            outcome = plannedNodeList.isEmpty() ? "nothing planned" : "planned";
+        } finally {
+            event.end(outcome);
         }
         return plannedNodeList;
     }
 
-    private static final class NodeCallable implements Callable<Node> {
+    /**
+     * Queue the boot, releasing its reservation should it be cancelled or rejected before it started.
+     */
+    private @Nonnull ListenableFuture<Server> submitBoot(@Nonnull String key, final @Nonnull BootCallable boot) {
+        final ListenableFuture<Server> booted = bootQueue.submit(key, boot);
+        booted.addListener(new Runnable() {
+            @Override public void run() {
+                if (booted.isCancelled()) {
+                    boot.abandon();
+                }
+            }
+        }, MoreExecutors.sameThreadExecutor());
+        return booted;
+    }
+
+    private static final class BootCallable implements Callable<Server> {
+        private final JCloudsCloud cloud;
+        private final JCloudsSlaveTemplate template;
+        private final ProvisioningLedger.Reservation reservation;
+        private final ProvisioningTimeline timeline;
+        private final TaskListener listener;
+        private final AtomicBoolean started = new AtomicBoolean();
+
+        public BootCallable(
+                JCloudsCloud cloud, JCloudsSlaveTemplate template, ProvisioningLedger.Reservation reservation,
+                ProvisioningTimeline timeline, TaskListener listener
+        ) {
+            this.cloud = cloud;
+            this.template = template;
+            this.reservation = reservation;
+            this.timeline = timeline;
+            this.listener = listener;
+        }
+
+        @Override
+        public Server call() throws Exception {
+            if (!started.compareAndSet(false, true)) {
+                throw new CancellationException("Boot of " + template.name + " was abandoned");
+            }
+
+            CloudEvents.Event event = CloudEvents.begin(
+                    CloudEvents.Type.PROVISIONING_PHASE, cloud.name, template.name, null, "boot"
+            );
+            String outcome = "error";
+            try {
+                Server server = template.provision(cloud, reservation, timeline, listener);
+                event.server(server.getId());
+                outcome = "success";
+                return server;
+            } catch (Exception|Error ex) {
+                outcome = CloudEvents.outcome(ex);
+                ex.printStackTrace(listener.error("Failed to boot the server"));
+                throw ex;
+            } finally {
+                event.end(outcome);
+                // Either running and reported by OpenStack, or failed and deleted
+                cloud.ledger.release(reservation);
+            }
+        }
+
+        /**
+         * Release the reservation unless the boot has already started, in which case it releases it itself.
+         */
+        /*package*/ void abandon() {
+            if (started.compareAndSet(false, true)) {
+                listener.getLogger().println("Boot cancelled before it started");
+                cloud.ledger.release(reservation);
+            }
+        }
+    }
+
+    private static final class RebuildCallable implements Callable<Server> {
+        private final JCloudsCloud cloud;
+        private final JCloudsSlaveTemplate template;
+        private final String serverId;
+        private final ProvisioningTimeline timeline;
+        private final TaskListener listener;
+
+        public RebuildCallable(
+                JCloudsCloud cloud, JCloudsSlaveTemplate template, String serverId, ProvisioningTimeline timeline,
+                TaskListener listener
+        ) {
+            this.cloud = cloud;
+            this.template = template;
+            this.serverId = serverId;
+            this.timeline = timeline;
+            this.listener = listener;
+        }
+
+        @Override
+        public Server call() throws Exception {
+            CloudEvents.Event event = CloudEvents.begin(
+                    CloudEvents.Type.PROVISIONING_PHASE, cloud.name, template.name, serverId, "rebuild"
+            );
+            String outcome = "error";
+            try {
+                Server server = template.rebuild(cloud, serverId, timeline, listener);
+                outcome = "success";
+                return server;
+            } catch (Exception|Error ex) {
+                outcome = CloudEvents.outcome(ex);
+                ex.printStackTrace(listener.error("Failed to rebuild the server"));
+                throw ex;
+            } finally {
+                event.end(outcome);
+            }
+        }
+    }
+
+    private static final class ReadinessFunction implements AsyncFunction<Server, Node> {
         private final JCloudsCloud cloud;
         private final JCloudsSlaveTemplate template;
         private final ProvisioningActivity.Id id;
+        private final ProvisioningTimeline timeline;
+        private final TaskListener listener;
 
-        public NodeCallable(JCloudsCloud cloud, JCloudsSlaveTemplate template, ProvisioningActivity.Id id) {
+        public ReadinessFunction(
+                JCloudsCloud cloud, JCloudsSlaveTemplate template, ProvisioningActivity.Id id, ProvisioningTimeline timeline,
+                TaskListener listener
+        ) {
             this.cloud = cloud;
             this.template = template;
             this.id = id;
+            this.timeline = timeline;
+            this.listener = listener;
         }
 
         @Override
-        public Node call() throws Exception {
-            // TODO: record the output somewhere
-            JCloudsSlave jcloudsSlave = template.provisionSlave(cloud, id, StreamTaskListener.fromStdout());
-
-            LOGGER.fine(String.format("Slave %s launched successfully", jcloudsSlave.getDisplayName()));
-            return jcloudsSlave;
+        public ListenableFuture<Node> apply(final @Nonnull Server server) {
+            return CloudExecutors.get(cloud.name).get(CloudExecutors.Pool.READINESS).submit(new Callable<Node>() {
+                @Override public Node call() throws Exception {
+                    CloudEvents.Event event = CloudEvents.begin(
+                            CloudEvents.Type.PROVISIONING_PHASE, cloud.name, template.name, server.getId(), "readiness"
+                    );
+                    String outcome = "error";
+                    try {
+                        JCloudsSlave jcloudsSlave = template.connectSlave(cloud, id, server, timeline, listener);
+                        outcome = "success";
+
+                        LOGGER.fine(String.format("Slave %s launched successfully", jcloudsSlave.getDisplayName()));
+                        return jcloudsSlave;
+                    } catch (Exception|Error ex) {
+                        outcome = CloudEvents.outcome(ex);
+                        ex.printStackTrace(listener.error("Failed to wait for the server to be ready"));
+                        throw ex;
+                    } finally {
+                        event.end(outcome);
+                    }
+                }
+            });
         }
     }
 
+    /**
+     * Percentiles of provisioning milestones by template name.
+     */
+    @Restricted(NoExternalUse.class)
+    public @Nonnull Map<String, ProvisioningTimeline.Summary> getProvisioningTimes() {
+        return ProvisioningTimeline.summarize(name);
+    }
+
     @Restricted(NoExternalUse.class)
     public /*for mocking*/ boolean isSlaveReadyToLaunch(@Nonnull JCloudsSlave slave) {
         return slave.getSlaveOptions().getSlaveType().isReady(slave);
@@ -369,16 +959,19 @@ public class JCloudsCloud extends Cloud implements SlaveOptions.Holder {
     }
 
     /**
-     * Provisions a new node manually (by clicking a button in the computer list)
+     * Provisions new nodes manually (by clicking a button in the computer list)
+     *
+     * The nodes are provisioned in the background and the user is redirected to the page following the progress.
      *
      * @param req  {@link StaplerRequest}
      * @param rsp  {@link StaplerResponse}
      * @param name Name of the template to provision
+     * @param count Number of nodes to provision, one if not specified. Fewer are provisioned if the capacity is not sufficient.
      */
     @Restricted(NoExternalUse.class)
     public void doProvision(
-            StaplerRequest req, StaplerResponse rsp, @QueryParameter String name
-    ) throws ServletException, IOException, Descriptor.FormException, InterruptedException {
+            StaplerRequest req, StaplerResponse rsp, @QueryParameter String name, @QueryParameter int count
+    ) throws ServletException, IOException {
 
         // Temporary workaround for https://issues.jenkins-ci.org/browse/JENKINS-37616
         // Using Item.CONFIGURE as users authorized to do so can provision via job execution.
@@ -397,49 +990,129 @@ public class JCloudsCloud extends Cloud implements SlaveOptions.Holder {
             return;
         }
 
-        List<Server> nodes = getOpenstack().getRunningNodes();
-        final int global = nodes.size();
+        final JCloudsSlaveTemplate template = t;
+        final int requested = Math.max(count, 1);
+        final List<String> exhausted = new ArrayList<>();
+        final List<ProvisioningLedger.Reservation> reservations = planCapacity(new CapacityPlanning<List<ProvisioningLedger.Reservation>>() {
+            @Override public List<ProvisioningLedger.Reservation> plan(@Nonnull Inventory inventory) {
+                exhausted.clear();
+                Queue<JCloudsSlaveTemplate> templateProvider = getAvailableTemplateProvider(
+                        null, Collections.singletonList(template), inventory, exhausted
+                );
+                List<ProvisioningLedger.Reservation> reservations = new ArrayList<>();
+                for (int i = requested; i > 0 && templateProvider.poll() != null; i--) {
+                    reservations.add(ledger.reserve(template.name));
+                }
+                return reservations;
+            }
+        });
 
-        int globalCap = getEffectiveSlaveOptions().getInstanceCap();
-        if (global >= globalCap) {
-            String msg = String.format("Instance cap of %s is now reached: %d", this.name, globalCap);
-            sendError(msg, req, rsp);
+        if (reservations.isEmpty()) {
+            sendError(exhausted.isEmpty() ? "No capacity available for template " + name : exhausted.get(0), req, rsp);
             return;
         }
 
-        int template = 0;
-        for (Server node : nodes) {
-            if (t.hasProvisioned(node)) {
-                template++;
-            }
+        for (ProvisioningLedger.Reservation reservation : reservations) {
+            provisionManually(t, reservation);
         }
+        rsp.sendRedirect2("manualProvisioning");
+    }
 
-        int templateCap = t.getEffectiveSlaveOptions().getInstanceCap();
-        if (template >= templateCap) {
-            String msg = String.format("Instance cap for this template (%s/%s) is now reached: %d", this.name, name, templateCap);
-            sendError(msg, req, rsp);
-            return;
+    private void provisionManually(@Nonnull JCloudsSlaveTemplate template, @Nonnull ProvisioningLedger.Reservation reservation) {
+        ProvisioningActivity.Id id = new ProvisioningActivity.Id(this.name, template.name);
+        manuallyProvisioned.addFirst(id);
+        while (manuallyProvisioned.size() > MANUALLY_PROVISIONED_RETAINED) {
+            manuallyProvisioned.pollLast();
         }
 
-        CloudStatistics.ProvisioningListener provisioningListener = CloudStatistics.ProvisioningListener.get();
-        ProvisioningActivity.Id id = new ProvisioningActivity.Id(this.name, t.name);
+        ProvisioningTimeline timeline = new ProvisioningTimeline(id);
+        TaskListener listener = new ProvisioningLog(id).getListener();
+        provisionInBackground(
+                template, id, submitBoot("manual/" + template.name, new BootCallable(this, template, reservation, timeline, listener)),
+                timeline, listener
+        );
+    }
 
-        JCloudsSlave node;
-        try {
-            StringWriter sw = new StringWriter();
-            StreamTaskListener listener = new StreamTaskListener(sw);
-            provisioningListener.onStarted(id);
-            node = t.provisionSlave(this, id, listener);
-            provisioningListener.onComplete(id, node);
-        } catch (Openstack.ActionFailed ex) {
-            provisioningListener.onFailure(id, ex);
-            req.setAttribute("message", ex.getMessage());
-            req.setAttribute("exception", ex);
-            rsp.forward(this,"error",req);
-            return;
+    /**
+     * Rebuild the server of the slave to the image of its template and adopt it as a new slave once ready.
+     *
+     * The slave is expected to be removed from Jenkins by the caller, the server is kept including its floating IP.
+     */
+    /*package*/ void rebuild(@Nonnull JCloudsSlave slave) {
+        String templateName = slave.getId().getTemplateName();
+        JCloudsSlaveTemplate template = templateName == null ? null : getTemplate(templateName);
+        if (template == null) {
+            throw new IllegalStateException("No template " + templateName + " to rebuild " + slave.getNodeName() + " from");
         }
-        Jenkins.getActiveInstance().addNode(node);
-        rsp.sendRedirect2(req.getContextPath() + "/computer/" + node.getNodeName());
+
+        ProvisioningActivity.Id id = new ProvisioningActivity.Id(this.name, template.name);
+        ProvisioningTimeline timeline = new ProvisioningTimeline(id);
+        TaskListener listener = new ProvisioningLog(id).getListener();
+        provisionInBackground(
+                template, id,
+                bootQueue.submit("rebuild/" + template.name, new RebuildCallable(this, template, slave.getServerId(), timeline, listener)),
+                timeline, listener
+        );
+    }
+
+    /**
+     * Provision node outside of the NodeProvisioner, adding it to Jenkins once ready.
+     */
+    private void provisionInBackground(
+            @Nonnull JCloudsSlaveTemplate template, final @Nonnull ProvisioningActivity.Id id,
+            @Nonnull ListenableFuture<Server> booted, @Nonnull ProvisioningTimeline timeline, final @Nonnull TaskListener listener
+    ) {
+        final CloudStatistics.ProvisioningListener provisioningListener = CloudStatistics.ProvisioningListener.get();
+        provisioningListener.onStarted(id);
+
+        ListenableFuture<Node> ready = Futures.transform(booted, new ReadinessFunction(this, template, id, timeline, listener));
+        Futures.addCallback(ready, new FutureCallback<Node>() {
+            @Override public void onSuccess(Node node) {
+                provisioningListener.onComplete(id, node);
+                try {
+                    Jenkins.getActiveInstance().addNode(node);
+                } catch (IOException ex) {
+                    LOGGER.log(Level.WARNING, "Unable to add provisioned node " + node.getNodeName(), ex);
+                }
+            }
+
+            @Override public void onFailure(@Nonnull Throwable ex) {
+                listener.error("Provisioning failed: " + ex.getMessage());
+                provisioningListener.onFailure(id, ex);
+            }
+        });
+    }
+
+    /**
+     * Activities of nodes provisioned manually, the most recent first.
+     */
+    @Restricted(NoExternalUse.class)
+    public @Nonnull List<ProvisioningActivity> getManuallyProvisioned() {
+        List<ProvisioningActivity> activities = new ArrayList<>();
+        CloudStatistics statistics = CloudStatistics.get();
+        for (ProvisioningActivity.Id id : manuallyProvisioned) {
+            ProvisioningActivity activity = statistics.getActivityFor(id);
+            if (activity != null) {
+                activities.add(activity);
+            }
+        }
+        return activities;
+    }
+
+    @Restricted(NoExternalUse.class)
+    public @CheckForNull ProvisioningLog getProvisioningLog(@Nonnull ProvisioningActivity activity) {
+        return ProvisioningLog.of(activity);
+    }
+
+    /**
+     * Some of the manually provisioned nodes are not yet ready.
+     */
+    @Restricted(NoExternalUse.class)
+    public boolean isManualProvisioningInProgress() {
+        for (ProvisioningActivity activity : getManuallyProvisioned()) {
+            if (activity.getCurrentPhase() == ProvisioningActivity.Phase.PROVISIONING) return true;
+        }
+        return false;
     }
 
     /**
@@ -447,16 +1120,21 @@ public class JCloudsCloud extends Cloud implements SlaveOptions.Holder {
      */
     @Restricted(DoNotUse.class)
     public @Nonnull Openstack getOpenstack() {
-        return new Openstack(endPointUrl, identity, credential, zone);
+        return new Openstack(endPointUrl, identity, credential, zone, name);
     }
 
     @Extension
     public static class DescriptorImpl extends Descriptor<Cloud> {
 
+        /*package*/ static final int DEFAULT_MAX_CONCURRENT_BOOTS = 10;
+
         // Plugin default slave attributes - the root of all overriding
         private static final SlaveOptions DEFAULTS = SlaveOptions.builder()
                 .instanceCap(10)
                 .retentionTime(30)
+                .stoppedCap(0)
+                .volumePool(0)
+                .volumeSize(0)
                 .startTimeout(600000)
                 .numExecutors(1)
                 .fsRoot("/jenkins")
@@ -474,6 +1152,23 @@ public class JCloudsCloud extends Cloud implements SlaveOptions.Holder {
             return DEFAULTS;
         }
 
+        @Restricted(DoNotUse.class)
+        public FormValidation doRefreshCatalog(
+                @QueryParameter String zone,
+                @QueryParameter String endPointUrl,
+                @QueryParameter String identity,
+                @QueryParameter String credential
+        ) {
+            try {
+                SlaveOptionsDescriptor d = Jenkins.getActiveInstance().getDescriptorByType(SlaveOptionsDescriptor.class);
+                return FormValidation.ok("Catalog refreshed: " + d.refreshCatalog(endPointUrl, identity, credential, zone));
+            } catch (FormValidation ex) {
+                return ex;
+            } catch (Exception ex) {
+                return FormValidation.error(ex, "Unable to load the catalog: " + ex.getMessage());
+            }
+        }
+
         @Restricted(DoNotUse.class)
         public FormValidation doTestConnection(
                 @QueryParameter String zone,
@@ -505,8 +1200,25 @@ public class JCloudsCloud extends Cloud implements SlaveOptions.Holder {
             }
             return FormValidation.ok();
         }
+
+        @Restricted(DoNotUse.class)
+        public FormValidation doCheckMaxConcurrentBoots(@QueryParameter String value) {
+            if (Util.fixEmpty(value) == null) return FormValidation.ok();
+            return FormValidation.validatePositiveInteger(value);
+        }
+
+        @Restricted(DoNotUse.class)
+        public int getDefaultMaxConcurrentBoots() {
+            return DEFAULT_MAX_CONCURRENT_BOOTS;
+        }
     }
 
+    // Quota changes slowly, the usage of the plugin itself is tracked on every planning
+    @SuppressFBWarnings({"MS_SHOULD_BE_FINAL", "Left modifiable from groovy"})
+    /*package*/ static long quotaRefreshPeriod = Long.getLong(
+            JCloudsCloud.class.getName() + ".quotaRefreshPeriod", TimeUnit.MINUTES.toMillis(1)
+    );
+
     /**
      * The request to provision was not fulfilled.
      */
@@ -1,20 +1,25 @@
 package jenkins.plugins.openstack.compute;
 
+import hudson.model.Executor;
+import hudson.model.Queue;
 import hudson.remoting.VirtualChannel;
 import hudson.slaves.AbstractCloudComputer;
 import hudson.slaves.SlaveComputer;
 import hudson.slaves.OfflineCause.SimpleOfflineCause;
 
 import java.io.IOException;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import jenkins.model.Jenkins;
 
+import org.jenkinsci.plugins.cloudstats.CloudStatistics;
 import org.jenkinsci.plugins.cloudstats.ProvisioningActivity;
 import org.jenkinsci.plugins.cloudstats.TrackedItem;
 import org.kohsuke.accmod.Restricted;
 import org.kohsuke.accmod.restrictions.DoNotUse;
 import org.kohsuke.accmod.restrictions.NoExternalUse;
+import org.jvnet.localizer.Localizable;
 import org.kohsuke.stapler.HttpRedirect;
 import org.kohsuke.stapler.HttpResponse;
 import org.kohsuke.stapler.StaplerResponse;
@@ -30,6 +35,7 @@ public class JCloudsComputer extends AbstractCloudComputer<JCloudsSlave> impleme
 
     private static final Logger LOGGER = Logger.getLogger(JCloudsComputer.class.getName());
     private final ProvisioningActivity.Id provisioningId;
+    private volatile boolean taskAccepted;
 
     public JCloudsComputer(JCloudsSlave slave) {
         super(slave);
@@ -46,6 +52,18 @@ public class JCloudsComputer extends AbstractCloudComputer<JCloudsSlave> impleme
         return provisioningId;
     }
 
+    @Override
+    public void taskAccepted(Executor executor, Queue.Task task) {
+        super.taskAccepted(executor, task);
+        if (taskAccepted) return;
+        taskAccepted = true;
+
+        ProvisioningTimeline timeline = ProvisioningTimeline.of(CloudStatistics.get().getActivityFor(this));
+        if (timeline != null) {
+            timeline.record(ProvisioningTimeline.Milestone.FIRST_BUILD);
+        }
+    }
+
     /**
      * Flag the slave to be collected asynchronously.
      */
@@ -59,12 +77,72 @@ public class JCloudsComputer extends AbstractCloudComputer<JCloudsSlave> impleme
 
     /**
      * Is slave pending termination.
+     *
+     * This is the case for slaves pending stop as well as they are removed from Jenkins too.
      */
     public boolean isPendingDelete() {
         // No need  to synchronize reading as offlineCause is volatile
         return offlineCause instanceof PendingTermination;
     }
 
+    /**
+     * Flag the slave to be collected asynchronously keeping the server stopped to be started later.
+     */
+    public void setPendingStop() {
+        if (isPendingDelete()) return;
+
+        LOGGER.info("Setting " + getName() + " pending stop");
+        setTemporarilyOffline(true, PENDING_STOP);
+    }
+
+    /**
+     * Is slave pending removal with its server stopped.
+     */
+    public boolean isPendingStop() {
+        return offlineCause instanceof PendingStop;
+    }
+
+    /**
+     * Flag the slave to be collected asynchronously rebuilding its server to be used by new slave.
+     */
+    public void setPendingRebuild() {
+        if (isPendingDelete()) return;
+
+        LOGGER.info("Setting " + getName() + " pending rebuild");
+        setTemporarilyOffline(true, PENDING_REBUILD);
+    }
+
+    /**
+     * Is slave pending removal with its server rebuilt.
+     */
+    public boolean isPendingRebuild() {
+        return offlineCause instanceof PendingRebuild;
+    }
+
+    /**
+     * Keep the slave from taking builds while its server is snapshotted, or let it take them again.
+     *
+     * Slaves pending removal are left intact.
+     */
+    /*package*/ void setPendingBake(boolean newVal) {
+        if (newVal) {
+            if (isPendingDelete()) return;
+
+            LOGGER.info("Setting " + getName() + " pending bake");
+            setTemporarilyOffline(true, PENDING_BAKE);
+        } else if (isPendingBake()) {
+            LOGGER.info("Bringing " + getName() + " back online after bake");
+            setTemporarilyOffline(false, null);
+        }
+    }
+
+    /**
+     * Is slave not taking builds while its server is snapshotted.
+     */
+    public boolean isPendingBake() {
+        return offlineCause instanceof PendingBake;
+    }
+
     // Hide /configure view inherited from Computer
     @Restricted(DoNotUse.class)
     public void doConfigure(StaplerResponse rsp) throws IOException {
@@ -100,18 +178,69 @@ public class JCloudsComputer extends AbstractCloudComputer<JCloudsSlave> impleme
         if (channel != null) {
             channel.close();
         }
+
+        if (isPendingRebuild()) {
+            try {
+                Jenkins.getActiveInstance().removeNode(slave);
+                JCloudsCloud.getByName(provisioningId.getCloudName()).rebuild(slave);
+                LOGGER.info("Rebuilding slave " + getName());
+                return;
+            } catch (RuntimeException ex) {
+                LOGGER.log(Level.WARNING, "Unable to rebuild slave " + getName() + ", deleting it instead", ex);
+            }
+        }
+
+        if (isPendingStop()) {
+            try {
+                slave.stopServer();
+                Jenkins.getActiveInstance().removeNode(slave);
+                LOGGER.info("Stopped slave " + getName());
+                return;
+            } catch (RuntimeException ex) {
+                LOGGER.log(Level.WARNING, "Unable to stop slave " + getName() + ", deleting it instead", ex);
+            }
+        }
+
         slave.terminate();
         Jenkins.getActiveInstance().removeNode(slave);
         LOGGER.info("Deleted slave " + getName());
     }
 
-    // Singleton
+    // Singletons
     private static final PendingTermination PENDING_TERMINATION = new PendingTermination();
+    private static final PendingStop PENDING_STOP = new PendingStop();
+    private static final PendingRebuild PENDING_REBUILD = new PendingRebuild();
+    private static final PendingBake PENDING_BAKE = new PendingBake();
 
-    private static final class PendingTermination extends SimpleOfflineCause {
+    private static class PendingTermination extends SimpleOfflineCause {
 
         protected PendingTermination() {
-            super(Messages._DeletedCause());
+            this(Messages._DeletedCause());
+        }
+
+        protected PendingTermination(Localizable description) {
+            super(description);
+        }
+    }
+
+    private static final class PendingStop extends PendingTermination {
+
+        protected PendingStop() {
+            super(Messages._StoppedCause());
+        }
+    }
+
+    private static final class PendingRebuild extends PendingTermination {
+
+        protected PendingRebuild() {
+            super(Messages._RebuiltCause());
+        }
+    }
+
+    private static final class PendingBake extends SimpleOfflineCause {
+
+        protected PendingBake() {
+            super(Messages._BakingCause());
         }
     }
 }
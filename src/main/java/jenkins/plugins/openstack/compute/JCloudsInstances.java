@@ -0,0 +1,151 @@
+package jenkins.plugins.openstack.compute;
+
+import com.google.common.base.Function;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Multimap;
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.FutureFallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import hudson.model.TaskListener;
+import jenkins.plugins.openstack.compute.internal.CloudExecutors;
+import jenkins.plugins.openstack.compute.internal.NodePlan;
+import jenkins.plugins.openstack.compute.internal.Openstack;
+import jenkins.plugins.openstack.compute.internal.ProvisioningLedger;
+import jenkins.plugins.openstack.compute.internal.RunningNode;
+import jenkins.plugins.openstack.compute.internal.TerminateNodes;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+import org.openstack4j.model.compute.Server;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Instances provisioned by {@link JCloudsInstancesStep}, passed to the nested steps through the block context.
+ *
+ * The provisioning itself does not survive restart, so the ids of the servers booted are persisted with the pipeline for
+ * them to be destroyed once the block completes. Servers still booting at the time of the restart are not known yet and
+ * can not be destroyed that way.
+ *
+ * @author ogondza.
+ */
+@Restricted(NoExternalUse.class)
+public final class JCloudsInstances implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private static final ConcurrentMap<String, ListenableFuture<Iterable<RunningNode>>> PROVISIONING = new ConcurrentHashMap<>();
+
+    private final @Nonnull String id = UUID.randomUUID().toString();
+    // Cloud names by ids of the servers booted
+    private final @Nonnull ConcurrentMap<String, String> servers = new ConcurrentHashMap<>();
+
+    private JCloudsInstances() {}
+
+    /*package*/ static @Nonnull JCloudsInstances start(@Nonnull Iterable<NodePlan> nodePlans, @Nonnull TaskListener listener) {
+        final JCloudsInstances instances = new JCloudsInstances();
+
+        // Record the servers as soon as they are booted, not once all of them are
+        List<NodePlan> recording = new ArrayList<>();
+        for (final NodePlan plan : nodePlans) {
+            final Function<ProvisioningLedger.Reservation, Server> supplier = plan.getNodeSupplier();
+            recording.add(new NodePlan(plan.getCloudName(), plan.getTemplateName(), plan.getCount(), new Function<ProvisioningLedger.Reservation, Server>() {
+                @Override public Server apply(ProvisioningLedger.Reservation reservation) {
+                    Server server = supplier.apply(reservation);
+                    instances.servers.put(server.getId(), plan.getCloudName());
+                    return server;
+                }
+            }));
+        }
+
+        PROVISIONING.put(instances.id, JCloudsBuildWrapper.getProvisioner(listener, new TerminateNodes(listener)).start(recording));
+        return instances;
+    }
+
+    /**
+     * Nodes being provisioned, null in case they were lost or released already.
+     */
+    /*package*/ @CheckForNull ListenableFuture<Iterable<RunningNode>> getNodes() {
+        return PROVISIONING.get(id);
+    }
+
+    /**
+     * Destroy the instances, once provisioned in case they are still booting.
+     *
+     * @return Future completed once the instances are destroyed.
+     */
+    /*package*/ @Nonnull ListenableFuture<Void> release(@Nonnull final TaskListener listener) {
+        ListenableFuture<Iterable<RunningNode>> nodes = PROVISIONING.remove(id);
+        if (nodes == null) {
+            listener.getLogger().println("OpenStack instances were lost, likely by Jenkins restart, destroying those booted");
+            return releaseLost(listener);
+        }
+
+        ListenableFuture<Iterable<RunningNode>> provisioned = Futures.withFallback(nodes, new FutureFallback<Iterable<RunningNode>>() {
+            @Override public ListenableFuture<Iterable<RunningNode>> create(@Nonnull Throwable t) {
+                // Destroyed already
+                return Futures.<Iterable<RunningNode>>immediateFuture(Collections.<RunningNode>emptyList());
+            }
+        });
+        return Futures.transform(provisioned, new AsyncFunction<Iterable<RunningNode>, Void>() {
+            @Override public ListenableFuture<Void> apply(@Nonnull Iterable<RunningNode> result) {
+                return new TerminateNodes(listener).applyAsync(result);
+            }
+        });
+    }
+
+    /**
+     * Destroy the servers recorded as booted before the provisioning was lost.
+     */
+    private @Nonnull ListenableFuture<Void> releaseLost(@Nonnull final TaskListener listener) {
+        Multimap<String, String> byCloud = HashMultimap.create();
+        for (Map.Entry<String, String> e : servers.entrySet()) {
+            byCloud.put(e.getValue(), e.getKey());
+        }
+
+        List<ListenableFuture<List<RunningNode>>> lookups = new ArrayList<>();
+        for (final String cloudName : byCloud.keySet()) {
+            final Collection<String> ids = byCloud.get(cloudName);
+            // Looked up in the inventory pool not to block the pipeline thread
+            lookups.add(CloudExecutors.get(cloudName).get(CloudExecutors.Pool.INVENTORY).submit(new Callable<List<RunningNode>>() {
+                @Override public List<RunningNode> call() {
+                    Openstack openstack = JCloudsCloud.getByName(cloudName).getOpenstack();
+                    List<RunningNode> lost = new ArrayList<>();
+                    for (String serverId : ids) {
+                        try {
+                            lost.add(new RunningNode(cloudName, null, openstack.getServerById(serverId)));
+                        } catch (NoSuchElementException ex) {
+                            // Deleted already
+                        }
+                    }
+                    return lost;
+                }
+            }));
+        }
+
+        return Futures.transform(Futures.allAsList(lookups), new AsyncFunction<List<List<RunningNode>>, Void>() {
+            @Override public ListenableFuture<Void> apply(@Nonnull List<List<RunningNode>> lost) {
+                return new TerminateNodes(listener).applyAsync(Iterables.concat(lost));
+            }
+        });
+    }
+
+    /**
+     * Forget the provisioning the same way restart does.
+     */
+    /*package for testing*/ void forget() {
+        PROVISIONING.remove(id);
+    }
+}
@@ -0,0 +1,160 @@
+package jenkins.plugins.openstack.compute;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.inject.Inject;
+import hudson.EnvVars;
+import hudson.Extension;
+import hudson.model.TaskListener;
+import hudson.util.VariableResolver;
+import jenkins.plugins.openstack.compute.internal.NodePlan;
+import org.jenkinsci.plugins.workflow.steps.AbstractStepDescriptorImpl;
+import org.jenkinsci.plugins.workflow.steps.AbstractStepExecutionImpl;
+import org.jenkinsci.plugins.workflow.steps.AbstractStepImpl;
+import org.jenkinsci.plugins.workflow.steps.BodyExecution;
+import org.jenkinsci.plugins.workflow.steps.BodyExecutionCallback;
+import org.jenkinsci.plugins.workflow.steps.StepContext;
+import org.jenkinsci.plugins.workflow.steps.StepContextParameter;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+import org.kohsuke.stapler.DataBoundConstructor;
+
+import javax.annotation.Nonnull;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Provision instances in the background for the duration of the block.
+ *
+ * The block starts right away so the instances boot while the build does other work, {@link JCloudsWaitForInstancesStep}
+ * waits for them. The instances are destroyed once the block completes.
+ *
+ * @author ogondza.
+ */
+@Restricted(NoExternalUse.class)
+public final class JCloudsInstancesStep extends AbstractStepImpl {
+    private static final Logger LOGGER = Logger.getLogger(JCloudsInstancesStep.class.getName());
+
+    private final @Nonnull List<InstancesToRun> instancesToRun;
+
+    @DataBoundConstructor
+    public JCloudsInstancesStep(@Nonnull List<InstancesToRun> instancesToRun) {
+        this.instancesToRun = instancesToRun;
+    }
+
+    public @Nonnull List<InstancesToRun> getInstancesToRun() {
+        return instancesToRun;
+    }
+
+    public static final class Execution extends AbstractStepExecutionImpl {
+        private static final long serialVersionUID = 1L;
+
+        @Inject(optional = true) private transient JCloudsInstancesStep step;
+        @StepContextParameter private transient TaskListener listener;
+        @StepContextParameter private transient EnvVars env;
+
+        private BodyExecution body;
+
+        @Override
+        public boolean start() throws Exception {
+            Iterable<NodePlan> nodePlans = JCloudsBuildWrapper.getNodePlans(
+                    step.instancesToRun, new VariableResolver.ByMap<>(env)
+            );
+            JCloudsInstances instances = JCloudsInstances.start(nodePlans, listener);
+            body = getContext().newBodyInvoker()
+                    .withContext(instances)
+                    .withCallback(new Callback(instances))
+                    .start()
+            ;
+            return false;
+        }
+
+        @Override
+        public void stop(@Nonnull Throwable cause) throws Exception {
+            if (body != null) {
+                body.cancel(true);
+            } else {
+                getContext().onFailure(cause);
+            }
+        }
+    }
+
+    /**
+     * Destroy the instances once the block completes, whatever the outcome.
+     */
+    private static final class Callback extends BodyExecutionCallback {
+        private static final long serialVersionUID = 1L;
+
+        private final @Nonnull JCloudsInstances instances;
+
+        private Callback(@Nonnull JCloudsInstances instances) {
+            this.instances = instances;
+        }
+
+        @Override
+        public void onSuccess(final StepContext context, final Object result) {
+            release(context, new Runnable() {
+                @Override public void run() {
+                    context.onSuccess(result);
+                }
+            });
+        }
+
+        @Override
+        public void onFailure(final StepContext context, final Throwable t) {
+            release(context, new Runnable() {
+                @Override public void run() {
+                    context.onFailure(t);
+                }
+            });
+        }
+
+        // Destroyed in the deletion pool not to block the pipeline thread, the block completes once destroyed
+        private void release(final StepContext context, final Runnable then) {
+            ListenableFuture<Void> released;
+            try {
+                released = instances.release(context.get(TaskListener.class));
+            } catch (Exception ex) {
+                LOGGER.log(Level.WARNING, "Unable to destroy instances", ex);
+                then.run();
+                return;
+            }
+
+            Futures.addCallback(released, new FutureCallback<Void>() {
+                @Override public void onSuccess(Void result) {
+                    then.run();
+                }
+
+                @Override public void onFailure(@Nonnull Throwable t) {
+                    LOGGER.log(Level.WARNING, "Unable to destroy instances", t);
+                    then.run();
+                }
+            });
+        }
+    }
+
+    // Pipeline is an optional dependency
+    @Extension(optional = true)
+    public static final class DescriptorImpl extends AbstractStepDescriptorImpl {
+        public DescriptorImpl() {
+            super(Execution.class);
+        }
+
+        @Override
+        public String getFunctionName() {
+            return "openstackInstances";
+        }
+
+        @Override
+        public String getDisplayName() {
+            return "Provision OpenStack instances for the block";
+        }
+
+        @Override
+        public boolean takesImplicitBlockArgument() {
+            return true;
+        }
+    }
+}
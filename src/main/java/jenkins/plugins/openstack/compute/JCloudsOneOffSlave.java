@@ -14,14 +14,27 @@ import java.io.IOException;
 import java.util.logging.Logger;
 
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
 
 public class JCloudsOneOffSlave extends BuildWrapper {
     private static final Logger LOGGER = Logger.getLogger(JCloudsOneOffSlave.class.getName());
 
+    // Recycle the server rebuilding it instead of deleting
+    private boolean rebuild;
+
     @DataBoundConstructor
     public JCloudsOneOffSlave() {
     }
 
+    public boolean isRebuild() {
+        return rebuild;
+    }
+
+    @DataBoundSetter
+    public void setRebuild(boolean rebuild) {
+        this.rebuild = rebuild;
+    }
+
     //
     // convert Jenkins staticy stuff into pojos; performing as little critical stuff here as
     // possible, as this method is very hard to test due to static usage, etc.
@@ -36,7 +49,11 @@ public class JCloudsOneOffSlave extends BuildWrapper {
                 return new Environment() {
                     @Override
                     public boolean tearDown(AbstractBuild build, final BuildListener listener) throws IOException, InterruptedException {
-                        ((JCloudsComputer) c).setPendingDelete(true);
+                        if (rebuild) {
+                            ((JCloudsComputer) c).setPendingRebuild();
+                        } else {
+                            ((JCloudsComputer) c).setPendingDelete(true);
+                        }
                         return true;
                     }
                 };
@@ -51,6 +51,7 @@ public class JCloudsRetentionStrategy extends RetentionStrategy<JCloudsComputer>
     private void doCheck(JCloudsComputer c) {
         if (c.isPendingDelete()) return; // No need to do it again
         if (c.isConnecting()) return; // Do not discard slave while launching for the first time when "idle time" does not make much sense
+        if (c.isPendingBake()) return; // Server being snapshotted
         if (!c.isIdle() || c.getOfflineCause() instanceof OfflineCause.UserCause) return; // Occupied by user initiated activity
 
         final JCloudsSlave node = c.getNode();
@@ -62,6 +63,12 @@ public class JCloudsRetentionStrategy extends RetentionStrategy<JCloudsComputer>
         final long idleSince = c.getIdleStartMilliseconds();
         final long idleMilliseconds = System.currentTimeMillis() - idleSince;
         if (idleMilliseconds > TimeUnit2.MINUTES.toMillis(retentionTime)) {
+            if (shouldStop(node)) {
+                LOGGER.info("Scheduling " + c.getName() + " to be stopped as it was idle since " + new Date(idleSince));
+                c.setPendingStop();
+                return;
+            }
+
             LOGGER.info("Scheduling " + c .getName() + " for termination as it was idle since " + new Date(idleSince));
             try {
                 ByteArrayOutputStream out = new ByteArrayOutputStream();
@@ -74,6 +81,15 @@ public class JCloudsRetentionStrategy extends RetentionStrategy<JCloudsComputer>
         }
     }
 
+    private boolean shouldStop(JCloudsSlave node) {
+        try {
+            return JCloudsCloud.getByName(node.getId().getCloudName()).shouldStop(node);
+        } catch (RuntimeException ex) {
+            LOGGER.log(Level.WARNING, "Unable to determine if " + node.getNodeName() + " should be stopped, deleting it", ex);
+            return false;
+        }
+    }
+
     /**
      * Try to connect to it ASAP.
      */
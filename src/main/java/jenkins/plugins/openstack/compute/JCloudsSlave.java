@@ -8,6 +8,7 @@ import hudson.slaves.AbstractCloudComputer;
 import hudson.slaves.AbstractCloudSlave;
 import hudson.slaves.EnvironmentVariablesNodeProperty;
 import hudson.slaves.NodeProperty;
+import jenkins.plugins.openstack.compute.internal.CloudEvents;
 import jenkins.plugins.openstack.compute.internal.Openstack;
 import org.jenkinsci.plugins.cloudstats.CloudStatistics;
 import org.jenkinsci.plugins.cloudstats.PhaseExecutionAttachment;
@@ -35,6 +36,10 @@ public class JCloudsSlave extends AbstractCloudSlave implements TrackedItem {
 
     private /*final*/ @Nonnull String nodeId;
 
+    // Provisioning log to report the connection to, dropped once connected
+    private transient volatile @CheckForNull TaskListener provisioningListener;
+    private transient volatile boolean bakeRequested;
+
     // Backward compatibility
     private transient @Deprecated int overrideRetentionTime;
     private transient @Deprecated String jvmOptions;
@@ -117,6 +122,29 @@ public class JCloudsSlave extends AbstractCloudSlave implements TrackedItem {
         return nodeId;
     }
 
+    /*package*/ void setProvisioningListener(@CheckForNull TaskListener listener) {
+        provisioningListener = listener;
+    }
+
+    /*package*/ @CheckForNull TaskListener takeProvisioningListener() {
+        TaskListener listener = provisioningListener;
+        provisioningListener = null;
+        return listener;
+    }
+
+    /**
+     * Request the server to be baked into an image once connected.
+     */
+    /*package*/ void requestBake() {
+        bakeRequested = true;
+    }
+
+    /*package*/ boolean takeBakeRequest() {
+        boolean requested = bakeRequested;
+        bakeRequested = false;
+        return requested;
+    }
+
     @Override
     public AbstractCloudComputer<JCloudsSlave> createComputer() {
         LOGGER.info("Creating a new computer for " + getNodeName());
@@ -144,11 +172,17 @@ public class JCloudsSlave extends AbstractCloudSlave implements TrackedItem {
 
     @Override
     protected void _terminate(TaskListener listener) throws IOException, InterruptedException {
+        CloudEvents.Event event = CloudEvents.begin(
+                CloudEvents.Type.DELETION, cloudName, provisioningId == null ? null : provisioningId.getTemplateName(), nodeId, "terminate"
+        );
+        String outcome = "success";
         try {
             getOpenstack().destroyServer(getOpenstack().getServerById(nodeId));
         } catch (NoSuchElementException ex) {
             // Already deleted
+            outcome = "gone";
         } catch (Throwable ex) {
+            outcome = CloudEvents.outcome(ex);
             CloudStatistics statistics = CloudStatistics.get();
             ProvisioningActivity activity = statistics.getActivityFor(this);
             if (activity != null) {
@@ -158,6 +192,30 @@ public class JCloudsSlave extends AbstractCloudSlave implements TrackedItem {
                 ));
             }
             throw ex;
+        } finally {
+            event.end(outcome);
+        }
+    }
+
+    /**
+     * Stop the server to be started again later instead of deleting it.
+     *
+     * Unlike {@link #terminate()}, the node is not removed from Jenkins.
+     */
+    /*package*/ void stopServer() {
+        CloudEvents.Event event = CloudEvents.begin(
+                CloudEvents.Type.DELETION, cloudName, provisioningId == null ? null : provisioningId.getTemplateName(), nodeId, "stop"
+        );
+        String outcome = "error";
+        try {
+            Openstack openstack = getOpenstack();
+            openstack.stopServer(openstack.getServerById(nodeId), options.getStartTimeout());
+            outcome = "success";
+        } catch (Exception|Error ex) {
+            outcome = CloudEvents.outcome(ex);
+            throw ex;
+        } finally {
+            event.end(outcome);
         }
     }
 
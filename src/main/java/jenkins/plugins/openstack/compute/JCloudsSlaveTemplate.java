@@ -8,8 +8,12 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
 
@@ -22,12 +26,16 @@ import org.kohsuke.accmod.Restricted;
 import org.kohsuke.accmod.restrictions.DoNotUse;
 import org.kohsuke.accmod.restrictions.NoExternalUse;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
 import org.kohsuke.stapler.QueryParameter;
 import org.openstack4j.api.Builders;
 import org.openstack4j.model.compute.Server;
 import org.openstack4j.model.compute.builder.ServerCreateBuilder;
+import org.openstack4j.model.image.Image;
+import org.openstack4j.model.storage.block.Volume;
 
 import com.google.common.base.Strings;
+import com.google.common.util.concurrent.ListenableFuture;
 
 import au.com.bytecode.opencsv.CSVReader;
 import hudson.Extension;
@@ -39,7 +47,10 @@ import hudson.model.TaskListener;
 import hudson.model.labels.LabelAtom;
 import hudson.util.FormValidation;
 import jenkins.model.Jenkins;
+import jenkins.plugins.openstack.compute.internal.CloudEvents;
+import jenkins.plugins.openstack.compute.internal.CloudExecutors;
 import jenkins.plugins.openstack.compute.internal.Openstack;
+import jenkins.plugins.openstack.compute.internal.ProvisioningLedger;
 
 import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
@@ -50,16 +61,24 @@ import javax.annotation.Nonnull;
 public class JCloudsSlaveTemplate implements Describable<JCloudsSlaveTemplate>, SlaveOptions.Holder {
 
     public static final String OPENSTACK_TEMPLATE_NAME_KEY = "jenkins-template-name";
+    private static final String VOLUME_IMAGE_KEY = "jenkins-image-id";
+    private static final long GB = 1024L * 1024 * 1024;
 
     private static final Logger LOGGER = Logger.getLogger(JCloudsSlaveTemplate.class.getName());
     private static final char SEPARATOR_CHAR = ',';
+    // Seeded by the time not to repeat the names after restart, unless provisioning more than a node per millisecond
+    private static final AtomicLong NODE_SEQUENCE = new AtomicLong(System.currentTimeMillis());
 
     public final String name;
     public final String labelString;
     private /*final*/ SlaveOptions slaveOptions;
+    private @CheckForNull ImageBaking baking;
 
     private transient Set<LabelAtom> labelSet;
     private /*final*/ transient JCloudsCloud cloud;
+    private transient AtomicBoolean bakeInProgress;
+    private transient AtomicBoolean replenishInProgress;
+    private transient Set<String> claimedVolumes;
 
     // Backward compatibility
     private transient @Deprecated String imageId;
@@ -91,6 +110,9 @@ public class JCloudsSlaveTemplate implements Describable<JCloudsSlaveTemplate>,
     protected Object readResolve() {
         // Initializes data structure that we don't persist.
         labelSet = Label.parse(labelString);
+        bakeInProgress = new AtomicBoolean();
+        replenishInProgress = new AtomicBoolean();
+        claimedVolumes = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
 
         // Migrate from 1.X to 2.0
         int i;
@@ -147,6 +169,18 @@ public class JCloudsSlaveTemplate implements Describable<JCloudsSlaveTemplate>,
         return slaveOptions;
     }
 
+    /**
+     * Baking of the template image, null if not baked.
+     */
+    public @CheckForNull ImageBaking getBaking() {
+        return baking;
+    }
+
+    @DataBoundSetter
+    public void setBaking(@CheckForNull ImageBaking baking) {
+        this.baking = baking;
+    }
+
     public Set<LabelAtom> getLabelSet() {
         return labelSet;
     }
@@ -169,18 +203,45 @@ public class JCloudsSlaveTemplate implements Describable<JCloudsSlaveTemplate>,
     public @Nonnull JCloudsSlave provisionSlave(
             @Nonnull JCloudsCloud cloud, @Nonnull ProvisioningActivity.Id id, @Nonnull TaskListener listener
     ) throws JCloudsCloud.ProvisioningFailedException, InterruptedException {
-        Server nodeMetadata = provision(cloud);
+        return provisionSlave(cloud, id, listener, null);
+    }
+
+    /*package*/ @Nonnull JCloudsSlave provisionSlave(
+            @Nonnull JCloudsCloud cloud, @Nonnull ProvisioningActivity.Id id, @Nonnull TaskListener listener,
+            @CheckForNull ProvisioningLedger.Reservation reservation
+    ) throws JCloudsCloud.ProvisioningFailedException, InterruptedException {
+        ProvisioningTimeline timeline = new ProvisioningTimeline(id);
+        Server nodeMetadata = provision(cloud, reservation, timeline, listener);
+        return connectSlave(cloud, id, nodeMetadata, timeline, listener);
+    }
+
+    /**
+     * Wait for provisioned server to be ready to launch as a slave.
+     *
+     * @param nodeMetadata Server provisioned by this template.
+     * @param timeline Timeline to record the readiness to, if any.
+     * @param listener Listener to report the progress to.
+     */
+    /*package*/ @Nonnull JCloudsSlave connectSlave(
+            @Nonnull JCloudsCloud cloud, @Nonnull ProvisioningActivity.Id id, @Nonnull Server nodeMetadata,
+            @CheckForNull ProvisioningTimeline timeline, @Nonnull TaskListener listener
+    ) throws JCloudsCloud.ProvisioningFailedException, InterruptedException {
         SlaveOptions opts = getEffectiveSlaveOptions();
 
         try {
             JCloudsSlave node = new JCloudsSlave(id, nodeMetadata, labelString, opts);
+            if (baking != null && "true".equals(nodeMetadata.getMetadata().get(ImageBaking.BAKE_KEY))) {
+                node.requestBake();
+            }
 
             int timeout = node.getSlaveOptions().getStartTimeout();
             long startMoment = System.currentTimeMillis();
             String timeoutMessage = String.format("Failed to connect to slave %s within timeout (%d ms).", node.getNodeName(), timeout);
-            while (!cloud.isSlaveReadyToLaunch(node)) {
+            listener.getLogger().println("Waiting for " + node.getNodeName() + " to be ready to launch as " + node.getSlaveType());
+            while (!isReady(cloud, node)) {
                 if ((System.currentTimeMillis() - startMoment) > timeout) {
                     LOGGER.warning(timeoutMessage);
+                    listener.error(timeoutMessage);
                     node.terminate();
                     throw new JCloudsCloud.ProvisioningFailedException(timeoutMessage);
                 }
@@ -188,6 +249,11 @@ public class JCloudsSlaveTemplate implements Describable<JCloudsSlaveTemplate>,
                 Thread.sleep(2000);
             }
 
+            listener.getLogger().println("Ready to launch " + node.getNodeName());
+            node.setProvisioningListener(listener);
+            if (timeline != null) {
+                timeline.record(ProvisioningTimeline.Milestone.READY);
+            }
             return node;
         } catch (Descriptor.FormException e) {
             throw new JCloudsCloud.ProvisioningFailedException("Invalid configuration " + e.getMessage(), e);
@@ -196,6 +262,20 @@ public class JCloudsSlaveTemplate implements Describable<JCloudsSlaveTemplate>,
         }
     }
 
+    private boolean isReady(@Nonnull JCloudsCloud cloud, @Nonnull JCloudsSlave node) {
+        CloudEvents.Event event = CloudEvents.begin(
+                CloudEvents.Type.READINESS_PROBE, cloud.name, name, node.getServerId(), node.getSlaveType().name()
+        );
+        String outcome = "error";
+        try {
+            boolean ready = cloud.isSlaveReadyToLaunch(node);
+            outcome = ready ? "ready" : "not ready";
+            return ready;
+        } finally {
+            event.end(outcome);
+        }
+    }
+
     /**
      * Provision OpenStack machine.
      *
@@ -203,35 +283,93 @@ public class JCloudsSlaveTemplate implements Describable<JCloudsSlaveTemplate>,
      * @see #provisionSlave(JCloudsCloud, ProvisioningActivity.Id, TaskListener)
      */
     public @Nonnull Server provision(@Nonnull JCloudsCloud cloud) throws Openstack.ActionFailed {
+        return provision(cloud, null, null, TaskListener.NULL);
+    }
+
+    /**
+     * @param reservation Capacity reserved for the machine, if any.
+     * @param timeline Timeline to record the progress to, if any.
+     * @param listener Listener to report the progress to.
+     */
+    /*package*/ @Nonnull Server provision(
+            @Nonnull JCloudsCloud cloud, @CheckForNull ProvisioningLedger.Reservation reservation,
+            @CheckForNull ProvisioningTimeline timeline, @Nonnull TaskListener listener
+    ) throws Openstack.ActionFailed {
+        Server stopped = cloud.claimStoppedServer(this);
+        if (stopped != null) {
+            try {
+                return start(cloud, stopped, reservation, timeline, listener);
+            } finally {
+                cloud.releaseStoppedServer(stopped);
+            }
+        }
+
         final SlaveOptions opts = getEffectiveSlaveOptions();
         final ServerCreateBuilder builder = Builders.server();
         builder.addMetadataItem(OPENSTACK_TEMPLATE_NAME_KEY, name);
 
-        final String nodeName = name + "-" + new Random().nextInt(10000);
+        // Unique so the reservation matches this server only
+        final String nodeName = name + "-" + Long.toString(NODE_SEQUENCE.incrementAndGet(), Character.MAX_RADIX);
         LOGGER.info("Provisioning new openstack node " + nodeName + " with options " + opts);
+        listener.getLogger().println("Provisioning new openstack node " + nodeName + " with options " + opts);
         // Ensure predictable node name so we can inject it into user data
         builder.name(nodeName);
+        if (reservation != null) {
+            reservation.bind(nodeName);
+        }
+
+        final Openstack openstack = cloud.getOpenstack();
+        final ImageBaking baking = this.baking;
+        String bakedImageId = null;
+        String volumeId = null;
+        if (baking != null) {
+            try {
+                bakedImageId = baking.getImageId(openstack, this);
+            } catch (RuntimeException ex) {
+                // Fall back to the template image
+                LOGGER.log(Level.WARNING, "Unable to find baked image for " + name, ex);
+            }
+        }
+
+        if (bakedImageId != null) {
+            fine(listener, "Setting baked image id to " + bakedImageId);
+            builder.image(bakedImageId);
+        } else if (!Strings.isNullOrEmpty(opts.getImageId())) {
+            String imageId = openstack.getImageIdFor(opts.getImageId());
+            if (opts.getVolumePool() > 0 && imageId != null) {
+                volumeId = claimVolume(openstack, imageId, nodeName);
+                replenishVolumePool(cloud);
+            }
 
-        if (!Strings.isNullOrEmpty(opts.getImageId())) {
-            String imageId = cloud.getOpenstack().getImageIdFor(opts.getImageId());
-            LOGGER.fine("Setting image id to " + imageId);
-            builder.image(imageId);
+            if (volumeId != null) {
+                fine(listener, "Setting boot volume to " + volumeId + " cloned from image " + imageId);
+                builder.blockDevice(Builders.blockDeviceMapping()
+                        .uuid(volumeId).deviceName("vda").bootIndex(0).deleteOnTermination(true).build()
+                );
+            } else {
+                fine(listener, "Setting image id to " + imageId);
+                builder.image(imageId);
+            }
+        }
+        if (baking != null && bakedImageId == null) {
+            fine(listener, "Requesting the image to be baked from " + nodeName);
+            builder.addMetadataItem(ImageBaking.BAKE_KEY, "true");
         }
 
         String hwid = opts.getHardwareId();
         if (!Strings.isNullOrEmpty(hwid)) {
-            LOGGER.fine("Setting hardware Id to " + hwid);
+            fine(listener, "Setting hardware Id to " + hwid);
             builder.flavor(hwid);
         }
 
         String nid = opts.getNetworkId();
         if (!Strings.isNullOrEmpty(nid)) {
-            LOGGER.fine("Setting network to " + nid);
+            fine(listener, "Setting network to " + nid);
             builder.networks(Collections.singletonList(nid));
         }
 
         if (!Strings.isNullOrEmpty(opts.getSecurityGroups())) {
-            LOGGER.fine("Setting security groups to " + opts.getSecurityGroups());
+            fine(listener, "Setting security groups to " + opts.getSecurityGroups());
             for (String sg: csvToArray(opts.getSecurityGroups())) {
                 builder.addSecurityGroup(sg);
             }
@@ -239,41 +377,59 @@ public class JCloudsSlaveTemplate implements Describable<JCloudsSlaveTemplate>,
 
         String kpn = opts.getKeyPairName();
         if (!Strings.isNullOrEmpty(kpn)) {
-            LOGGER.fine("Setting keyPairName to " + kpn);
+            fine(listener, "Setting keyPairName to " + kpn);
             builder.keypairName(kpn);
         }
 
         String az = opts.getAvailabilityZone();
         if (!Strings.isNullOrEmpty(az)) {
-            LOGGER.fine("Setting availabilityZone to " + az);
+            fine(listener, "Setting availabilityZone to " + az);
             builder.availabilityZone(az);
         }
 
-        @CheckForNull String userDataText = getUserData();
+        @CheckForNull String userDataText = bakedImageId == null ? getUserData() : baking.getUserData();
         if (userDataText != null) {
-            HashMap<String, String> vars = new HashMap<>();
-            String rootUrl = Jenkins.getActiveInstance().getRootUrl();
-            vars.put("JENKINS_URL", rootUrl);
-            vars.put("SLAVE_JAR_URL", rootUrl + "jnlpJars/slave.jar");
-            vars.put("SLAVE_JNLP_URL", rootUrl + "computer/" + nodeName + "/slave-agent.jnlp");
-            vars.put("SLAVE_LABELS", labelString);
-            String content = Util.replaceMacro(userDataText, vars);
-            LOGGER.fine("Sending user-data:\n" + content);
+            String content = expandUserData(userDataText, nodeName);
+            LOGGER.fine("Sending user-data:\n" + content); // Not to be exposed in the provisioning log
             builder.userData(Base64.encode(content.getBytes(Charsets.UTF_8)));
         }
 
-        final Openstack openstack = cloud.getOpenstack();
-        final Server server = openstack.bootAndWaitActive(builder, opts.getStartTimeout());
+        if (timeline != null) {
+            timeline.record(ProvisioningTimeline.Milestone.BOOT_REQUESTED);
+        }
+        listener.getLogger().println("Booting " + nodeName);
+        final Server server;
+        try {
+            server = openstack.bootAndWaitActive(builder, opts.getStartTimeout());
+        } catch (Openstack.ActionFailed ex) {
+            if (volumeId != null) {
+                // Not to leak the volume in case the server was not created at all
+                try {
+                    openstack.deleteVolume(volumeId);
+                } catch (RuntimeException e) {
+                    ex.addSuppressed(e);
+                }
+            }
+            throw ex;
+        }
         LOGGER.info("Provisioned: " + server.toString());
+        listener.getLogger().println("Server " + server.getId() + " is active");
+        if (timeline != null) {
+            timeline.record(ProvisioningTimeline.Milestone.ACTIVE);
+        }
 
         String poolName = opts.getFloatingIpPool();
         if (poolName != null) {
-            LOGGER.fine("Assigning floating IP from " + poolName + " to " + nodeName);
+            fine(listener, "Assigning floating IP from " + poolName + " to " + nodeName);
             try {
                 openstack.assignFloatingIp(server, poolName);
+                if (timeline != null) {
+                    timeline.record(ProvisioningTimeline.Milestone.FLOATING_IP_ASSIGNED);
+                }
                 // Make sure address information is reflected in metadata
                 return openstack.updateInfo(server);
             } catch (Throwable ex) {
+                ex.printStackTrace(listener.error("Failed to assign floating IP to " + nodeName));
                 // Do not leak the server as we are aborting the provisioning
                 try {
                     openstack.destroyServer(server);
@@ -287,6 +443,255 @@ public class JCloudsSlaveTemplate implements Describable<JCloudsSlaveTemplate>,
         return server;
     }
 
+    /**
+     * Rebuild the server provisioned by this template to its image to be used as a new slave.
+     *
+     * The server keeps its floating IP so none is assigned. Servers booted from volume, pooled or not, can not be rebuilt
+     * as the rebuild replaces the image and keeps the volume. Those are deleted instead.
+     *
+     * @throws Openstack.ActionFailed In case the rebuild failed or the server was deleted being booted from volume.
+     */
+    /*package*/ @Nonnull Server rebuild(
+            @Nonnull JCloudsCloud cloud, @Nonnull String serverId, @CheckForNull ProvisioningTimeline timeline,
+            @Nonnull TaskListener listener
+    ) throws Openstack.ActionFailed {
+        final SlaveOptions opts = getEffectiveSlaveOptions();
+        final Openstack openstack = cloud.getOpenstack();
+        final Server server = openstack.getServerById(serverId);
+        if (Strings.isNullOrEmpty(server.getImageId())) {
+            listener.getLogger().println("Deleting openstack node " + server.getName() + " booted from volume instead of rebuilding it");
+            openstack.destroyServer(server);
+            throw new Openstack.ActionFailed("Server " + server.getName() + " booted from volume can not be rebuilt");
+        }
+
+        LOGGER.info("Rebuilding openstack node " + server.getName());
+        listener.getLogger().println("Rebuilding openstack node " + server.getName() + " with options " + opts);
+
+        String imageId = Strings.isNullOrEmpty(opts.getImageId()) ? null : openstack.getImageIdFor(opts.getImageId());
+        if (imageId == null) {
+            imageId = server.getImageId();
+        }
+        fine(listener, "Setting image id to " + imageId);
+
+        if (timeline != null) {
+            timeline.record(ProvisioningTimeline.Milestone.BOOT_REQUESTED);
+        }
+        final Server rebuilt = openstack.rebuildAndWaitActive(server, imageId, opts.getStartTimeout());
+        LOGGER.info("Rebuilt: " + rebuilt.toString());
+        listener.getLogger().println("Server " + rebuilt.getId() + " is active");
+        if (timeline != null) {
+            timeline.record(ProvisioningTimeline.Milestone.ACTIVE);
+        }
+        return rebuilt;
+    }
+
+    /**
+     * Start server stopped by the retention strategy instead of booting a new one.
+     */
+    private @Nonnull Server start(
+            @Nonnull JCloudsCloud cloud, @Nonnull Server stopped, @CheckForNull ProvisioningLedger.Reservation reservation,
+            @CheckForNull ProvisioningTimeline timeline, @Nonnull TaskListener listener
+    ) throws Openstack.ActionFailed {
+        final String nodeName = stopped.getName();
+        LOGGER.info("Starting stopped openstack node " + nodeName);
+        listener.getLogger().println("Starting stopped openstack node " + nodeName);
+        if (reservation != null) {
+            reservation.bind(nodeName);
+        }
+
+        if (timeline != null) {
+            timeline.record(ProvisioningTimeline.Milestone.BOOT_REQUESTED);
+        }
+        // The floating IP survives the stop, no need to assign new one
+        final Server server = cloud.getOpenstack().startAndWaitActive(stopped, getEffectiveSlaveOptions().getStartTimeout());
+        LOGGER.info("Started: " + server.toString());
+        listener.getLogger().println("Server " + server.getId() + " is active");
+        if (timeline != null) {
+            timeline.record(ProvisioningTimeline.Milestone.ACTIVE);
+        }
+        return server;
+    }
+
+    /**
+     * Bake the image from the server in background, unless being baked already or there is a snapshot to use.
+     *
+     * @return Future completed once baked or null if not baking.
+     */
+    /*package*/ @CheckForNull ListenableFuture<?> bake(final @Nonnull JCloudsCloud cloud, final @Nonnull String serverId) {
+        final ImageBaking baking = this.baking;
+        if (baking == null || !bakeInProgress.compareAndSet(false, true)) return null;
+
+        try {
+            return CloudExecutors.get(cloud.name).get(CloudExecutors.Pool.IMAGE).submit(new Runnable() {
+                @Override public void run() {
+                    try {
+                        Openstack openstack = cloud.getOpenstack();
+                        // Baked by other slave meanwhile
+                        if (baking.getImageId(openstack, JCloudsSlaveTemplate.this) != null) return;
+
+                        Server server = openstack.getServerById(serverId);
+                        baking.bake(openstack, JCloudsSlaveTemplate.this, server, getEffectiveSlaveOptions().getStartTimeout());
+                    } catch (InterruptedException ex) {
+                        LOGGER.log(Level.WARNING, "Baking image for " + name + " interrupted", ex);
+                    } catch (Throwable ex) {
+                        LOGGER.log(Level.WARNING, "Failed to bake image for " + name + " from " + serverId, ex);
+                    } finally {
+                        bakeInProgress.set(false);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            bakeInProgress.set(false);
+            LOGGER.log(Level.WARNING, "Unable to schedule baking image for " + name, ex);
+            return null;
+        }
+    }
+
+    /**
+     * Name of the volumes pooled for this template by this Jenkins instance.
+     */
+    private @Nonnull String getVolumePoolName() {
+        String rootUrl = Util.fixNull(Jenkins.getActiveInstance().getRootUrl());
+        return "jenkins-" + Util.getDigestOf(rootUrl).substring(0, 8) + "-" + name + "-pool";
+    }
+
+    /**
+     * Take a pooled volume cloned from the image to boot the node from.
+     *
+     * The volume leaves the pool by being renamed after the node.
+     *
+     * @return Volume id or null if there is none available.
+     */
+    private @CheckForNull String claimVolume(@Nonnull Openstack openstack, @Nonnull String imageId, @Nonnull String nodeName) {
+        try {
+            for (Volume volume : openstack.getVolumesByName(getVolumePoolName())) {
+                if (volume.getStatus() != Volume.Status.AVAILABLE) continue;
+                if (!imageId.equals(volume.getMetaData().get(VOLUME_IMAGE_KEY))) continue;
+                if (!claimedVolumes.add(volume.getId())) continue;
+
+                try {
+                    openstack.renameVolume(volume.getId(), nodeName);
+                    return volume.getId();
+                } catch (Openstack.ActionFailed ex) {
+                    LOGGER.log(Level.WARNING, "Unable to claim pooled volume " + volume.getId(), ex);
+                } finally {
+                    claimedVolumes.remove(volume.getId());
+                }
+            }
+        } catch (RuntimeException ex) {
+            // Fall back to booting from image
+            LOGGER.log(Level.WARNING, "Unable to claim pooled volume for " + name, ex);
+        }
+        return null;
+    }
+
+    /**
+     * Fill the volume pool up to its size in background, unless being filled already.
+     */
+    /*package*/ void replenishVolumePool(final @Nonnull JCloudsCloud cloud) {
+        if (!replenishInProgress.compareAndSet(false, true)) return;
+
+        try {
+            CloudExecutors.get(cloud.name).get(CloudExecutors.Pool.INVENTORY).submit(new Runnable() {
+                @Override public void run() {
+                    try {
+                        replenishVolumePool(cloud.getOpenstack());
+                    } catch (Throwable ex) {
+                        LOGGER.log(Level.WARNING, "Failed to replenish volume pool of " + name, ex);
+                    } finally {
+                        replenishInProgress.set(false);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            replenishInProgress.set(false);
+            LOGGER.log(Level.WARNING, "Unable to schedule volume pool replenishment of " + name, ex);
+        }
+    }
+
+    /**
+     * Create volumes missing in the pool and delete the ones no longer needed.
+     *
+     * Volumes cloned from an image other than the current one of the template are replaced.
+     */
+    private void replenishVolumePool(@Nonnull Openstack openstack) {
+        SlaveOptions opts = getEffectiveSlaveOptions();
+        int size = opts.getVolumePool();
+        String imageId = size > 0 && opts.getImageId() != null ? openstack.getImageIdFor(opts.getImageId()) : null;
+
+        String poolName = getVolumePoolName();
+        int pooled = 0;
+        for (Volume volume : openstack.getVolumesByName(poolName)) {
+            boolean error = volume.getStatus() == Volume.Status.ERROR;
+            boolean current = imageId != null && imageId.equals(volume.getMetaData().get(VOLUME_IMAGE_KEY));
+            if (!error && current && pooled < size) {
+                pooled++;
+                continue;
+            }
+
+            // Volumes being created are deleted once available
+            if (!error && volume.getStatus() != Volume.Status.AVAILABLE) continue;
+            if (!claimedVolumes.add(volume.getId())) continue;
+            try {
+                LOGGER.info("Deleting pooled volume " + volume.getId() + " of " + name);
+                openstack.deleteVolume(volume.getId());
+            } catch (Openstack.ActionFailed ex) {
+                LOGGER.log(Level.WARNING, "Unable to delete pooled volume " + volume.getId(), ex);
+            } finally {
+                claimedVolumes.remove(volume.getId());
+            }
+        }
+
+        if (pooled >= size || imageId == null) return;
+
+        int disk = getVolumeSize(openstack, opts, imageId);
+        if (disk <= 0) {
+            // Reported by the form validation of the volume pool
+            LOGGER.fine("Unable to pool volumes of " + name + " as the volume size is not known");
+            return;
+        }
+
+        Map<String, String> metadata = new HashMap<>();
+        metadata.put(OPENSTACK_TEMPLATE_NAME_KEY, name);
+        metadata.put(VOLUME_IMAGE_KEY, imageId);
+        for (; pooled < size; pooled++) {
+            Volume volume = openstack.createVolume(poolName, imageId, disk, metadata);
+            LOGGER.info("Creating pooled volume " + volume.getId() + " of " + name);
+        }
+    }
+
+    /**
+     * Size of the pooled volumes in GB: the configured one, the root disk of the flavor or the minimal disk of the image.
+     *
+     * @return The size or 0 when not known.
+     */
+    private static int getVolumeSize(@Nonnull Openstack openstack, @Nonnull SlaveOptions opts, @Nonnull String imageId) {
+        Integer size = opts.getVolumeSize();
+        if (size != null && size > 0) return size;
+
+        String hwid = opts.getHardwareId();
+        int disk = hwid == null ? 0 : openstack.getFlavorDisk(hwid);
+        if (disk > 0) return disk;
+
+        String imageName = opts.getImageId();
+        if (imageName == null) return 0;
+        for (Image image : openstack.getImagesByName(imageName)) {
+            if (!imageId.equals(image.getId())) continue;
+
+            long minDisk = image.getMinDisk();
+            if (minDisk > 0) return (int) minDisk;
+            Long bytes = image.getSize();
+            // Large enough for the image to fit, rounded up to GB
+            return bytes == null ? 0 : (int) ((bytes + GB - 1) / GB);
+        }
+        return 0;
+    }
+
+    private static void fine(@Nonnull TaskListener listener, @Nonnull String message) {
+        LOGGER.fine(message);
+        listener.getLogger().println(message);
+    }
+
     private static String[] csvToArray(final String csv) {
         try {
             final CSVReader reader = new CSVReader(new StringReader(csv), SEPARATOR_CHAR);
@@ -297,6 +702,16 @@ public class JCloudsSlaveTemplate implements Describable<JCloudsSlaveTemplate>,
         }
     }
 
+    /*package for benchmarking*/ @Nonnull String expandUserData(@Nonnull String userDataText, @Nonnull String nodeName) {
+        HashMap<String, String> vars = new HashMap<>();
+        String rootUrl = Jenkins.getActiveInstance().getRootUrl();
+        vars.put("JENKINS_URL", rootUrl);
+        vars.put("SLAVE_JAR_URL", rootUrl + "jnlpJars/slave.jar");
+        vars.put("SLAVE_JNLP_URL", rootUrl + "computer/" + nodeName + "/slave-agent.jnlp");
+        vars.put("SLAVE_LABELS", labelString);
+        return Util.replaceMacro(userDataText, vars);
+    }
+
     /*package for testing*/ @CheckForNull String getUserData() {
         Config userData = ConfigProvider.all().get(UserDataConfig.UserDataConfigProvider.class).getConfigById(getEffectiveSlaveOptions().getUserDataId());
 
@@ -0,0 +1,75 @@
+package jenkins.plugins.openstack.compute;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import hudson.AbortException;
+import hudson.Extension;
+import jenkins.plugins.openstack.compute.internal.RunningNode;
+import org.jenkinsci.plugins.workflow.steps.AbstractStepDescriptorImpl;
+import org.jenkinsci.plugins.workflow.steps.AbstractStepExecutionImpl;
+import org.jenkinsci.plugins.workflow.steps.AbstractStepImpl;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+import org.kohsuke.stapler.DataBoundConstructor;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+
+/**
+ * Wait for the instances of the enclosing {@link JCloudsInstancesStep} to become active and return their IPs.
+ *
+ * @author ogondza.
+ */
+@Restricted(NoExternalUse.class)
+public final class JCloudsWaitForInstancesStep extends AbstractStepImpl {
+
+    @DataBoundConstructor
+    public JCloudsWaitForInstancesStep() {}
+
+    public static final class Execution extends AbstractStepExecutionImpl {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public boolean start() throws Exception {
+            JCloudsInstances instances = getContext().get(JCloudsInstances.class);
+            if (instances == null) throw new AbortException("openstackWaitForInstances needs to be called inside of openstackInstances");
+
+            ListenableFuture<Iterable<RunningNode>> nodes = instances.getNodes();
+            if (nodes == null) throw new AbortException("OpenStack instances were lost, likely by Jenkins restart");
+
+            Futures.addCallback(nodes, new FutureCallback<Iterable<RunningNode>>() {
+                @Override public void onSuccess(Iterable<RunningNode> result) {
+                    getContext().onSuccess(new ArrayList<>(JCloudsBuildWrapper.getIps(result)));
+                }
+
+                @Override public void onFailure(Throwable t) {
+                    getContext().onFailure(t);
+                }
+            });
+            return false;
+        }
+
+        @Override
+        public void stop(@Nonnull Throwable cause) throws Exception {
+            getContext().onFailure(cause);
+        }
+    }
+
+    @Extension(optional = true)
+    public static final class DescriptorImpl extends AbstractStepDescriptorImpl {
+        public DescriptorImpl() {
+            super(Execution.class);
+        }
+
+        @Override
+        public String getFunctionName() {
+            return "openstackWaitForInstances";
+        }
+
+        @Override
+        public String getDisplayName() {
+            return "Wait for OpenStack instances and get their IPs";
+        }
+    }
+}
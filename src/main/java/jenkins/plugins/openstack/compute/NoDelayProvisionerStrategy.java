@@ -0,0 +1,67 @@
+package jenkins.plugins.openstack.compute;
+
+import hudson.Extension;
+import hudson.model.Label;
+import hudson.model.LoadStatistics;
+import hudson.slaves.Cloud;
+import hudson.slaves.CloudProvisioningListener;
+import hudson.slaves.NodeProvisioner;
+import jenkins.model.Jenkins;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import javax.annotation.Nonnull;
+import java.util.Collection;
+import java.util.logging.Logger;
+
+/**
+ * Provision as soon as there are items waiting in the queue for clouds that opted in.
+ *
+ * The default strategy waits for the load statistics to ramp up before provisioning which adds to the queue latency of
+ * every burst. This one compares the queue length with the executors available, connecting and planned - including
+ * the nodes waiting in the {@link jenkins.plugins.openstack.compute.internal.BootQueue} - and asks the clouds to
+ * provision the difference right away.
+ *
+ * @author ogondza.
+ */
+@Restricted(NoExternalUse.class)
+@Extension(ordinal = 100)
+public final class NoDelayProvisionerStrategy extends NodeProvisioner.Strategy {
+    private static final Logger LOGGER = Logger.getLogger(NoDelayProvisionerStrategy.class.getName());
+
+    @Override
+    public @Nonnull NodeProvisioner.StrategyDecision apply(@Nonnull NodeProvisioner.StrategyState state) {
+        Label label = state.getLabel();
+        LoadStatistics.LoadStatisticsSnapshot snapshot = state.getSnapshot();
+
+        int available = snapshot.getAvailableExecutors()
+                + snapshot.getConnectingExecutors()
+                + state.getPlannedCapacitySnapshot()
+                + state.getAdditionalPlannedCapacity()
+        ;
+        int demand = snapshot.getQueueLength();
+        if (available >= demand) return NodeProvisioner.StrategyDecision.CONSULT_REMAINING_STRATEGIES;
+
+        for (Cloud c : Jenkins.getActiveInstance().clouds) {
+            if (!(c instanceof JCloudsCloud)) continue;
+            JCloudsCloud cloud = (JCloudsCloud) c;
+            if (!cloud.isNoDelayProvisioning() || !cloud.canProvision(label)) continue;
+
+            int excess = demand - available;
+            LOGGER.fine("Provisioning " + excess + " executors for " + label + " in " + cloud.name + " without delay");
+            Collection<NodeProvisioner.PlannedNode> planned = cloud.provision(label, excess);
+            for (CloudProvisioningListener cl : CloudProvisioningListener.all()) {
+                cl.onStarted(cloud, label, planned);
+            }
+            state.recordPendingLaunches(planned);
+
+            for (NodeProvisioner.PlannedNode node : planned) {
+                available += node.numExecutors;
+            }
+            if (available >= demand) return NodeProvisioner.StrategyDecision.PROVISIONING_COMPLETED;
+        }
+
+        // Let other strategies serve the rest, if any
+        return NodeProvisioner.StrategyDecision.CONSULT_REMAINING_STRATEGIES;
+    }
+}
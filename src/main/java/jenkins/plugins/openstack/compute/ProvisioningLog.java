@@ -0,0 +1,165 @@
+package jenkins.plugins.openstack.compute;
+
+import com.google.common.base.Charsets;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import hudson.Extension;
+import hudson.console.LineTransformationOutputStream;
+import hudson.model.Computer;
+import hudson.model.TaskListener;
+import hudson.slaves.ComputerListener;
+import hudson.util.StreamTaskListener;
+import org.jenkinsci.plugins.cloudstats.CloudStatistics;
+import org.jenkinsci.plugins.cloudstats.PhaseExecution;
+import org.jenkinsci.plugins.cloudstats.PhaseExecutionAttachment;
+import org.jenkinsci.plugins.cloudstats.ProvisioningActivity;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Output of the provisioning, kept with the activity.
+ *
+ * Only the last {@link #MAX_LINES} lines are retained and overly long lines are truncated so the log can be captured
+ * for every provisioning without unbounded memory consumption. Writing only appends to the in-memory buffer so it never
+ * blocks the provisioning on IO - the log is persisted with the next update of the statistics.
+ *
+ * @author ogondza.
+ */
+@Restricted(NoExternalUse.class)
+public final class ProvisioningLog extends PhaseExecutionAttachment {
+    private static final long serialVersionUID = 1L;
+
+    @SuppressFBWarnings({"MS_SHOULD_BE_FINAL", "Left modifiable from groovy"})
+    /*package*/ static int MAX_LINES = Integer.getInteger(ProvisioningLog.class.getName() + ".maxLines", 200);
+
+    @SuppressFBWarnings({"MS_SHOULD_BE_FINAL", "Left modifiable from groovy"})
+    /*package*/ static int MAX_LINE_LENGTH = Integer.getInteger(ProvisioningLog.class.getName() + ".maxLineLength", 500);
+
+    // Guarded by this
+    private final @Nonnull LinkedList<String> lines = new LinkedList<>();
+    // Guarded by this
+    private int dropped;
+
+    private final long started = System.currentTimeMillis();
+
+    private final transient @CheckForNull ProvisioningActivity.Id id;
+    private transient volatile boolean attached;
+    private transient TaskListener listener;
+
+    /*package*/ ProvisioningLog(@Nonnull ProvisioningActivity.Id id) {
+        super(ProvisioningActivity.Status.OK, "Log");
+        this.id = id;
+    }
+
+    /**
+     * Listener writing to this log.
+     */
+    public synchronized @Nonnull TaskListener getListener() {
+        if (listener == null) {
+            listener = new StreamTaskListener(new LineTransformationOutputStream() {
+                @Override protected void eol(byte[] b, int len) throws IOException {
+                    append(trimEOL(new String(b, 0, len, Charsets.UTF_8)));
+                }
+            }, Charsets.UTF_8);
+        }
+        return listener;
+    }
+
+    /*package*/ void append(@Nonnull String line) {
+        long elapsed = System.currentTimeMillis() - started;
+        if (line.length() > MAX_LINE_LENGTH) {
+            line = line.substring(0, MAX_LINE_LENGTH) + "...";
+        }
+        line = String.format(Locale.ENGLISH, "[%6.1fs] %s", elapsed / 1000D, line);
+
+        synchronized (this) {
+            lines.add(line);
+            while (lines.size() > MAX_LINES) {
+                lines.removeFirst();
+                dropped++;
+            }
+        }
+
+        if (!attached && id != null) {
+            attach(id);
+        }
+    }
+
+    // Lines written before cloud-stats started tracking the activity are attached with the first one written after
+    private synchronized void attach(@Nonnull ProvisioningActivity.Id id) {
+        if (attached) return;
+
+        CloudStatistics statistics = CloudStatistics.get();
+        ProvisioningActivity activity = statistics.getActivityFor(id);
+        if (activity != null) {
+            attached = true;
+            statistics.attach(activity, ProvisioningActivity.Phase.PROVISIONING, this);
+        }
+    }
+
+    public String getUrlName() {
+        return "log";
+    }
+
+    /**
+     * Lines retained.
+     */
+    public synchronized @Nonnull List<String> getLines() {
+        return new ArrayList<>(lines);
+    }
+
+    /**
+     * The most recent line, null if nothing was written.
+     */
+    public synchronized @CheckForNull String getLastLine() {
+        return lines.peekLast();
+    }
+
+    /**
+     * Number of lines discarded from the beginning of the log.
+     */
+    public synchronized int getDropped() {
+        return dropped;
+    }
+
+    /**
+     * Get log of the activity, if attached.
+     */
+    public static @CheckForNull ProvisioningLog of(@CheckForNull ProvisioningActivity activity) {
+        if (activity == null) return null;
+
+        PhaseExecution provisioning = activity.getPhaseExecution(ProvisioningActivity.Phase.PROVISIONING);
+        if (provisioning == null) return null;
+
+        for (PhaseExecutionAttachment attachment : provisioning.getAttachments()) {
+            if (attachment instanceof ProvisioningLog) {
+                return (ProvisioningLog) attachment;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Report agents connected to the log they were provisioned with.
+     */
+    @Extension @Restricted(NoExternalUse.class)
+    public static final class Listener extends ComputerListener {
+        @Override
+        public void onOnline(Computer c, TaskListener listener) {
+            if (!(c instanceof JCloudsComputer)) return;
+
+            JCloudsSlave node = ((JCloudsComputer) c).getNode();
+            TaskListener log = node == null ? null : node.takeProvisioningListener();
+            if (log != null) {
+                log.getLogger().println("Agent connected");
+            }
+        }
+    }
+}
@@ -0,0 +1,287 @@
+package jenkins.plugins.openstack.compute;
+
+import hudson.Extension;
+import hudson.Util;
+import hudson.model.Computer;
+import hudson.model.TaskListener;
+import hudson.slaves.ComputerListener;
+import org.jenkinsci.plugins.cloudstats.CloudStatistics;
+import org.jenkinsci.plugins.cloudstats.PhaseExecution;
+import org.jenkinsci.plugins.cloudstats.PhaseExecutionAttachment;
+import org.jenkinsci.plugins.cloudstats.ProvisioningActivity;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Moments the node has reached while being provisioned.
+ *
+ * The timeline is attached to the provisioning phase of the activity as soon as cloud-stats starts tracking it.
+ * Milestones reached after that are persisted with the next update of the statistics.
+ *
+ * @author ogondza.
+ */
+@Restricted(NoExternalUse.class)
+public final class ProvisioningTimeline extends PhaseExecutionAttachment {
+    private static final long serialVersionUID = 1L;
+
+    public enum Milestone {
+        PLANNED("Planned"),
+        BOOT_REQUESTED("Boot requested"),
+        ACTIVE("Server active"),
+        FLOATING_IP_ASSIGNED("Floating IP assigned"),
+        READY("Ready to launch"),
+        CONNECTED("Agent connected"),
+        FIRST_BUILD("First build started");
+
+        private final String displayName;
+
+        Milestone(String displayName) {
+            this.displayName = displayName;
+        }
+
+        public String getDisplayName() {
+            return displayName;
+        }
+    }
+
+    // Guarded by this
+    private final @Nonnull EnumMap<Milestone, Long> milestones = new EnumMap<>(Milestone.class);
+
+    private final transient @CheckForNull ProvisioningActivity.Id id;
+    private transient volatile boolean attached;
+
+    /*package*/ ProvisioningTimeline(@Nonnull ProvisioningActivity.Id id) {
+        super(ProvisioningActivity.Status.OK, "Timeline");
+        this.id = id;
+        milestones.put(Milestone.PLANNED, System.currentTimeMillis());
+    }
+
+    /**
+     * Record the milestone was reached now, unless reached already.
+     */
+    /*package*/ void record(@Nonnull Milestone milestone) {
+        synchronized (this) {
+            if (milestones.containsKey(milestone)) return;
+            milestones.put(milestone, System.currentTimeMillis());
+        }
+
+        if (!attached && id != null) {
+            CloudStatistics statistics = CloudStatistics.get();
+            ProvisioningActivity activity = statistics.getActivityFor(id);
+            if (activity != null) {
+                attached = true;
+                statistics.attach(activity, ProvisioningActivity.Phase.PROVISIONING, this);
+            }
+        }
+    }
+
+    public String getUrlName() {
+        return "timeline";
+    }
+
+    public synchronized @CheckForNull Long getTime(@Nonnull Milestone milestone) {
+        return milestones.get(milestone);
+    }
+
+    /**
+     * Time spent since the previous milestone reached, in milliseconds, for every milestone reached but the first one.
+     */
+    public synchronized @Nonnull Map<Milestone, Long> getDurations() {
+        Map<Milestone, Long> durations = new EnumMap<>(Milestone.class);
+        Long previous = null;
+        for (Map.Entry<Milestone, Long> e : milestones.entrySet()) {
+            if (previous != null) {
+                durations.put(e.getKey(), e.getValue() - previous);
+            }
+            previous = e.getValue();
+        }
+        return durations;
+    }
+
+    /**
+     * Time from planned to connected in milliseconds, null if not connected.
+     */
+    public synchronized @CheckForNull Long getTotal() {
+        Long planned = milestones.get(Milestone.PLANNED);
+        Long connected = milestones.get(Milestone.CONNECTED);
+        return planned == null || connected == null ? null : connected - planned;
+    }
+
+    /**
+     * Milestones reached with date and the time since the previous one, for presentation.
+     */
+    public @Nonnull List<Entry> getEntries() {
+        Map<Milestone, Long> durations = getDurations();
+        List<Entry> entries = new ArrayList<>();
+        for (Milestone milestone : Milestone.values()) {
+            Long time = getTime(milestone);
+            if (time != null) {
+                entries.add(new Entry(milestone, time, durations.get(milestone)));
+            }
+        }
+        return entries;
+    }
+
+    public static final class Entry {
+        private final @Nonnull Milestone milestone;
+        private final long time;
+        private final @CheckForNull Long duration;
+
+        private Entry(@Nonnull Milestone milestone, long time, @CheckForNull Long duration) {
+            this.milestone = milestone;
+            this.time = time;
+            this.duration = duration;
+        }
+
+        public @Nonnull Milestone getMilestone() {
+            return milestone;
+        }
+
+        public @Nonnull Date getDate() {
+            return new Date(time);
+        }
+
+        public @Nonnull String getDuration() {
+            return duration == null ? "" : Util.getTimeSpanString(duration);
+        }
+    }
+
+    /**
+     * Get timeline of the activity, if attached.
+     */
+    public static @CheckForNull ProvisioningTimeline of(@CheckForNull ProvisioningActivity activity) {
+        if (activity == null) return null;
+
+        PhaseExecution provisioning = activity.getPhaseExecution(ProvisioningActivity.Phase.PROVISIONING);
+        if (provisioning == null) return null;
+
+        for (PhaseExecutionAttachment attachment : provisioning.getAttachments()) {
+            if (attachment instanceof ProvisioningTimeline) {
+                return (ProvisioningTimeline) attachment;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Aggregate timelines of tracked activities of the cloud by template name.
+     */
+    public static @Nonnull Map<String, Summary> summarize(@Nonnull String cloudName) {
+        Map<String, Summary> summaries = new TreeMap<>();
+        for (ProvisioningActivity activity : CloudStatistics.get().getActivities()) {
+            ProvisioningActivity.Id id = activity.getId();
+            if (!cloudName.equals(id.getCloudName()) || id.getTemplateName() == null) continue;
+
+            ProvisioningTimeline timeline = of(activity);
+            if (timeline == null) continue;
+
+            Summary summary = summaries.get(id.getTemplateName());
+            if (summary == null) {
+                summary = new Summary();
+                summaries.put(id.getTemplateName(), summary);
+            }
+            summary.add(timeline);
+        }
+        return summaries;
+    }
+
+    /**
+     * Percentiles of time spent reaching individual milestones.
+     */
+    public static final class Summary {
+        private final Map<Milestone, List<Long>> durations = new EnumMap<>(Milestone.class);
+        private final List<Long> totals = new ArrayList<>();
+        private int count;
+
+        private void add(@Nonnull ProvisioningTimeline timeline) {
+            count++;
+            for (Map.Entry<Milestone, Long> e : timeline.getDurations().entrySet()) {
+                List<Long> list = durations.get(e.getKey());
+                if (list == null) {
+                    list = new ArrayList<>();
+                    durations.put(e.getKey(), list);
+                }
+                list.add(e.getValue());
+            }
+            Long total = timeline.getTotal();
+            if (total != null) {
+                totals.add(total);
+            }
+        }
+
+        /**
+         * Number of timelines aggregated.
+         */
+        public int getCount() {
+            return count;
+        }
+
+        /**
+         * Milestones there are durations recorded for.
+         */
+        public @Nonnull List<Milestone> getMilestones() {
+            return new ArrayList<>(durations.keySet());
+        }
+
+        /**
+         * @return Duration in milliseconds, null if not known.
+         */
+        public @CheckForNull Long getPercentile(@Nonnull Milestone milestone, int percent) {
+            return percentile(durations.get(milestone), percent);
+        }
+
+        /**
+         * @return Duration from planned to connected in milliseconds, null if not known.
+         */
+        public @CheckForNull Long getTotalPercentile(int percent) {
+            return percentile(totals, percent);
+        }
+
+        public @Nonnull String formatPercentile(@Nonnull Milestone milestone, int percent) {
+            return format(getPercentile(milestone, percent));
+        }
+
+        public @Nonnull String formatTotalPercentile(int percent) {
+            return format(getTotalPercentile(percent));
+        }
+
+        private static @Nonnull String format(@CheckForNull Long duration) {
+            return duration == null ? "N/A" : Util.getTimeSpanString(duration);
+        }
+
+        private static @CheckForNull Long percentile(@CheckForNull List<Long> values, int percent) {
+            if (values == null || values.isEmpty()) return null;
+
+            List<Long> sorted = new ArrayList<>(values);
+            Collections.sort(sorted);
+            int rank = (int) Math.ceil(percent / 100D * sorted.size());
+            return sorted.get(Math.max(0, rank - 1));
+        }
+    }
+
+    /**
+     * Record agents connected.
+     */
+    @Extension @Restricted(NoExternalUse.class)
+    public static final class Listener extends ComputerListener {
+        @Override
+        public void onOnline(Computer c, TaskListener listener) {
+            if (!(c instanceof JCloudsComputer)) return;
+
+            ProvisioningTimeline timeline = of(CloudStatistics.get().getActivityFor((JCloudsComputer) c));
+            if (timeline != null) {
+                timeline.record(Milestone.CONNECTED);
+            }
+        }
+    }
+}
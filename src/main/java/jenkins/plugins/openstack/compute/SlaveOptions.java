@@ -46,7 +46,7 @@ import java.io.Serializable;
  */
 public class SlaveOptions implements Describable<SlaveOptions>, Serializable {
     private static final long serialVersionUID = -1L;
-    private static final SlaveOptions EMPTY = new SlaveOptions(null, null, null, null, null, null, null, null, null, null, null, null, null, null, null, null);
+    private static final SlaveOptions EMPTY = new SlaveOptions(null, null, null, null, null, null, null, null, null, null, null, null, null, null, null, null, null, null, null);
 
     // Provisioning attributes
     private final @CheckForNull String imageId;
@@ -59,6 +59,8 @@ public class SlaveOptions implements Describable<SlaveOptions>, Serializable {
     private final @CheckForNull String availabilityZone;
     private final Integer startTimeout;
     private final @CheckForNull String keyPairName;
+    private final Integer volumePool;
+    private final Integer volumeSize;
 
     // Slave launch attributes
     private final Integer numExecutors;
@@ -69,6 +71,7 @@ public class SlaveOptions implements Describable<SlaveOptions>, Serializable {
 
     // Slave attributes
     private final Integer retentionTime;
+    private final Integer stoppedCap;
 
     public @CheckForNull String getFsRoot() {
         return fsRoot;
@@ -114,6 +117,20 @@ public class SlaveOptions implements Describable<SlaveOptions>, Serializable {
         return keyPairName;
     }
 
+    /**
+     * Number of volumes per template cloned from the image ahead of time for the servers to boot from.
+     */
+    public Integer getVolumePool() {
+        return volumePool;
+    }
+
+    /**
+     * Size of the pooled volumes in GB, 0 to derive it from the flavor or the image.
+     */
+    public Integer getVolumeSize() {
+        return volumeSize;
+    }
+
     public Integer getNumExecutors() {
         return numExecutors;
     }
@@ -134,6 +151,13 @@ public class SlaveOptions implements Describable<SlaveOptions>, Serializable {
         return retentionTime;
     }
 
+    /**
+     * Number of idle servers per template kept stopped to be started again instead of booting new ones.
+     */
+    public Integer getStoppedCap() {
+        return stoppedCap;
+    }
+
     public SlaveOptions(Builder b) {
         this(
                 b.imageId,
@@ -151,7 +175,10 @@ public class SlaveOptions implements Describable<SlaveOptions>, Serializable {
                 b.fsRoot,
                 b.credentialsId,
                 b.slaveType,
-                b.retentionTime
+                b.retentionTime,
+                b.stoppedCap,
+                b.volumePool,
+                b.volumeSize
         );
     }
 
@@ -172,7 +199,10 @@ public class SlaveOptions implements Describable<SlaveOptions>, Serializable {
             String fsRoot,
             String credentialsId,
             JCloudsCloud.SlaveType slaveType,
-            Integer retentionTime
+            Integer retentionTime,
+            Integer stoppedCap,
+            Integer volumePool,
+            Integer volumeSize
     ) {
         this.imageId = Util.fixEmpty(imageId);
         this.hardwareId = Util.fixEmpty(hardwareId);
@@ -190,6 +220,9 @@ public class SlaveOptions implements Describable<SlaveOptions>, Serializable {
         this.credentialsId = Util.fixEmpty(credentialsId);
         this.slaveType = slaveType;
         this.retentionTime = retentionTime;
+        this.stoppedCap = stoppedCap;
+        this.volumePool = volumePool;
+        this.volumeSize = volumeSize;
     }
 
     /**
@@ -213,6 +246,9 @@ public class SlaveOptions implements Describable<SlaveOptions>, Serializable {
                 .credentialsId(_override(this.credentialsId, o.credentialsId))
                 .slaveType(_override(this.slaveType, o.slaveType))
                 .retentionTime(_override(this.retentionTime, o.retentionTime))
+                .stoppedCap(_override(this.stoppedCap, o.stoppedCap))
+                .volumePool(_override(this.volumePool, o.volumePool))
+                .volumeSize(_override(this.volumeSize, o.volumeSize))
                 .build()
         ;
     }
@@ -242,6 +278,9 @@ public class SlaveOptions implements Describable<SlaveOptions>, Serializable {
                 .credentialsId(_erase(this.credentialsId, defaults.credentialsId))
                 .slaveType(_erase(this.slaveType, defaults.slaveType))
                 .retentionTime(_erase(this.retentionTime, defaults.retentionTime))
+                .stoppedCap(_erase(this.stoppedCap, defaults.stoppedCap))
+                .volumePool(_erase(this.volumePool, defaults.volumePool))
+                .volumeSize(_erase(this.volumeSize, defaults.volumeSize))
                 .build()
         ;
     }
@@ -271,6 +310,9 @@ public class SlaveOptions implements Describable<SlaveOptions>, Serializable {
                 .append("credentialsId", credentialsId)
                 .append("slaveType", slaveType)
                 .append("retentionTime", retentionTime)
+                .append("stoppedCap", stoppedCap)
+                .append("volumePool", volumePool)
+                .append("volumeSize", volumeSize)
                 .toString()
         ;
     }
@@ -297,7 +339,10 @@ public class SlaveOptions implements Describable<SlaveOptions>, Serializable {
         if (fsRoot != null ? !fsRoot.equals(that.fsRoot) : that.fsRoot != null) return false;
         if (credentialsId != null ? !credentialsId.equals(that.credentialsId) : that.credentialsId != null) return false;
         if (slaveType != that.slaveType) return false;
-        return retentionTime != null ? retentionTime.equals(that.retentionTime) : that.retentionTime == null;
+        if (retentionTime != null ? !retentionTime.equals(that.retentionTime) : that.retentionTime != null) return false;
+        if (stoppedCap != null ? !stoppedCap.equals(that.stoppedCap) : that.stoppedCap != null) return false;
+        if (volumePool != null ? !volumePool.equals(that.volumePool) : that.volumePool != null) return false;
+        return volumeSize != null ? volumeSize.equals(that.volumeSize) : that.volumeSize == null;
 
     }
 
@@ -319,6 +364,9 @@ public class SlaveOptions implements Describable<SlaveOptions>, Serializable {
         result = 31 * result + (credentialsId != null ? credentialsId.hashCode() : 0);
         result = 31 * result + (slaveType != null ? slaveType.hashCode() : 0);
         result = 31 * result + (retentionTime != null ? retentionTime.hashCode() : 0);
+        result = 31 * result + (stoppedCap != null ? stoppedCap.hashCode() : 0);
+        result = 31 * result + (volumePool != null ? volumePool.hashCode() : 0);
+        result = 31 * result + (volumeSize != null ? volumeSize.hashCode() : 0);
         return result;
     }
 
@@ -343,6 +391,9 @@ public class SlaveOptions implements Describable<SlaveOptions>, Serializable {
                 .credentialsId(credentialsId)
                 .slaveType(slaveType)
                 .retentionTime(retentionTime)
+                .stoppedCap(stoppedCap)
+                .volumePool(volumePool)
+                .volumeSize(volumeSize)
         ;
     }
 
@@ -373,6 +424,9 @@ public class SlaveOptions implements Describable<SlaveOptions>, Serializable {
 
         private @CheckForNull JCloudsCloud.SlaveType slaveType;
         private @CheckForNull Integer retentionTime;
+        private @CheckForNull Integer stoppedCap;
+        private @CheckForNull Integer volumePool;
+        private @CheckForNull Integer volumeSize;
 
         public Builder() {}
 
@@ -459,6 +513,21 @@ public class SlaveOptions implements Describable<SlaveOptions>, Serializable {
             this.retentionTime = retentionTime;
             return this;
         }
+
+        public @Nonnull Builder stoppedCap(Integer stoppedCap) {
+            this.stoppedCap = stoppedCap;
+            return this;
+        }
+
+        public @Nonnull Builder volumePool(Integer volumePool) {
+            this.volumePool = volumePool;
+            return this;
+        }
+
+        public @Nonnull Builder volumeSize(Integer volumeSize) {
+            this.volumeSize = volumeSize;
+            return this;
+        }
     }
 
     /**
@@ -44,7 +44,10 @@ import hudson.util.FormValidation;
 import hudson.util.ListBoxModel;
 import hudson.util.ReflectionUtils;
 import jenkins.model.Jenkins;
-import jenkins.plugins.openstack.compute.internal.Openstack;
+import jenkins.plugins.openstack.compute.internal.Catalog;
+import jenkins.plugins.openstack.compute.internal.ImageIndex;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
 import org.jenkinsci.lib.configprovider.ConfigProvider;
 import org.jenkinsci.lib.configprovider.model.Config;
 import org.kohsuke.accmod.Restricted;
@@ -52,19 +55,22 @@ import org.kohsuke.accmod.restrictions.DoNotUse;
 import org.kohsuke.accmod.restrictions.NoExternalUse;
 import org.kohsuke.stapler.AncestorInPath;
 import org.kohsuke.stapler.QueryParameter;
+import org.kohsuke.stapler.StaplerResponse;
 import org.openstack4j.api.exceptions.AuthenticationException;
 import org.openstack4j.api.exceptions.ConnectionException;
 import org.openstack4j.model.compute.Flavor;
-import org.openstack4j.model.image.Image;
+import org.openstack4j.model.network.Network;
 import org.springframework.util.StringUtils;
 
 import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
+import java.io.IOException;
 import java.lang.annotation.Retention;
 import java.lang.annotation.Target;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
@@ -81,6 +87,10 @@ public final class SlaveOptionsDescriptor extends hudson.model.Descriptor<SlaveO
     private static final Logger LOGGER = Logger.getLogger(SlaveOptionsDescriptor.class.getName());
     private static final FormValidation OK = FormValidation.ok();
     private static final FormValidation REQUIRED = FormValidation.error(hudson.util.Messages.FormValidation_ValidateRequired());
+    private static final int IMAGE_SEARCH_PAGE = 50;
+
+    // Shared by all the fields filled from OpenStack
+    private final transient Catalog.Cache catalogs = new Catalog.Cache();
 
     public SlaveOptionsDescriptor() {
         super(SlaveOptions.class);
@@ -159,6 +169,69 @@ public final class SlaveOptionsDescriptor extends hudson.model.Descriptor<SlaveO
         return FormValidation.validateNonNegativeInteger(value);
     }
 
+    @Restricted(DoNotUse.class)
+    public FormValidation doCheckStoppedCap(
+            @QueryParameter String value,
+            @RelativePath("../../slaveOptions") @QueryParameter("stoppedCap") String def
+    ) {
+        if (Util.fixEmpty(value) == null) {
+            String d = getDefault(def, opts().getStoppedCap());
+            if (d != null) return FormValidation.ok(def(d));
+            return REQUIRED;
+        }
+        try {
+            if (Integer.parseInt(value) == 0)
+                return FormValidation.ok("Delete idle servers");
+        } catch (NumberFormatException e) {
+        }
+        return FormValidation.validateNonNegativeInteger(value);
+    }
+
+    @Restricted(DoNotUse.class)
+    public FormValidation doCheckVolumePool(
+            @QueryParameter String value,
+            @RelativePath("../../slaveOptions") @QueryParameter("volumePool") String def,
+            @QueryParameter String volumeSize,
+            @RelativePath("../../slaveOptions") @QueryParameter("volumeSize") String defSize
+    ) {
+        if (Util.fixEmpty(value) == null) {
+            String d = getDefault(def, opts().getVolumePool());
+            if (d != null) return FormValidation.ok(def(d));
+            return REQUIRED;
+        }
+        try {
+            int pool = Integer.parseInt(value);
+            if (pool == 0)
+                return FormValidation.ok("Boot from image");
+
+            String size = getDefault(volumeSize, getDefault(defSize, opts().getVolumeSize()));
+            if (pool > 0 && (size == null || Integer.parseInt(size) == 0)) return FormValidation.warning(
+                    "No volume size configured, the root disk of the flavor or the minimal disk of the image is used. " +
+                    "The pool stays empty when neither is known, as is the case of flavors meant to boot from volume."
+            );
+        } catch (NumberFormatException e) {
+        }
+        return FormValidation.validateNonNegativeInteger(value);
+    }
+
+    @Restricted(DoNotUse.class)
+    public FormValidation doCheckVolumeSize(
+            @QueryParameter String value,
+            @RelativePath("../../slaveOptions") @QueryParameter("volumeSize") String def
+    ) {
+        if (Util.fixEmpty(value) == null) {
+            String d = getDefault(def, opts().getVolumeSize());
+            if (d != null) return FormValidation.ok(def(d));
+            return REQUIRED;
+        }
+        try {
+            if (Integer.parseInt(value) == 0)
+                return FormValidation.ok("Root disk of the flavor or minimal disk of the image");
+        } catch (NumberFormatException e) {
+        }
+        return FormValidation.validateNonNegativeInteger(value);
+    }
+
     @Restricted(DoNotUse.class)
     @InjectOsAuth
     public ListBoxModel doFillFloatingIpPoolItems(
@@ -169,11 +242,13 @@ public final class SlaveOptionsDescriptor extends hudson.model.Descriptor<SlaveO
         m.add("None specified", "");
 
         try {
-            final Openstack openstack = Openstack.Factory.get(endPointUrl, identity, credential, zone);
-            for (String p : openstack.getSortedIpPools()) {
-                m.add(p);
+            List<String> pools = getCatalog(endPointUrl, identity, credential, zone).getIpPools();
+            if (pools != null) {
+                for (String p : pools) {
+                    m.add(p);
+                }
+                return m;
             }
-            return m;
         } catch (AuthenticationException | FormValidation | ConnectionException ex) {
             LOGGER.log(Level.FINEST, "Openstack call failed", ex);
         } catch (Exception ex) {
@@ -211,11 +286,13 @@ public final class SlaveOptionsDescriptor extends hudson.model.Descriptor<SlaveO
         m.add("None specified", "");
 
         try {
-            final Openstack openstack = Openstack.Factory.get(endPointUrl, identity, credential, zone);
-            for (Flavor flavor : openstack.getSortedFlavors()) {
-                m.add(String.format("%s (%s)", flavor.getName(), flavor.getId()), flavor.getId());
+            Collection<? extends Flavor> flavors = getCatalog(endPointUrl, identity, credential, zone).getFlavors();
+            if (flavors != null) {
+                for (Flavor flavor : flavors) {
+                    m.add(String.format("%s (%s)", flavor.getName(), flavor.getId()), flavor.getId());
+                }
+                return m;
             }
-            return m;
         } catch (AuthenticationException | FormValidation | ConnectionException ex) {
             LOGGER.log(Level.FINEST, "Openstack call failed", ex);
         } catch (Exception ex) {
@@ -242,37 +319,37 @@ public final class SlaveOptionsDescriptor extends hudson.model.Descriptor<SlaveO
         return OK;
     }
 
+    /**
+     * Image names starting with the prefix, a page at a time, for the image field to offer.
+     */
     @Restricted(DoNotUse.class)
-    @InjectOsAuth
-    public ListBoxModel doFillImageIdItems(
-            @QueryParameter String imageId,
+    public void doSearchImages(
+            StaplerResponse rsp, @QueryParameter String prefix, @QueryParameter int offset,
             @QueryParameter String endPointUrl, @QueryParameter String identity, @QueryParameter String credential, @QueryParameter String zone
-    ) {
-
-        ListBoxModel m = new ListBoxModel();
-        m.add("None specified", "");
+    ) throws IOException {
+        ImageIndex.Page page = searchImages(prefix, offset, endPointUrl, identity, credential, zone);
+        JSONObject json = new JSONObject()
+                .element("names", page == null ? new JSONArray() : JSONArray.fromObject(page.getNames()))
+                .element("more", page != null && page.hasMore())
+        ;
+        rsp.setContentType("application/json;charset=UTF-8");
+        rsp.getWriter().print(json);
+    }
 
+    /*package for testing*/ @CheckForNull ImageIndex.Page searchImages(
+            String prefix, int offset, String endPointUrl, String identity, String credential, String zone
+    ) {
         try {
-            final Openstack openstack = Openstack.Factory.get(endPointUrl, identity, credential, zone);
-            for (Image image : openstack.getSortedImages()) {
-                String name = image.getName();
-                  if (Util.fixEmpty(name) == null) {
-                    name = image.getId();
-                }
-                m.add(name);
+            ImageIndex images = getCatalog(endPointUrl, identity, credential, zone).getImages();
+            if (images != null) {
+                return images.search(prefix, Math.max(0, offset), IMAGE_SEARCH_PAGE);
             }
-            return m;
         } catch (AuthenticationException | FormValidation | ConnectionException ex) {
             LOGGER.log(Level.FINEST, "Openstack call failed", ex);
         } catch (Exception ex) {
             LOGGER.log(Level.SEVERE, ex.getMessage(), ex);
         }
-
-        if (Util.fixEmpty(imageId) != null) {
-            m.add(imageId);
-        }
-
-        return m;
+        return null;
     }
 
     @Restricted(DoNotUse.class)
@@ -299,11 +376,13 @@ public final class SlaveOptionsDescriptor extends hudson.model.Descriptor<SlaveO
         m.add("None specified", "");
 
         try {
-            Openstack openstack = Openstack.Factory.get(endPointUrl, identity, credential, zone);
-            for (org.openstack4j.model.network.Network network : openstack.getSortedNetworks()) {
-                m.add(String.format("%s (%s)", network.getName(), network.getId()), network.getId());
+            Collection<? extends Network> networks = getCatalog(endPointUrl, identity, credential, zone).getNetworks();
+            if (networks != null) {
+                for (Network network : networks) {
+                    m.add(String.format("%s (%s)", network.getName(), network.getId()), network.getId());
+                }
+                return m;
             }
-            return m;
         } catch (AuthenticationException | FormValidation | ConnectionException ex) {
             LOGGER.log(Level.FINEST, "Openstack call failed", ex);
         } catch (Exception ex) {
@@ -455,11 +534,13 @@ public final class SlaveOptionsDescriptor extends hudson.model.Descriptor<SlaveO
         m.add("None specified", "");
 
         try {
-            Openstack openstack = Openstack.Factory.get(endPointUrl, identity, credential, zone);
-            for (String keyPair: openstack.getSortedKeyPairNames()) {
-                m.add(keyPair);
+            List<String> keyPairs = getCatalog(endPointUrl, identity, credential, zone).getKeyPairNames();
+            if (keyPairs != null) {
+                for (String keyPair: keyPairs) {
+                    m.add(keyPair);
+                }
+                return m;
             }
-            return m;
         } catch (AuthenticationException | FormValidation | ConnectionException ex) {
             LOGGER.log(Level.FINEST, "Openstack call failed", ex);
         } catch (Exception ex) {
@@ -512,6 +593,22 @@ public final class SlaveOptionsDescriptor extends hudson.model.Descriptor<SlaveO
         return OK;
     }
 
+    /*package*/ @Nonnull Catalog getCatalog(
+            String endPointUrl, String identity, String credential, String zone
+    ) throws FormValidation {
+        return catalogs.get(endPointUrl, identity, credential, zone);
+    }
+
+    /**
+     * Load the catalog again not to wait for the cached one to expire.
+     */
+    /*package*/ @Nonnull Catalog refreshCatalog(
+            String endPointUrl, String identity, String credential, String zone
+    ) throws FormValidation {
+        catalogs.invalidate(endPointUrl, identity, credential, zone);
+        return catalogs.get(endPointUrl, identity, credential, zone);
+    }
+
     /**
      * Get Default value label.
      */
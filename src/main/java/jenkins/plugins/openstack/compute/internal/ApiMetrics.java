@@ -0,0 +1,152 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.openstack.compute.internal;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import jenkins.metrics.api.Metrics;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.util.Locale;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Latency and errors of calls to OpenStack.
+ *
+ * Every operation has a timer <tt>jenkins.plugins.openstack.&lt;cloud>.api.&lt;service>.&lt;operation></tt> and an error
+ * meter of the same name suffixed with <tt>.errors</tt>. They are registered with the metrics plugin that exposes them
+ * over its REST API as well as JMX. Calls are also recorded as {@link CloudEvents}.
+ *
+ * @author ogondza.
+ */
+/*package*/ final class ApiMetrics {
+    private static final Logger LOGGER = Logger.getLogger(ApiMetrics.class.getName());
+
+    /**
+     * Scope for calls not made on behalf of a configured cloud, like form validation.
+     */
+    private static final String UNNAMED = "unnamed";
+
+    // Used when metrics plugin is not available
+    private static final MetricRegistry FALLBACK = new MetricRegistry();
+
+    /*package*/ enum Service {
+        KEYSTONE, NOVA, NEUTRON, GLANCE, CINDER;
+
+        private final String metricName = name().toLowerCase(Locale.ENGLISH);
+    }
+
+    private ApiMetrics() {}
+
+    /**
+     * Start timing a call.
+     *
+     * @param cloudName Name of the cloud the call is made for, if known.
+     */
+    /*package*/ static @Nonnull Call start(@CheckForNull String cloudName, @Nonnull Service service, @Nonnull String operation) {
+        String name = MetricRegistry.name(
+                "jenkins.plugins.openstack", cloudName == null ? UNNAMED : cloudName, "api", service.metricName, operation
+        );
+        MetricRegistry registry = registry();
+        CloudEvents.Event event = CloudEvents.begin(
+                CloudEvents.Type.API_CALL, cloudName, null, null, service.metricName + "." + operation
+        );
+        return new Call(registry.timer(name).time(), registry.meter(name + ".errors"), event);
+    }
+
+    /**
+     * Call to OpenStack timed by {@link #call}.
+     */
+    /*package*/ interface Operation<T, E extends Exception> {
+        T run() throws E;
+    }
+
+    /**
+     * Time the operation, counting it as failed in case of any exception or error.
+     *
+     * @param cloudName Name of the cloud the call is made for, if known.
+     */
+    /*package*/ static <T, E extends Exception> T call(
+            @CheckForNull String cloudName, @Nonnull Service service, @Nonnull String operation, @Nonnull Operation<T, E> op
+    ) throws E {
+        Call call = start(cloudName, service, operation);
+        try {
+            return op.run();
+        } catch (Throwable ex) {
+            // Rethrown as is so the compiler knows it is E, runtime exception or error
+            call.failed(ex);
+            throw ex;
+        } finally {
+            call.stop();
+        }
+    }
+
+    private static @Nonnull MetricRegistry registry() {
+        try {
+            return Metrics.metricRegistry();
+        } catch (RuntimeException|LinkageError ex) {
+            // Metrics are nice to have
+            LOGGER.log(Level.FINEST, "Metrics registry not available", ex);
+            return FALLBACK;
+        }
+    }
+
+    /**
+     * Call in progress.
+     */
+    /*package*/ static final class Call {
+        private final Timer.Context timer;
+        private final Meter errors;
+        private final CloudEvents.Event event;
+        private @Nonnull String outcome = "success";
+
+        private Call(@Nonnull Timer.Context timer, @Nonnull Meter errors, @Nonnull CloudEvents.Event event) {
+            this.timer = timer;
+            this.errors = errors;
+            this.event = event;
+        }
+
+        /**
+         * Record the call has failed.
+         *
+         * @return The exception passed in so it can be rethrown.
+         */
+        /*package*/ @Nonnull <T extends Throwable> T failed(@Nonnull T ex) {
+            errors.mark();
+            outcome = CloudEvents.outcome(ex);
+            return ex;
+        }
+
+        /**
+         * Record the call has completed, successfully or not.
+         */
+        /*package*/ void stop() {
+            timer.stop();
+            event.end(outcome);
+        }
+    }
+}
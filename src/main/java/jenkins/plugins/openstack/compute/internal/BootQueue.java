@@ -0,0 +1,231 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.openstack.compute.internal;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListenableFutureTask;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Bounded queue of server boots.
+ *
+ * At most {@link #getLimit()} tasks run at a time. Pending tasks are grouped by fairness key and the groups take turns
+ * so single template/label can not starve the others. Within a group tasks are started in FIFO order. Futures
+ * {@link #ordered(String, Future) ordered} by the same key report completion in the order they were passed in.
+ *
+ * @author ogondza.
+ */
+@Restricted(NoExternalUse.class)
+public final class BootQueue {
+
+    private final @Nonnull Executor executor;
+
+    // Guarded by this
+    private final Map<String, Deque<FutureTask<?>>> pending = new LinkedHashMap<>();
+    private final Map<String, Future<?>> tails = new HashMap<>();
+    private int running = 0;
+    private int limit;
+
+    public BootQueue(@Nonnull Executor executor, int limit) {
+        this.executor = executor;
+        setLimit(limit);
+    }
+
+    public synchronized int getLimit() {
+        return limit;
+    }
+
+    public synchronized void setLimit(int limit) {
+        if (limit < 1) throw new IllegalArgumentException("Limit must be positive: " + limit);
+        this.limit = limit;
+        dispatch();
+    }
+
+    /**
+     * Number of tasks waiting for a slot.
+     */
+    public synchronized int getPending() {
+        int count = 0;
+        for (Deque<FutureTask<?>> group : pending.values()) {
+            count += group.size();
+        }
+        return count;
+    }
+
+    public synchronized int getRunning() {
+        return running;
+    }
+
+    /**
+     * @param fairnessKey Tasks of the same key are started in FIFO order, different keys take turns.
+     */
+    public synchronized @Nonnull <T> ListenableFuture<T> submit(@Nonnull String fairnessKey, @Nonnull Callable<T> callable) {
+        ListenableFutureTask<T> task = ListenableFutureTask.create(callable);
+        Deque<FutureTask<?>> group = pending.get(fairnessKey);
+        if (group == null) {
+            group = new ArrayDeque<>();
+            pending.put(fairnessKey, group);
+        }
+        group.add(task);
+
+        dispatch();
+        return task;
+    }
+
+    /**
+     * Make the future not to report completion before those passed in earlier with the same key.
+     *
+     * @param orderingKey Futures of the same key complete in FIFO order.
+     */
+    public synchronized @Nonnull <T> Future<T> ordered(@Nonnull String orderingKey, @Nonnull Future<T> future) {
+        // Forget the tails that can not delay anything
+        for (Iterator<Future<?>> it = tails.values().iterator(); it.hasNext();) {
+            if (it.next().isDone()) {
+                it.remove();
+            }
+        }
+
+        Ordered<T> ordered = new Ordered<>(future, tails.get(orderingKey));
+        tails.put(orderingKey, ordered);
+        return ordered;
+    }
+
+    // Guarded by this
+    private void dispatch() {
+        while (running < limit && !pending.isEmpty()) {
+            Iterator<Map.Entry<String, Deque<FutureTask<?>>>> it = pending.entrySet().iterator();
+            Map.Entry<String, Deque<FutureTask<?>>> next = it.next();
+            it.remove();
+
+            final FutureTask<?> task = next.getValue().poll();
+            if (!next.getValue().isEmpty()) {
+                // Move the group to the end of the line
+                pending.put(next.getKey(), next.getValue());
+            }
+
+            running++;
+            try {
+                executor.execute(new Runnable() {
+                    @Override public void run() {
+                        try {
+                            task.run();
+                        } finally {
+                            finished();
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException ex) {
+                // Shutting down
+                running--;
+                task.cancel(false);
+            }
+        }
+    }
+
+    private synchronized void finished() {
+        running--;
+        dispatch();
+    }
+
+    /**
+     * Future that is not done before its predecessor.
+     */
+    private static final class Ordered<T> implements Future<T> {
+        private final @Nonnull Future<T> delegate;
+        private volatile @CheckForNull Future<?> predecessor;
+
+        private Ordered(@Nonnull Future<T> delegate, @CheckForNull Future<?> predecessor) {
+            this.delegate = delegate;
+            this.predecessor = predecessor;
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            return delegate.cancel(mayInterruptIfRunning);
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return delegate.isCancelled();
+        }
+
+        @Override
+        public boolean isDone() {
+            Future<?> p = predecessor;
+            if (p != null) {
+                if (!p.isDone()) return false;
+                predecessor = null;
+            }
+            return delegate.isDone();
+        }
+
+        @Override
+        public T get() throws InterruptedException, ExecutionException {
+            Future<?> p = predecessor;
+            if (p != null) {
+                try {
+                    p.get();
+                } catch (ExecutionException|CancellationException ignored) {
+                    // Outcome of the predecessor is not our concern
+                }
+                predecessor = null;
+            }
+            return delegate.get();
+        }
+
+        @Override
+        public T get(long timeout, @Nonnull TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            Future<?> p = predecessor;
+            if (p != null) {
+                try {
+                    p.get(timeout, unit);
+                } catch (ExecutionException|CancellationException ignored) {
+                    // Outcome of the predecessor is not our concern
+                }
+                predecessor = null;
+            }
+            return delegate.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        }
+    }
+}
@@ -0,0 +1,270 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.openstack.compute.internal;
+
+import com.google.common.util.concurrent.SettableFuture;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import hudson.Util;
+import hudson.util.FormValidation;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+import org.openstack4j.api.exceptions.AuthenticationException;
+import org.openstack4j.api.exceptions.ConnectionException;
+import org.openstack4j.model.compute.Flavor;
+import org.openstack4j.model.network.Network;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Resources of the tenant to choose from when configuring the plugin.
+ *
+ * Lists that failed to load are null. Such a catalog is cached for {@link #failedTtl} only, so the lists are retried soon.
+ *
+ * @author ogondza.
+ */
+@Restricted(NoExternalUse.class)
+public final class Catalog {
+    private static final Logger LOGGER = Logger.getLogger(Catalog.class.getName());
+
+    @SuppressFBWarnings({"MS_SHOULD_BE_FINAL", "Left modifiable from groovy"})
+    /*package*/ static long ttl = Long.getLong(Catalog.class.getName() + ".ttl", TimeUnit.MINUTES.toMillis(5));
+
+    @SuppressFBWarnings({"MS_SHOULD_BE_FINAL", "Left modifiable from groovy"})
+    /*package*/ static long failedTtl = Long.getLong(Catalog.class.getName() + ".failedTtl", TimeUnit.SECONDS.toMillis(30));
+
+    private final @CheckForNull ImageIndex images;
+    private final @CheckForNull Collection<? extends Flavor> flavors;
+    private final @CheckForNull Collection<? extends Network> networks;
+    private final @CheckForNull List<String> ipPools;
+    private final @CheckForNull List<String> keyPairNames;
+
+    /*package for testing*/ Catalog(@Nonnull Openstack openstack) {
+        ImageIndex images = null;
+        try {
+            images = new ImageIndex(openstack.getSortedImages());
+        } catch (RuntimeException ex) {
+            failed("images", ex);
+        }
+        this.images = images;
+
+        Collection<? extends Flavor> flavors = null;
+        try {
+            flavors = openstack.getSortedFlavors();
+        } catch (RuntimeException ex) {
+            failed("flavors", ex);
+        }
+        this.flavors = flavors;
+
+        Collection<? extends Network> networks = null;
+        try {
+            networks = openstack.getSortedNetworks();
+        } catch (RuntimeException ex) {
+            failed("networks", ex);
+        }
+        this.networks = networks;
+
+        List<String> ipPools = null;
+        try {
+            ipPools = openstack.getSortedIpPools();
+        } catch (RuntimeException ex) {
+            failed("floating IP pools", ex);
+        }
+        this.ipPools = ipPools;
+
+        List<String> keyPairNames = null;
+        try {
+            keyPairNames = openstack.getSortedKeyPairNames();
+        } catch (RuntimeException ex) {
+            failed("key pairs", ex);
+        }
+        this.keyPairNames = keyPairNames;
+    }
+
+    /**
+     * All the lists were loaded.
+     */
+    /*package*/ boolean isComplete() {
+        return images != null && flavors != null && networks != null && ipPools != null && keyPairNames != null;
+    }
+
+    private static void failed(@Nonnull String what, @Nonnull RuntimeException ex) {
+        Level level = ex instanceof AuthenticationException || ex instanceof ConnectionException
+                ? Level.FINEST
+                : Level.WARNING
+        ;
+        LOGGER.log(level, "Unable to list " + what, ex);
+    }
+
+    public @CheckForNull ImageIndex getImages() {
+        return images;
+    }
+
+    public @CheckForNull Collection<? extends Flavor> getFlavors() {
+        return flavors;
+    }
+
+    public @CheckForNull Collection<? extends Network> getNetworks() {
+        return networks;
+    }
+
+    public @CheckForNull List<String> getIpPools() {
+        return ipPools;
+    }
+
+    public @CheckForNull List<String> getKeyPairNames() {
+        return keyPairNames;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s images, %s flavors, %s networks, %s floating IP pools, %s key pairs",
+                images == null ? "?" : images.size(), size(flavors), size(networks), size(ipPools), size(keyPairNames)
+        );
+    }
+
+    private static String size(@CheckForNull Collection<?> c) {
+        return c == null ? "?" : String.valueOf(c.size());
+    }
+
+    /**
+     * Catalogs by authentication, loaded once per {@link #ttl} no matter how many form fields ask.
+     *
+     * Concurrent requests for the same catalog wait for a single load.
+     */
+    public static final class Cache {
+        private final ConcurrentMap<Key, Entry> entries = new ConcurrentHashMap<>();
+
+        public @Nonnull Catalog get(
+                @CheckForNull String endPointUrl, @CheckForNull String identity, @CheckForNull String credential,
+                @CheckForNull String zone
+        ) throws FormValidation {
+            Key key = new Key(endPointUrl, identity, credential, zone);
+            for (;;) {
+                Entry existing = entries.get(key);
+                if (existing != null && !existing.isExpired()) return existing.await();
+
+                Entry fresh = new Entry();
+                boolean owner = existing == null
+                        ? entries.putIfAbsent(key, fresh) == null
+                        : entries.replace(key, existing, fresh)
+                ;
+                if (!owner) continue; // Someone else is loading it
+
+                purgeExpired();
+                try {
+                    Catalog catalog = new Catalog(Openstack.Factory.get(
+                            Util.fixNull(endPointUrl), Util.fixNull(identity), Util.fixNull(credential), zone
+                    ));
+                    fresh.partial = !catalog.isComplete();
+                    fresh.future.set(catalog);
+                    return catalog;
+                } catch (FormValidation|RuntimeException|Error ex) {
+                    // Do not remember failures so fixed credentials or recovered endpoint are picked up
+                    entries.remove(key, fresh);
+                    fresh.future.setException(ex);
+                    throw ex;
+                }
+            }
+        }
+
+        /**
+         * Discard the catalog so it is loaded again next time.
+         */
+        public void invalidate(
+                @CheckForNull String endPointUrl, @CheckForNull String identity, @CheckForNull String credential,
+                @CheckForNull String zone
+        ) {
+            entries.remove(new Key(endPointUrl, identity, credential, zone));
+        }
+
+        private void purgeExpired() {
+            for (Map.Entry<Key, Entry> e : entries.entrySet()) {
+                if (e.getValue().isExpired()) {
+                    entries.remove(e.getKey(), e.getValue());
+                }
+            }
+        }
+    }
+
+    private static final class Entry {
+        private final long created = System.currentTimeMillis();
+        private final SettableFuture<Catalog> future = SettableFuture.create();
+        private volatile boolean partial = false;
+
+        private boolean isExpired() {
+            return System.currentTimeMillis() - created > (partial ? failedTtl : ttl);
+        }
+
+        private @Nonnull Catalog await() throws FormValidation {
+            try {
+                return future.get();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw FormValidation.error(ex, "Interrupted while loading the catalog");
+            } catch (ExecutionException ex) {
+                Throwable cause = ex.getCause();
+                if (cause instanceof FormValidation) throw (FormValidation) cause;
+                if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+                if (cause instanceof Error) throw (Error) cause;
+                throw new AssertionError(cause);
+            }
+        }
+    }
+
+    private static final class Key {
+        private final String[] fields;
+
+        private Key(String endPointUrl, String identity, String credential, String zone) {
+            credential = Util.fixEmptyAndTrim(credential);
+            fields = new String[] {
+                    Util.fixEmptyAndTrim(endPointUrl),
+                    Util.fixEmptyAndTrim(identity),
+                    // Not to keep the secret in memory longer than needed
+                    credential == null ? null : Util.getDigestOf(credential),
+                    Util.fixEmptyAndTrim(zone)
+            };
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return this == o || o instanceof Key && Arrays.equals(fields, ((Key) o).fields);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(fields);
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.openstack.compute.internal;
+
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Events of cloud operations for profiling, recorded by JDK Flight Recorder when available.
+ *
+ * The implementation is compiled only when building on JDK 11 or newer (see <tt>src/main/jfr</tt>) and it is loaded
+ * reflectively when the JVM supports JFR. Otherwise, or when the event type is not enabled in the recording, events
+ * are shared no-op instances.
+ *
+ * @author ogondza.
+ */
+@Restricted(NoExternalUse.class)
+public final class CloudEvents {
+    private static final Logger LOGGER = Logger.getLogger(CloudEvents.class.getName());
+
+    /**
+     * Kinds of events recorded.
+     */
+    public enum Type {
+        /** Call to OpenStack API, the operation is the service and method called. */
+        API_CALL,
+        /** Phase of provisioning a node, the operation is the phase name. */
+        PROVISIONING_PHASE,
+        /** Check whether the server is ready to be launched. */
+        READINESS_PROBE,
+        /** Deletion of a server. */
+        DELETION,
+        /** Planning of the nodes to provision, the operation is the label. */
+        CAPACITY_PLANNING
+    }
+
+    /**
+     * Event in progress.
+     */
+    public interface Event {
+        /**
+         * Identify the server once it is known.
+         */
+        void server(@CheckForNull String serverId);
+
+        /**
+         * Finish the event.
+         *
+         * @param outcome Short description of the result like "success" or the exception type.
+         */
+        void end(@Nonnull String outcome);
+    }
+
+    /**
+     * Event factory.
+     */
+    /*package*/ interface Recorder {
+        @Nonnull Event begin(
+                @Nonnull Type type, @CheckForNull String cloud, @CheckForNull String template,
+                @CheckForNull String server, @Nonnull String operation
+        );
+    }
+
+    private static final Event NOOP_EVENT = new Event() {
+        @Override public void server(@CheckForNull String serverId) {}
+        @Override public void end(@Nonnull String outcome) {}
+    };
+
+    private static final Recorder NOOP_RECORDER = new Recorder() {
+        @Override public @Nonnull Event begin(
+                @Nonnull Type type, @CheckForNull String cloud, @CheckForNull String template,
+                @CheckForNull String server, @Nonnull String operation
+        ) {
+            return NOOP_EVENT;
+        }
+    };
+
+    // Initialized after the no-op instances it may use
+    private static final Recorder RECORDER = load();
+
+    private CloudEvents() {}
+
+    /**
+     * Start recording an event.
+     */
+    public static @Nonnull Event begin(
+            @Nonnull Type type, @CheckForNull String cloud, @CheckForNull String template,
+            @CheckForNull String server, @Nonnull String operation
+    ) {
+        return RECORDER.begin(type, cloud, template, server, operation);
+    }
+
+    /**
+     * Outcome describing the failure.
+     */
+    public static @Nonnull String outcome(@Nonnull Throwable ex) {
+        return ex.getClass().getSimpleName();
+    }
+
+    private static @Nonnull Recorder load() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            Class<?> impl = Class.forName(CloudEvents.class.getPackage().getName() + ".JfrRecorder");
+            LOGGER.fine("Recording JFR events");
+            return (Recorder) impl.newInstance();
+        } catch (ClassNotFoundException ex) {
+            LOGGER.log(Level.FINE, "JFR events not available", ex);
+        } catch (InstantiationException|IllegalAccessException|LinkageError ex) {
+            LOGGER.log(Level.INFO, "Unable to initialize JFR events", ex);
+        }
+        return NOOP_RECORDER;
+    }
+}
@@ -0,0 +1,321 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.openstack.compute.internal;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import hudson.Extension;
+import hudson.model.listeners.ItemListener;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import jenkins.metrics.api.Metrics;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Thread pools owned by the plugin for the work done against a cloud.
+ *
+ * The work is mostly waiting for OpenStack so it is kept away from {@link hudson.model.Computer#threadPoolForRemoting}
+ * not to starve the agent channels nor to be starved by them. The pools survive the cloud reconfiguration as they are
+ * identified by cloud name.
+ *
+ * When {@link #virtualThreads} are enabled and supported by the JVM, the pools of blocking work run every task on
+ * a virtual thread of its own. The concurrency of boots is still limited by {@link BootQueue}.
+ *
+ * @author ogondza.
+ */
+@Restricted(NoExternalUse.class)
+public final class CloudExecutors {
+    private static final Logger LOGGER = Logger.getLogger(CloudExecutors.class.getName());
+
+    private static final ConcurrentMap<String, CloudExecutors> EXECUTORS = new ConcurrentHashMap<>();
+
+    public enum Pool {
+        /** Requesting the server and waiting for it to become ACTIVE. */
+        BOOT(true),
+        /** Waiting for the server to be ready to launch an agent. */
+        READINESS(true),
+        /** Deleting nodes and servers. */
+        DELETION(true),
+        /** Waiting for batches of servers to be deleted, the deletions themselves are requested in {@link #DELETION}. */
+        TERMINATION(true),
+        /** Querying the inventory and quota in background. */
+        INVENTORY(false),
+        /** Snapshotting servers and waiting for the images to become active. */
+        IMAGE(true);
+
+        // Blocking most of the time so it benefits from virtual threads
+        private final boolean blocking;
+
+        Pool(boolean blocking) {
+            this.blocking = blocking;
+        }
+
+        private int size() {
+            switch (this) {
+                case BOOT: return bootThreads;
+                case READINESS: return readinessThreads;
+                case DELETION: return deletionThreads;
+                case TERMINATION: return terminationThreads;
+                case INVENTORY: return inventoryThreads;
+                case IMAGE: return imageThreads;
+                default: throw new AssertionError(this);
+            }
+        }
+
+        private @Nonnull String metricName() {
+            return name().toLowerCase();
+        }
+    }
+
+    // Lazily initialized holder of the pool for the clouds that are gone
+    private static final class Removed {
+        private static final ListeningExecutorService POOL;
+        static {
+            int size = Math.max(1, deletionThreads);
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                    size, size, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                    new NamingThreadFactory(new DaemonThreadFactory(), "OpenStack removed clouds")
+            );
+            executor.allowCoreThreadTimeOut(true);
+            POOL = MoreExecutors.listeningDecorator(executor);
+        }
+    }
+
+    private final @Nonnull String cloudName;
+    private final @Nonnull Map<Pool, ThreadPoolExecutor> executors = new EnumMap<>(Pool.class);
+    private final @Nonnull Map<Pool, ListeningExecutorService> listening = new EnumMap<>(Pool.class);
+
+    private CloudExecutors(@Nonnull String cloudName) {
+        this.cloudName = cloudName;
+        for (Pool pool : Pool.values()) {
+            String threadName = "OpenStack " + pool.metricName() + " " + cloudName;
+            ThreadFactory virtual = virtualThreads && pool.blocking ? virtualThreadFactory(threadName) : null;
+            ThreadPoolExecutor executor;
+            if (virtual != null) {
+                // Thread per task, the executor is kept for the metrics
+                executor = new ThreadPoolExecutor(
+                        0, Integer.MAX_VALUE, 0, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), virtual
+                );
+            } else {
+                int size = Math.max(1, pool.size());
+                executor = new ThreadPoolExecutor(
+                        size, size, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                        new NamingThreadFactory(new DaemonThreadFactory(), threadName)
+                );
+                executor.allowCoreThreadTimeOut(true);
+            }
+            executors.put(pool, executor);
+            listening.put(pool, MoreExecutors.listeningDecorator(executor));
+        }
+    }
+
+    /**
+     * Factory of virtual threads, null if not supported by the JVM.
+     *
+     * Accessed reflectively as the plugin is compiled for older Java.
+     */
+    private static @CheckForNull ThreadFactory virtualThreadFactory(@Nonnull String name) {
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderClass.getMethod("name", String.class).invoke(builder, name);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (ClassNotFoundException|NoSuchMethodException ex) {
+            LOGGER.log(Level.FINE, "Virtual threads not supported by the JVM", ex);
+        } catch (InvocationTargetException|IllegalAccessException ex) {
+            // Preview feature not enabled
+            LOGGER.log(Level.INFO, "Virtual threads not available", ex);
+        }
+        return null;
+    }
+
+    public static boolean isVirtualThreadsSupported() {
+        return virtualThreadFactory("probe") != null;
+    }
+
+    /**
+     * Get executors of the cloud, creating them if needed.
+     */
+    public static @Nonnull CloudExecutors get(@Nonnull String cloudName) {
+        CloudExecutors existing = EXECUTORS.get(cloudName);
+        if (existing != null) return existing;
+
+        CloudExecutors created = new CloudExecutors(cloudName);
+        existing = EXECUTORS.putIfAbsent(cloudName, created);
+        if (existing != null) {
+            created.shutdown();
+            return existing;
+        }
+
+        created.registerMetrics();
+        return created;
+    }
+
+    public @Nonnull ListeningExecutorService get(@Nonnull Pool pool) {
+        return listening.get(pool);
+    }
+
+    /**
+     * Pool for the work left behind by the clouds that are no longer configured.
+     *
+     * Not owned by any cloud so the pools of the removed ones are not recreated only to be stopped again.
+     */
+    public static @Nonnull ListeningExecutorService getRemoved() {
+        return Removed.POOL;
+    }
+
+    /**
+     * Number of tasks waiting for a thread.
+     */
+    public int getQueueDepth(@Nonnull Pool pool) {
+        return executors.get(pool).getQueue().size();
+    }
+
+    /**
+     * Number of tasks being executed.
+     */
+    public int getActiveCount(@Nonnull Pool pool) {
+        return executors.get(pool).getActiveCount();
+    }
+
+    private void registerMetrics() {
+        try {
+            MetricRegistry registry = Metrics.metricRegistry();
+            for (final Pool pool : Pool.values()) {
+                registry.register(metricName(pool, "queue"), new Gauge<Integer>() {
+                    @Override public Integer getValue() {
+                        return getQueueDepth(pool);
+                    }
+                });
+                registry.register(metricName(pool, "active"), new Gauge<Integer>() {
+                    @Override public Integer getValue() {
+                        return getActiveCount(pool);
+                    }
+                });
+            }
+        } catch (RuntimeException|LinkageError ex) {
+            // Metrics are nice to have
+            LOGGER.log(Level.FINE, "Unable to register metrics for " + cloudName, ex);
+        }
+    }
+
+    private void unregisterMetrics() {
+        try {
+            MetricRegistry registry = Metrics.metricRegistry();
+            for (Pool pool : Pool.values()) {
+                registry.remove(metricName(pool, "queue"));
+                registry.remove(metricName(pool, "active"));
+            }
+        } catch (RuntimeException|LinkageError ex) {
+            LOGGER.log(Level.FINE, "Unable to unregister metrics for " + cloudName, ex);
+        }
+    }
+
+    private @Nonnull String metricName(@Nonnull Pool pool, @Nonnull String metric) {
+        return MetricRegistry.name("jenkins.plugins.openstack", cloudName, "executor", pool.metricName(), metric);
+    }
+
+    private void shutdown() {
+        for (ThreadPoolExecutor executor : executors.values()) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Stop all the pools. Tasks in progress are interrupted.
+     */
+    public static void shutdownAll() {
+        for (String name : EXECUTORS.keySet()) {
+            CloudExecutors executors = EXECUTORS.remove(name);
+            if (executors != null) {
+                executors.shutdown();
+                executors.unregisterMetrics();
+            }
+        }
+    }
+
+    /**
+     * Stop the pools of the clouds that are no longer configured. Tasks in progress are let to complete.
+     *
+     * @param cloudNames Names of the clouds to keep the pools of.
+     */
+    public static void retainAll(@Nonnull Collection<String> cloudNames) {
+        for (String name : EXECUTORS.keySet()) {
+            if (cloudNames.contains(name)) continue;
+
+            CloudExecutors executors = EXECUTORS.remove(name);
+            if (executors != null) {
+                LOGGER.fine("Stopping executors of removed cloud " + name);
+                for (ThreadPoolExecutor executor : executors.executors.values()) {
+                    executor.shutdown();
+                }
+                executors.unregisterMetrics();
+            }
+        }
+    }
+
+    @Extension @Restricted(NoExternalUse.class)
+    public static final class Shutdown extends ItemListener {
+        @Override
+        public void onBeforeShutdown() {
+            shutdownAll();
+        }
+    }
+
+    // Opt-in as pinning of the carrier threads in the libraries is yet to be assessed
+    @SuppressFBWarnings({"MS_SHOULD_BE_FINAL", "Left modifiable from groovy"})
+    /*package*/ static boolean virtualThreads = Boolean.getBoolean(CloudExecutors.class.getName() + ".virtualThreads");
+    @SuppressFBWarnings({"MS_SHOULD_BE_FINAL", "Left modifiable from groovy"})
+    /*package*/ static int bootThreads = Integer.getInteger(CloudExecutors.class.getName() + ".bootThreads", 50);
+    @SuppressFBWarnings({"MS_SHOULD_BE_FINAL", "Left modifiable from groovy"})
+    /*package*/ static int readinessThreads = Integer.getInteger(CloudExecutors.class.getName() + ".readinessThreads", 50);
+    @SuppressFBWarnings({"MS_SHOULD_BE_FINAL", "Left modifiable from groovy"})
+    /*package*/ static int deletionThreads = Integer.getInteger(CloudExecutors.class.getName() + ".deletionThreads", 5);
+    @SuppressFBWarnings({"MS_SHOULD_BE_FINAL", "Left modifiable from groovy"})
+    /*package*/ static int terminationThreads = Integer.getInteger(CloudExecutors.class.getName() + ".terminationThreads", 5);
+    @SuppressFBWarnings({"MS_SHOULD_BE_FINAL", "Left modifiable from groovy"})
+    /*package*/ static int inventoryThreads = Integer.getInteger(CloudExecutors.class.getName() + ".inventoryThreads", 2);
+    @SuppressFBWarnings({"MS_SHOULD_BE_FINAL", "Left modifiable from groovy"})
+    /*package*/ static int imageThreads = Integer.getInteger(CloudExecutors.class.getName() + ".imageThreads", 2);
+}
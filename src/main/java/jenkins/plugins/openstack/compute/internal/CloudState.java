@@ -0,0 +1,108 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.openstack.compute.internal;
+
+import org.jenkinsci.plugins.cloudstats.ProvisioningActivity;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import javax.annotation.Nonnull;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+
+/**
+ * Provisioning state of a cloud that outlives its configuration.
+ *
+ * The cloud instance is replaced every time the configuration is saved while the servers it provisions are still on
+ * their way, so the state is identified by cloud name the same way {@link CloudExecutors} are.
+ *
+ * @author ogondza.
+ */
+@Restricted(NoExternalUse.class)
+public final class CloudState {
+    private static final ConcurrentMap<String, CloudState> STATES = new ConcurrentHashMap<>();
+
+    // Boots waiting for or occupying the concurrency slot
+    private final @Nonnull BootQueue bootQueue;
+    // Capacity of nodes being provisioned at the moment
+    private final @Nonnull ProvisioningLedger ledger = new ProvisioningLedger();
+    // Most recent manual provisioning requests
+    private final @Nonnull Deque<ProvisioningActivity.Id> manuallyProvisioned = new ConcurrentLinkedDeque<>();
+    // Ids of stopped servers being started or deleted at the moment
+    private final @Nonnull Set<String> claimedStoppedServers = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    private CloudState(final @Nonnull String cloudName) {
+        // Pool looked up for every boot as it is replaced once the cloud is removed and added again
+        Executor boot = new Executor() {
+            @Override public void execute(@Nonnull Runnable command) {
+                CloudExecutors.get(cloudName).get(CloudExecutors.Pool.BOOT).execute(command);
+            }
+        };
+        // The limit is set by the cloud
+        bootQueue = new BootQueue(boot, 1);
+    }
+
+    /**
+     * Get state of the cloud, creating it if needed.
+     */
+    public static @Nonnull CloudState get(@Nonnull String cloudName) {
+        CloudState existing = STATES.get(cloudName);
+        if (existing != null) return existing;
+
+        CloudState created = new CloudState(cloudName);
+        existing = STATES.putIfAbsent(cloudName, created);
+        return existing != null ? existing : created;
+    }
+
+    public @Nonnull BootQueue getBootQueue() {
+        return bootQueue;
+    }
+
+    public @Nonnull ProvisioningLedger getLedger() {
+        return ledger;
+    }
+
+    public @Nonnull Deque<ProvisioningActivity.Id> getManuallyProvisioned() {
+        return manuallyProvisioned;
+    }
+
+    public @Nonnull Set<String> getClaimedStoppedServers() {
+        return claimedStoppedServers;
+    }
+
+    /**
+     * Forget the state of the clouds that are no longer configured.
+     *
+     * @param cloudNames Names of the clouds to keep the state of.
+     */
+    public static void retainAll(@Nonnull Collection<String> cloudNames) {
+        STATES.keySet().retainAll(cloudNames);
+    }
+}
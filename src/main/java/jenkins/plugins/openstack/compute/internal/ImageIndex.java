@@ -0,0 +1,119 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.openstack.compute.internal;
+
+import hudson.Util;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+import org.openstack4j.model.image.Image;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Names of images to search by prefix, ignoring case.
+ *
+ * Images with no name are identified by id.
+ *
+ * @author ogondza.
+ */
+@Restricted(NoExternalUse.class)
+public final class ImageIndex {
+
+    // Names by lower case name followed by the name itself not to merge names that differ only in case
+    private final @Nonnull NavigableMap<String, String> names = new TreeMap<>();
+
+    public ImageIndex(@Nonnull Collection<? extends Image> images) {
+        for (Image image : images) {
+            String name = Util.fixEmpty(image.getName());
+            if (name == null) {
+                name = image.getId();
+                if (name == null) continue;
+            }
+            names.put(key(name) + '\u0000' + name, name);
+        }
+    }
+
+    private static @Nonnull String key(@Nonnull String name) {
+        return name.toLowerCase(Locale.ENGLISH);
+    }
+
+    public int size() {
+        return names.size();
+    }
+
+    /**
+     * Get a page of names starting with the prefix.
+     *
+     * @param prefix Prefix to match, all names when empty.
+     * @param offset Number of matching names to skip.
+     * @param limit Maximal number of names to return.
+     */
+    public @Nonnull Page search(@CheckForNull String prefix, int offset, int limit) {
+        String key = key(Util.fixNull(prefix));
+        Collection<String> matching = key.isEmpty()
+                ? names.values()
+                : names.subMap(key, true, key + Character.MAX_VALUE, false).values()
+        ;
+
+        List<String> page = new ArrayList<>(Math.min(limit, matching.size()));
+        Iterator<String> it = matching.iterator();
+        for (int i = 0; i < offset && it.hasNext(); i++) {
+            it.next();
+        }
+        while (page.size() < limit && it.hasNext()) {
+            page.add(it.next());
+        }
+        return new Page(page, it.hasNext());
+    }
+
+    public static final class Page {
+        private final @Nonnull List<String> names;
+        private final boolean more;
+
+        private Page(@Nonnull List<String> names, boolean more) {
+            this.names = Collections.unmodifiableList(names);
+            this.more = more;
+        }
+
+        public @Nonnull List<String> getNames() {
+            return names;
+        }
+
+        /**
+         * There are more matching names past this page.
+         */
+        public boolean hasMore() {
+            return more;
+        }
+    }
+}
@@ -2,15 +2,18 @@ package jenkins.plugins.openstack.compute.internal;
 
 import org.openstack4j.model.compute.Server;
 
-import com.google.common.base.Supplier;
+import com.google.common.base.Function;
 
 public class NodePlan {
     private final String cloudName;
     private final String templateName;
     private final int count;
-    private final Supplier<Server> nodeSupplier;
+    /**
+     * Boots a single node, the capacity of which is reserved in the ledger of the cloud.
+     */
+    private final Function<ProvisioningLedger.Reservation, Server> nodeSupplier;
 
-    public NodePlan(String cloud, String template, int count, Supplier<Server> nodeSupplier) {
+    public NodePlan(String cloud, String template, int count, Function<ProvisioningLedger.Reservation, Server> nodeSupplier) {
         this.cloudName = cloud;
         this.templateName = template;
         this.count = count;
@@ -29,7 +32,7 @@ public class NodePlan {
         return count;
     }
 
-    public Supplier<Server> getNodeSupplier() {
+    public Function<ProvisioningLedger.Reservation, Server> getNodeSupplier() {
         return nodeSupplier;
     }
 }
@@ -30,11 +30,18 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Random;
+import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -43,20 +50,28 @@ import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
 
 import com.google.common.base.Objects;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import hudson.Extension;
 import hudson.ExtensionList;
 import hudson.ExtensionPoint;
 import hudson.Util;
+import hudson.model.TaskListener;
 import hudson.remoting.Which;
 import hudson.util.FormValidation;
 import org.apache.commons.lang.ObjectUtils;
 import org.kohsuke.accmod.Restricted;
 import org.kohsuke.accmod.restrictions.NoExternalUse;
+import org.openstack4j.api.Builders;
 import org.openstack4j.api.OSClient;
 import org.openstack4j.api.compute.ComputeFloatingIPService;
+import org.openstack4j.api.compute.ServerService;
 import org.openstack4j.api.exceptions.ResponseException;
 import org.openstack4j.model.common.BasicResource;
+import org.openstack4j.model.compute.AbsoluteLimit;
+import org.openstack4j.model.compute.Action;
 import org.openstack4j.model.compute.ActionResponse;
 import org.openstack4j.model.compute.Address;
 import org.openstack4j.model.compute.Fault;
@@ -64,9 +79,11 @@ import org.openstack4j.model.compute.Flavor;
 import org.openstack4j.model.compute.FloatingIP;
 import org.openstack4j.model.compute.Keypair;
 import org.openstack4j.model.compute.Server;
+import org.openstack4j.model.compute.actions.RebuildOptions;
 import org.openstack4j.model.compute.builder.ServerCreateBuilder;
 import org.openstack4j.model.image.Image;
 import org.openstack4j.model.network.Network;
+import org.openstack4j.model.storage.block.Volume;
 import org.openstack4j.openstack.OSFactory;
 
 import hudson.util.Secret;
@@ -82,6 +99,8 @@ import jenkins.model.Jenkins;
  * manipulate servers it does not "own". In other words, pretends that there are no
  * other machines running in connected tenant except for those started using this class.
  *
+ * Calls are timed and their failures counted, see {@link ApiMetrics}.
+ *
  * @author ogondza
  */
 @Restricted(NoExternalUse.class)
@@ -90,40 +109,116 @@ public class Openstack {
     private static final Logger LOGGER = Logger.getLogger(Openstack.class.getName());
     private static final String FINGERPRINT_KEY = "jenkins-instance";
 
+    // Glance commonly caps the page size at 1000
+    @SuppressFBWarnings({"MS_SHOULD_BE_FINAL", "Left modifiable from groovy"})
+    /*package*/ static int imagePageSize = Integer.getInteger(Openstack.class.getName() + ".imagePageSize", 500);
+
     private final OSClient client;
+    // Name of the cloud to report metrics for, null when not known
+    private final @CheckForNull String cloudName;
 
     public Openstack(@Nonnull String endPointUrl, @Nonnull String identity, @Nonnull Secret credential, @CheckForNull String region) {
+        this(endPointUrl, identity, credential, region, null);
+    }
+
+    public Openstack(
+            final @Nonnull String endPointUrl, @Nonnull String identity, final @Nonnull Secret credential, final @CheckForNull String region,
+            @CheckForNull String cloudName
+    ) {
+        this.cloudName = cloudName;
         // TODO refactor to split tenant:username everywhere including UI
         String[] id = identity.split(":", 2);
-        String tenant = id.length > 0 ? id[0] : "";
-        String username = id.length > 1 ? id[1] : "";
-        client = OSFactory.builder().endpoint(endPointUrl)
-                .credentials(username, credential.getPlainText())
-                .tenantName(tenant)
-                .authenticate()
-                .useRegion(region)
-        ;
+        final String tenant = id.length > 0 ? id[0] : "";
+        final String username = id.length > 1 ? id[1] : "";
+        client = ApiMetrics.call(cloudName, ApiMetrics.Service.KEYSTONE, "authenticate", new ApiMetrics.Operation<OSClient, RuntimeException>() {
+            @Override public OSClient run() {
+                return OSFactory.builder().endpoint(endPointUrl)
+                        .credentials(username, credential.getPlainText())
+                        .tenantName(tenant)
+                        .authenticate()
+                        .useRegion(region)
+                ;
+            }
+        });
         debug("Openstack client created for " + endPointUrl);
     }
 
     /*exposed for testing*/
     public Openstack(@Nonnull OSClient client) {
         this.client = client;
+        this.cloudName = null;
+    }
+
+    private <T, E extends Exception> T call(
+            @Nonnull ApiMetrics.Service service, @Nonnull String operation, @Nonnull ApiMetrics.Operation<T, E> op
+    ) throws E {
+        return ApiMetrics.call(cloudName, service, operation, op);
+    }
+
+    /**
+     * Timed call reporting the requests OpenStack rejected as {@link ActionFailed}.
+     */
+    private <T, E extends Exception> T action(
+            @Nonnull ApiMetrics.Service service, @Nonnull String operation, final @Nonnull ApiMetrics.Operation<T, E> op
+    ) throws E {
+        return call(service, operation, new ApiMetrics.Operation<T, E>() {
+            @Override public T run() throws E {
+                try {
+                    return op.run();
+                } catch (ResponseException ex) {
+                    throw new ActionFailed(ex.getMessage(), ex);
+                }
+            }
+        });
     }
 
     public @Nonnull Collection<? extends Network> getSortedNetworks() {
-        List<? extends Network> nets = client.networking().network().list();
-        Collections.sort(nets, RESOURCE_COMPARATOR);
-        return nets;
+        return call(ApiMetrics.Service.NEUTRON, "getSortedNetworks", new ApiMetrics.Operation<List<? extends Network>, RuntimeException>() {
+            @Override public List<? extends Network> run() {
+                List<? extends Network> nets = client.networking().network().list();
+                Collections.sort(nets, RESOURCE_COMPARATOR);
+                return nets;
+            }
+        });
     }
 
+    /**
+     * Get all images sorted by name, fetched in pages of {@link #imagePageSize}.
+     */
     public @Nonnull Collection<Image> getSortedImages() {
-        List<? extends Image> images = client.images().listAll();
         TreeSet<Image> set = new TreeSet<>(RESOURCE_COMPARATOR); // Eliminate duplicate names
-        set.addAll(images);
+        String marker = null;
+        for (;;) {
+            List<? extends Image> page = getImagesPage(marker, imagePageSize);
+            set.addAll(page);
+
+            // Last page, or the server does not page at all
+            if (page.isEmpty() || page.size() != imagePageSize) break;
+
+            String last = page.get(page.size() - 1).getId();
+            if (last == null || last.equals(marker)) break;
+            marker = last;
+        }
         return set;
     }
 
+    /**
+     * @param marker Id of the last image of the previous page, null for the first page.
+     */
+    private @Nonnull List<? extends Image> getImagesPage(@CheckForNull String marker, int limit) {
+        final Map<String, String> query = new HashMap<>(2);
+        query.put("limit", String.valueOf(limit));
+        if (marker != null) {
+            query.put("marker", marker);
+        }
+
+        return call(ApiMetrics.Service.GLANCE, "getImagesPage", new ApiMetrics.Operation<List<? extends Image>, RuntimeException>() {
+            @Override public List<? extends Image> run() {
+                return client.images().listAll(query);
+            }
+        });
+    }
+
     private static final Comparator<BasicResource> RESOURCE_COMPARATOR = new Comparator<BasicResource>() {
         @Override
         public int compare(BasicResource o1, BasicResource o2) {
@@ -132,9 +227,13 @@ public class Openstack {
     };
 
     public @Nonnull Collection<? extends Flavor> getSortedFlavors() {
-        List<? extends Flavor> flavors = client.compute().flavors().list();
-        Collections.sort(flavors, FLAVOR_COMPARATOR);
-        return flavors;
+        return call(ApiMetrics.Service.NOVA, "getSortedFlavors", new ApiMetrics.Operation<List<? extends Flavor>, RuntimeException>() {
+            @Override public List<? extends Flavor> run() {
+                List<? extends Flavor> flavors = client.compute().flavors().list();
+                Collections.sort(flavors, FLAVOR_COMPARATOR);
+                return flavors;
+            }
+        });
     }
 
     private Comparator<Flavor> FLAVOR_COMPARATOR = new Comparator<Flavor>() {
@@ -145,39 +244,129 @@ public class Openstack {
     };
 
     public @Nonnull List<String> getSortedIpPools() {
-        List<String> names = new ArrayList<>(client.compute().floatingIps().getPoolNames());
-        Collections.sort(names);
-        return names;
+        return call(ApiMetrics.Service.NOVA, "getSortedIpPools", new ApiMetrics.Operation<List<String>, RuntimeException>() {
+            @Override public List<String> run() {
+                List<String> names = new ArrayList<>(client.compute().floatingIps().getPoolNames());
+                Collections.sort(names);
+                return names;
+            }
+        });
     }
 
     public @Nonnull List<Server> getRunningNodes() {
-        List<Server> running = new ArrayList<>();
+        return call(ApiMetrics.Service.NOVA, "getRunningNodes", new ApiMetrics.Operation<List<Server>, RuntimeException>() {
+            @Override public List<Server> run() {
+                List<Server> running = new ArrayList<>();
+
+                // We need details to inspect state and metadata
+                final boolean detailed = true;
+                for (Server n: client.compute().servers().list(detailed)) {
+                    if (isOccupied(n) && isOurs(n)) {
+                        running.add(n);
+                    }
+                }
 
-        // We need details to inspect state and metadata
-        final boolean detailed = true;
-        for (Server n: client.compute().servers().list(detailed)) {
-            if (isOccupied(n) && isOurs(n)) {
-                running.add(n);
+                return running;
             }
-        }
+        });
+    }
+
+    /**
+     * Get servers provisioned by the plugin that are stopped to be started again.
+     */
+    public @Nonnull List<Server> getStoppedNodes() {
+        return call(ApiMetrics.Service.NOVA, "getStoppedNodes", new ApiMetrics.Operation<List<Server>, RuntimeException>() {
+            @Override public List<Server> run() {
+                List<Server> stopped = new ArrayList<>();
+
+                final boolean detailed = true;
+                for (Server n: client.compute().servers().list(detailed)) {
+                    if (n.getStatus() == Server.Status.SHUTOFF && isOurs(n)) {
+                        stopped.add(n);
+                    }
+                }
+
+                return stopped;
+            }
+        });
+    }
+
+    /**
+     * Get servers provisioned by the plugin that are either running or stopped, listing them only once.
+     *
+     * The servers that are stopped to be started again are those in {@link Server.Status#SHUTOFF} state.
+     */
+    public @Nonnull List<Server> getOurNodes() {
+        return call(ApiMetrics.Service.NOVA, "getOurNodes", new ApiMetrics.Operation<List<Server>, RuntimeException>() {
+            @Override public List<Server> run() {
+                List<Server> ours = new ArrayList<>();
+
+                final boolean detailed = true;
+                for (Server n: client.compute().servers().list(detailed)) {
+                    if ((isOccupied(n) || n.getStatus() == Server.Status.SHUTOFF) && isOurs(n)) {
+                        ours.add(n);
+                    }
+                }
+
+                return ours;
+            }
+        });
+    }
+
+    /**
+     * Capture tenant quota and flavor sizes.
+     *
+     * @param ours Servers provisioned by the plugin that are running now, presumably obtained from {@link #getRunningNodes()},
+     *             and those stopped obtained from {@link #getStoppedNodes()}, or both from {@link #getOurNodes()}.
+     */
+    public @Nonnull QuotaSnapshot getQuotaSnapshot(@Nonnull Collection<? extends Server> ours) {
+        final Map<String, QuotaSnapshot.Resources> flavors = new HashMap<>();
+        AbsoluteLimit limits = call(ApiMetrics.Service.NOVA, "getQuotaSnapshot", new ApiMetrics.Operation<AbsoluteLimit, RuntimeException>() {
+            @Override public AbsoluteLimit run() {
+                AbsoluteLimit limits = client.compute().quotaSets().limits().getAbsolute();
+                for (Flavor flavor : client.compute().flavors().list()) {
+                    flavors.put(flavor.getId(), new QuotaSnapshot.Resources(1, flavor.getVcpus(), flavor.getRam(), 0));
+                }
+                return limits;
+            }
+        });
 
-        return running;
+        QuotaSnapshot snapshot = new QuotaSnapshot(
+                new QuotaSnapshot.Resources(
+                        limits.getMaxTotalInstances(), limits.getMaxTotalCores(), limits.getMaxTotalRAMSize(), limits.getMaxTotalFloatingIps()
+                ),
+                new QuotaSnapshot.Resources(
+                        limits.getTotalInstancesUsed(), limits.getTotalCoresUsed(), limits.getTotalRAMUsed(), limits.getTotalFloatingIpsUsed()
+                ),
+                flavors,
+                ours
+        );
+        debug("Quota captured: " + snapshot);
+        return snapshot;
     }
 
     public @Nonnull List<String> getSortedKeyPairNames() {
-        List<String> keyPairs = new ArrayList<>();
-        for (Keypair kp : client.compute().keypairs().list()) {
-            keyPairs.add(kp.getName());
-        }
-        return keyPairs;
+        return call(ApiMetrics.Service.NOVA, "getSortedKeyPairNames", new ApiMetrics.Operation<List<String>, RuntimeException>() {
+            @Override public List<String> run() {
+                List<String> keyPairs = new ArrayList<>();
+                for (Keypair kp : client.compute().keypairs().list()) {
+                    keyPairs.add(kp.getName());
+                }
+                return keyPairs;
+            }
+        });
     }
 
     public @CheckForNull String getImageIdFor(String name) {
-        Map<String, String> query = new HashMap<>(2);
+        final Map<String, String> query = new HashMap<>(2);
         query.put("name", name);
         query.put("status", "active");
 
-        List<? extends Image> images = client.images().listAll(query);
+        List<? extends Image> images = call(ApiMetrics.Service.GLANCE, "getImageIdFor", new ApiMetrics.Operation<List<? extends Image>, RuntimeException>() {
+            @Override public List<? extends Image> run() {
+                return client.images().listAll(query);
+            }
+        });
         if (images.size() > 0) {
             // Pick one at random to point out failures ASAP
             return images.get(new Random().nextInt(images.size())).getId();
@@ -188,6 +377,169 @@ public class Openstack {
         return null;
     }
 
+    /**
+     * Get images of the exact name, the most recently created first.
+     */
+    public @Nonnull List<Image> getImagesByName(@Nonnull String name) {
+        final Map<String, String> query = new HashMap<>(1);
+        query.put("name", name);
+
+        List<Image> images = call(ApiMetrics.Service.GLANCE, "getImagesByName", new ApiMetrics.Operation<List<Image>, RuntimeException>() {
+            @Override public List<Image> run() {
+                return new ArrayList<Image>(client.images().listAll(query));
+            }
+        });
+        Collections.sort(images, NEWEST_FIRST);
+        return images;
+    }
+
+    private static final Comparator<Image> NEWEST_FIRST = new Comparator<Image>() {
+        @Override
+        public int compare(Image o1, Image o2) {
+            // Images of unknown age last
+            return ObjectUtils.compare(o2.getCreatedAt(), o1.getCreatedAt(), false);
+        }
+    };
+
+    /**
+     * Snapshot the server into an image and wait until it is active.
+     *
+     * @return Id of the image created.
+     * @throws ActionFailed Openstack failed to create the image or it was not active in time.
+     */
+    public @Nonnull String createSnapshotAndWaitActive(
+            final @Nonnull Server server, final @Nonnull String name, final @Nonnegative int timeout
+    ) throws ActionFailed, InterruptedException {
+        debug("Snapshotting machine " + server.getName() + " as " + name);
+        // Only the requests are timed, not the wait for the image to become active
+        String imageId = action(ApiMetrics.Service.NOVA, "createSnapshot", new ApiMetrics.Operation<String, RuntimeException>() {
+            @Override public String run() {
+                return client.compute().servers().createSnapshot(server.getId(), name);
+            }
+        });
+        if (imageId == null) throw new ActionFailed("Failed to snapshot server " + server.getName());
+
+        long deadline = System.currentTimeMillis() + timeout;
+        for (;;) {
+            Image image = null;
+            for (Image i : getImagesByName(name)) {
+                if (imageId.equals(i.getId())) {
+                    image = i;
+                }
+            }
+
+            if (image != null) {
+                if (image.getStatus() == Image.Status.ACTIVE) break;
+                if (image.getStatus() == Image.Status.KILLED || image.getStatus() == Image.Status.DELETED) {
+                    throw new ActionFailed("Failed to snapshot server " + server.getName() + ": image is " + image.getStatus());
+                }
+            }
+
+            if (System.currentTimeMillis() > deadline) {
+                throw new ActionFailed(String.format("Image %s of server %s was not active in time", imageId, server.getName()));
+            }
+            Thread.sleep(5000);
+        }
+        debug("Machine snapshotted: " + server.getName());
+        return imageId;
+    }
+
+    /**
+     * Delete the image.
+     *
+     * @throws ActionFailed Openstack was not able to delete the image.
+     */
+    public void deleteImage(final @Nonnull String imageId) throws ActionFailed {
+        action(ApiMetrics.Service.GLANCE, "deleteImage", new ApiMetrics.Operation<Void, RuntimeException>() {
+            @Override public Void run() {
+                throwIfFailed(client.images().delete(imageId));
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Get volumes of the exact name created by this instance.
+     */
+    public @Nonnull List<Volume> getVolumesByName(final @Nonnull String name) {
+        return call(ApiMetrics.Service.CINDER, "getVolumesByName", new ApiMetrics.Operation<List<Volume>, RuntimeException>() {
+            @Override public List<Volume> run() {
+                List<Volume> volumes = new ArrayList<>();
+                for (Volume volume : client.blockStorage().volumes().list()) {
+                    if (name.equals(volume.getName()) && isOurs(volume.getMetaData())) {
+                        volumes.add(volume);
+                    }
+                }
+                return volumes;
+            }
+        });
+    }
+
+    /**
+     * Create a bootable volume cloned from the image.
+     *
+     * The method does not wait for the volume to become available.
+     */
+    public @Nonnull Volume createVolume(
+            final @Nonnull String name, final @Nonnull String imageId, final @Nonnegative int size, @Nonnull Map<String, String> metadata
+    ) throws ActionFailed {
+        debug("Creating volume " + name + " from " + imageId);
+        final Map<String, String> md = new HashMap<>(metadata);
+        md.put(FINGERPRINT_KEY, instanceFingerprint());
+
+        return action(ApiMetrics.Service.CINDER, "createVolume", new ApiMetrics.Operation<Volume, RuntimeException>() {
+            @Override public Volume run() {
+                Volume volume = client.blockStorage().volumes().create(
+                        Builders.volume().name(name).imageRef(imageId).size(size).metadata(md).build()
+                );
+                if (volume == null) throw new ActionFailed("Failed to create volume " + name);
+                return volume;
+            }
+        });
+    }
+
+    /**
+     * Rename the volume.
+     *
+     * @throws ActionFailed Openstack was not able to rename the volume.
+     */
+    public void renameVolume(final @Nonnull String volumeId, final @Nonnull String name) throws ActionFailed {
+        action(ApiMetrics.Service.CINDER, "renameVolume", new ApiMetrics.Operation<Void, RuntimeException>() {
+            @Override public Void run() {
+                throwIfFailed(client.blockStorage().volumes().update(volumeId, name, null));
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Delete the volume.
+     *
+     * @throws ActionFailed Openstack was not able to delete the volume.
+     */
+    public void deleteVolume(final @Nonnull String volumeId) throws ActionFailed {
+        action(ApiMetrics.Service.CINDER, "deleteVolume", new ApiMetrics.Operation<Void, RuntimeException>() {
+            @Override public Void run() {
+                ActionResponse res = client.blockStorage().volumes().delete(volumeId);
+                if (res.getCode() == 404) return null; // Deleted
+                throwIfFailed(res);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Size of the root disk of the flavor in GB, 0 when not known or not limited.
+     */
+    public int getFlavorDisk(final @Nonnull String flavorId) {
+        return call(ApiMetrics.Service.NOVA, "getFlavorDisk", new ApiMetrics.Operation<Integer, RuntimeException>() {
+            @Override public Integer run() {
+                Flavor flavor = client.compute().flavors().get(flavorId);
+                return flavor == null ? 0 : flavor.getDisk();
+            }
+        });
+    }
+
     /**
      * Determine whether the server is considered occupied by openstack plugin.
      */
@@ -207,7 +559,11 @@ public class Openstack {
     }
 
     private boolean isOurs(@Nonnull Server server) {
-        return instanceFingerprint().equals(server.getMetadata().get(FINGERPRINT_KEY));
+        return isOurs(server.getMetadata());
+    }
+
+    private boolean isOurs(@CheckForNull Map<String, String> metadata) {
+        return metadata != null && instanceFingerprint().equals(metadata.get(FINGERPRINT_KEY));
     }
 
     /**
@@ -219,8 +575,12 @@ public class Openstack {
         return Jenkins.getActiveInstance().getRootUrl();
     }
 
-    public @Nonnull Server getServerById(@Nonnull String id) throws NoSuchElementException {
-        Server server = client.compute().servers().get(id);
+    public @Nonnull Server getServerById(final @Nonnull String id) throws NoSuchElementException {
+        Server server = call(ApiMetrics.Service.NOVA, "getServerById", new ApiMetrics.Operation<Server, RuntimeException>() {
+            @Override public Server run() {
+                return client.compute().servers().get(id);
+            }
+        });
         if (server == null) throw new NoSuchElementException("No such server running: " + id);
         return server;
     }
@@ -230,16 +590,16 @@ public class Openstack {
      *
      * @throws ActionFailed Openstack failed to provision the slave or it was in erroneous state (server will be deleted in such case).
      */
-    public @Nonnull Server bootAndWaitActive(@Nonnull ServerCreateBuilder request, @Nonnegative int timeout) throws ActionFailed {
+    public @Nonnull Server bootAndWaitActive(final @Nonnull ServerCreateBuilder request, final @Nonnegative int timeout) throws ActionFailed {
         debug("Booting machine");
-        try {
-            Server server = _bootAndWaitActive(request, timeout);
-            debug("Machine started: " + server.getName());
-            throwIfFailed(server);
-            return server;
-        } catch (ResponseException ex) {
-            throw new ActionFailed(ex.getMessage(), ex);
-        }
+        return action(ApiMetrics.Service.NOVA, "bootAndWaitActive", new ApiMetrics.Operation<Server, RuntimeException>() {
+            @Override public Server run() {
+                Server server = _bootAndWaitActive(request, timeout);
+                debug("Machine started: " + server.getName());
+                throwIfFailed(server);
+                return server;
+            }
+        });
     }
 
     @Restricted(NoExternalUse.class) // Test hook
@@ -248,6 +608,71 @@ public class Openstack {
         return client.compute().servers().bootAndWaitActive(request.build(), timeout);
     }
 
+    /**
+     * Start stopped server and wait until active.
+     *
+     * @throws ActionFailed Openstack failed to start the server or it was in erroneous state (server will be deleted in such case).
+     */
+    public @Nonnull Server startAndWaitActive(final @Nonnull Server server, final @Nonnegative int timeout) throws ActionFailed {
+        debug("Starting machine " + server.getName());
+        return action(ApiMetrics.Service.NOVA, "startAndWaitActive", new ApiMetrics.Operation<Server, RuntimeException>() {
+            @Override public Server run() {
+                ServerService servers = client.compute().servers();
+                throwIfFailed(servers.action(server.getId(), Action.START));
+                Server started = servers.waitForStatus(server.getId(), Server.Status.ACTIVE, timeout, TimeUnit.MILLISECONDS);
+                if (started == null) throw new ActionFailed("Server " + server.getName() + " is gone while starting");
+                debug("Machine started: " + started.getName());
+                throwIfFailed(started);
+                return started;
+            }
+        });
+    }
+
+    /**
+     * Rebuild the server from the image and wait until active.
+     *
+     * The server keeps its id, placement and addresses including the floating IP.
+     *
+     * @throws ActionFailed Openstack failed to rebuild the server or it was in erroneous state (server will be deleted in such case).
+     */
+    public @Nonnull Server rebuildAndWaitActive(
+            final @Nonnull Server server, final @Nonnull String imageId, final @Nonnegative int timeout
+    ) throws ActionFailed {
+        debug("Rebuilding machine " + server.getName());
+        return action(ApiMetrics.Service.NOVA, "rebuildAndWaitActive", new ApiMetrics.Operation<Server, RuntimeException>() {
+            @Override public Server run() {
+                ServerService servers = client.compute().servers();
+                throwIfFailed(servers.rebuild(server.getId(), RebuildOptions.create().image(imageId)));
+                Server rebuilt = servers.waitForStatus(server.getId(), Server.Status.ACTIVE, timeout, TimeUnit.MILLISECONDS);
+                if (rebuilt == null) throw new ActionFailed("Server " + server.getName() + " is gone while rebuilding");
+                debug("Machine rebuilt: " + rebuilt.getName());
+                throwIfFailed(rebuilt);
+                return rebuilt;
+            }
+        });
+    }
+
+    /**
+     * Stop the server and wait until it is shut off.
+     *
+     * @throws ActionFailed Openstack failed to stop the server in time.
+     */
+    public void stopServer(final @Nonnull Server server, final @Nonnegative int timeout) throws ActionFailed {
+        debug("Stopping machine " + server.getName());
+        action(ApiMetrics.Service.NOVA, "stopServer", new ApiMetrics.Operation<Void, RuntimeException>() {
+            @Override public Void run() {
+                ServerService servers = client.compute().servers();
+                throwIfFailed(servers.action(server.getId(), Action.STOP));
+                Server stopped = servers.waitForStatus(server.getId(), Server.Status.SHUTOFF, timeout, TimeUnit.MILLISECONDS);
+                if (stopped == null || stopped.getStatus() != Server.Status.SHUTOFF) {
+                    throw new ActionFailed(String.format("Server %s was not stopped in time:%n%s", server.getName(), stopped));
+                }
+                debug("Machine stopped: " + server.getName());
+                return null;
+            }
+        });
+    }
+
     /**
      * Fetch updated info about the server.
      */
@@ -260,9 +685,21 @@ public class Openstack {
      *
      * @throws ActionFailed Openstack was not able to destroy the server.
      */
-    public void destroyServer(@Nonnull Server server) throws ActionFailed {
+    public void destroyServer(final @Nonnull Server server) throws ActionFailed {
+        call(ApiMetrics.Service.NOVA, "destroyServer", new ApiMetrics.Operation<Void, RuntimeException>() {
+            @Override public Void run() {
+                _destroyServer(server);
+                return null;
+            }
+        });
+    }
+
+    private void _destroyServer(@Nonnull Server server) throws ActionFailed {
         debug("Destroying machine " + server.getName());
 
+        // Volumes the server booted from, to be deleted unless Nova does so on its own
+        final List<String> volumes = server.getOsExtendedVolumesAttached();
+
         final ComputeFloatingIPService fipsService = client.compute().floatingIps();
         final List<String> fips = new ArrayList<>();
         for (FloatingIP ip: fipsService.list()) {
@@ -306,6 +743,12 @@ public class Openstack {
             }
         }
 
+        if (deleted == null && volumes != null) {
+            for (String id : volumes) {
+                deleteLeftoverVolume(id);
+            }
+        }
+
         if (deleted == null) {
             debug("Machine destroyed: " + server.getName());
         } else {
@@ -313,6 +756,186 @@ public class Openstack {
         }
     }
 
+    /**
+     * Destroy several servers at once.
+     *
+     * The deletions are requested in parallel using the executor and the servers are awaited by a single listing per
+     * retry rather than one by one. Only the servers still present are requested to be deleted again. Floating IPs
+     * and leftover volumes are released in parallel using the executor as well.
+     *
+     * @param listener Listener to report the servers still being deleted to after every retry.
+     * @return Servers that failed to be destroyed.
+     */
+    public @Nonnull List<Server> destroyServers(
+            final @Nonnull Collection<? extends Server> servers, final @Nonnull ListeningExecutorService executor,
+            final @Nonnull TaskListener listener
+    ) {
+        return call(ApiMetrics.Service.NOVA, "destroyServers", new ApiMetrics.Operation<List<Server>, RuntimeException>() {
+            @Override public List<Server> run() {
+                return _destroyServers(servers, executor, listener);
+            }
+        });
+    }
+
+    private @Nonnull List<Server> _destroyServers(
+            @Nonnull Collection<? extends Server> servers, @Nonnull ListeningExecutorService executor,
+            @Nonnull TaskListener listener
+    ) {
+        debug("Destroying " + servers.size() + " machines");
+
+        final ComputeFloatingIPService fipsService = client.compute().floatingIps();
+        final Map<String, List<String>> fips = new HashMap<>();
+        for (FloatingIP ip: fipsService.list()) {
+            if (ip.getInstanceId() == null) continue;
+            List<String> ids = fips.get(ip.getInstanceId());
+            if (ids == null) {
+                ids = new ArrayList<>();
+                fips.put(ip.getInstanceId(), ids);
+            }
+            ids.add(ip.getId());
+        }
+
+        final ServerService serverService = client.compute().servers();
+        final Map<String, Server> pending = new LinkedHashMap<>();
+        for (Server server : servers) {
+            pending.put(server.getId(), server);
+        }
+        final List<Server> deleted = new ArrayList<>();
+        final List<Server> failed = new ArrayList<>();
+
+        // Retry deletion a couple of times: https://github.com/jenkinsci/openstack-cloud-plugin/issues/55
+        for (int i = 0; i < 10 && !pending.isEmpty(); i++) {
+            try {
+                requestDeletion(serverService, pending, deleted, failed, executor);
+                if (pending.isEmpty()) break;
+
+                Thread.sleep(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+
+            // Not checking fingerprint here presuming all Servers provided by this implementation are ours.
+            Set<String> existing = new HashSet<>();
+            for (Server server : serverService.list(true)) {
+                if (server.getStatus() != Server.Status.DELETED) {
+                    existing.add(server.getId());
+                }
+            }
+            for (Iterator<Server> it = pending.values().iterator(); it.hasNext();) {
+                Server server = it.next();
+                if (!existing.contains(server.getId())) {
+                    deleted.add(server);
+                    it.remove();
+                }
+            }
+
+            if (pending.isEmpty()) break;
+
+            debug("Machine deletion retry " + i + ": " + pending.keySet());
+            listener.getLogger().printf("Waiting for %d of %d nodes to be deleted%n", pending.size(), servers.size());
+        }
+        failed.addAll(pending.values());
+
+        List<ListenableFuture<?>> releases = new ArrayList<>();
+        for (final Server server : servers) {
+            final List<String> serverFips = fips.get(server.getId());
+            final List<String> volumes = deleted.contains(server) ? server.getOsExtendedVolumesAttached() : null;
+            if (serverFips == null && volumes == null) continue;
+
+            releases.add(executor.submit(new Runnable() {
+                @Override public void run() {
+                    if (serverFips != null) {
+                        for (String ip : serverFips) {
+                            try {
+                                if (logIfFailed(fipsService.deallocateIP(ip))) {
+                                    debug("Floating IP deallocated: " + ip);
+                                }
+                            } catch (RuntimeException ex) {
+                                LOGGER.log(Level.WARNING, "Unable to deallocate floating IP " + ip, ex);
+                            }
+                        }
+                    }
+                    if (volumes != null) {
+                        for (String id : volumes) {
+                            deleteLeftoverVolume(id);
+                        }
+                    }
+                }
+            }));
+        }
+
+        try {
+            Futures.successfulAsList(releases).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new AssertionError(e); // Failures are reported as nulls
+        }
+
+        debug("Machines destroyed: " + deleted.size() + ", failed: " + failed.size());
+        return failed;
+    }
+
+    /**
+     * Request deletion of all pending servers in parallel, moving those deleted or refused out of pending.
+     */
+    private void requestDeletion(
+            final @Nonnull ServerService serverService, @Nonnull Map<String, Server> pending,
+            @Nonnull List<Server> deleted, @Nonnull List<Server> failed, @Nonnull ListeningExecutorService executor
+    ) throws InterruptedException {
+        List<Server> requested = new ArrayList<>(pending.values());
+        List<ListenableFuture<ActionResponse>> responses = new ArrayList<>(requested.size());
+        for (final Server server : requested) {
+            responses.add(executor.submit(new Callable<ActionResponse>() {
+                @Override public ActionResponse call() {
+                    try {
+                        return serverService.delete(server.getId());
+                    } catch (RuntimeException ex) {
+                        // Retried in case the server still exists
+                        LOGGER.log(Level.WARNING, "Unable to request deletion of " + server.getName(), ex);
+                        return null;
+                    }
+                }
+            }));
+        }
+
+        List<ActionResponse> results;
+        try {
+            results = Futures.allAsList(responses).get();
+        } catch (ExecutionException e) {
+            throw new AssertionError(e); // Failures are reported as nulls
+        }
+
+        for (int i = 0; i < requested.size(); i++) {
+            Server server = requested.get(i);
+            ActionResponse res = results.get(i);
+            if (res == null) continue;
+
+            if (res.getCode() == 404) { // Deleted
+                deleted.add(server);
+                pending.remove(server.getId());
+            } else if (!logIfFailed(res)) {
+                failed.add(server);
+                pending.remove(server.getId());
+            }
+        }
+    }
+
+    private void deleteLeftoverVolume(@Nonnull String id) {
+        try {
+            Volume volume = client.blockStorage().volumes().get(id);
+            // Not created by us or deleted together with the server
+            if (volume == null || !isOurs(volume.getMetaData()) || volume.getStatus() != Volume.Status.AVAILABLE) return;
+
+            if (logIfFailed(client.blockStorage().volumes().delete(id))) {
+                debug("Volume deleted: " + id);
+            }
+        } catch (RuntimeException ex) {
+            LOGGER.log(Level.WARNING, "Unable to delete volume " + id, ex);
+        }
+    }
+
     /**
      * Assign floating ip address to the server.
      *
@@ -321,7 +944,15 @@ public class Openstack {
      * @param server Server to assign FIP
      * @param poolName Name of the FIP pool to use. If null, openstack default pool will be used.
      */
-    public @Nonnull FloatingIP assignFloatingIp(@Nonnull Server server, @CheckForNull String poolName) throws ActionFailed {
+    public @Nonnull FloatingIP assignFloatingIp(final @Nonnull Server server, final @CheckForNull String poolName) throws ActionFailed {
+        return call(ApiMetrics.Service.NOVA, "assignFloatingIp", new ApiMetrics.Operation<FloatingIP, RuntimeException>() {
+            @Override public FloatingIP run() {
+                return _assignFloatingIp(server, poolName);
+            }
+        });
+    }
+
+    private @Nonnull FloatingIP _assignFloatingIp(@Nonnull Server server, @CheckForNull String poolName) throws ActionFailed {
         debug("Allocating floating IP for " + server.getName());
         ComputeFloatingIPService fips = client.compute().floatingIps();
         FloatingIP ip;
@@ -1,37 +1,60 @@
 package jenkins.plugins.openstack.compute.internal;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.openstack4j.model.compute.Server;
 
 import com.google.common.base.Function;
+import com.google.common.base.Supplier;
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
-import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 
 import hudson.Functions;
 import hudson.model.TaskListener;
 
 public class ProvisionPlannedInstancesAndDestroyAllOnError implements Function<Iterable<NodePlan>, Iterable<RunningNode>> {
-    private final ListeningExecutorService executor;
     private final TaskListener listener;
-    private final Function<Iterable<RunningNode>, Void> terminateNodes;
+    private final TerminateNodes terminateNodes;
 
-    public ProvisionPlannedInstancesAndDestroyAllOnError(ListeningExecutorService executor, TaskListener listener, Function<Iterable<RunningNode>, Void> terminateNodes) {
-        this.executor = executor;
+    public ProvisionPlannedInstancesAndDestroyAllOnError(TaskListener listener, TerminateNodes terminateNodes) {
         this.listener = listener;
         this.terminateNodes = terminateNodes;
     }
 
     public Iterable<RunningNode> apply(Iterable<NodePlan> nodePlans) {
-        final ImmutableList.Builder<RunningNode> cloudTemplateNodeBuilder = ImmutableList.<RunningNode>builder();
-
-        final ImmutableList.Builder<ListenableFuture<Server>> plannedInstancesBuilder = ImmutableList.<ListenableFuture<Server>>builder();
+        try {
+            // block until all complete
+            return Futures.getUnchecked(start(nodePlans));
+        } catch (UncheckedExecutionException ex) {
+            Throwables.propagateIfPossible(ex.getCause());
+            throw ex;
+        }
+    }
 
-        final AtomicInteger failedLaunches = new AtomicInteger();
+    /**
+     * Start provisioning the planned nodes without waiting for them.
+     *
+     * The future fails as soon as any of the nodes failed to launch. The nodes launched by then are destroyed, the
+     * provisioning not yet started is skipped and the nodes still booting are destroyed once they become active.
+     *
+     * The nodes take turns with the other boots of the cloud and their capacity is reserved in its ledger until booted.
+     */
+    public ListenableFuture<Iterable<RunningNode>> start(Iterable<NodePlan> nodePlans) {
+        final Batch batch = new Batch();
 
         for (final NodePlan nodePlan : nodePlans) {
             for (int i = 0; i < nodePlan.getCount(); i++) {
@@ -41,47 +64,140 @@ public class ProvisionPlannedInstancesAndDestroyAllOnError implements Function<I
                         index, nodePlan.getCount(), nodePlan.getCloudName(), nodePlan.getTemplateName()
                 );
 
-                ListenableFuture<Server> provisionTemplate = executor.submit(new RetrySupplierOnFailure(nodePlan.getNodeSupplier(), listener));
+                batch.pending.incrementAndGet();
+                final Boot boot = new Boot(nodePlan, batch);
+                final ListenableFuture<Server> provisionTemplate = boot.state.getBootQueue().submit(
+                        "instances/" + nodePlan.getTemplateName(), boot
+                );
+                batch.boots.add(provisionTemplate);
+                provisionTemplate.addListener(new Runnable() {
+                    @Override public void run() {
+                        if (provisionTemplate.isCancelled()) {
+                            boot.abandon();
+                        }
+                    }
+                }, MoreExecutors.sameThreadExecutor());
 
                 Futures.addCallback(provisionTemplate, new FutureCallback<Server>() {
                     public void onSuccess(Server result) {
-                        if (result != null) {
-                            synchronized (cloudTemplateNodeBuilder) {
-                                // Builder in not threadsafec
-                                cloudTemplateNodeBuilder.add(new RunningNode(nodePlan.getCloudName(), nodePlan.getTemplateName(), result));
-                            }
-                        } else {
-                            failedLaunches.incrementAndGet();
+                        if (result == null) {
+                            batch.failed();
                         }
                     }
 
                     public void onFailure(Throwable t) {
-                        failedLaunches.incrementAndGet();
+                        if (t instanceof CancellationException) return; // Given up by the batch
+
                         listener.error(
                                 "Error while launching instance: #%d %d, %s %s:%n%s%n",
                                 index, nodePlan.getCount(), nodePlan.getCloudName(), nodePlan.getTemplateName(), Functions.printThrowable(t)
                         );
+                        batch.failed();
                     }
                 });
+            }
+        }
+
+        batch.completeIfDone();
+        return batch.result;
+    }
+
+    /**
+     * Boot of a single node, reporting it to the batch even if the batch gave up on it meanwhile so it gets destroyed.
+     */
+    private final class Boot implements Callable<Server> {
+        private final NodePlan nodePlan;
+        private final Batch batch;
+        private final CloudState state;
+        private final ProvisioningLedger.Reservation reservation;
+        private final AtomicBoolean started = new AtomicBoolean();
+
+        private Boot(NodePlan nodePlan, Batch batch) {
+            this.nodePlan = nodePlan;
+            this.batch = batch;
+            this.state = CloudState.get(nodePlan.getCloudName());
+            this.reservation = state.getLedger().reserve(nodePlan.getTemplateName());
+        }
 
-                plannedInstancesBuilder.add(provisionTemplate);
+        public Server call() throws Exception {
+            if (!started.compareAndSet(false, true)) {
+                throw new CancellationException("Boot of " + nodePlan.getTemplateName() + " was abandoned");
+            }
+
+            try {
+                Supplier<Server> supplier = new Supplier<Server>() {
+                    @Override public Server get() {
+                        return nodePlan.getNodeSupplier().apply(reservation);
+                    }
+                };
+                Server server = new RetrySupplierOnFailure(supplier, listener, batch.aborted).call();
+                if (server != null) {
+                    batch.launched(new RunningNode(nodePlan.getCloudName(), nodePlan.getTemplateName(), server));
+                }
+                return server;
+            } finally {
+                // Either running and reported by OpenStack, or failed
+                state.getLedger().release(reservation);
             }
         }
 
-        // block until all complete
-        List<Server> nodesActuallyLaunched = Futures.getUnchecked(Futures.successfulAsList(plannedInstancesBuilder.build()));
+        /**
+         * Release the reservation unless the boot has already started, in which case it releases it itself.
+         */
+        private void abandon() {
+            if (started.compareAndSet(false, true)) {
+                state.getLedger().release(reservation);
+            }
+        }
+    }
 
-        final ImmutableList<RunningNode> cloudTemplateNodes = cloudTemplateNodeBuilder.build();
+    /**
+     * Nodes of a single {@link #start(Iterable)} invocation.
+     */
+    private final class Batch {
+        private final SettableFuture<Iterable<RunningNode>> result = SettableFuture.create();
+        private final AtomicBoolean aborted = new AtomicBoolean();
+        /**
+         * Nodes not yet reported. Offset by one until all the nodes are submitted not to complete prematurely.
+         */
+        private final AtomicInteger pending = new AtomicInteger(1);
+        private final List<RunningNode> launched = new ArrayList<>();
+        private final List<Future<Server>> boots = new CopyOnWriteArrayList<>();
+
+        private void launched(RunningNode node) {
+            synchronized (this) {
+                if (!aborted.get()) {
+                    launched.add(node);
+                    completeIfDone();
+                    return;
+                }
+            }
 
-        if (failedLaunches.get() > 0) {
-            terminateNodes.apply(cloudTemplateNodes);
-            throw new IllegalStateException("One or more instances failed to launch.");
+            // Arrived after the batch was given up
+            terminateNodes.applyAsync(Collections.singletonList(node));
         }
 
-        assert cloudTemplateNodes.size() == nodesActuallyLaunched.size() : String.format(
-                "expected nodes from callbacks to be the same count as those from the list of futures!%n" + "fromCallbacks:%s%nfromFutures%s%n",
-                cloudTemplateNodes, nodesActuallyLaunched);
+        private void failed() {
+            final List<RunningNode> toTerminate;
+            synchronized (this) {
+                if (!aborted.compareAndSet(false, true)) return;
+                toTerminate = ImmutableList.copyOf(launched);
+                launched.clear();
+            }
+
+            // Report the failure right away, the nodes are destroyed in background
+            result.setException(new IllegalStateException("One or more instances failed to launch."));
+            // Those already booting are not interrupted not to lose track of their servers, they are destroyed once launched
+            for (Future<Server> boot : boots) {
+                boot.cancel(false);
+            }
+            terminateNodes.applyAsync(toTerminate);
+        }
 
-        return cloudTemplateNodes;
+        private synchronized void completeIfDone() {
+            if (pending.decrementAndGet() == 0 && !aborted.get()) {
+                result.set(ImmutableList.copyOf(launched));
+            }
+        }
     }
 }
@@ -0,0 +1,144 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.openstack.compute.internal;
+
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.Multiset;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+import org.openstack4j.model.compute.Server;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Capacity reserved for servers being provisioned.
+ *
+ * Reservation is taken when the node is planned and released once the provisioning completes or fails. In between,
+ * the server may or may not be reported by Nova already so the reservations are reconciled with the inventory to count
+ * every server exactly once.
+ *
+ * @author ogondza.
+ */
+@Restricted(NoExternalUse.class)
+public final class ProvisioningLedger {
+
+    // Guarded by this
+    private final Set<Reservation> reservations = new LinkedHashSet<>();
+    // Guarded by this, bumped whenever a reservation stops counting a server
+    private long version = 0;
+
+    /**
+     * Reserve capacity for one server of a template.
+     */
+    public synchronized @Nonnull Reservation reserve(@Nonnull String templateName) {
+        Reservation reservation = new Reservation(templateName);
+        reservations.add(reservation);
+        return reservation;
+    }
+
+    /**
+     * Release the reservation as the server either failed or is expected to be reported by Nova.
+     */
+    public synchronized void release(@Nonnull Reservation reservation) {
+        if (reservations.remove(reservation)) {
+            version++;
+        }
+    }
+
+    /**
+     * Version of the ledger, changed every time a reservation is released or reconciled.
+     *
+     * Inventory fetched before the change might miss the server the reservation was counting, so the planning is to
+     * refetch it until the version is stable.
+     */
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    /**
+     * Get reservations that are not reflected in inventory, by template name.
+     *
+     * Reservations of servers present in the inventory are dropped as it is the inventory that counts them from now on.
+     *
+     * @param running Servers reported by Nova.
+     */
+    public synchronized @Nonnull Multiset<String> outstanding(@Nonnull Collection<? extends Server> running) {
+        Set<String> names = new HashSet<>(running.size());
+        for (Server server : running) {
+            names.add(server.getName());
+        }
+
+        Multiset<String> outstanding = HashMultiset.create();
+        for (Iterator<Reservation> it = reservations.iterator(); it.hasNext();) {
+            Reservation r = it.next();
+            if (r.serverName != null && names.contains(r.serverName)) {
+                it.remove();
+                version++;
+            } else {
+                outstanding.add(r.templateName);
+            }
+        }
+        return outstanding;
+    }
+
+    public synchronized int size() {
+        return reservations.size();
+    }
+
+    /**
+     * Capacity reserved for a single server.
+     */
+    public static final class Reservation {
+        private final @Nonnull String templateName;
+        private volatile @CheckForNull String serverName;
+
+        private Reservation(@Nonnull String templateName) {
+            this.templateName = templateName;
+        }
+
+        public @Nonnull String getTemplateName() {
+            return templateName;
+        }
+
+        /**
+         * Associate server name with the reservation before it is requested so it can be reconciled once reported.
+         *
+         * The name is to be unique, otherwise the reservation is dropped as soon as other server of the name is reported.
+         */
+        public void bind(@Nonnull String serverName) {
+            this.serverName = serverName;
+        }
+
+        @Override
+        public String toString() {
+            return "Reservation for " + templateName + (serverName == null ? "" : " (" + serverName + ")");
+        }
+    }
+}
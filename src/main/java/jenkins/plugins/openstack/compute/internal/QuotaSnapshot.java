@@ -0,0 +1,218 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.openstack.compute.internal;
+
+import org.apache.commons.lang.builder.ToStringBuilder;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+import org.openstack4j.model.compute.Address;
+import org.openstack4j.model.compute.Server;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tenant quota and flavor sizes captured at some point in time.
+ *
+ * Nova reports the usage of the whole tenant, including servers not managed by the plugin. As the snapshot is cached,
+ * the usage of the servers provisioned by the plugin is subtracted when captured so it can be replaced by up-to-date
+ * figures at the time of planning.
+ *
+ * @author ogondza.
+ */
+@Restricted(NoExternalUse.class)
+public final class QuotaSnapshot {
+
+    private final long timestamp;
+    private final @Nonnull Resources limit;
+    private final @Nonnull Resources foreignUsage;
+    private final @Nonnull Map<String, Resources> flavors;
+
+    /**
+     * @param limit Tenant limits, negative values meaning unlimited.
+     * @param usage Tenant usage at the time of capture.
+     * @param flavors Sizes of flavors by id.
+     * @param ours Servers of the plugin running at the time of capture.
+     */
+    public QuotaSnapshot(
+            @Nonnull Resources limit, @Nonnull Resources usage, @Nonnull Map<String, Resources> flavors,
+            @Nonnull Collection<? extends Server> ours
+    ) {
+        this.timestamp = System.currentTimeMillis();
+        this.limit = limit;
+        this.flavors = Collections.unmodifiableMap(new HashMap<>(flavors));
+        this.foreignUsage = usage.minus(usageOf(ours));
+    }
+
+    public boolean isOlderThan(long millis) {
+        return System.currentTimeMillis() - timestamp > millis;
+    }
+
+    public @Nonnull Resources getLimit() {
+        return limit;
+    }
+
+    /**
+     * Size of single server of given flavor.
+     *
+     * Unknown flavors are considered to consume one instance only.
+     */
+    public @Nonnull Resources sizeOf(@CheckForNull String flavorId, boolean floatingIp) {
+        Resources flavor = flavorId == null ? null : flavors.get(flavorId);
+        return new Resources(
+                1,
+                flavor == null ? 0 : flavor.cores,
+                flavor == null ? 0 : flavor.ram,
+                floatingIp ? 1 : 0
+        );
+    }
+
+    private @Nonnull Resources usageOf(@Nonnull Collection<? extends Server> servers) {
+        Resources sum = Resources.NONE;
+        for (Server server : servers) {
+            sum = sum.plus(sizeOf(server.getFlavorId(), hasFloatingIp(server)));
+        }
+        return sum;
+    }
+
+    private static boolean hasFloatingIp(@Nonnull Server server) {
+        if (server.getAddresses() == null) return false;
+        for (List<? extends Address> addresses: server.getAddresses().getAddresses().values()) {
+            for (Address addr: addresses) {
+                if ("floating".equals(addr.getType())) return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get remaining resources given the servers currently running.
+     *
+     * @param ours Servers of the plugin running now.
+     */
+    public @Nonnull Budget budget(@Nonnull Collection<? extends Server> ours) {
+        return new Budget(foreignUsage.plus(usageOf(ours)));
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)
+                .append("limit", limit)
+                .append("foreignUsage", foreignUsage)
+                .append("timestamp", timestamp)
+                .toString()
+        ;
+    }
+
+    /**
+     * Resources remaining for the planning. Not threadsafe.
+     */
+    public final class Budget {
+        private @Nonnull Resources used;
+
+        private Budget(@Nonnull Resources used) {
+            this.used = used;
+        }
+
+        /**
+         * Claim resources for a server.
+         *
+         * @return true if the server fits the quota, false if not. Nothing is claimed in the latter case.
+         */
+        public boolean claim(@CheckForNull String flavorId, boolean floatingIp) {
+            Resources next = used.plus(sizeOf(flavorId, floatingIp));
+            if (!next.fits(limit)) return false;
+
+            used = next;
+            return true;
+        }
+
+        /**
+         * Claim resources for a server that is being provisioned already regardless the quota.
+         */
+        public void claimInFlight(@CheckForNull String flavorId, boolean floatingIp) {
+            used = used.plus(sizeOf(flavorId, floatingIp));
+        }
+
+        public @Nonnull Resources getUsed() {
+            return used;
+        }
+    }
+
+    /**
+     * Amount of tenant resources.
+     */
+    public static final class Resources {
+        public static final Resources NONE = new Resources(0, 0, 0, 0);
+
+        public final int instances;
+        public final int cores;
+        /** Megabytes */
+        public final int ram;
+        public final int floatingIps;
+
+        public Resources(int instances, int cores, int ram, int floatingIps) {
+            this.instances = instances;
+            this.cores = cores;
+            this.ram = ram;
+            this.floatingIps = floatingIps;
+        }
+
+        private @Nonnull Resources plus(@Nonnull Resources o) {
+            return new Resources(instances + o.instances, cores + o.cores, ram + o.ram, floatingIps + o.floatingIps);
+        }
+
+        private @Nonnull Resources minus(@Nonnull Resources o) {
+            return new Resources(
+                    Math.max(0, instances - o.instances),
+                    Math.max(0, cores - o.cores),
+                    Math.max(0, ram - o.ram),
+                    Math.max(0, floatingIps - o.floatingIps)
+            );
+        }
+
+        private boolean fits(@Nonnull Resources limit) {
+            return fits(instances, limit.instances)
+                    && fits(cores, limit.cores)
+                    && fits(ram, limit.ram)
+                    // Nova does not report floating IP limits when they are managed by Neutron so 0 can not be trusted
+                    && (limit.floatingIps == 0 || fits(floatingIps, limit.floatingIps))
+            ;
+        }
+
+        private static boolean fits(int value, int limit) {
+            return limit < 0 || value <= limit;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("instances=%d, cores=%d, ram=%dMB, floatingIps=%d", instances, cores, ram, floatingIps);
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package jenkins.plugins.openstack.compute.internal;
 
 import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.openstack4j.model.compute.Server;
 
@@ -13,16 +14,21 @@ class RetrySupplierOnFailure implements Callable<Server> {
     private static final int MAX_ATTEMPTS = 5;
     private final TaskListener listener;
     private final Supplier<Server> supplier;
+    private final AtomicBoolean aborted;
 
-    RetrySupplierOnFailure(Supplier<Server> supplier, TaskListener listener) {
+    /**
+     * @param aborted Set when the other nodes failed so there is no point in launching this one.
+     */
+    RetrySupplierOnFailure(Supplier<Server> supplier, TaskListener listener, AtomicBoolean aborted) {
         this.supplier = supplier;
         this.listener = listener;
+        this.aborted = aborted;
     }
 
     public Server call() throws Exception {
         int attempts = 0;
 
-        while (attempts < MAX_ATTEMPTS) {
+        while (attempts < MAX_ATTEMPTS && !aborted.get()) {
             attempts++;
             try {
                 Server n = supplier.get();
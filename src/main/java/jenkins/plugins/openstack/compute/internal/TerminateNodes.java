@@ -1,13 +1,19 @@
 package jenkins.plugins.openstack.compute.internal;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 
 import org.openstack4j.model.compute.Server;
 
 import com.google.common.base.Function;
 import com.google.common.collect.ImmutableMultimap;
 import com.google.common.collect.Multimap;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
 
+import hudson.Util;
 import hudson.model.TaskListener;
 import jenkins.plugins.openstack.compute.JCloudsCloud;
 
@@ -21,25 +27,66 @@ public class TerminateNodes implements Function<Iterable<RunningNode>, Void> {
     }
 
     public Void apply(Iterable<RunningNode> runningNodes) {
+        destroy(groupByCloud(runningNodes));
+        return null;
+    }
+
+    /**
+     * Destroy the nodes using the pools of their clouds, not to block the caller.
+     *
+     * @return Future completed once all the nodes are destroyed.
+     */
+    public ListenableFuture<Void> applyAsync(Iterable<RunningNode> runningNodes) {
+        Multimap<String, Server> cloudNodesToDestroy = groupByCloud(runningNodes);
+
+        List<ListenableFuture<?>> destroyed = new ArrayList<>();
+        for (final String cloudToDestroy : cloudNodesToDestroy.keySet()) {
+            final Collection<Server> nodesToDestroy = cloudNodesToDestroy.get(cloudToDestroy);
+            final CloudExecutors executors = CloudExecutors.get(cloudToDestroy);
+            // Awaiting the deletions from a pool of its own not to starve the deletion threads it waits for
+            destroyed.add(executors.get(CloudExecutors.Pool.TERMINATION).submit(new Runnable() {
+                @Override public void run() {
+                    destroy(cloudToDestroy, nodesToDestroy, executors.get(CloudExecutors.Pool.DELETION));
+                }
+            }));
+        }
+        return Futures.transform(Futures.allAsList(destroyed), new Function<List<Object>, Void>() {
+            @Override public Void apply(List<Object> input) {
+                return null;
+            }
+        });
+    }
+
+    private Multimap<String, Server> groupByCloud(Iterable<RunningNode> runningNodes) {
         // Group by cloud to avoid re-authentication
         Builder<String, Server> cloudNodesToDestroyBuilder = ImmutableMultimap.<String, Server>builder();
         for (RunningNode cloudTemplateNode : runningNodes) {
             cloudNodesToDestroyBuilder.put(cloudTemplateNode.getCloudName(), cloudTemplateNode.getNode());
         }
-        Multimap<String, Server> cloudNodesToDestroy = cloudNodesToDestroyBuilder.build();
-
-        destroy(cloudNodesToDestroy);
-        return null;
+        return cloudNodesToDestroyBuilder.build();
     }
 
     private void destroy(Multimap<String, Server> cloudNodesToDestroy) {
         for (String cloudToDestroy : cloudNodesToDestroy.keySet()) {
-            final Collection<Server> nodesToDestroy = cloudNodesToDestroy.get(cloudToDestroy);
-            Openstack os = JCloudsCloud.getByName(cloudToDestroy).getOpenstack();
-            for (Server node: nodesToDestroy) {
-                listener.getLogger().println("Destroying node: " + node.getName());
-                os.destroyServer(node);
-            }
+            // Issued at once rather than node by node
+            ListeningExecutorService executor = CloudExecutors.get(cloudToDestroy).get(CloudExecutors.Pool.DELETION);
+            destroy(cloudToDestroy, cloudNodesToDestroy.get(cloudToDestroy), executor);
+        }
+    }
+
+    private void destroy(String cloudToDestroy, Collection<Server> nodesToDestroy, ListeningExecutorService executor) {
+        Openstack os = JCloudsCloud.getByName(cloudToDestroy).getOpenstack();
+
+        List<String> names = new ArrayList<>(nodesToDestroy.size());
+        for (Server node: nodesToDestroy) {
+            names.add(node.getName());
+        }
+        listener.getLogger().println("Destroying nodes: " + Util.join(names, ", "));
+
+        List<Server> failed = os.destroyServers(new ArrayList<>(nodesToDestroy), executor, listener);
+        for (Server node: failed) {
+            listener.error("Failed to destroy node: " + node.getName());
         }
+        listener.getLogger().printf("Destroyed %d of %d nodes in %s%n", nodesToDestroy.size() - failed.size(), nodesToDestroy.size(), cloudToDestroy);
     }
 }
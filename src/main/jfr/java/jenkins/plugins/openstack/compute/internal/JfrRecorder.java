@@ -0,0 +1,129 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.openstack.compute.internal;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+/**
+ * JFR backed {@link CloudEvents}.
+ *
+ * Compiled only on JDK 11 and newer, instantiated reflectively.
+ *
+ * @author ogondza.
+ */
+/*package*/ final class JfrRecorder implements CloudEvents.Recorder {
+
+    @Override
+    public @Nonnull CloudEvents.Event begin(
+            @Nonnull CloudEvents.Type type, @CheckForNull String cloud, @CheckForNull String template,
+            @CheckForNull String server, @Nonnull String operation
+    ) {
+        CloudEvent event;
+        switch (type) {
+            case API_CALL: event = new ApiCall(); break;
+            case PROVISIONING_PHASE: event = new ProvisioningPhase(); break;
+            case READINESS_PROBE: event = new ReadinessProbe(); break;
+            case DELETION: event = new Deletion(); break;
+            case CAPACITY_PLANNING: event = new CapacityPlanning(); break;
+            default: throw new AssertionError(type);
+        }
+
+        // Cheap when the event type is not enabled in the recording
+        if (!event.isEnabled()) return NOT_ENABLED;
+
+        event.cloud = cloud;
+        event.template = template;
+        event.server = server;
+        event.operation = operation;
+        event.begin();
+        return event;
+    }
+
+    private static final CloudEvents.Event NOT_ENABLED = new CloudEvents.Event() {
+        @Override public void server(@CheckForNull String serverId) {}
+        @Override public void end(@Nonnull String outcome) {}
+    };
+
+    @Category({"Jenkins", "OpenStack Cloud"})
+    @StackTrace(false)
+    static abstract class CloudEvent extends jdk.jfr.Event implements CloudEvents.Event {
+        @Label("Cloud")
+        String cloud;
+
+        @Label("Template")
+        String template;
+
+        @Label("Server")
+        String server;
+
+        @Label("Operation")
+        String operation;
+
+        @Label("Outcome")
+        String outcome;
+
+        @Override
+        public void server(@CheckForNull String serverId) {
+            server = serverId;
+        }
+
+        @Override
+        public void end(@Nonnull String outcome) {
+            this.outcome = outcome;
+            commit();
+        }
+    }
+
+    @Name("jenkins.plugins.openstack.ApiCall")
+    @Label("OpenStack API Call")
+    @Description("Call of OpenStack API, operation is the service and the method called")
+    static final class ApiCall extends CloudEvent {}
+
+    @Name("jenkins.plugins.openstack.ProvisioningPhase")
+    @Label("Provisioning Phase")
+    @Description("Phase of provisioning a node")
+    static final class ProvisioningPhase extends CloudEvent {}
+
+    @Name("jenkins.plugins.openstack.ReadinessProbe")
+    @Label("Readiness Probe")
+    @Description("Check whether the server is ready to be launched")
+    static final class ReadinessProbe extends CloudEvent {}
+
+    @Name("jenkins.plugins.openstack.Deletion")
+    @Label("Server Deletion")
+    @Description("Deletion of a server")
+    static final class Deletion extends CloudEvent {}
+
+    @Name("jenkins.plugins.openstack.CapacityPlanning")
+    @Label("Capacity Planning")
+    @Description("Planning of nodes to provision, operation is the label")
+    static final class CapacityPlanning extends CloudEvent {}
+}
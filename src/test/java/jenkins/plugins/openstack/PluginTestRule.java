@@ -1,6 +1,7 @@
 package jenkins.plugins.openstack;
 
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollectionOf;
 import static org.mockito.Mockito.RETURNS_SMART_NULLS;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
@@ -37,6 +38,7 @@ import org.jenkinsci.lib.configprovider.model.Config;
 import org.junit.runner.Description;
 import org.junit.runners.model.Statement;
 import org.jvnet.hudson.test.JenkinsRule;
+import com.google.common.util.concurrent.ListeningExecutorService;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 import org.openstack4j.model.compute.Server;
@@ -187,6 +189,7 @@ public final class PluginTestRule extends JenkinsRule {
                 Server machine = mockServer()
                         .name("provisioned" + num)
                         .floatingIp("42.42.42." + num)
+                        .flavor(builder.build().getFlavorRef())
                         .metadata(builder.build().getMetaData())
                         .get()
                 ;
@@ -208,6 +211,13 @@ public final class PluginTestRule extends JenkinsRule {
                 }
             }
         });
+        when(os.getOurNodes()).thenAnswer(new Answer<List<Server>>() {
+            @Override public List<Server> answer(InvocationOnMock invocation) throws Throwable {
+                synchronized (running) {
+                    return new ArrayList<>(running);
+                }
+            }
+        });
         when(os.getServerById(any(String.class))).thenAnswer(new Answer<Server>() {
             @Override public Server answer(InvocationOnMock invocation) throws Throwable {
                 String expected = (String) invocation.getArguments()[0];
@@ -229,6 +239,15 @@ public final class PluginTestRule extends JenkinsRule {
                 return null;
             }
         }).when(os).destroyServer(any(Server.class));
+        when(os.destroyServers(anyCollectionOf(Server.class), any(ListeningExecutorService.class), any(TaskListener.class))).thenAnswer(new Answer<List<Server>>() {
+            @Override public List<Server> answer(InvocationOnMock invocation) throws Throwable {
+                Collection<?> servers = (Collection<?>) invocation.getArguments()[0];
+                synchronized (running) {
+                    running.removeAll(servers);
+                }
+                return Collections.emptyList();
+            }
+        });
         return cloud;
     }
 
@@ -324,6 +343,11 @@ public final class PluginTestRule extends JenkinsRule {
             return this;
         }
 
+        public MockServerBuilder flavor(String flavorId) {
+            when(server.getFlavorId()).thenReturn(flavorId);
+            return this;
+        }
+
         public MockServerBuilder status(Server.Status status) {
             when(server.getStatus()).thenReturn(status);
             return this;
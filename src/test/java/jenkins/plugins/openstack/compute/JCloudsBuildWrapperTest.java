@@ -7,12 +7,20 @@ import hudson.model.FreeStyleBuild;
 import hudson.model.FreeStyleProject;
 import hudson.model.Result;
 import hudson.model.TaskListener;
+import hudson.model.queue.QueueTaskFuture;
+import hudson.util.OneShotEvent;
+import com.google.common.util.concurrent.ListeningExecutorService;
 import jenkins.plugins.openstack.PluginTestRule;
+import jenkins.plugins.openstack.compute.internal.CloudState;
 import jenkins.plugins.openstack.compute.internal.Openstack;
+import jenkins.plugins.openstack.compute.internal.ProvisioningLedger;
+import org.hamcrest.Matchers;
 import org.junit.Rule;
 import org.junit.Test;
 import org.jvnet.hudson.test.Issue;
 import org.jvnet.hudson.test.TestBuilder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.openstack4j.model.compute.Server;
 import org.openstack4j.model.compute.builder.ServerCreateBuilder;
 
@@ -23,7 +31,9 @@ import java.util.List;
 
 import static org.hamcrest.Matchers.arrayWithSize;
 import static org.hamcrest.collection.IsArrayContainingInAnyOrder.arrayContainingInAnyOrder;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.*;
 
 public class JCloudsBuildWrapperTest {
@@ -58,7 +68,7 @@ public class JCloudsBuildWrapperTest {
         verify(os, times(3)).bootAndWaitActive(any(ServerCreateBuilder.class), any(Integer.class));
         verify(os, times(3)).assignFloatingIp(any(Server.class), eq("custom"));
         verify(os, times(3)).updateInfo(any(Server.class));
-        verify(os, times(3)).destroyServer(any(Server.class));
+        verify(os).destroyServers(argThat(Matchers.<Server>hasSize(3)), any(ListeningExecutorService.class), any(TaskListener.class));
         verifyNoMoreInteractions(os);
     }
 
@@ -89,10 +99,193 @@ public class JCloudsBuildWrapperTest {
         verify(os, times(6)).bootAndWaitActive(any(ServerCreateBuilder.class), any(Integer.class)); // 5 retries on exception
         verify(os, times(1)).updateInfo(any(Server.class));
         verify(os, times(1)).assignFloatingIp(any(Server.class), eq("custom"));
-        verify(os, times(1)).destroyServer(any(Server.class)); // Cleanup after the successful attempt
+        verify(os, timeout(10000)).destroyServers(argThat(Matchers.<Server>hasSize(1)), any(ListeningExecutorService.class), any(TaskListener.class)); // Cleanup after the successful attempt
         verifyNoMoreInteractions(os);
     }
 
+    @Test
+    public void doNotBootQueuedInstancesOnceFailed() throws Exception {
+        JCloudsSlaveTemplate template = j.dummySlaveTemplate("label");
+        JCloudsCloud cloud = j.dummyCloud(template);
+        cloud.setMaxConcurrentBoots(1);
+        Openstack os = cloud.getOpenstack();
+
+        when(os.bootAndWaitActive(any(ServerCreateBuilder.class), any(Integer.class)))
+                .thenThrow(new Openstack.ActionFailed("It is broken, alright!"))
+        ;
+
+        FreeStyleProject p = j.createFreeStyleProject();
+        p.getBuildWrappersList().add(new JCloudsBuildWrapper(Collections.singletonList(
+                new InstancesToRun(cloud.name, template.name, null, 3)
+        )));
+
+        FreeStyleBuild build = j.assertBuildStatus(Result.FAILURE, p.scheduleBuild2(0).get());
+        j.assertLogContains("One or more instances failed to launch", build);
+
+        // Retries of the first one, the others are cancelled while waiting for the boot slot
+        verify(os, times(5)).bootAndWaitActive(any(ServerCreateBuilder.class), any(Integer.class));
+    }
+
+    @Test
+    public void failFastWithoutWaitingForOtherInstances() throws Exception {
+        JCloudsSlaveTemplate template = j.dummySlaveTemplate("label");
+        JCloudsCloud cloud = j.dummyCloud(template);
+        Openstack os = cloud.getOpenstack();
+
+        final Server success = j.mockServer().name("provisioned").floatingIp("42.42.42.42").get();
+        final OneShotEvent bootCompleted = new OneShotEvent();
+
+        // The first boot hangs until the build is over, the others fail
+        when(os.bootAndWaitActive(any(ServerCreateBuilder.class), any(Integer.class)))
+                .thenAnswer(new Answer<Server>() {
+                    @Override public Server answer(InvocationOnMock invocation) throws Throwable {
+                        bootCompleted.block();
+                        return success;
+                    }
+                })
+                .thenThrow(new Openstack.ActionFailed("It is broken, alright!"))
+        ;
+        when(os.updateInfo(any(Server.class))).thenReturn(success);
+
+        FreeStyleProject p = j.createFreeStyleProject();
+        List<InstancesToRun> instances = Collections.singletonList(
+                new InstancesToRun(cloud.name, template.name, null, 2)
+        );
+        p.getBuildWrappersList().add(new JCloudsBuildWrapper(instances));
+
+        FreeStyleBuild build = j.assertBuildStatus(Result.FAILURE, p.scheduleBuild2(0).get());
+        j.assertLogContains("One or more instances failed to launch", build);
+        verify(os, never()).destroyServers(anyCollectionOf(Server.class), any(ListeningExecutorService.class), any(TaskListener.class));
+
+        bootCompleted.signal();
+        verify(os, timeout(10000)).destroyServers(eq(Collections.singletonList(success)), any(ListeningExecutorService.class), any(TaskListener.class)); // Cleaned up once booted
+        verify(os, times(6)).bootAndWaitActive(any(ServerCreateBuilder.class), any(Integer.class));
+    }
+
+    @Test
+    public void reserveCapacityWhileBooting() throws Exception {
+        JCloudsSlaveTemplate template = j.dummySlaveTemplate("label");
+        JCloudsCloud cloud = j.dummyCloud(template);
+        Openstack os = cloud.getOpenstack();
+        ProvisioningLedger ledger = CloudState.get(cloud.name).getLedger();
+
+        final Server success = j.mockServer().name("provisioned").floatingIp("42.42.42.42").get();
+        final OneShotEvent bootCompleted = new OneShotEvent();
+        when(os.bootAndWaitActive(any(ServerCreateBuilder.class), any(Integer.class)))
+                .thenAnswer(new Answer<Server>() {
+                    @Override public Server answer(InvocationOnMock invocation) throws Throwable {
+                        bootCompleted.block();
+                        return success;
+                    }
+                })
+        ;
+        when(os.updateInfo(any(Server.class))).thenReturn(success);
+
+        FreeStyleProject p = j.createFreeStyleProject();
+        p.getBuildWrappersList().add(new JCloudsBuildWrapper(Collections.singletonList(
+                new InstancesToRun(cloud.name, template.name, null, 1)
+        )));
+
+        QueueTaskFuture<FreeStyleBuild> future = p.scheduleBuild2(0);
+        verify(os, timeout(10000)).bootAndWaitActive(any(ServerCreateBuilder.class), any(Integer.class));
+        assertEquals(1, ledger.size());
+
+        bootCompleted.signal();
+        j.assertBuildStatusSuccess(future);
+        assertEquals(0, ledger.size());
+    }
+
+    @Test
+    public void provisionOnQueue() throws Exception {
+        final JCloudsCloud cloud = j.createCloudLaunchingDummySlaves("label");
+        JCloudsSlaveTemplate template = cloud.getTemplates().get(0);
+        Openstack os = cloud.getOpenstack();
+
+        FreeStyleProject p = j.createFreeStyleProject();
+        JCloudsBuildWrapper wrapper = new JCloudsBuildWrapper(Collections.singletonList(
+                new InstancesToRun(cloud.name, template.name, null, 2)
+        ));
+        wrapper.setProvisionOnQueue(true);
+        p.getBuildWrappersList().add(wrapper);
+
+        QueueTaskFuture<FreeStyleBuild> future = p.scheduleBuild2(1000);
+        // Booted while waiting in the queue
+        verify(os, timeout(10000).times(2)).bootAndWaitActive(any(ServerCreateBuilder.class), any(Integer.class));
+
+        p.scheduleBuild2(0); // Cut the quiet period short
+        FreeStyleBuild build = j.assertBuildStatusSuccess(future);
+        j.assertLogContains("Queuing cloud instance", build);
+
+        verify(os, times(2)).bootAndWaitActive(any(ServerCreateBuilder.class), any(Integer.class));
+        verify(os).destroyServers(argThat(Matchers.<Server>hasSize(2)), any(ListeningExecutorService.class), any(TaskListener.class));
+    }
+
+    @Test
+    public void destroyInstancesOfCancelledQueueItem() throws Exception {
+        final JCloudsCloud cloud = j.createCloudLaunchingDummySlaves("label");
+        JCloudsSlaveTemplate template = cloud.getTemplates().get(0);
+        Openstack os = cloud.getOpenstack();
+
+        FreeStyleProject p = j.createFreeStyleProject();
+        JCloudsBuildWrapper wrapper = new JCloudsBuildWrapper(Collections.singletonList(
+                new InstancesToRun(cloud.name, template.name, null, 2)
+        ));
+        wrapper.setProvisionOnQueue(true);
+        p.getBuildWrappersList().add(wrapper);
+
+        p.scheduleBuild2(1000);
+        verify(os, timeout(10000).times(2)).bootAndWaitActive(any(ServerCreateBuilder.class), any(Integer.class));
+
+        assertTrue(j.jenkins.getQueue().cancel(p));
+        verify(os, timeout(10000)).destroyServers(argThat(Matchers.<Server>hasSize(2)), any(ListeningExecutorService.class), any(TaskListener.class));
+    }
+
+    @Test
+    public void reuseInstances() throws Exception {
+        final JCloudsCloud cloud = j.createCloudLaunchingDummySlaves("label");
+        JCloudsSlaveTemplate template = cloud.getTemplates().get(0);
+        Openstack os = cloud.getOpenstack();
+
+        FreeStyleProject p = j.createFreeStyleProject();
+        JCloudsBuildWrapper wrapper = new JCloudsBuildWrapper(Collections.singletonList(
+                new InstancesToRun(cloud.name, template.name, null, 1)
+        ));
+        wrapper.setReuse(new InstanceReuse(60, 2, false));
+        p.getBuildWrappersList().add(wrapper);
+
+        j.buildAndAssertSuccess(p);
+        verify(os, never()).destroyServers(anyCollectionOf(Server.class), any(ListeningExecutorService.class), any(TaskListener.class));
+
+        FreeStyleBuild second = j.buildAndAssertSuccess(p);
+        j.assertLogContains("Reusing pooled instance", second);
+
+        // Used up by the second build
+        verify(os, times(1)).bootAndWaitActive(any(ServerCreateBuilder.class), any(Integer.class));
+        verify(os).destroyServers(argThat(Matchers.<Server>hasSize(1)), any(ListeningExecutorService.class), any(TaskListener.class));
+    }
+
+    @Test
+    public void doNotReuseInstancesOfOtherJobs() throws Exception {
+        final JCloudsCloud cloud = j.createCloudLaunchingDummySlaves("label");
+        JCloudsSlaveTemplate template = cloud.getTemplates().get(0);
+        Openstack os = cloud.getOpenstack();
+
+        FreeStyleProject pooling = j.createFreeStyleProject();
+        FreeStyleProject other = j.createFreeStyleProject();
+        for (FreeStyleProject p : Arrays.asList(pooling, other)) {
+            JCloudsBuildWrapper wrapper = new JCloudsBuildWrapper(Collections.singletonList(
+                    new InstancesToRun(cloud.name, template.name, null, 1)
+            ));
+            wrapper.setReuse(new InstanceReuse(60, 2, false));
+            p.getBuildWrappersList().add(wrapper);
+        }
+
+        j.buildAndAssertSuccess(pooling);
+        FreeStyleBuild build = j.buildAndAssertSuccess(other);
+        j.assertLogNotContains("Reusing pooled instance", build);
+        verify(os, times(2)).bootAndWaitActive(any(ServerCreateBuilder.class), any(Integer.class));
+    }
+
     @Test
     public void checkUi() throws Exception {
         FreeStyleProject p = j.createFreeStyleProject();
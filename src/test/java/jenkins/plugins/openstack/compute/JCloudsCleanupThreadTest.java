@@ -14,6 +14,7 @@ import hudson.model.FreeStyleProject;
 import hudson.model.Result;
 import hudson.node_monitors.DiskSpaceMonitorDescriptor;
 import hudson.util.OneShotEvent;
+import jenkins.metrics.api.Metrics;
 import jenkins.plugins.openstack.PluginTestRule;
 import jenkins.plugins.openstack.compute.internal.Openstack;
 import org.junit.Ignore;
@@ -87,6 +88,21 @@ public class JCloudsCleanupThreadTest {
         assertNull(j.jenkins.getNode(slave.getDisplayName()));
     }
 
+    @Test
+    public void doNotRecreateExecutorsOfRemovedCloud() throws Exception {
+        JCloudsCloud cloud = j.configureSlaveLaunching(j.dummyCloud(j.dummySlaveTemplate("label")));
+        JCloudsComputer computer = (JCloudsComputer) j.provision(cloud, "label").getComputer();
+        computer.setPendingDelete(true);
+        j.jenkins.clouds.remove(cloud);
+
+        // The node of the removed cloud is attempted to be deleted on every run
+        j.triggerOpenstackSlaveCleanup();
+        j.triggerOpenstackSlaveCleanup();
+
+        String gauge = "jenkins.plugins.openstack." + cloud.name + ".executor.deletion.active";
+        assertFalse(Metrics.metricRegistry().getGauges().containsKey(gauge));
+    }
+
     @Test @Ignore // WIP
     public void deleteMachinesNotConnectedToAnySlave() {
         JCloudsCloud cloud = j.dummyCloud();
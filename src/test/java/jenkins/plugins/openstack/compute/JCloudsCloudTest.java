@@ -126,10 +126,10 @@ public class JCloudsCloudTest {
 
 
         JCloudsSlaveTemplate template = new JCloudsSlaveTemplate("template", "label", new SlaveOptions(
-                "img", "hw", "nw", "ud", 1, "public", "sg", "az", 2, "kp", 3, "jvmo", "fsRoot", "cid", JCloudsCloud.SlaveType.JNLP, 4
+                "img", "hw", "nw", "ud", 1, "public", "sg", "az", 2, "kp", 3, "jvmo", "fsRoot", "cid", JCloudsCloud.SlaveType.JNLP, 4, 5, 6, 7
         ));
         JCloudsCloud cloud = new JCloudsCloud("openstack", "identity", "credential", "endPointUrl", "zone", new SlaveOptions(
-                "IMG", "HW", "NW", "UD", 6, null, "SG", "AZ", 7, "KP", 8, "JVMO", "FSrOOT", "CID", JCloudsCloud.SlaveType.SSH, 9
+                "IMG", "HW", "NW", "UD", 6, null, "SG", "AZ", 7, "KP", 8, "JVMO", "FSrOOT", "CID", JCloudsCloud.SlaveType.SSH, 9, 10, 11, 12
         ), Arrays.asList(template));
         j.jenkins.clouds.add(cloud);
 
@@ -169,6 +169,15 @@ public class JCloudsCloudTest {
 
         assertEquals("9", c.value("retentionTime"));
         assertEquals(String.valueOf(DEF.getRetentionTime()), c.def("retentionTime"));
+
+        assertEquals("10", c.value("stoppedCap"));
+        assertEquals(String.valueOf(DEF.getStoppedCap()), c.def("stoppedCap"));
+
+        assertEquals("11", c.value("volumePool"));
+        assertEquals(String.valueOf(DEF.getVolumePool()), c.def("volumePool"));
+
+        assertEquals("12", c.value("volumeSize"));
+        assertEquals(String.valueOf(DEF.getVolumeSize()), c.def("volumeSize"));
     }
 
     @Test
@@ -187,12 +196,14 @@ public class JCloudsCloudTest {
 
     @Test
     public void testConfigRoundtrip() throws Exception {
-        String beans = "identity,credential,endPointUrl,zone";
+        String beans = "identity,credential,endPointUrl,zone,maxConcurrentBoots,noDelayProvisioning";
         JCloudsCloud original = new JCloudsCloud(
                 "openstack", "identity", "credential", "endPointUrl", "zone",
                 j.dummySlaveOptions(),
                 Collections.<JCloudsSlaveTemplate>emptyList()
         );
+        original.setMaxConcurrentBoots(3);
+        original.setNoDelayProvisioning(true);
         j.jenkins.clouds.add(original);
 
         j.submit(j.createWebClient().goTo("configure").getFormByName("config"));
@@ -286,7 +297,7 @@ public class JCloudsCloudTest {
         }
 
         @Override public Object call() throws Exception {
-            cloud.doProvision(Stapler.getCurrentRequest(), Stapler.getCurrentResponse(), template.name);
+            cloud.doProvision(Stapler.getCurrentRequest(), Stapler.getCurrentResponse(), template.name, 1);
             return null;
         }
     }
@@ -0,0 +1,80 @@
+package jenkins.plugins.openstack.compute;
+
+import com.google.common.util.concurrent.ListeningExecutorService;
+import hudson.model.Result;
+import hudson.model.TaskListener;
+import hudson.util.VariableResolver;
+import jenkins.plugins.openstack.PluginTestRule;
+import jenkins.plugins.openstack.compute.internal.Openstack;
+import org.apache.commons.lang.SerializationUtils;
+import org.hamcrest.Matchers;
+import org.jenkinsci.plugins.workflow.cps.CpsFlowDefinition;
+import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+import org.junit.Rule;
+import org.junit.Test;
+import org.openstack4j.model.compute.Server;
+import org.openstack4j.model.compute.builder.ServerCreateBuilder;
+
+import java.util.Collections;
+
+import static org.mockito.Mockito.*;
+
+public class JCloudsInstancesStepTest {
+
+    @Rule
+    public PluginTestRule j = new PluginTestRule();
+
+    @Test
+    public void provisionForBlock() throws Exception {
+        JCloudsCloud cloud = j.createCloudLaunchingDummySlaves("label");
+        JCloudsSlaveTemplate template = cloud.getTemplates().get(0);
+        Openstack os = cloud.getOpenstack();
+
+        WorkflowJob p = j.jenkins.createProject(WorkflowJob.class, "p");
+        p.setDefinition(new CpsFlowDefinition(
+                "openstackInstances(instancesToRun: [[$class: 'InstancesToRun', cloudName: '" + cloud.name + "', templateName: '" + template.name + "', count: 2]]) {\n" +
+                "  echo 'Provisioning in the background'\n" +
+                "  def ips = openstackWaitForInstances()\n" +
+                "  echo \"Instances: ${ips.size()}\"\n" +
+                "}\n"
+        ));
+
+        WorkflowRun run = j.assertBuildStatusSuccess(p.scheduleBuild2(0));
+        j.assertLogContains("Provisioning in the background", run);
+        j.assertLogContains("Instances: 2", run);
+        // Completed once destroyed
+        j.assertLogContains("Destroyed 2 of 2 nodes in " + cloud.name, run);
+
+        verify(os, times(2)).bootAndWaitActive(any(ServerCreateBuilder.class), any(Integer.class));
+        verify(os).destroyServers(argThat(Matchers.<Server>hasSize(2)), any(ListeningExecutorService.class), any(TaskListener.class));
+    }
+
+    @Test
+    public void destroyServersOfLostInstances() throws Exception {
+        JCloudsCloud cloud = j.createCloudLaunchingDummySlaves("label");
+        JCloudsSlaveTemplate template = cloud.getTemplates().get(0);
+        Openstack os = cloud.getOpenstack();
+
+        JCloudsInstances instances = JCloudsInstances.start(JCloudsBuildWrapper.getNodePlans(
+                Collections.singletonList(new InstancesToRun(cloud.name, template.name, null, 2)), VariableResolver.NONE
+        ), TaskListener.NULL);
+        instances.getNodes().get();
+
+        // Restored by the pipeline after restart
+        instances = (JCloudsInstances) SerializationUtils.clone(instances);
+        instances.forget();
+
+        instances.release(TaskListener.NULL).get();
+        verify(os).destroyServers(argThat(Matchers.<Server>hasSize(2)), any(ListeningExecutorService.class), any(TaskListener.class));
+    }
+
+    @Test
+    public void waitOutsideOfBlock() throws Exception {
+        WorkflowJob p = j.jenkins.createProject(WorkflowJob.class, "p");
+        p.setDefinition(new CpsFlowDefinition("openstackWaitForInstances()"));
+
+        WorkflowRun run = j.assertBuildStatus(Result.FAILURE, p.scheduleBuild2(0).get());
+        j.assertLogContains("openstackWaitForInstances needs to be called inside of openstackInstances", run);
+    }
+}
@@ -26,4 +26,23 @@ public class JCloudsOneOffSlaveTest {
         JCloudsComputer computer = (JCloudsComputer) build.getBuiltOn().toComputer();
         assertTrue("Slave should be discarded", computer.isPendingDelete());
     }
+
+    @Test
+    public void rebuildSlaveOnceUsed() throws Exception {
+        j.createCloudLaunchingDummySlaves("label");
+
+        FreeStyleProject p = j.createFreeStyleProject();
+        JCloudsOneOffSlave wrapper = new JCloudsOneOffSlave();
+        wrapper.setRebuild(true);
+        p.getBuildWrappersList().add(wrapper);
+        p.setAssignedLabel(Label.get("label"));
+
+        FreeStyleBuild build = j.buildAndAssertSuccess(p);
+        JCloudsComputer computer = (JCloudsComputer) build.getBuiltOn().toComputer();
+        assertTrue("Slave should be discarded", computer.isPendingDelete());
+        assertTrue("Server should be rebuilt", computer.isPendingRebuild());
+
+        j.configRoundtrip(p);
+        assertTrue(p.getBuildWrappersList().get(JCloudsOneOffSlave.class).isRebuild());
+    }
 }
@@ -2,6 +2,7 @@ package jenkins.plugins.openstack.compute;
 
 import static org.hamcrest.Matchers.instanceOf;
 import static org.junit.Assert.*;
+import static org.mockito.Mockito.when;
 
 import hudson.model.Computer;
 import hudson.model.Label;
@@ -48,6 +49,28 @@ public class JCloudsRetentionStrategyTest {
         assertTrue("Slave should be scheduled for deletion", computer.isPendingDelete());
     }
 
+    @Test
+    public void scheduleSlaveStopUntilPoolIsFull() throws Exception {
+        JCloudsCloud cloud = j.configureSlaveLaunching(j.dummyCloud(j.dummySlaveTemplate(
+                j.dummySlaveOptions().getBuilder().retentionTime(0).stoppedCap(1).build(),
+                "label"
+        )));
+        JCloudsSlave first = j.provision(cloud, "label");
+        JCloudsSlave second = j.provision(cloud, "label");
+        // Decided using the most recent inventory as it is called holding the queue lock
+        when(cloud.getOpenstack().getStoppedNodes()).thenThrow(new AssertionError("Stopped servers listed again"));
+
+        JCloudsComputer computer = (JCloudsComputer) first.toComputer();
+        computer.getRetentionStrategy().check(computer);
+        assertTrue(computer.isPendingStop());
+        assertTrue(computer.isPendingDelete());
+
+        computer = (JCloudsComputer) second.toComputer();
+        computer.getRetentionStrategy().check(computer);
+        assertFalse("Stopped pool is full", computer.isPendingStop());
+        assertTrue(computer.isPendingDelete());
+    }
+
     /**
      * There are several async operations taking place here:
      *
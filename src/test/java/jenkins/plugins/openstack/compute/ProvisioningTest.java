@@ -15,6 +15,7 @@ import hudson.plugins.sshslaves.SSHLauncher;
 import hudson.slaves.NodeProvisioner;
 import jenkins.plugins.openstack.PluginTestRule;
 import jenkins.plugins.openstack.compute.internal.Openstack;
+import jenkins.plugins.openstack.compute.internal.QuotaSnapshot;
 import org.hamcrest.Matchers;
 import org.jenkinsci.plugins.cloudstats.CloudStatistics;
 import org.jenkinsci.plugins.cloudstats.ProvisioningActivity;
@@ -23,19 +24,24 @@ import org.junit.Test;
 import org.jvnet.hudson.test.Issue;
 import org.jvnet.hudson.test.JenkinsRule;
 import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.openstack4j.model.compute.Server;
 import org.openstack4j.model.compute.builder.ServerCreateBuilder;
 
-import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Future;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.arrayWithSize;
 import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.endsWith;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.startsWith;
 import static org.junit.Assert.assertEquals;
@@ -74,6 +80,56 @@ public class ProvisioningTest {
         assertEquals("Slave is discarded", null, j.jenkins.getComputer("provisioned"));
     }
 
+    @Test
+    public void recordProvisioningTimeline() throws Exception {
+        JCloudsCloud cloud = j.createCloudLaunchingDummySlaves("label");
+        FreeStyleProject p = j.createFreeStyleProject();
+        p.setAssignedLabel(Label.get("label"));
+        Node node = j.buildAndAssertSuccess(p).getBuiltOn();
+
+        ProvisioningTimeline timeline = ProvisioningTimeline.of(CloudStatistics.get().getActivityFor((JCloudsComputer) node.toComputer()));
+        assertNotNull(timeline);
+        long previous = 0;
+        for (ProvisioningTimeline.Milestone milestone : ProvisioningTimeline.Milestone.values()) {
+            Long time = timeline.getTime(milestone);
+            assertNotNull(milestone.toString(), time);
+            assertTrue(milestone.toString(), previous <= time);
+            previous = time;
+        }
+
+        ProvisioningTimeline.Summary summary = cloud.getProvisioningTimes().get(cloud.getTemplates().get(0).name);
+        assertEquals(1, summary.getCount());
+        assertNotNull(summary.getTotalPercentile(50));
+        assertThat(j.createWebClient().goTo("cloud/" + cloud.name + "/").asText(), containsString("Planned to connected"));
+    }
+
+    @Test
+    public void captureProvisioningLog() throws Exception {
+        JCloudsCloud cloud = j.createCloudLaunchingDummySlaves("label");
+        JCloudsSlave slave = j.provision(cloud, "label");
+
+        ProvisioningLog log = ProvisioningLog.of(CloudStatistics.get().getActivityFor(slave.getId()));
+        assertNotNull(log);
+        String text = log.getLines().toString();
+        assertThat(text, containsString("Provisioning new openstack node " + slave.getNodeName()));
+        assertThat(text, containsString("Ready to launch " + slave.getNodeName()));
+        assertThat(text, containsString("Agent connected"));
+
+        int maxLines = ProvisioningLog.MAX_LINES;
+        try {
+            ProvisioningLog.MAX_LINES = 2;
+            ProvisioningLog bounded = new ProvisioningLog(new ProvisioningActivity.Id("cloud", "template"));
+            bounded.getListener().getLogger().println("one");
+            bounded.getListener().getLogger().println("two");
+            bounded.getListener().getLogger().println("three");
+            assertEquals(1, bounded.getDropped());
+            assertEquals(2, bounded.getLines().size());
+            assertThat(bounded.getLines().get(1), containsString("three"));
+        } finally {
+            ProvisioningLog.MAX_LINES = maxLines;
+        }
+    }
+
     @Test
     public void provisionSlaveOnDemand() throws Exception {
         j.jenkins.setNumExecutors(0);
@@ -97,7 +153,8 @@ public class ProvisioningTest {
         assertThat(j.buildAndAssertSuccess(p).getBuiltOn(), Matchers.instanceOf(JCloudsSlave.class));
 
         Openstack os = cloud.getOpenstack();
-        verify(os, atLeastOnce()).getRunningNodes();
+        verify(os, atLeastOnce()).getOurNodes();
+        verify(os, atLeastOnce()).getQuotaSnapshot(any(Collection.class));
         verify(os, times(2)).bootAndWaitActive(any(ServerCreateBuilder.class), any(Integer.class));
         verify(os, times(2)).assignFloatingIp(any(Server.class), eq("custom"));
         verify(os, times(2)).updateInfo(any(Server.class));
@@ -156,6 +213,71 @@ public class ProvisioningTest {
         assertEquals(3, openTmplt.getRunningNodes().size());
     }
 
+    @Test
+    public void doNotProvisionOnceQuotaReached() throws Exception {
+        SlaveOptions opts = j.dummySlaveOptions().getBuilder().instanceCap(10).hardwareId("small").build();
+        JCloudsSlaveTemplate template = j.dummySlaveTemplate(opts, "label");
+        JCloudsCloud cloud = j.configureSlaveLaunching(j.dummyCloud(opts, template));
+        Openstack os = cloud.getOpenstack();
+
+        // Servers of other tenant users occupy 4 out of 8 cores
+        final Map<String, QuotaSnapshot.Resources> flavors = Collections.singletonMap("small", new QuotaSnapshot.Resources(1, 2, 1024, 0));
+        when(os.getQuotaSnapshot(any(Collection.class))).thenAnswer(new Answer<QuotaSnapshot>() {
+            @Override @SuppressWarnings("unchecked")
+            public QuotaSnapshot answer(InvocationOnMock invocation) throws Throwable {
+                return new QuotaSnapshot(
+                        new QuotaSnapshot.Resources(-1, 8, -1, -1),
+                        new QuotaSnapshot.Resources(2, 4, 2048, 0),
+                        flavors,
+                        (Collection<Server>) invocation.getArguments()[0]
+                );
+            }
+        });
+
+        assertProvisioned(2, cloud.provision(Label.get("label"), 5));
+        assertEquals(2, cloud.getOpenstack().getRunningNodes().size());
+
+        assertProvisioned(0, cloud.provision(Label.get("label"), 1));
+        assertEquals(2, cloud.getOpenstack().getRunningNodes().size());
+
+        cloud.getOpenstack().destroyServer(template.getRunningNodes().get(0));
+
+        assertProvisioned(1, cloud.provision(Label.get("label"), 2));
+        assertEquals(2, cloud.getOpenstack().getRunningNodes().size());
+    }
+
+    @Test
+    public void countNodesBeingProvisionedTowardsInstanceCap() throws Exception {
+        SlaveOptions opts = j.dummySlaveOptions().getBuilder().instanceCap(2).build();
+        JCloudsSlaveTemplate template = j.dummySlaveTemplate(opts, "label");
+        JCloudsCloud cloud = j.configureSlaveProvisioning(j.dummyCloud(template));
+        Openstack os = cloud.getOpenstack();
+
+        // Nova does not report the servers until the boot completes
+        final CountDownLatch booting = new CountDownLatch(2);
+        final CountDownLatch proceed = new CountDownLatch(1);
+        when(os.bootAndWaitActive(any(ServerCreateBuilder.class), any(Integer.class))).thenAnswer(new Answer<Server>() {
+            @Override public Server answer(InvocationOnMock invocation) throws Throwable {
+                booting.countDown();
+                proceed.await();
+                throw new Openstack.ActionFailed("Boot failed");
+            }
+        });
+
+        assertEquals(2, cloud.provision(Label.get("label"), 3).size());
+        booting.await();
+        assertEquals(0, cloud.provision(Label.get("label"), 1).size());
+
+        proceed.countDown();
+        // Both reservations are released once the provisioning fails
+        for (int i = 0; i < 100; i++) {
+            Collection<NodeProvisioner.PlannedNode> nodes = cloud.provision(Label.get("label"), 1);
+            if (nodes.size() == 1) return;
+            Thread.sleep(100);
+        }
+        fail("Capacity was not released");
+    }
+
     public void assertProvisioned(int expectedCount, Collection<NodeProvisioner.PlannedNode> nodes) throws Exception {
         assertEquals(expectedCount, nodes.size());
         for (NodeProvisioner.PlannedNode node : nodes) {
@@ -192,8 +314,12 @@ public class ProvisioningTest {
                 new URL(wc.getContextPath() + "cloud/openstack/provision?name=" + template.name),
                 HttpMethod.POST
         )));
+        assertThat(page.getUrl().toString(), endsWith("/manualProvisioning"));
 
-        assertThat(page.getWebResponse().getContentAsString(), containsString("It is broken, alright!"));
+        while (cloud.isManualProvisioningInProgress()) {
+            Thread.sleep(100);
+        }
+        assertThat(wc.goTo("cloud/openstack/manualProvisioning").asText(), containsString("It is broken, alright!"));
 
         verify(os, times(1)).bootAndWaitActive(any(ServerCreateBuilder.class), any(Integer.class));
     }
@@ -283,8 +409,8 @@ public class ProvisioningTest {
         // Exceed template quota
         HtmlPage provision = wc.goTo("cloud/" + cloud.name + "/provision?name=" + constrained.name);
         assertThat(provision.getWebResponse().getStatusCode(), equalTo(200));
-        String slaveName = extractNodeNameFomUrl(provision);
-        assertNotNull("Slave " +  slaveName+ " should exist", j.jenkins.getNode(slaveName));
+        assertThat(provision.getUrl().toString(), endsWith("/manualProvisioning"));
+        awaitManuallyProvisioned(cloud);
 
         assertThat(
                 wc.goTo("cloud/" + cloud.name + "/provision?name=" + constrained.name).getWebResponse().getContentAsString(),
@@ -294,8 +420,7 @@ public class ProvisioningTest {
         // Exceed global quota
         provision = wc.goTo("cloud/" + cloud.name + "/provision?name=" + free.name);
         assertThat(provision.getWebResponse().getStatusCode(), equalTo(200));
-        slaveName = extractNodeNameFomUrl(provision);
-        assertNotNull("Slave " +  slaveName+ " should exist", j.jenkins.getNode(slaveName));
+        awaitManuallyProvisioned(cloud);
 
         assertThat(
                 wc.goTo("cloud/" + cloud.name + "/provision?name=" + free.name).getWebResponse().getContentAsString(),
@@ -312,8 +437,82 @@ public class ProvisioningTest {
         }
     }
 
-    private String extractNodeNameFomUrl(HtmlPage provision) throws MalformedURLException {
-        return provision.getFullyQualifiedUrl("").toExternalForm().replaceAll("^.*/(.*)/$", "$1");
+    @Test
+    public void doProvisionMultiple() throws Exception {
+        JCloudsCloud cloud = j.configureSlaveLaunching(j.dummyCloud(
+                j.dummySlaveOptions().getBuilder().instanceCap(3).build(),
+                j.dummySlaveTemplate("label")
+        ));
+
+        JenkinsRule.WebClient wc = j.createWebClient();
+        wc.goTo("cloud/" + cloud.name + "/provision?name=" + cloud.getTemplates().get(0).name + "&count=5");
+        // Limited by the instance cap
+        assertEquals(3, cloud.getManuallyProvisioned().size());
+        while (cloud.isManualProvisioningInProgress()) {
+            Thread.sleep(100);
+        }
+        for (ProvisioningActivity activity : cloud.getManuallyProvisioned()) {
+            awaitNode(activity);
+        }
+    }
+
+    @Test
+    public void doProvisionOnceQuotaReached() throws Exception {
+        SlaveOptions opts = j.dummySlaveOptions().getBuilder().instanceCap(10).hardwareId("small").build();
+        JCloudsSlaveTemplate template = j.dummySlaveTemplate(opts, "label");
+        JCloudsCloud cloud = j.configureSlaveLaunching(j.dummyCloud(opts, template));
+        Openstack os = cloud.getOpenstack();
+
+        // Servers of other tenant users occupy 4 out of 8 cores
+        final Map<String, QuotaSnapshot.Resources> flavors = Collections.singletonMap("small", new QuotaSnapshot.Resources(1, 2, 1024, 0));
+        when(os.getQuotaSnapshot(any(Collection.class))).thenAnswer(new Answer<QuotaSnapshot>() {
+            @Override @SuppressWarnings("unchecked")
+            public QuotaSnapshot answer(InvocationOnMock invocation) throws Throwable {
+                return new QuotaSnapshot(
+                        new QuotaSnapshot.Resources(-1, 8, -1, -1),
+                        new QuotaSnapshot.Resources(2, 4, 2048, 0),
+                        flavors,
+                        (Collection<Server>) invocation.getArguments()[0]
+                );
+            }
+        });
+
+        JenkinsRule.WebClient wc = j.createWebClientAllowingFailures();
+        wc.goTo("cloud/" + cloud.name + "/provision?name=" + template.name + "&count=5");
+        // Limited by the quota
+        assertEquals(2, cloud.getManuallyProvisioned().size());
+        for (ProvisioningActivity activity : cloud.getManuallyProvisioned()) {
+            awaitNode(activity);
+        }
+
+        assertThat(
+                wc.goTo("cloud/" + cloud.name + "/provision?name=" + template.name).getWebResponse().getContentAsString(),
+                containsString("Tenant quota of " + cloud.name)
+        );
+    }
+
+    @Test
+    public void planWithoutQuotaFailedToBeFetched() throws Exception {
+        JCloudsCloud cloud = j.configureSlaveLaunching(j.dummyCloud(j.dummySlaveTemplate("label")));
+        Openstack os = cloud.getOpenstack();
+        when(os.getQuotaSnapshot(any(Collection.class))).thenThrow(new RuntimeException("Quota unavailable"));
+
+        assertEquals(1, cloud.provision(Label.get("label"), 1).size());
+        assertEquals(1, cloud.provision(Label.get("label"), 1).size());
+
+        // Not retried until the refresh period elapses
+        verify(os, times(1)).getQuotaSnapshot(any(Collection.class));
+    }
+
+    private void awaitManuallyProvisioned(JCloudsCloud cloud) throws InterruptedException {
+        awaitNode(cloud.getManuallyProvisioned().get(0));
+    }
+
+    // Node is added right after the activity is completed
+    private void awaitNode(ProvisioningActivity activity) throws InterruptedException {
+        while (activity.getCurrentPhase() == ProvisioningActivity.Phase.PROVISIONING || j.jenkins.getNode(activity.getName()) == null) {
+            Thread.sleep(100);
+        }
     }
 
     @Test
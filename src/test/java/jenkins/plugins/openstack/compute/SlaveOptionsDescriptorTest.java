@@ -7,19 +7,19 @@ import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.startsWith;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyMapOf;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 
-import hudson.util.ListBoxModel;
 import jenkins.plugins.openstack.PluginTestRule;
 import jenkins.plugins.openstack.compute.internal.Openstack;
 import org.hamcrest.Description;
-import org.hamcrest.Matchers;
 import org.hamcrest.TypeSafeMatcher;
 import org.junit.Before;
 import org.junit.Rule;
@@ -109,6 +109,21 @@ public class SlaveOptionsDescriptorTest {
         assertThat(d.doCheckRetentionTime("err", "1"), hasState(ERROR, "Not a number"));
     }
 
+    @Test
+    public void doCheckVolumePool() throws Exception {
+        assertThat(d.doCheckVolumePool(null, null, null, null), hasState(OK, "Inherited value: 0"));
+        assertThat(d.doCheckVolumePool(null, "2", null, null), hasState(OK, "Inherited value: 2"));
+        assertThat(d.doCheckVolumePool("0", null, null, null), hasState(OK, "Boot from image"));
+        assertThat(d.doCheckVolumePool("2", null, "10", null), hasState(OK, null));
+        assertThat(d.doCheckVolumePool("2", null, null, "10"), hasState(OK, null));
+
+        // Size taken from the flavor or image, that might not be known
+        assertEquals(WARNING, d.doCheckVolumePool("2", null, null, null).kind);
+        assertEquals(WARNING, d.doCheckVolumePool("2", null, "0", "10").kind);
+
+        assertThat(d.doCheckVolumePool("err", null, null, null), hasState(ERROR, "Not a number"));
+    }
+
     public TypeSafeMatcher<FormValidation> hasState(final FormValidation.Kind kind, final String msg) {
         return new TypeSafeMatcher<FormValidation>() {
             @Override
@@ -137,11 +152,7 @@ public class SlaveOptionsDescriptorTest {
         Openstack os = j.fakeOpenstackFactory();
         doReturn(Collections.singletonList(image)).when(os).getSortedImages();
 
-        ListBoxModel list = d.doFillImageIdItems("not-needed", "", "", "", "");
-        assertEquals(2, list.size());
-        ListBoxModel.Option item = list.get(1);
-        assertEquals("image-name", item.name);
-        assertEquals("image-name", item.value);
+        assertEquals(Collections.singletonList("image-name"), d.searchImages("", 0, "", "", "", "").getNames());
     }
 
     @Test @Issue("JENKINS-29993")
@@ -153,21 +164,60 @@ public class SlaveOptionsDescriptorTest {
         OSClient osClient = mock(OSClient.class);
         ImageService imageService = mock(ImageService.class);
         when(osClient.images()).thenReturn(imageService);
-        doReturn(Collections.singletonList(image)).when(imageService).listAll();
+        doReturn(Collections.singletonList(image)).when(imageService).listAll(anyMapOf(String.class, String.class));
 
         j.fakeOpenstackFactory(new Openstack(osClient));
 
-        ListBoxModel list = d.doFillImageIdItems("not-needed", "", "", "", "");
-        assertThat(list.get(0).name, list, Matchers.<ListBoxModel.Option>iterableWithSize(2));
-        assertEquals(2, list.size());
-        ListBoxModel.Option item = list.get(1);
-        assertEquals("image-id", item.name);
-        assertEquals("image-id", item.value);
+        assertEquals(Collections.singletonList("image-id"), d.searchImages("", 0, "", "", "", "").getNames());
 
-        verify(imageService).listAll();
+        verify(imageService).listAll(anyMapOf(String.class, String.class));
         verifyNoMoreInteractions(imageService);
     }
 
+    @Test
+    public void searchImages() {
+        List<Image> images = new ArrayList<>();
+        for (String name : Arrays.asList("fedora-25", "Fedora-24", "centos-7", "rhel-7", "fedora-26")) {
+            Image image = new GlanceImage();
+            image.setId(name + "-id");
+            image.setName(name);
+            images.add(image);
+        }
+        Openstack os = j.fakeOpenstackFactory();
+        doReturn(images).when(os).getSortedImages();
+
+        assertEquals(5, d.searchImages(null, 0, "", "", "", "").getNames().size());
+        assertEquals(Arrays.asList("Fedora-24", "fedora-25", "fedora-26"), d.searchImages("fed", 0, "", "", "", "").getNames());
+        assertEquals(Collections.singletonList("fedora-26"), d.searchImages("FEDORA-2", 2, "", "", "", "").getNames());
+        assertEquals(Collections.emptyList(), d.searchImages("ubuntu", 0, "", "", "", "").getNames());
+    }
+
+    @Test
+    public void shareCatalogAmongFills() throws Exception {
+        Openstack.FactoryEP factory = j.mockOpenstackFactory();
+        Openstack os = mock(Openstack.class);
+        when(factory.getOpenstack(anyString(), anyString(), anyString(), anyString())).thenReturn(os);
+        when(os.getSortedIpPools()).thenReturn(Collections.singletonList("pool"));
+        when(os.getSortedKeyPairNames()).thenReturn(Collections.singletonList("key"));
+
+        assertEquals(2, d.doFillFloatingIpPoolItems("", "endpoint", "identity", "credential", "zone").size());
+        assertEquals(2, d.doFillKeyPairNameItems("", "endpoint", "identity", "credential", "zone").size());
+        verify(factory, times(1)).getOpenstack("endpoint", "identity", "credential", "zone");
+        verify(os, times(1)).getSortedIpPools();
+
+        // Different credentials
+        d.doFillKeyPairNameItems("", "endpoint", "identity", "other", "zone");
+        verify(factory, times(1)).getOpenstack("endpoint", "identity", "other", "zone");
+
+        when(os.getSortedIpPools()).thenReturn(Arrays.asList("pool", "another"));
+        assertThat(
+                j.getCloudDescriptor().doRefreshCatalog("zone", "endpoint", "identity", "credential"),
+                hasState(OK, "Catalog refreshed: 0 images, 0 flavors, 0 networks, 2 floating IP pools, 1 key pairs")
+        );
+        assertEquals(3, d.doFillFloatingIpPoolItems("", "endpoint", "identity", "credential", "zone").size());
+        verify(factory, times(2)).getOpenstack("endpoint", "identity", "credential", "zone");
+    }
+
     @Test
     public void fillDependencies() throws Exception {
         List<String> expected = Arrays.asList(
@@ -180,16 +230,28 @@ public class SlaveOptionsDescriptorTest {
         assertThat(getFillDependencies("keyPairName"), equalTo(expected));
         assertThat(getFillDependencies("floatingIpPool"), equalTo(expected));
         assertThat(getFillDependencies("hardwareId"), equalTo(expected));
-        assertThat(getFillDependencies("imageId"), equalTo(expected));
         assertThat(getFillDependencies("networkId"), equalTo(expected));
 
         assertFillWorks("floatingIpPool");
         assertFillWorks("hardwareId");
-        assertFillWorks("imageId");
         assertFillWorks("networkId");
         assertFillWorks("keyPairName");
     }
 
+    @Test
+    public void searchImagesWithCredentials() throws Exception {
+        Openstack.FactoryEP factory = j.mockOpenstackFactory();
+        Openstack os = mock(Openstack.class);
+        when(factory.getOpenstack(anyString(), anyString(), anyString(), anyString())).thenReturn(os);
+
+        String url = d.getDescriptorUrl() + "/searchImages?prefix=fed&endPointUrl=END_POINT&identity=IDENTITY&credential=CREDENTIAL&zone=REGION";
+        String json = j.createWebClient().goTo(url, "application/json").getWebResponse().getContentAsString();
+        assertThat(json, equalTo("{\"names\":[],\"more\":false}"));
+
+        verify(factory).getOpenstack(eq("END_POINT"), eq("IDENTITY"), eq("CREDENTIAL"), eq("REGION"));
+        verifyNoMoreInteractions(factory);
+    }
+
     private void assertFillWorks(String attribute) throws Exception {
         final String END_POINT = "END_POINT-" + attribute;
         final String IDENTITY = "IDENTITY";
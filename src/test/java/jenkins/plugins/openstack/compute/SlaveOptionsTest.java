@@ -13,7 +13,7 @@ public class SlaveOptionsTest {
      * Reusable options instance guaranteed not to collide with defaults
      */
     public static final SlaveOptions CUSTOM = new SlaveOptions(
-            "img", "hw", "nw", "ud", 1, "pool", "sg", "az", 1, null, 10, "jvmo", "fsRoot", "cid", JCloudsCloud.SlaveType.JNLP, 1
+            "img", "hw", "nw", "ud", 1, "pool", "sg", "az", 1, null, 10, "jvmo", "fsRoot", "cid", JCloudsCloud.SlaveType.JNLP, 1, 2, 3, 4
     );
 
     @Test // instanceCap is a subject of different overriding rules
@@ -36,6 +36,9 @@ public class SlaveOptionsTest {
         assertEquals("cid", unmodified.getCredentialsId());
         assertEquals(JCloudsCloud.SlaveType.JNLP, unmodified.getSlaveType());
         assertEquals(1, (int) unmodified.getRetentionTime());
+        assertEquals(2, (int) unmodified.getStoppedCap());
+        assertEquals(3, (int) unmodified.getVolumePool());
+        assertEquals(4, (int) unmodified.getVolumeSize());
 
         SlaveOptions override = SlaveOptions.builder()
                 .imageId("IMG")
@@ -54,6 +57,9 @@ public class SlaveOptionsTest {
                 .credentialsId(null)
                 .slaveType(JCloudsCloud.SlaveType.SSH)
                 .retentionTime(3)
+                .stoppedCap(5)
+                .volumePool(6)
+                .volumeSize(7)
                 .build()
         ;
         SlaveOptions overridden = CUSTOM.override(override);
@@ -74,6 +80,9 @@ public class SlaveOptionsTest {
         assertEquals("cid", overridden.getCredentialsId());
         assertEquals(JCloudsCloud.SlaveType.SSH, overridden.getSlaveType());
         assertEquals(3, (int) overridden.getRetentionTime());
+        assertEquals(5, (int) overridden.getStoppedCap());
+        assertEquals(6, (int) overridden.getVolumePool());
+        assertEquals(7, (int) overridden.getVolumeSize());
     }
 
     @Test
@@ -92,7 +101,7 @@ public class SlaveOptionsTest {
     public void emptyStrings() {
         SlaveOptions nulls = SlaveOptions.empty();
         SlaveOptions emptyStrings = new SlaveOptions(
-                "", "", "", "", null, "", "", "", null, "", null, "", "", "", null, null
+                "", "", "", "", null, "", "", "", null, "", null, "", "", "", null, null, null, null, null
         );
         SlaveOptions emptyBuilt = SlaveOptions.builder()
                 .imageId("")
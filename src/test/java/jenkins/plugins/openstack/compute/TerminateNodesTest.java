@@ -1,8 +1,11 @@
 package jenkins.plugins.openstack.compute;
 
 import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
 
 import jenkins.plugins.openstack.PluginTestRule;
+import jenkins.plugins.openstack.compute.internal.CloudExecutors;
 import jenkins.plugins.openstack.compute.internal.Openstack;
 import jenkins.plugins.openstack.compute.internal.RunningNode;
 import jenkins.plugins.openstack.compute.internal.TerminateNodes;
@@ -11,10 +14,13 @@ import org.junit.Rule;
 import org.junit.Test;
 
 import static org.mockito.Mockito.*;
+
+import com.google.common.util.concurrent.ListeningExecutorService;
 import org.openstack4j.model.compute.Server;
 
 
 import hudson.model.TaskListener;
+import hudson.util.OneShotEvent;
 
 public class TerminateNodesTest {
 
@@ -33,7 +39,35 @@ public class TerminateNodesTest {
 
         new TerminateNodes(TaskListener.NULL).apply(Arrays.asList(terminate));
 
-        verify(os).destroyServer(terminate.getNode());
+        verify(os).destroyServers(eq(Arrays.asList(terminate.getNode())), any(ListeningExecutorService.class), any(TaskListener.class));
         verifyNoMoreInteractions(os);
     }
+
+    @Test
+    public void destroyAsyncWhileInventoryIsBusy() throws Exception {
+        JCloudsCloud cloud = j.dummyCloud();
+        Openstack os = cloud.getOpenstack();
+
+        RunningNode terminate = new RunningNode(cloud.name, "terminate", mock(Server.class));
+        when(terminate.getNode().getId()).thenReturn("terminate");
+
+        final OneShotEvent unblock = new OneShotEvent();
+        ListeningExecutorService inventory = CloudExecutors.get(cloud.name).get(CloudExecutors.Pool.INVENTORY);
+        try {
+            // More than the pool size
+            for (int i = 0; i < 20; i++) {
+                inventory.submit(new Callable<Void>() {
+                    @Override public Void call() throws Exception {
+                        unblock.block();
+                        return null;
+                    }
+                });
+            }
+
+            new TerminateNodes(TaskListener.NULL).applyAsync(Arrays.asList(terminate)).get(10, TimeUnit.SECONDS);
+            verify(os).destroyServers(eq(Arrays.asList(terminate.getNode())), any(ListeningExecutorService.class), any(TaskListener.class));
+        } finally {
+            unblock.signal();
+        }
+    }
 }
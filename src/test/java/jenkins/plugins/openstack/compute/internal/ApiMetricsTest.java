@@ -0,0 +1,51 @@
+package jenkins.plugins.openstack.compute.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import com.codahale.metrics.MetricRegistry;
+import jenkins.metrics.api.Metrics;
+import jenkins.plugins.openstack.PluginTestRule;
+import org.junit.Rule;
+import org.junit.Test;
+
+/**
+ * @author ogondza.
+ */
+public class ApiMetricsTest {
+
+    public @Rule PluginTestRule j = new PluginTestRule();
+
+    @Test
+    public void countCheckedExceptionsAndErrors() throws Exception {
+        final InterruptedException interrupted = new InterruptedException();
+        try {
+            ApiMetrics.call("metered", ApiMetrics.Service.NOVA, "op", new ApiMetrics.Operation<Void, InterruptedException>() {
+                @Override public Void run() throws InterruptedException {
+                    throw interrupted;
+                }
+            });
+            fail();
+        } catch (InterruptedException ex) {
+            assertSame(interrupted, ex);
+        }
+
+        final OutOfMemoryError oom = new OutOfMemoryError();
+        try {
+            ApiMetrics.call("metered", ApiMetrics.Service.NOVA, "op", new ApiMetrics.Operation<Void, RuntimeException>() {
+                @Override public Void run() {
+                    throw oom;
+                }
+            });
+            fail();
+        } catch (OutOfMemoryError ex) {
+            assertSame(oom, ex);
+        }
+
+        MetricRegistry registry = Metrics.metricRegistry();
+        String name = "jenkins.plugins.openstack.metered.api.nova.op";
+        assertEquals(2, registry.getTimers().get(name).getCount());
+        assertEquals(2, registry.getMeters().get(name + ".errors").getCount());
+    }
+}
@@ -0,0 +1,103 @@
+package jenkins.plugins.openstack.compute.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author ogondza.
+ */
+public class BootQueueTest {
+
+    @Test
+    public void limitConcurrency() throws Exception {
+        BootQueue queue = new BootQueue(Executors.newCachedThreadPool(), 2);
+        CountDownLatch proceed = new CountDownLatch(1);
+        List<Future<String>> futures = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            futures.add(queue.submit("key", new Blocking(String.valueOf(i), proceed, null)));
+        }
+
+        Thread.sleep(200);
+        assertEquals(2, queue.getRunning());
+        assertEquals(3, queue.getPending());
+
+        proceed.countDown();
+        for (int i = 0; i < 5; i++) {
+            assertEquals(String.valueOf(i), futures.get(i).get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(0, queue.getPending());
+    }
+
+    @Test
+    public void takeTurns() throws Exception {
+        BootQueue queue = new BootQueue(Executors.newCachedThreadPool(), 1);
+        CountDownLatch proceed = new CountDownLatch(1);
+        List<String> started = Collections.synchronizedList(new ArrayList<String>());
+
+        // Occupy the only slot so the rest gets queued
+        Future<String> blocker = queue.submit("blocker", new Blocking("blocker", proceed, started));
+        List<Future<String>> futures = new ArrayList<>();
+        for (String name : Arrays.asList("a1", "a2", "a3", "b1", "c1", "b2")) {
+            futures.add(queue.submit(name.substring(0, 1), new Blocking(name, null, started)));
+        }
+
+        proceed.countDown();
+        blocker.get(5, TimeUnit.SECONDS);
+        for (Future<String> future : futures) {
+            future.get(5, TimeUnit.SECONDS);
+        }
+
+        assertEquals(Arrays.asList("blocker", "a1", "b1", "c1", "a2", "b2", "a3"), started);
+    }
+
+    @Test
+    public void completeInOrder() throws Exception {
+        BootQueue queue = new BootQueue(Executors.newCachedThreadPool(), 2);
+        CountDownLatch proceed = new CountDownLatch(1);
+
+        Future<String> slow = queue.ordered("label", queue.submit("a", new Blocking("slow", proceed, null)));
+        Future<String> fast = queue.ordered("label", queue.submit("b", new Blocking("fast", null, null)));
+        Future<String> other = queue.ordered("other", queue.submit("c", new Blocking("other", null, null)));
+
+        assertEquals("other", other.get(5, TimeUnit.SECONDS));
+        Thread.sleep(200);
+        // Done already but waiting for its predecessor
+        assertFalse(fast.isDone());
+
+        proceed.countDown();
+        assertEquals("fast", fast.get(5, TimeUnit.SECONDS));
+        assertTrue(slow.isDone());
+    }
+
+    private static final class Blocking implements Callable<String> {
+        private final String name;
+        private final CountDownLatch latch;
+        private final List<String> log;
+
+        private Blocking(String name, CountDownLatch latch, List<String> log) {
+            this.name = name;
+            this.latch = latch;
+            this.log = log;
+        }
+
+        @Override
+        public String call() throws Exception {
+            if (log != null) log.add(name);
+            if (latch != null) latch.await();
+            return name;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package jenkins.plugins.openstack.compute.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import jenkins.plugins.openstack.PluginTestRule;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.Collections;
+
+/**
+ * @author ogondza.
+ */
+public class CatalogTest {
+
+    public @Rule PluginTestRule j = new PluginTestRule();
+
+    @Test
+    public void retryFailedListsSooner() throws Exception {
+        Openstack.FactoryEP factory = j.mockOpenstackFactory();
+        Openstack os = mock(Openstack.class);
+        when(factory.getOpenstack(anyString(), anyString(), anyString(), anyString())).thenReturn(os);
+        when(os.getSortedIpPools())
+                .thenThrow(new RuntimeException("Timed out"))
+                .thenReturn(Collections.singletonList("pool"))
+        ;
+        when(os.getSortedKeyPairNames()).thenReturn(Collections.singletonList("key"));
+
+        long failedTtl = Catalog.failedTtl;
+        try {
+            Catalog.Cache cache = new Catalog.Cache();
+            Catalog failed = cache.get("endpoint", "identity", "credential", "zone");
+            assertNull(failed.getIpPools());
+            assertSame(failed, cache.get("endpoint", "identity", "credential", "zone"));
+
+            Catalog.failedTtl = -1;
+            Catalog complete = cache.get("endpoint", "identity", "credential", "zone");
+            assertEquals(Collections.singletonList("pool"), complete.getIpPools());
+            verify(os, times(2)).getSortedIpPools();
+
+            // Complete catalog lives the full ttl
+            assertSame(complete, cache.get("endpoint", "identity", "credential", "zone"));
+            verify(os, times(2)).getSortedIpPools();
+        } finally {
+            Catalog.failedTtl = failedTtl;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package jenkins.plugins.openstack.compute.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+import com.codahale.metrics.Gauge;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import jenkins.metrics.api.Metrics;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author ogondza.
+ */
+public class CloudExecutorsTest {
+
+    @Rule
+    public JenkinsRule j = new JenkinsRule();
+
+    @Test
+    public void exposeMetrics() throws Exception {
+        CloudExecutors executors = CloudExecutors.get("my-cloud");
+        assertSame(executors, CloudExecutors.get("my-cloud"));
+
+        final CountDownLatch proceed = new CountDownLatch(1);
+        Callable<Void> blocking = new Callable<Void>() {
+            @Override public Void call() throws Exception {
+                proceed.await();
+                return null;
+            }
+        };
+        int threads = CloudExecutors.deletionThreads;
+        for (int i = 0; i < threads + 2; i++) {
+            executors.get(CloudExecutors.Pool.DELETION).submit(blocking);
+        }
+        Thread.sleep(200);
+
+        Gauge active = Metrics.metricRegistry().getGauges().get("jenkins.plugins.openstack.my-cloud.executor.deletion.active");
+        Gauge queue = Metrics.metricRegistry().getGauges().get("jenkins.plugins.openstack.my-cloud.executor.deletion.queue");
+        assertEquals(threads, active.getValue());
+        assertEquals(2, queue.getValue());
+
+        proceed.countDown();
+        Future<?> last = executors.get(CloudExecutors.Pool.DELETION).submit(blocking);
+        last.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void virtualThreadsScale() throws Exception {
+        assumeTrue("Virtual threads not supported by the JVM", CloudExecutors.isVirtualThreadsSupported());
+
+        CloudExecutors.shutdownAll();
+        CloudExecutors.virtualThreads = true;
+        try {
+            CloudExecutors executors = CloudExecutors.get("my-cloud");
+
+            // Simulate slow boots that would need a platform thread each
+            final int boots = 500;
+            final Method isVirtual = Thread.class.getMethod("isVirtual");
+            final AtomicInteger platform = new AtomicInteger();
+            List<ListenableFuture<Object>> futures = new ArrayList<>(boots);
+            long start = System.currentTimeMillis();
+            for (int i = 0; i < boots; i++) {
+                futures.add(executors.get(CloudExecutors.Pool.BOOT).submit(new Callable<Object>() {
+                    @Override public Object call() throws Exception {
+                        if (!((Boolean) isVirtual.invoke(Thread.currentThread()))) {
+                            platform.incrementAndGet();
+                        }
+                        Thread.sleep(1000);
+                        return null;
+                    }
+                }));
+            }
+            Futures.allAsList(futures).get(30, TimeUnit.SECONDS);
+
+            assertEquals(0, platform.get());
+            long duration = System.currentTimeMillis() - start;
+            assertTrue("Boots were not concurrent: " + duration, duration < 10000);
+        } finally {
+            CloudExecutors.shutdownAll();
+            CloudExecutors.virtualThreads = false;
+        }
+    }
+
+    @Test
+    public void shutdown() throws Exception {
+        CloudExecutors executors = CloudExecutors.get("my-cloud");
+        CloudExecutors.shutdownAll();
+        assertFalse(Metrics.metricRegistry().getGauges().containsKey("jenkins.plugins.openstack.my-cloud.executor.boot.active"));
+
+        try {
+            executors.get(CloudExecutors.Pool.BOOT).submit(new Runnable() {
+                @Override public void run() {}
+            });
+            fail("Task accepted after shutdown");
+        } catch (RejectedExecutionException expected) {
+            // Expected
+        }
+        assertNotSame(executors, CloudExecutors.get("my-cloud"));
+    }
+
+    @Test
+    public void stopExecutorsOfRemovedClouds() throws Exception {
+        CloudExecutors kept = CloudExecutors.get("kept");
+        CloudExecutors removed = CloudExecutors.get("removed");
+
+        final CountDownLatch proceed = new CountDownLatch(1);
+        Future<?> running = removed.get(CloudExecutors.Pool.DELETION).submit(new Callable<Void>() {
+            @Override public Void call() throws Exception {
+                proceed.await();
+                return null;
+            }
+        });
+
+        CloudExecutors.retainAll(Collections.singleton("kept"));
+        assertSame(kept, CloudExecutors.get("kept"));
+        assertTrue(Metrics.metricRegistry().getGauges().containsKey("jenkins.plugins.openstack.kept.executor.boot.active"));
+        assertFalse(Metrics.metricRegistry().getGauges().containsKey("jenkins.plugins.openstack.removed.executor.boot.active"));
+
+        // Tasks in progress complete
+        proceed.countDown();
+        running.get(5, TimeUnit.SECONDS);
+
+        try {
+            removed.get(CloudExecutors.Pool.BOOT).submit(new Runnable() {
+                @Override public void run() {}
+            });
+            fail("Task accepted after shutdown");
+        } catch (RejectedExecutionException expected) {
+            // Expected
+        }
+    }
+}
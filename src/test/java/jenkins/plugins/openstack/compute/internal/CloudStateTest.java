@@ -0,0 +1,45 @@
+package jenkins.plugins.openstack.compute.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author ogondza.
+ */
+public class CloudStateTest {
+
+    @Test
+    public void surviveReconfiguration() throws Exception {
+        CloudState state = CloudState.get("kept");
+        ProvisioningLedger.Reservation reservation = state.getLedger().reserve("template");
+        state.getClaimedStoppedServers().add("server-id");
+
+        assertSame(state, CloudState.get("kept"));
+        assertSame(state.getBootQueue(), CloudState.get("kept").getBootQueue());
+        assertEquals(1, CloudState.get("kept").getLedger().size());
+        assertEquals(Collections.singleton("server-id"), CloudState.get("kept").getClaimedStoppedServers());
+
+        CloudState removed = CloudState.get("removed");
+        CloudState.retainAll(Collections.singleton("kept"));
+        assertSame(state, CloudState.get("kept"));
+        assertNotSame(removed, CloudState.get("removed"));
+
+        // Boots run in the pool of the moment
+        CloudExecutors.retainAll(Collections.<String>emptySet());
+        assertEquals("booted", state.getBootQueue().submit("key", new Callable<String>() {
+            @Override public String call() {
+                return "booted";
+            }
+        }).get(5, TimeUnit.SECONDS));
+
+        state.getLedger().release(reservation);
+        CloudState.retainAll(Collections.<String>emptySet());
+    }
+}
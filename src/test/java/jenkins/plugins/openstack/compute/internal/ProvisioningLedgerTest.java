@@ -0,0 +1,68 @@
+package jenkins.plugins.openstack.compute.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.Multiset;
+import org.junit.Test;
+import org.openstack4j.model.compute.Server;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * @author ogondza.
+ */
+public class ProvisioningLedgerTest {
+
+    @Test
+    public void countReservationsUntilReleased() {
+        ProvisioningLedger ledger = new ProvisioningLedger();
+        ProvisioningLedger.Reservation a = ledger.reserve("a");
+        ledger.reserve("a");
+        ledger.reserve("b");
+
+        Multiset<String> outstanding = ledger.outstanding(Collections.<Server>emptyList());
+        assertEquals(3, outstanding.size());
+        assertEquals(2, outstanding.count("a"));
+        assertEquals(1, outstanding.count("b"));
+
+        assertEquals(0, ledger.getVersion());
+        ledger.release(a);
+        ledger.release(a);
+        assertEquals(1, ledger.outstanding(Collections.<Server>emptyList()).count("a"));
+        assertEquals(2, ledger.size());
+        assertEquals(1, ledger.getVersion());
+    }
+
+    @Test
+    public void doNotCountServersTwice() {
+        ProvisioningLedger ledger = new ProvisioningLedger();
+        ProvisioningLedger.Reservation reported = ledger.reserve("a");
+        reported.bind("a-1");
+        ProvisioningLedger.Reservation booting = ledger.reserve("a");
+        booting.bind("a-2");
+        ledger.reserve("a");
+
+        Multiset<String> outstanding = ledger.outstanding(Arrays.asList(server("a-1"), server("foreign")));
+        assertEquals(2, outstanding.count("a"));
+        assertEquals(2, ledger.size());
+        // Inventories fetched before are to be refetched as they might miss the reconciled server
+        assertEquals(1, ledger.getVersion());
+
+        // Releasing reconciled reservation is harmless
+        ledger.release(reported);
+        assertEquals(2, ledger.size());
+        assertEquals(1, ledger.getVersion());
+
+        ledger.outstanding(Arrays.asList(server("a-1"), server("foreign")));
+        assertEquals(1, ledger.getVersion());
+    }
+
+    private static Server server(String name) {
+        Server server = mock(Server.class);
+        when(server.getName()).thenReturn(name);
+        return server;
+    }
+}
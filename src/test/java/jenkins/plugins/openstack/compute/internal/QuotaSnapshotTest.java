@@ -0,0 +1,107 @@
+package jenkins.plugins.openstack.compute.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import org.junit.Test;
+import org.openstack4j.model.compute.Server;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author ogondza.
+ */
+public class QuotaSnapshotTest {
+
+    private static final Map<String, QuotaSnapshot.Resources> FLAVORS = new HashMap<>();
+    static {
+        FLAVORS.put("small", new QuotaSnapshot.Resources(1, 1, 1024, 0));
+        FLAVORS.put("large", new QuotaSnapshot.Resources(1, 4, 8192, 0));
+    }
+
+    @Test
+    public void unlimited() {
+        QuotaSnapshot snapshot = new QuotaSnapshot(res(-1, -1, -1, -1), res(100, 100, 100, 100), FLAVORS, servers());
+        QuotaSnapshot.Budget budget = snapshot.budget(servers());
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(budget.claim("large", true));
+        }
+    }
+
+    @Test
+    public void capByCores() {
+        QuotaSnapshot snapshot = new QuotaSnapshot(res(-1, 10, -1, -1), res(1, 0, 1024, 0), FLAVORS, servers());
+        QuotaSnapshot.Budget budget = snapshot.budget(servers());
+
+        assertTrue(budget.claim("large", false));
+        assertTrue(budget.claim("large", false));
+        assertFalse(budget.claim("large", false));
+        // Smaller flavor still fits
+        assertTrue(budget.claim("small", false));
+        assertTrue(budget.claim("small", false));
+        assertFalse(budget.claim("small", false));
+        assertEquals(10, budget.getUsed().cores);
+    }
+
+    @Test
+    public void capByInstancesAndFloatingIps() {
+        QuotaSnapshot snapshot = new QuotaSnapshot(res(3, -1, -1, 2), res(1, 0, 0, 1), FLAVORS, servers());
+
+        QuotaSnapshot.Budget budget = snapshot.budget(servers());
+        assertTrue(budget.claim("unknown", true));
+        assertFalse(budget.claim("unknown", true));
+        assertTrue(budget.claim("unknown", false));
+        assertFalse(budget.claim("unknown", false));
+    }
+
+    @Test
+    public void floatingIpLimitNotReported() {
+        QuotaSnapshot snapshot = new QuotaSnapshot(res(-1, -1, -1, 0), res(0, 0, 0, 0), FLAVORS, servers());
+        assertTrue(snapshot.budget(servers()).claim("small", true));
+    }
+
+    @Test
+    public void replaceOutdatedUsageOfPlugin() {
+        Server running = server("large");
+        Server terminated = server("large");
+        // 2 larges are ours, the small is foreign
+        QuotaSnapshot snapshot = new QuotaSnapshot(res(-1, 9, -1, -1), res(3, 9, 17408, 0), FLAVORS, servers(running, terminated));
+
+        QuotaSnapshot.Budget budget = snapshot.budget(servers(running));
+        assertEquals(5, budget.getUsed().cores);
+        assertTrue(budget.claim("large", false));
+        assertFalse(budget.claim("small", false));
+    }
+
+    @Test
+    public void inFlightServersAreClaimedRegardlessTheQuota() {
+        QuotaSnapshot snapshot = new QuotaSnapshot(res(1, -1, -1, -1), res(0, 0, 0, 0), FLAVORS, servers());
+        QuotaSnapshot.Budget budget = snapshot.budget(servers());
+
+        budget.claimInFlight("small", false);
+        budget.claimInFlight("small", false);
+        assertEquals(2, budget.getUsed().instances);
+        assertFalse(budget.claim("small", false));
+    }
+
+    private static QuotaSnapshot.Resources res(int instances, int cores, int ram, int fips) {
+        return new QuotaSnapshot.Resources(instances, cores, ram, fips);
+    }
+
+    private static Server server(String flavor) {
+        Server server = mock(Server.class);
+        when(server.getFlavorId()).thenReturn(flavor);
+        return server;
+    }
+
+    private static List<Server> servers(Server... servers) {
+        return servers.length == 0 ? Collections.<Server>emptyList() : Arrays.asList(servers);
+    }
+}
@@ -0,0 +1,55 @@
+package jenkins.plugins.openstack.fake;
+
+import java.util.Random;
+
+/**
+ * Random duration in milliseconds.
+ *
+ * @author ogondza.
+ */
+public abstract class Distribution {
+
+    public static final Distribution ZERO = constant(0);
+
+    public abstract long sample(Random random);
+
+    public static Distribution constant(final long millis) {
+        return new Distribution() {
+            @Override public long sample(Random random) {
+                return millis;
+            }
+
+            @Override public String toString() {
+                return millis + "ms";
+            }
+        };
+    }
+
+    public static Distribution uniform(final long min, final long max) {
+        if (min > max) throw new IllegalArgumentException(min + " > " + max);
+        return new Distribution() {
+            @Override public long sample(Random random) {
+                return min + (long) (random.nextDouble() * (max - min));
+            }
+
+            @Override public String toString() {
+                return "uniform(" + min + "ms, " + max + "ms)";
+            }
+        };
+    }
+
+    /**
+     * Normal distribution cut at zero.
+     */
+    public static Distribution normal(final long mean, final long deviation) {
+        return new Distribution() {
+            @Override public long sample(Random random) {
+                return Math.max(0, mean + (long) (random.nextGaussian() * deviation));
+            }
+
+            @Override public String toString() {
+                return "normal(" + mean + "ms, " + deviation + "ms)";
+            }
+        };
+    }
+}
@@ -0,0 +1,1011 @@
+package jenkins.plugins.openstack.fake;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+import org.apache.commons.io.IOUtils;
+import org.junit.rules.ExternalResource;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * In-process stand-in for the OpenStack APIs the plugin talks to.
+ *
+ * Serves Keystone v2 token authentication and the subset of Nova, Glance v1 and Neutron the plugin uses. Servers
+ * become ACTIVE once their boot time elapses, there are no timers involved so thousands of servers are cheap. Each
+ * API call can be delayed and failed at random or on demand. API calls are counted by operation, that is the method
+ * and the resource path with ids replaced by <tt>{id}</tt>, for instance <tt>GET servers/{id}</tt>.
+ *
+ * Connect real client using {@link #getEndpoint()}, {@link #getIdentity()} and {@link #getCredential()}.
+ *
+ * @author ogondza.
+ */
+public class FakeOpenstack extends ExternalResource {
+    private static final Logger LOGGER = Logger.getLogger(FakeOpenstack.class.getName());
+
+    public static final String TENANT_ID = "fake-tenant-id";
+    public static final String TENANT = "fake-tenant";
+    public static final String USER = "fake-user";
+    public static final String PASSWORD = "fake-password";
+
+    private final Random random = new Random();
+
+    private HttpServer http;
+    private ExecutorService executor;
+    private String url;
+
+    private volatile Distribution latency = Distribution.ZERO;
+    private volatile Distribution bootTime = Distribution.ZERO;
+    private volatile double errorRate = 0;
+    private volatile double bootFailureRate = 0;
+    private final ConcurrentMap<String, AtomicInteger> scheduledFailures = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, AtomicLong> calls = new ConcurrentHashMap<>();
+
+    // Guarded by this
+    private final Map<String, FakeServer> servers = new LinkedHashMap<>();
+    private final Map<String, FakeFloatingIp> floatingIps = new LinkedHashMap<>();
+    private final Map<String, FakeVolume> volumes = new LinkedHashMap<>();
+    private final Map<String, int[]> flavors = new TreeMap<>();
+    private final Map<String, String> images = new TreeMap<>();
+    private final Map<String, Long> imagesCreated = new HashMap<>();
+    private final Map<String, String> networks = new TreeMap<>();
+    private final List<String> keypairs = new ArrayList<>();
+    private final List<String> floatingIpPools = new ArrayList<>();
+    private int maxInstances = -1;
+    private int maxCores = -1;
+    private int maxRam = -1;
+    private int maxFloatingIps = -1;
+    private int addressCounter = 0;
+
+    public FakeOpenstack() {
+        flavor("fake-flavor", 1, 1024);
+        image("fake-image-id", "fake-image");
+        network("fake-network-id", "fake-network");
+        keypair("fake-keypair");
+        floatingIpPool("public");
+    }
+
+    @Override
+    protected void before() throws IOException {
+        start();
+    }
+
+    @Override
+    protected void after() {
+        stop();
+    }
+
+    public void start() throws IOException {
+        http = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1000);
+        executor = Executors.newCachedThreadPool(new NamingThreadFactory(new DaemonThreadFactory(), "Fake OpenStack"));
+        http.setExecutor(executor);
+        http.createContext("/", new Handler());
+        http.start();
+        url = "http://127.0.0.1:" + http.getAddress().getPort();
+    }
+
+    public void stop() {
+        if (http != null) {
+            http.stop(0);
+            executor.shutdownNow();
+            http = null;
+        }
+    }
+
+    /**
+     * Keystone URL to configure the client with.
+     */
+    public String getEndpoint() {
+        return url + "/identity/v2.0";
+    }
+
+    public String getIdentity() {
+        return TENANT + ":" + USER;
+    }
+
+    public String getCredential() {
+        return PASSWORD;
+    }
+
+    // Configuration
+
+    /**
+     * Delay of every API call.
+     */
+    public FakeOpenstack latency(Distribution latency) {
+        this.latency = latency;
+        return this;
+    }
+
+    /**
+     * Time for server to become ACTIVE since requested.
+     */
+    public FakeOpenstack bootTime(Distribution bootTime) {
+        this.bootTime = bootTime;
+        return this;
+    }
+
+    /**
+     * Probability of any API call to fail with HTTP 500.
+     */
+    public FakeOpenstack errorRate(double errorRate) {
+        this.errorRate = errorRate;
+        return this;
+    }
+
+    /**
+     * Probability of server to end up in ERROR state instead of ACTIVE.
+     */
+    public FakeOpenstack bootFailureRate(double bootFailureRate) {
+        this.bootFailureRate = bootFailureRate;
+        return this;
+    }
+
+    /**
+     * Fail next calls of the operation with HTTP 500.
+     *
+     * @param operation Operation as counted by {@link #getCallCount(String)}.
+     */
+    public FakeOpenstack failNext(String operation, int times) {
+        scheduledFailures.put(operation, new AtomicInteger(times));
+        return this;
+    }
+
+    public synchronized FakeOpenstack flavor(String id, int vcpus, int ram) {
+        flavors.put(id, new int[] {vcpus, ram});
+        return this;
+    }
+
+    public synchronized FakeOpenstack image(String id, String name) {
+        images.put(id, name);
+        return this;
+    }
+
+    public synchronized int getImageCount(String name) {
+        int count = 0;
+        for (String n : images.values()) {
+            if (n.equals(name)) count++;
+        }
+        return count;
+    }
+
+    public synchronized int getVolumeCount(String status) {
+        int count = 0;
+        for (FakeVolume volume : volumes.values()) {
+            if (volume.status().equals(status)) count++;
+        }
+        return count;
+    }
+
+    public synchronized FakeOpenstack network(String id, String name) {
+        networks.put(id, name);
+        return this;
+    }
+
+    public synchronized FakeOpenstack keypair(String name) {
+        keypairs.add(name);
+        return this;
+    }
+
+    public synchronized FakeOpenstack floatingIpPool(String name) {
+        floatingIpPools.add(name);
+        return this;
+    }
+
+    /**
+     * Tenant quota, negative values for unlimited.
+     */
+    public synchronized FakeOpenstack quota(int instances, int cores, int ram, int floatingIps) {
+        maxInstances = instances;
+        maxCores = cores;
+        maxRam = ram;
+        maxFloatingIps = floatingIps;
+        return this;
+    }
+
+    // Inspection
+
+    public long getCallCount(String operation) {
+        AtomicLong count = calls.get(operation);
+        return count == null ? 0 : count.get();
+    }
+
+    public Map<String, Long> getCallCounts() {
+        Map<String, Long> out = new TreeMap<>();
+        for (Map.Entry<String, AtomicLong> e : calls.entrySet()) {
+            out.put(e.getKey(), e.getValue().get());
+        }
+        return out;
+    }
+
+    public long getTotalCallCount() {
+        long sum = 0;
+        for (AtomicLong count : calls.values()) {
+            sum += count.get();
+        }
+        return sum;
+    }
+
+    public void resetCallCounts() {
+        calls.clear();
+    }
+
+    public synchronized int getServerCount() {
+        return servers.size();
+    }
+
+    public synchronized int getServerCount(String status) {
+        int count = 0;
+        for (FakeServer server : servers.values()) {
+            if (status.equals(server.status())) count++;
+        }
+        return count;
+    }
+
+    public synchronized int getFloatingIpCount() {
+        return floatingIps.size();
+    }
+
+    /**
+     * Simulate server created outside of the plugin.
+     */
+    public synchronized String createForeignServer(String name) {
+        return createServer(name, Collections.<String, String>emptyMap());
+    }
+
+    /**
+     * Create ACTIVE server bypassing the API.
+     */
+    public synchronized String createServer(String name, Map<String, String> metadata) {
+        FakeServer server = new FakeServer(name, flavors.keySet().iterator().next(), images.keySet().iterator().next(), 0, false);
+        server.metadata.putAll(metadata);
+        servers.put(server.id, server);
+        return server.id;
+    }
+
+    private final class Handler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            try {
+                Request req = new Request(exchange);
+                count(req.operation);
+
+                long delay = latency.sample(random);
+                if (delay > 0) Thread.sleep(delay);
+
+                if (shouldFail(req.operation)) {
+                    respond(exchange, 500, fault("computeFault", 500, "Injected failure of " + req.operation));
+                    return;
+                }
+
+                Response res;
+                switch (req.service) {
+                    case "identity": res = identity(req); break;
+                    case "compute": res = compute(req); break;
+                    case "image": res = image(req); break;
+                    case "volume": res = volume(req); break;
+                    case "network": res = network(req); break;
+                    default: res = notFound(req);
+                }
+                if (res.location != null) {
+                    exchange.getResponseHeaders().set("Location", res.location);
+                }
+                respond(exchange, res.code, res.body);
+            } catch (InterruptedException ex) {
+                respond(exchange, 503, fault("computeFault", 503, "Fake OpenStack shutting down"));
+            } catch (RuntimeException|Error ex) {
+                LOGGER.log(Level.WARNING, "Fake OpenStack failed to handle " + exchange.getRequestURI(), ex);
+                respond(exchange, 500, fault("computeFault", 500, ex.toString()));
+            } finally {
+                exchange.close();
+            }
+        }
+
+        private void respond(HttpExchange exchange, int code, JSONObject body) throws IOException {
+            if (body == null) {
+                exchange.sendResponseHeaders(code, -1);
+                return;
+            }
+            byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(code, bytes.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(bytes);
+            }
+        }
+    }
+
+    private void count(String operation) {
+        AtomicLong count = calls.get(operation);
+        if (count == null) {
+            calls.putIfAbsent(operation, new AtomicLong());
+            count = calls.get(operation);
+        }
+        count.incrementAndGet();
+    }
+
+    private boolean shouldFail(String operation) {
+        AtomicInteger scheduled = scheduledFailures.get(operation);
+        if (scheduled != null && scheduled.getAndDecrement() > 0) return true;
+        // Token is not an API call in the sense of the plugin
+        return !operation.equals("POST tokens") && random.nextDouble() < errorRate;
+    }
+
+    private Response identity(Request req) {
+        if (req.is("POST", "tokens")) {
+            JSONObject token = new JSONObject()
+                    .element("id", UUID.randomUUID().toString())
+                    .element("issued_at", "2016-01-01T00:00:00Z")
+                    .element("expires", "2099-12-31T23:59:59Z")
+                    .element("tenant", new JSONObject().element("id", TENANT_ID).element("name", TENANT).element("enabled", true))
+            ;
+            JSONArray catalog = new JSONArray()
+                    .element(service("compute", "nova", url + "/compute/v2/" + TENANT_ID))
+                    .element(service("image", "glance", url + "/image"))
+                    .element(service("volume", "cinder", url + "/volume/v1/" + TENANT_ID))
+                    .element(service("network", "neutron", url + "/network"))
+                    .element(service("identity", "keystone", getEndpoint()))
+            ;
+            JSONObject user = new JSONObject()
+                    .element("id", "fake-user-id")
+                    .element("name", USER)
+                    .element("username", USER)
+                    .element("roles", new JSONArray().element(new JSONObject().element("name", "_member_")))
+            ;
+            return ok(new JSONObject().element("access", new JSONObject()
+                    .element("token", token)
+                    .element("serviceCatalog", catalog)
+                    .element("user", user)
+            ));
+        }
+        return notFound(req);
+    }
+
+    private JSONObject service(String type, String name, String endpoint) {
+        JSONObject ep = new JSONObject()
+                .element("id", UUID.randomUUID().toString())
+                .element("region", "RegionOne")
+                .element("publicURL", endpoint)
+                .element("internalURL", endpoint)
+                .element("adminURL", endpoint)
+        ;
+        return new JSONObject().element("type", type).element("name", name).element("endpoints", new JSONArray().element(ep));
+    }
+
+    private synchronized Response compute(Request req) {
+        if (req.is("GET", "servers/detail") || req.is("GET", "servers")) {
+            JSONArray list = new JSONArray();
+            for (FakeServer server : servers.values()) {
+                list.add(server.toJson());
+            }
+            return ok(new JSONObject().element("servers", list));
+        }
+
+        if (req.is("POST", "servers")) {
+            return boot(req.json().getJSONObject("server"));
+        }
+
+        if (req.is("GET", "servers/{id}")) {
+            FakeServer server = servers.get(req.id());
+            if (server == null) return notFound(req);
+            return ok(new JSONObject().element("server", server.toJson()));
+        }
+
+        if (req.is("DELETE", "servers/{id}")) {
+            FakeServer server = servers.remove(req.id());
+            if (server == null) return notFound(req);
+            for (String volumeId : server.volumes) {
+                FakeVolume volume = volumes.get(volumeId);
+                if (volume == null) continue;
+                volume.attachedTo = null;
+                if (server.deleteVolumes) volumes.remove(volumeId);
+            }
+            // Nova disassociates the floating IPs, it is up to the client to release them
+            for (FakeFloatingIp fip : floatingIps.values()) {
+                if (server.id.equals(fip.instanceId)) fip.instanceId = null;
+            }
+            return new Response(204, null);
+        }
+
+        if (req.is("POST", "servers/{id}/action")) {
+            FakeServer server = servers.get(req.id());
+            if (server == null) return notFound(req);
+            JSONObject action = req.json();
+            if (action.has("addFloatingIp")) {
+                String address = action.getJSONObject("addFloatingIp").getString("address");
+                for (FakeFloatingIp fip : floatingIps.values()) {
+                    if (fip.ip.equals(address)) {
+                        fip.instanceId = server.id;
+                        fip.fixedIp = server.fixedIp;
+                        return new Response(202, null);
+                    }
+                }
+                return notFound(req);
+            }
+            if (action.has("os-stop")) {
+                server.stopped = true;
+                return new Response(202, null);
+            }
+            if (action.has("os-start")) {
+                server.stopped = false;
+                return new Response(202, null);
+            }
+            if (action.has("rebuild")) {
+                server.image = action.getJSONObject("rebuild").optString("imageRef", server.image);
+                server.activeAt = System.currentTimeMillis() + bootTime.sample(random);
+                server.rebuilding = true;
+                return new Response(202, null);
+            }
+            if (action.has("createImage")) {
+                String imageId = UUID.randomUUID().toString();
+                images.put(imageId, action.getJSONObject("createImage").getString("name"));
+                imagesCreated.put(imageId, System.currentTimeMillis());
+                Response res = new Response(202, null);
+                res.location = url + "/image/v1/images/" + imageId;
+                return res;
+            }
+            return new Response(400, fault("badRequest", 400, "Unsupported action " + action.keySet()));
+        }
+
+        if (req.is("GET", "os-floating-ips")) {
+            JSONArray list = new JSONArray();
+            for (FakeFloatingIp fip : floatingIps.values()) {
+                list.add(fip.toJson());
+            }
+            return ok(new JSONObject().element("floating_ips", list));
+        }
+
+        if (req.is("POST", "os-floating-ips")) {
+            JSONObject body = req.json();
+            String pool = body.optString("pool", floatingIpPools.isEmpty() ? "public" : floatingIpPools.get(0));
+            if (!floatingIpPools.contains(pool)) return notFound(req);
+            if (maxFloatingIps >= 0 && floatingIps.size() >= maxFloatingIps) {
+                return new Response(413, fault("overLimit", 413, "Quota exceeded for floating ips"));
+            }
+            FakeFloatingIp fip = new FakeFloatingIp(pool);
+            floatingIps.put(fip.id, fip);
+            return ok(new JSONObject().element("floating_ip", fip.toJson()));
+        }
+
+        if (req.is("DELETE", "os-floating-ips/{id}")) {
+            if (floatingIps.remove(req.id()) == null) return notFound(req);
+            return new Response(202, null);
+        }
+
+        if (req.is("GET", "os-floating-ip-pools")) {
+            JSONArray list = new JSONArray();
+            for (String pool : floatingIpPools) {
+                list.add(new JSONObject().element("name", pool));
+            }
+            return ok(new JSONObject().element("floating_ip_pools", list));
+        }
+
+        if (req.is("GET", "flavors/detail") || req.is("GET", "flavors")) {
+            JSONArray list = new JSONArray();
+            for (Map.Entry<String, int[]> flavor : flavors.entrySet()) {
+                list.add(flavorJson(flavor.getKey(), flavor.getValue()));
+            }
+            return ok(new JSONObject().element("flavors", list));
+        }
+
+        if (req.is("GET", "flavors/{id}")) {
+            int[] size = flavors.get(req.id());
+            if (size == null) return notFound(req);
+            return ok(new JSONObject().element("flavor", flavorJson(req.id(), size)));
+        }
+
+        if (req.is("GET", "os-keypairs")) {
+            JSONArray list = new JSONArray();
+            for (String name : keypairs) {
+                list.add(new JSONObject().element("keypair", new JSONObject()
+                        .element("name", name)
+                        .element("public_key", "ssh-rsa AAAA fake")
+                        .element("fingerprint", "00:00:00:00")
+                ));
+            }
+            return ok(new JSONObject().element("keypairs", list));
+        }
+
+        if (req.is("GET", "limits")) {
+            int[] used = usage();
+            JSONObject absolute = new JSONObject()
+                    .element("maxTotalInstances", maxInstances)
+                    .element("maxTotalCores", maxCores)
+                    .element("maxTotalRAMSize", maxRam)
+                    .element("maxTotalFloatingIps", maxFloatingIps)
+                    .element("totalInstancesUsed", used[0])
+                    .element("totalCoresUsed", used[1])
+                    .element("totalRAMUsed", used[2])
+                    .element("totalFloatingIpsUsed", floatingIps.size())
+            ;
+            return ok(new JSONObject().element("limits", new JSONObject()
+                    .element("absolute", absolute)
+                    .element("rate", new JSONArray())
+            ));
+        }
+
+        if (req.is("GET", "extensions")) {
+            return ok(new JSONObject().element("extensions", new JSONArray()));
+        }
+
+        return notFound(req);
+    }
+
+    // Guarded by this
+    private static JSONObject flavorJson(String id, int[] size) {
+        return new JSONObject()
+                .element("id", id)
+                .element("name", id)
+                .element("vcpus", size[0])
+                .element("ram", size[1])
+                .element("disk", 10)
+        ;
+    }
+
+    private Response boot(JSONObject request) {
+        String flavor = request.optString("flavorRef", flavors.keySet().iterator().next());
+        if (!flavors.containsKey(flavor)) {
+            return new Response(400, fault("badRequest", 400, "Flavor " + flavor + " could not be found."));
+        }
+        String image = request.optString("imageRef", "");
+
+        int[] used = usage();
+        int[] size = flavors.get(flavor);
+        if (exceeds(used[0] + 1, maxInstances) || exceeds(used[1] + size[0], maxCores) || exceeds(used[2] + size[1], maxRam)) {
+            return new Response(403, fault("forbidden", 403, "Quota exceeded for instances, cores or ram"));
+        }
+
+        FakeServer server = new FakeServer(
+                request.getString("name"), flavor, image, bootTime.sample(random), random.nextDouble() < bootFailureRate
+        );
+        JSONArray mappings = request.optJSONArray("block_device_mapping_v2");
+        if (mappings != null) {
+            for (int i = 0; i < mappings.size(); i++) {
+                JSONObject mapping = mappings.getJSONObject(i);
+                FakeVolume volume = volumes.get(mapping.optString("uuid"));
+                if (volume == null || !"available".equals(volume.status())) {
+                    return new Response(400, fault("badRequest", 400, "Volume " + mapping.optString("uuid") + " is not available"));
+                }
+                volume.attachedTo = server.id;
+                server.volumes.add(volume.id);
+                server.deleteVolumes |= mapping.optBoolean("delete_on_termination");
+            }
+        }
+        JSONObject metadata = request.optJSONObject("metadata");
+        if (metadata != null && !metadata.isNullObject()) {
+            for (Iterator<?> it = metadata.keys(); it.hasNext();) {
+                String key = (String) it.next();
+                server.metadata.put(key, metadata.getString(key));
+            }
+        }
+        servers.put(server.id, server);
+        return new Response(202, new JSONObject().element("server", new JSONObject()
+                .element("id", server.id)
+                .element("adminPass", "fake")
+                .element("links", new JSONArray())
+        ));
+    }
+
+    private static boolean exceeds(int value, int limit) {
+        return limit >= 0 && value > limit;
+    }
+
+    // Guarded by this
+    private int[] usage() {
+        int[] used = new int[3];
+        for (FakeServer server : servers.values()) {
+            int[] size = flavors.get(server.flavor);
+            used[0]++;
+            if (size != null) {
+                used[1] += size[0];
+                used[2] += size[1];
+            }
+        }
+        return used;
+    }
+
+    private synchronized Response image(Request req) {
+        if (req.is("GET", "images/detail") || req.is("GET", "images")) {
+            String name = req.query.get("name");
+            String status = req.query.get("status");
+            String marker = req.query.get("marker");
+            int limit = req.query.containsKey("limit") ? Integer.parseInt(req.query.get("limit")) : Integer.MAX_VALUE;
+            JSONArray list = new JSONArray();
+            for (Map.Entry<String, String> image : images.entrySet()) {
+                if (list.size() >= limit) break;
+                if (marker != null) {
+                    // Page starts after the marker
+                    if (marker.equals(image.getKey())) marker = null;
+                    continue;
+                }
+                if (name != null && !name.equals(image.getValue())) continue;
+                if (status != null && !"active".equalsIgnoreCase(status)) continue;
+                Long created = imagesCreated.get(image.getKey());
+                list.add(new JSONObject()
+                        .element("id", image.getKey())
+                        .element("name", image.getValue())
+                        .element("status", "active")
+                        .element("container_format", "bare")
+                        .element("disk_format", "qcow2")
+                        .element("size", 1024)
+                        .element("is_public", true)
+                        .element("created_at", created == null ? null : formatDate(created))
+                );
+            }
+            return ok(new JSONObject().element("images", list));
+        }
+
+        if (req.is("DELETE", "images/{id}")) {
+            if (images.remove(req.id()) == null) return notFound(req);
+            imagesCreated.remove(req.id());
+            return new Response(200, null);
+        }
+
+        if (req.is("GET", "images/{id}/members")) {
+            return ok(new JSONObject().element("members", new JSONArray()));
+        }
+
+        return notFound(req);
+    }
+
+    private synchronized Response network(Request req) {
+        if (req.is("GET", "networks")) {
+            JSONArray list = new JSONArray();
+            for (Map.Entry<String, String> net : networks.entrySet()) {
+                list.add(networkJson(net.getKey(), net.getValue()));
+            }
+            return ok(new JSONObject().element("networks", list));
+        }
+
+        if (req.is("GET", "networks/{id}")) {
+            String name = networks.get(req.id());
+            if (name == null) return notFound(req);
+            return ok(new JSONObject().element("network", networkJson(req.id(), name)));
+        }
+
+        return notFound(req);
+    }
+
+    private static JSONObject networkJson(String id, String name) {
+        return new JSONObject()
+                .element("id", id)
+                .element("name", name)
+                .element("status", "ACTIVE")
+                .element("admin_state_up", true)
+                .element("shared", false)
+                .element("subnets", new JSONArray())
+                .element("tenant_id", TENANT_ID)
+        ;
+    }
+
+    private synchronized Response volume(Request req) {
+        if (req.is("GET", "volumes/detail") || req.is("GET", "volumes")) {
+            JSONArray list = new JSONArray();
+            for (FakeVolume volume : volumes.values()) {
+                list.add(volume.toJson());
+            }
+            return ok(new JSONObject().element("volumes", list));
+        }
+
+        if (req.is("POST", "volumes")) {
+            JSONObject request = req.json().getJSONObject("volume");
+            FakeVolume volume = new FakeVolume(
+                    request.optString("display_name", request.optString("name")), request.optString("imageRef"),
+                    request.getInt("size"), bootTime.sample(random)
+            );
+            JSONObject metadata = request.optJSONObject("metadata");
+            if (metadata != null && !metadata.isNullObject()) {
+                for (Iterator<?> it = metadata.keys(); it.hasNext();) {
+                    String key = (String) it.next();
+                    volume.metadata.put(key, metadata.getString(key));
+                }
+            }
+            volumes.put(volume.id, volume);
+            return ok(new JSONObject().element("volume", volume.toJson()));
+        }
+
+        if (req.is("GET", "volumes/{id}")) {
+            FakeVolume volume = volumes.get(req.id());
+            if (volume == null) return notFound(req);
+            return ok(new JSONObject().element("volume", volume.toJson()));
+        }
+
+        if (req.is("PUT", "volumes/{id}")) {
+            FakeVolume volume = volumes.get(req.id());
+            if (volume == null) return notFound(req);
+            JSONObject request = req.json().getJSONObject("volume");
+            volume.name = request.optString("display_name", request.optString("name", volume.name));
+            return ok(new JSONObject().element("volume", volume.toJson()));
+        }
+
+        if (req.is("DELETE", "volumes/{id}")) {
+            FakeVolume volume = volumes.get(req.id());
+            if (volume == null) return notFound(req);
+            if (volume.attachedTo != null) {
+                return new Response(400, fault("badRequest", 400, "Volume " + volume.id + " is in use"));
+            }
+            volumes.remove(volume.id);
+            return new Response(202, null);
+        }
+
+        return notFound(req);
+    }
+
+    private static Response ok(JSONObject body) {
+        return new Response(200, body);
+    }
+
+    private static Response notFound(Request req) {
+        return new Response(404, fault("itemNotFound", 404, "Not found: " + req.method + " " + req.path));
+    }
+
+    private static JSONObject fault(String type, int code, String message) {
+        return new JSONObject().element(type, new JSONObject().element("code", code).element("message", message));
+    }
+
+    private static String formatDate(long time) {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss", Locale.ENGLISH);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return format.format(new Date(time));
+    }
+
+    private static final class Response {
+        private final int code;
+        private final JSONObject body;
+        private String location;
+
+        private Response(int code, JSONObject body) {
+            this.code = code;
+            this.body = body;
+        }
+    }
+
+    /**
+     * Parsed request. The resource path is relative to the service endpoint with API version stripped.
+     */
+    private static final class Request {
+        private static final List<String> ACTIONS = Arrays.asList("detail", "action", "members");
+
+        private final HttpExchange exchange;
+        private final String method;
+        private final String path;
+        private final String service;
+        private final List<String> resource;
+        private final String operation;
+        private final Map<String, String> query = new HashMap<>();
+
+        private Request(HttpExchange exchange) throws IOException {
+            this.exchange = exchange;
+            this.method = exchange.getRequestMethod();
+            this.path = exchange.getRequestURI().getPath();
+
+            List<String> segments = new ArrayList<>(Arrays.asList(path.substring(1).split("/", -1)));
+            service = segments.remove(0);
+            switch (service) {
+                case "compute":
+                case "volume":
+                    // /compute/v2/{tenant}/...
+                    segments.remove(0);
+                    segments.remove(0);
+                    break;
+                default:
+                    if (!segments.isEmpty() && segments.get(0).matches("v\\d+(\\.\\d+)?")) {
+                        segments.remove(0);
+                    }
+            }
+            if (!segments.isEmpty() && segments.get(segments.size() - 1).isEmpty() && segments.size() == 1) {
+                segments.remove(0);
+            }
+            resource = Collections.unmodifiableList(segments);
+
+            StringBuilder op = new StringBuilder(method).append(' ');
+            for (int i = 0; i < resource.size(); i++) {
+                if (i > 0) op.append('/');
+                op.append(i == 1 && !ACTIONS.contains(resource.get(i)) ? "{id}" : resource.get(i));
+            }
+            operation = op.toString();
+
+            String rawQuery = exchange.getRequestURI().getRawQuery();
+            if (rawQuery != null) {
+                for (String pair : rawQuery.split("&")) {
+                    String[] kv = pair.split("=", 2);
+                    query.put(URLDecoder.decode(kv[0], "UTF-8"), kv.length > 1 ? URLDecoder.decode(kv[1], "UTF-8") : "");
+                }
+            }
+        }
+
+        private boolean is(String method, String pattern) {
+            return operation.equals(method + " " + pattern);
+        }
+
+        private String id() {
+            return resource.get(1);
+        }
+
+        private JSONObject json() {
+            try {
+                String body = IOUtils.toString(exchange.getRequestBody(), "UTF-8");
+                return body.trim().isEmpty() ? new JSONObject() : JSONObject.fromObject(body);
+            } catch (IOException ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+    }
+
+    private final class FakeServer {
+        private final String id = UUID.randomUUID().toString();
+        private final String name;
+        private final String flavor;
+        // Guarded by FakeOpenstack.this
+        private String image;
+        private long activeAt;
+        private boolean rebuilding;
+        private final boolean failing;
+        private final String fixedIp;
+        private final Map<String, String> metadata = new HashMap<>();
+        // Guarded by FakeOpenstack.this
+        private boolean stopped;
+        private final List<String> volumes = new ArrayList<>();
+        private boolean deleteVolumes;
+
+        private FakeServer(String name, String flavor, String image, long bootTime, boolean failing) {
+            this.name = name;
+            this.flavor = flavor;
+            this.image = image;
+            this.activeAt = System.currentTimeMillis() + bootTime;
+            this.failing = failing;
+            this.fixedIp = nextAddress("10");
+        }
+
+        private String status() {
+            if (System.currentTimeMillis() < activeAt) return rebuilding ? "REBUILD" : "BUILD";
+            if (failing) return "ERROR";
+            return stopped ? "SHUTOFF" : "ACTIVE";
+        }
+
+        // Guarded by FakeOpenstack.this
+        private JSONObject toJson() {
+            String status = status();
+            JSONArray addresses = new JSONArray().element(new JSONObject()
+                    .element("addr", fixedIp)
+                    .element("version", 4)
+                    .element("OS-EXT-IPS:type", "fixed")
+            );
+            for (FakeFloatingIp fip : floatingIps.values()) {
+                if (id.equals(fip.instanceId)) {
+                    addresses.add(new JSONObject()
+                            .element("addr", fip.ip)
+                            .element("version", 4)
+                            .element("OS-EXT-IPS:type", "floating")
+                    );
+                }
+            }
+
+            JSONObject json = new JSONObject()
+                    .element("id", id)
+                    .element("name", name)
+                    .element("status", status)
+                    .element("tenant_id", TENANT_ID)
+                    .element("user_id", "fake-user-id")
+                    .element("metadata", JSONObject.fromObject(metadata))
+                    .element("flavor", new JSONObject().element("id", flavor).element("links", new JSONArray()))
+                    .element("image", new JSONObject().element("id", image).element("links", new JSONArray()))
+                    .element("addresses", new JSONObject().element(networks.isEmpty() ? "private" : networks.values().iterator().next(), addresses))
+                    .element("OS-EXT-STS:vm_state", "BUILD".equals(status) ? "building" : status.toLowerCase())
+            ;
+            JSONArray attached = new JSONArray();
+            for (String volume : volumes) {
+                attached.add(new JSONObject().element("id", volume));
+            }
+            json.element("os-extended-volumes:volumes_attached", attached);
+            if ("ERROR".equals(status)) {
+                json.element("fault", new JSONObject().element("code", 500).element("message", "Injected boot failure").element("details", ""));
+            }
+            return json;
+        }
+    }
+
+    private final class FakeVolume {
+        private final String id = UUID.randomUUID().toString();
+        private final String image;
+        private final int size;
+        private final long availableAt;
+        private final Map<String, String> metadata = new HashMap<>();
+        // Guarded by FakeOpenstack.this
+        private String name;
+        private String attachedTo;
+
+        private FakeVolume(String name, String image, int size, long creationTime) {
+            this.name = name;
+            this.image = image;
+            this.size = size;
+            this.availableAt = System.currentTimeMillis() + creationTime;
+        }
+
+        private String status() {
+            if (attachedTo != null) return "in-use";
+            return System.currentTimeMillis() < availableAt ? "creating" : "available";
+        }
+
+        // Guarded by FakeOpenstack.this
+        private JSONObject toJson() {
+            JSONArray attachments = new JSONArray();
+            if (attachedTo != null) {
+                attachments.add(new JSONObject().element("server_id", attachedTo).element("volume_id", id).element("device", "/dev/vda"));
+            }
+            return new JSONObject()
+                    .element("id", id)
+                    .element("display_name", name)
+                    .element("status", status())
+                    .element("size", size)
+                    .element("bootable", "true")
+                    .element("volume_image_metadata", new JSONObject().element("image_id", image))
+                    .element("metadata", JSONObject.fromObject(metadata))
+                    .element("attachments", attachments)
+            ;
+        }
+    }
+
+    private final class FakeFloatingIp {
+        private final String id = UUID.randomUUID().toString();
+        private final String ip = nextAddress("172");
+        private final String pool;
+        private String instanceId;
+        private String fixedIp;
+
+        private FakeFloatingIp(String pool) {
+            this.pool = pool;
+        }
+
+        // Guarded by FakeOpenstack.this
+        private JSONObject toJson() {
+            JSONObject json = new JSONObject()
+                    .element("id", id)
+                    .element("ip", ip)
+                    .element("pool", pool)
+            ;
+            if (instanceId != null) {
+                json.element("instance_id", instanceId).element("fixed_ip", fixedIp);
+            }
+            return json;
+        }
+    }
+
+    // Guarded by this
+    private String nextAddress(String prefix) {
+        int n = ++addressCounter;
+        return prefix + "." + ((n >> 16) & 0xff) + "." + ((n >> 8) & 0xff) + "." + (n & 0xff);
+    }
+}
@@ -0,0 +1,395 @@
+package jenkins.plugins.openstack.fake;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import hudson.model.Label;
+import hudson.model.Node;
+import hudson.model.TaskListener;
+import hudson.slaves.NodeProvisioner;
+import hudson.util.Secret;
+import jenkins.metrics.api.Metrics;
+import jenkins.plugins.openstack.PluginTestRule;
+import jenkins.plugins.openstack.compute.ImageBaking;
+import jenkins.plugins.openstack.compute.JCloudsCloud;
+import jenkins.plugins.openstack.compute.JCloudsComputer;
+import jenkins.plugins.openstack.compute.JCloudsSlave;
+import jenkins.plugins.openstack.compute.JCloudsSlaveTemplate;
+import jenkins.plugins.openstack.compute.SlaveOptions;
+import jenkins.plugins.openstack.compute.internal.Openstack;
+import jenkins.plugins.openstack.compute.internal.QuotaSnapshot;
+import org.junit.Rule;
+import org.junit.Test;
+import org.openstack4j.api.Builders;
+import org.openstack4j.model.compute.Server;
+import org.openstack4j.model.image.Image;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Exercise the plugin against the fake.
+ *
+ * @author ogondza.
+ */
+public class FakeOpenstackTest {
+
+    @Rule
+    public PluginTestRule j = new PluginTestRule();
+
+    @Rule
+    public FakeOpenstack fake = new FakeOpenstack();
+
+    @Test
+    public void openstackClient() throws Exception {
+        fake.bootTime(Distribution.constant(500)).quota(10, -1, -1, -1);
+        Openstack os = new Openstack(fake.getEndpoint(), fake.getIdentity(), Secret.fromString(fake.getCredential()), null);
+
+        assertEquals(null, os.sanityCheck());
+        assertEquals(1, os.getSortedImages().size());
+        assertEquals(1, os.getSortedFlavors().size());
+        assertEquals(1, os.getSortedNetworks().size());
+        assertEquals(Collections.singletonList("fake-keypair"), os.getSortedKeyPairNames());
+        assertEquals(Collections.singletonList("public"), os.getSortedIpPools());
+        assertEquals("fake-image-id", os.getImageIdFor("fake-image"));
+
+        fake.createForeignServer("foreign");
+        Server server = os.bootAndWaitActive(
+                Builders.server().name("fake").flavor("fake-flavor").image("fake-image-id"), 10000
+        );
+        assertEquals(Server.Status.ACTIVE, server.getStatus());
+        assertEquals(1, os.getRunningNodes().size());
+        assertEquals(2, fake.getServerCount());
+
+        os.assignFloatingIp(server, "public");
+        assertTrue(Openstack.getPublicAddress(os.updateInfo(server)).startsWith("172."));
+
+        QuotaSnapshot quota = os.getQuotaSnapshot(os.getRunningNodes());
+        assertEquals(10, quota.getLimit().instances);
+        assertEquals(2, quota.budget(os.getRunningNodes()).getUsed().instances);
+
+        os.destroyServer(server);
+        assertEquals(0, os.getRunningNodes().size());
+        assertEquals(1, fake.getServerCount());
+        assertEquals(0, fake.getFloatingIpCount());
+        assertEquals(1, fake.getCallCount("POST servers"));
+    }
+
+    @Test
+    public void destroyServersAtOnce() throws Exception {
+        fake.bootTime(Distribution.constant(100));
+        Openstack os = new Openstack(fake.getEndpoint(), fake.getIdentity(), Secret.fromString(fake.getCredential()), null);
+
+        List<Server> servers = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Server server = os.bootAndWaitActive(
+                    Builders.server().name("fake" + i).flavor("fake-flavor").image("fake-image-id"), 10000
+            );
+            os.assignFloatingIp(server, "public");
+            servers.add(server);
+        }
+        assertEquals(3, fake.getFloatingIpCount());
+        fake.resetCallCounts();
+
+        List<Server> failed = os.destroyServers(servers, MoreExecutors.sameThreadExecutor(), TaskListener.NULL);
+        assertEquals(Collections.emptyList(), failed);
+        assertEquals(0, fake.getServerCount());
+        assertEquals(0, fake.getFloatingIpCount());
+        assertEquals(1, fake.getCallCount("GET os-floating-ips"));
+        assertEquals(3, fake.getCallCount("DELETE servers/{id}"));
+        assertEquals(0, fake.getCallCount("GET servers/{id}"));
+    }
+
+    @Test
+    public void pageImages() throws Exception {
+        for (int i = 0; i < 1000; i++) {
+            fake.image("image-id-" + i, "image-" + i);
+        }
+        Openstack os = new Openstack(fake.getEndpoint(), fake.getIdentity(), Secret.fromString(fake.getCredential()), null);
+
+        assertEquals(1001, os.getSortedImages().size());
+        assertEquals(3, fake.getCallCount("GET images/detail"));
+    }
+
+    @Test
+    public void failures() throws Exception {
+        Openstack os = new Openstack(fake.getEndpoint(), fake.getIdentity(), Secret.fromString(fake.getCredential()), null);
+
+        fake.failNext("POST servers", 1);
+        try {
+            os.bootAndWaitActive(Builders.server().name("fake").flavor("fake-flavor").image("fake-image-id"), 10000);
+            fail();
+        } catch (Openstack.ActionFailed expected) {
+            // Expected
+        }
+
+        fake.bootFailureRate(1);
+        try {
+            os.bootAndWaitActive(Builders.server().name("fake").flavor("fake-flavor").image("fake-image-id"), 10000);
+            fail();
+        } catch (Openstack.ActionFailed expected) {
+            assertTrue(expected.getMessage(), expected.getMessage().contains("Injected boot failure"));
+        }
+        // Server in error deleted
+        assertEquals(0, fake.getServerCount());
+    }
+
+    @Test
+    public void apiMetrics() throws Exception {
+        Openstack os = new Openstack(fake.getEndpoint(), fake.getIdentity(), Secret.fromString(fake.getCredential()), null, "metered");
+        os.getRunningNodes();
+        fake.failNext("POST servers", 1);
+        try {
+            os.bootAndWaitActive(Builders.server().name("fake").flavor("fake-flavor").image("fake-image-id"), 10000);
+            fail();
+        } catch (Openstack.ActionFailed expected) {
+            // Expected
+        }
+
+        MetricRegistry registry = Metrics.metricRegistry();
+        String prefix = "jenkins.plugins.openstack.metered.api.";
+        assertEquals(1, registry.getTimers().get(prefix + "keystone.authenticate").getCount());
+        assertEquals(1, registry.getTimers().get(prefix + "nova.getRunningNodes").getCount());
+        assertEquals(0, registry.getMeters().get(prefix + "nova.getRunningNodes.errors").getCount());
+        assertEquals(1, registry.getTimers().get(prefix + "nova.bootAndWaitActive").getCount());
+        assertEquals(1, registry.getMeters().get(prefix + "nova.bootAndWaitActive.errors").getCount());
+    }
+
+    @Test
+    public void stopAndStartIdleServer() throws Exception {
+        SlaveOptions opts = SlaveOptions.builder()
+                .imageId("fake-image")
+                .hardwareId("fake-flavor")
+                .slaveType(JCloudsCloud.SlaveType.JNLP)
+                .stoppedCap(1)
+                .build()
+        ;
+        JCloudsSlaveTemplate template = new JCloudsSlaveTemplate("template", "label", SlaveOptions.empty());
+        JCloudsCloud cloud = new JCloudsCloud(
+                "fake", fake.getIdentity(), fake.getCredential(), fake.getEndpoint(), null, opts, Collections.singletonList(template)
+        );
+        j.jenkins.clouds.add(cloud);
+
+        JCloudsSlave node = (JCloudsSlave) cloud.provision(Label.get("label"), 1).iterator().next().future.get(1, TimeUnit.MINUTES);
+        j.jenkins.addNode(node);
+        ((JCloudsComputer) node.toComputer()).setPendingStop();
+        j.triggerOpenstackSlaveCleanup();
+
+        assertNull(j.jenkins.getNode(node.getNodeName()));
+        assertEquals(1, fake.getServerCount("SHUTOFF"));
+
+        JCloudsSlave started = (JCloudsSlave) cloud.provision(Label.get("label"), 1).iterator().next().future.get(1, TimeUnit.MINUTES);
+        assertEquals(node.getNodeName(), started.getNodeName());
+        assertEquals(1, fake.getServerCount("ACTIVE"));
+        assertEquals(1, fake.getCallCount("POST servers"));
+    }
+
+    @Test
+    public void rebuildSingleUseServer() throws Exception {
+        SlaveOptions opts = SlaveOptions.builder()
+                .imageId("fake-image")
+                .hardwareId("fake-flavor")
+                .floatingIpPool("public")
+                .slaveType(JCloudsCloud.SlaveType.JNLP)
+                .build()
+        ;
+        JCloudsSlaveTemplate template = new JCloudsSlaveTemplate("template", "label", SlaveOptions.empty());
+        JCloudsCloud cloud = new JCloudsCloud(
+                "fake", fake.getIdentity(), fake.getCredential(), fake.getEndpoint(), null, opts, Collections.singletonList(template)
+        );
+        j.jenkins.clouds.add(cloud);
+
+        JCloudsSlave node = (JCloudsSlave) cloud.provision(Label.get("label"), 1).iterator().next().future.get(1, TimeUnit.MINUTES);
+        j.jenkins.addNode(node);
+        ((JCloudsComputer) node.toComputer()).setPendingRebuild();
+        j.triggerOpenstackSlaveCleanup();
+
+        JCloudsSlave rebuilt = null;
+        for (int i = 0; i < 60 && rebuilt == null; i++) {
+            Node n = j.jenkins.getNode(node.getNodeName());
+            if (n != null && !node.getId().equals(((JCloudsSlave) n).getId())) {
+                rebuilt = (JCloudsSlave) n;
+            }
+            Thread.sleep(1000);
+        }
+        assertNotNull("Server rebuilt and adopted", rebuilt);
+        assertEquals(1, fake.getServerCount("ACTIVE"));
+        assertEquals(1, fake.getCallCount("POST servers"));
+        assertEquals(1, fake.getCallCount("POST os-floating-ips"));
+    }
+
+    @Test
+    public void deleteVolumeBackedServerInsteadOfRebuilding() throws Exception {
+        SlaveOptions opts = SlaveOptions.builder()
+                .imageId("fake-image")
+                .hardwareId("fake-flavor")
+                .slaveType(JCloudsCloud.SlaveType.JNLP)
+                .volumePool(1)
+                .build()
+        ;
+        JCloudsSlaveTemplate template = new JCloudsSlaveTemplate("template", "label", SlaveOptions.empty());
+        JCloudsCloud cloud = new JCloudsCloud(
+                "fake", fake.getIdentity(), fake.getCredential(), fake.getEndpoint(), null, opts, Collections.singletonList(template)
+        );
+        j.jenkins.clouds.add(cloud);
+
+        cloud.replenishVolumePools();
+        for (int i = 0; i < 60 && fake.getVolumeCount("available") < 1; i++) {
+            Thread.sleep(1000);
+        }
+        JCloudsSlave node = (JCloudsSlave) cloud.provision(Label.get("label"), 1).iterator().next().future.get(1, TimeUnit.MINUTES);
+        assertEquals(1, fake.getVolumeCount("in-use"));
+        j.jenkins.addNode(node);
+        ((JCloudsComputer) node.toComputer()).setPendingRebuild();
+        j.triggerOpenstackSlaveCleanup();
+
+        for (int i = 0; i < 60 && fake.getServerCount() > 0; i++) {
+            Thread.sleep(1000);
+        }
+        assertEquals(0, fake.getServerCount());
+        assertEquals(0, fake.getCallCount("POST servers/{id}/action"));
+    }
+
+    @Test
+    public void bakeImageFromConnectedSlave() throws Exception {
+        SlaveOptions opts = SlaveOptions.builder()
+                .imageId("fake-image")
+                .hardwareId("fake-flavor")
+                .slaveType(JCloudsCloud.SlaveType.JNLP)
+                .build()
+        ;
+        JCloudsSlaveTemplate template = new JCloudsSlaveTemplate("template", "label", SlaveOptions.empty());
+        template.setBaking(new ImageBaking(24, 2, null));
+        JCloudsCloud cloud = new JCloudsCloud(
+                "fake", fake.getIdentity(), fake.getCredential(), fake.getEndpoint(), null, opts, Collections.singletonList(template)
+        );
+        j.jenkins.clouds.add(cloud);
+        Openstack os = cloud.getOpenstack();
+
+        JCloudsSlave node = (JCloudsSlave) cloud.provision(Label.get("label"), 1).iterator().next().future.get(1, TimeUnit.MINUTES);
+        j.jenkins.addNode(node);
+        JCloudsComputer computer = (JCloudsComputer) node.toComputer();
+        ListenableFuture<?> baking = ImageBaking.Listener.bake(computer);
+        assertNotNull("Baking", baking);
+        baking.get(1, TimeUnit.MINUTES);
+        assertFalse("Taking builds once baked", computer.isPendingBake());
+
+        Image baked = null;
+        for (Image image : os.getSortedImages()) {
+            if (!"fake-image".equals(image.getName())) {
+                baked = image;
+            }
+        }
+        assertNotNull("Image baked", baked);
+        assertEquals(1, fake.getCallCount("POST servers/{id}/action"));
+
+        JCloudsSlave second = (JCloudsSlave) cloud.provision(Label.get("label"), 1).iterator().next().future.get(1, TimeUnit.MINUTES);
+        for (Server server : os.getRunningNodes()) {
+            if (server.getName().equals(second.getNodeName())) {
+                assertEquals(baked.getId(), server.getImageId());
+                assertFalse("Not baked again", server.getMetadata().containsKey("jenkins-bake"));
+            }
+        }
+        assertEquals(2, fake.getCallCount("POST servers"));
+    }
+
+    @Test
+    public void bootFromPooledVolume() throws Exception {
+        SlaveOptions opts = SlaveOptions.builder()
+                .imageId("fake-image")
+                .hardwareId("fake-flavor")
+                .slaveType(JCloudsCloud.SlaveType.JNLP)
+                .volumePool(2)
+                .build()
+        ;
+        JCloudsSlaveTemplate template = new JCloudsSlaveTemplate("template", "label", SlaveOptions.empty());
+        JCloudsCloud cloud = new JCloudsCloud(
+                "fake", fake.getIdentity(), fake.getCredential(), fake.getEndpoint(), null, opts, Collections.singletonList(template)
+        );
+        j.jenkins.clouds.add(cloud);
+        Openstack os = cloud.getOpenstack();
+
+        // Nothing pooled yet
+        JCloudsSlave fromImage = (JCloudsSlave) cloud.provision(Label.get("label"), 1).iterator().next().future.get(1, TimeUnit.MINUTES);
+        for (int i = 0; i < 60 && fake.getVolumeCount("available") < 2; i++) {
+            Thread.sleep(1000);
+        }
+        assertEquals(2, fake.getVolumeCount("available"));
+
+        JCloudsSlave fromVolume = (JCloudsSlave) cloud.provision(Label.get("label"), 1).iterator().next().future.get(1, TimeUnit.MINUTES);
+        assertEquals(1, fake.getVolumeCount("in-use"));
+        for (Server server : os.getRunningNodes()) {
+            if (server.getName().equals(fromImage.getNodeName())) {
+                assertEquals("fake-image-id", server.getImageId());
+                assertTrue(server.getOsExtendedVolumesAttached().isEmpty());
+            }
+            if (server.getName().equals(fromVolume.getNodeName())) {
+                assertEquals(1, server.getOsExtendedVolumesAttached().size());
+            }
+        }
+
+        fromVolume.terminate();
+        assertEquals(0, fake.getVolumeCount("in-use"));
+        for (int i = 0; i < 60 && fake.getVolumeCount("available") < 2; i++) {
+            Thread.sleep(1000);
+        }
+        assertEquals(2, fake.getVolumeCount("available"));
+    }
+
+    @Test
+    public void provisionAndCleanup() throws Exception {
+        fake.bootTime(Distribution.uniform(100, 1000)).latency(Distribution.uniform(0, 20));
+
+        SlaveOptions opts = SlaveOptions.builder()
+                .imageId("fake-image")
+                .hardwareId("fake-flavor")
+                .networkId("fake-network-id")
+                .floatingIpPool("public")
+                .slaveType(JCloudsCloud.SlaveType.JNLP)
+                .instanceCap(50)
+                .build()
+        ;
+        JCloudsSlaveTemplate template = new JCloudsSlaveTemplate("template", "label", SlaveOptions.empty());
+        JCloudsCloud cloud = new JCloudsCloud(
+                "fake", fake.getIdentity(), fake.getCredential(), fake.getEndpoint(), null, opts, Collections.singletonList(template)
+        );
+        cloud.setMaxConcurrentBoots(20);
+        j.jenkins.clouds.add(cloud);
+
+        Collection<NodeProvisioner.PlannedNode> planned = cloud.provision(Label.get("label"), 50);
+        assertEquals(50, planned.size());
+        for (NodeProvisioner.PlannedNode pn : planned) {
+            JCloudsSlave node = (JCloudsSlave) pn.future.get(1, TimeUnit.MINUTES);
+            assertNotNull(node);
+            assertNull("Node names are unique", j.jenkins.getNode(node.getNodeName()));
+            j.jenkins.addNode(node);
+        }
+        assertEquals(50, fake.getServerCount("ACTIVE"));
+        assertEquals(50, fake.getFloatingIpCount());
+
+        List<Node> nodes = j.jenkins.getNodes();
+        for (Node node : nodes) {
+            if (node instanceof JCloudsSlave) {
+                ((JCloudsComputer) node.toComputer()).setPendingDelete(true);
+            }
+        }
+        j.triggerOpenstackSlaveCleanup();
+
+        assertEquals(0, fake.getServerCount());
+        assertEquals(0, fake.getFloatingIpCount());
+        // Every server booted and deleted exactly once
+        assertEquals(50, fake.getCallCount("POST servers"));
+        assertEquals(50, fake.getCallCount("POST os-floating-ips"));
+        assertEquals(50, fake.getCallCount("DELETE servers/{id}"));
+    }
+}